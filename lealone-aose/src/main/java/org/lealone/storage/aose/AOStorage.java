@@ -12,6 +12,9 @@ import org.lealone.common.util.DataUtils;
 import org.lealone.storage.StorageBase;
 import org.lealone.storage.StorageMap;
 import org.lealone.storage.aose.btree.BTreeMap;
+import org.lealone.storage.aose.art.ARTMap;
+import org.lealone.storage.aose.hash.HashMap;
+import org.lealone.storage.aose.lsm.LSMMap;
 import org.lealone.storage.fs.FilePath;
 import org.lealone.storage.fs.FileUtils;
 import org.lealone.storage.type.StorageDataType;
@@ -58,6 +61,12 @@ public class AOStorage extends StorageBase {
             StorageDataType valueType, Map<String, String> parameters) {
         if (mapType == null || mapType.equalsIgnoreCase("BTreeMap")) {
             return openBTreeMap(name, keyType, valueType, parameters);
+        } else if (mapType.equalsIgnoreCase("HashMap")) {
+            return openHashMap(name, keyType, valueType, parameters);
+        } else if (mapType.equalsIgnoreCase("ART")) {
+            return openARTMap(name, keyType, valueType);
+        } else if (mapType.equalsIgnoreCase("LSMMap")) {
+            return openLSMMap(name, keyType, valueType, parameters);
         } else {
             throw DataUtils.newIllegalArgumentException("Unknow map type: {0}", mapType);
         }
@@ -85,4 +94,61 @@ public class AOStorage extends StorageBase {
         }
         return (BTreeMap<K, V>) map;
     }
+
+    // 底层的BTreeMap不放到maps中，保存和关闭都通过HashMap进行
+    @SuppressWarnings("unchecked")
+    public <K, V> HashMap<K, V> openHashMap(String name, StorageDataType keyType,
+            StorageDataType valueType, Map<String, String> parameters) {
+        StorageMap<?, ?> map = maps.get(name);
+        if (map == null) {
+            synchronized (this) {
+                map = maps.get(name);
+                if (map == null) {
+                    CaseInsensitiveMap<Object> c = new CaseInsensitiveMap<>(config);
+                    if (parameters != null)
+                        c.putAll(parameters);
+                    BTreeMap<K, V> btreeMap = new BTreeMap<>(name, keyType, valueType, c, this);
+                    map = new HashMap<>(btreeMap);
+                    maps.put(name, map);
+                }
+            }
+        }
+        return (HashMap<K, V>) map;
+    }
+
+    // 数据只在内存中，不需要从文件中加载
+    @SuppressWarnings("unchecked")
+    public <K, V> ARTMap<K, V> openARTMap(String name, StorageDataType keyType,
+            StorageDataType valueType) {
+        StorageMap<?, ?> map = maps.get(name);
+        if (map == null) {
+            synchronized (this) {
+                map = maps.get(name);
+                if (map == null) {
+                    map = new ARTMap<>(name, keyType, valueType, this);
+                    maps.put(name, map);
+                }
+            }
+        }
+        return (ARTMap<K, V>) map;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K, V> LSMMap<K, V> openLSMMap(String name, StorageDataType keyType,
+            StorageDataType valueType, Map<String, String> parameters) {
+        StorageMap<?, ?> map = maps.get(name);
+        if (map == null) {
+            synchronized (this) {
+                map = maps.get(name);
+                if (map == null) {
+                    CaseInsensitiveMap<Object> c = new CaseInsensitiveMap<>(config);
+                    if (parameters != null)
+                        c.putAll(parameters);
+                    map = new LSMMap<>(name, keyType, valueType, c, this);
+                    maps.put(name, map);
+                }
+            }
+        }
+        return (LSMMap<K, V>) map;
+    }
 }
@@ -0,0 +1,924 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.storage.aose.art;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.lealone.common.util.DataUtils;
+import org.lealone.common.util.Utils;
+import org.lealone.db.value.ValueLong;
+import org.lealone.storage.Storage;
+import org.lealone.storage.StorageMapBase;
+import org.lealone.storage.StorageMapCursor;
+import org.lealone.storage.type.StorageDataType;
+
+/**
+ * 自适应基数树(Adaptive Radix Tree)，只在内存中保存数据的map.
+ *
+ * <p>
+ * key先编码成可以按无符号字节比较的字节数组(见StorageDataType.getComparableBytes，ValueLong直接用8个字节)，
+ * 每一层用一个字节选择子节点，内部节点按子节点个数在Node4、Node16、Node256之间切换，
+ * 只有一个子节点的路径合并成节点的前缀，叶子节点直接挂在第一个能区分它的内部节点下面.
+ * <p>
+ * 读操作使用乐观锁耦合(optimistic lock coupling)：内部节点有一个版本号，修改节点时版本号变成奇数，改完再加1，
+ * 读操作读完节点后检查版本号有没有变，变了就从根节点重新开始，整个过程不需要加锁.
+ * 写操作之间用一个map级别的锁互斥，被替换掉的节点版本号一直保持奇数，正在读它的线程会重新开始.
+ *
+ * @param <K> the key class
+ * @param <V> the value class
+ */
+public class ARTMap<K, V> extends StorageMapBase<K, V> {
+
+    // 乐观读重试这么多次还不成功就加锁读
+    private static final int MAX_OPTIMISTIC_RETRIES = 8;
+    // 游标每次从树中取出的叶子节点个数
+    private static final int CURSOR_BATCH_SIZE = 128;
+    // 估算内存时每个叶子节点分摊到的内部节点的内存
+    private static final int NODE_MEMORY_PER_LEAF = 16;
+
+    private static final Object RESTART = new Object();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong memory = new AtomicLong();
+    private volatile Object root;
+    private volatile boolean closed;
+
+    public ARTMap(String name, StorageDataType keyType, StorageDataType valueType, Storage storage) {
+        super(name, keyType, valueType, storage);
+    }
+
+    private byte[] encode(Object key) {
+        byte[] bytes = keyType.getComparableBytes(key);
+        if (bytes != null)
+            return bytes;
+        if (key instanceof ValueLong) {
+            // 最高位取反后有符号数的顺序就跟无符号字节的顺序一样了
+            long x = ((ValueLong) key).getLong() ^ Long.MIN_VALUE;
+            bytes = new byte[8];
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (x >>> (56 - i * 8));
+            }
+            return bytes;
+        }
+        throw DataUtils.newIllegalArgumentException(
+                "The key {0} of map {1} can not be encoded as comparable bytes", key, name);
+    }
+
+    private IllegalArgumentException newPrefixKeyException(Object key) {
+        return DataUtils.newIllegalArgumentException(
+                "The comparable bytes of key {0} in map {1} is a prefix of another key", key, name);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Leaf leaf = getLeaf(encode(key));
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    private Leaf getLeaf(byte[] bytes) {
+        for (int i = 0; i < MAX_OPTIMISTIC_RETRIES; i++) {
+            Object leaf = find(bytes);
+            if (leaf != RESTART)
+                return (Leaf) leaf;
+        }
+        // 写操作太频繁，加锁后再读，这时所有能访问到的节点都不会被修改
+        writeLock.lock();
+        try {
+            return (Leaf) find(bytes);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 返回RESTART表示读的过程中节点被修改了，需要从根节点重新开始
+    private Object find(byte[] bytes) {
+        Object node = root;
+        int depth = 0;
+        while (node != null) {
+            if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                return Arrays.equals(leaf.bytes, bytes) ? leaf : null;
+            }
+            Node n = (Node) node;
+            int version = n.version;
+            if ((version & 1) != 0)
+                return RESTART;
+            byte[] prefix = n.prefix;
+            if (mismatch(prefix, bytes, depth) < prefix.length
+                    || (depth += prefix.length) >= bytes.length) {
+                return n.version == version ? null : RESTART;
+            }
+            Object child = n.findChild(bytes[depth] & 0xFF);
+            if (n.version != version)
+                return RESTART;
+            node = child;
+            depth++;
+        }
+        return null;
+    }
+
+    // 返回prefix跟bytes从depth开始第一个不相同的字节在prefix中的位置，都相同时返回prefix.length
+    private static int mismatch(byte[] prefix, byte[] bytes, int depth) {
+        int len = Math.min(prefix.length, bytes.length - depth);
+        for (int i = 0; i < len; i++) {
+            if (prefix[i] != bytes[depth + i])
+                return i;
+        }
+        return len;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(K key, V value, boolean onlyIfAbsent) {
+        DataUtils.checkNotNull(value, "value");
+        byte[] bytes = encode(key);
+        writeLock.lock();
+        try {
+            return (V) insert(key, bytes, value, onlyIfAbsent);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Object insert(Object key, byte[] bytes, Object value, boolean onlyIfAbsent) {
+        Object node = root;
+        Node parent = null;
+        int parentKey = -1;
+        int depth = 0;
+        while (true) {
+            if (node == null) {
+                // 只有空树才会走到这里
+                root = newLeaf(bytes, key, value);
+                return null;
+            }
+            if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                if (Arrays.equals(leaf.bytes, bytes)) {
+                    Object old = leaf.value;
+                    if (!onlyIfAbsent)
+                        setValue(leaf, value);
+                    return old;
+                }
+                // 用两个key从depth开始的公共部分作为新节点的前缀
+                int p = depth;
+                int len = Math.min(bytes.length, leaf.bytes.length);
+                while (p < len && bytes[p] == leaf.bytes[p]) {
+                    p++;
+                }
+                if (p == len)
+                    throw newPrefixKeyException(key);
+                Node n = new SmallNode(4, Arrays.copyOfRange(bytes, depth, p));
+                n.addChild(leaf.bytes[p] & 0xFF, leaf);
+                n.addChild(bytes[p] & 0xFF, newLeaf(bytes, key, value));
+                replace(parent, parentKey, n);
+                return null;
+            }
+            Node n = (Node) node;
+            byte[] prefix = n.prefix;
+            int m = mismatch(prefix, bytes, depth);
+            if (m < prefix.length) {
+                if (depth + m >= bytes.length)
+                    throw newPrefixKeyException(key);
+                // 前缀不匹配，在不匹配的位置拆分出一个新节点
+                Node n2 = new SmallNode(4, Arrays.copyOf(prefix, m));
+                n2.addChild(prefix[m] & 0xFF, n.copy(Arrays.copyOfRange(prefix, m + 1, prefix.length)));
+                n2.addChild(bytes[depth + m] & 0xFF, newLeaf(bytes, key, value));
+                replace(parent, parentKey, n2);
+                n.markObsolete();
+                return null;
+            }
+            depth += prefix.length;
+            if (depth >= bytes.length)
+                throw newPrefixKeyException(key);
+            int b = bytes[depth] & 0xFF;
+            Object child = n.findChild(b);
+            if (child == null) {
+                Leaf leaf = newLeaf(bytes, key, value);
+                if (n.isFull()) {
+                    Node n2 = n.grow();
+                    n2.addChild(b, leaf);
+                    replace(parent, parentKey, n2);
+                    n.markObsolete();
+                } else {
+                    n.writeLock();
+                    n.addChild(b, leaf);
+                    n.writeUnlock();
+                }
+                return null;
+            }
+            parent = n;
+            parentKey = b;
+            node = child;
+            depth++;
+        }
+    }
+
+    private Leaf newLeaf(byte[] bytes, Object key, Object value) {
+        size.incrementAndGet();
+        memory.addAndGet(getMemory(bytes, key, value));
+        return new Leaf(bytes, key, value);
+    }
+
+    private int getMemory(byte[] bytes, Object key, Object value) {
+        return 24 + 16 + bytes.length + keyType.getMemory(key) + valueType.getMemory(value)
+                + NODE_MEMORY_PER_LEAF;
+    }
+
+    private void setValue(Leaf leaf, Object value) {
+        memory.addAndGet(valueType.getMemory(value) - valueType.getMemory(leaf.value));
+        leaf.value = value;
+    }
+
+    private void replace(Node parent, int parentKey, Object node) {
+        if (parent == null) {
+            root = node;
+        } else {
+            parent.writeLock();
+            parent.replaceChild(parentKey, node);
+            parent.writeUnlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        byte[] bytes = encode(key);
+        writeLock.lock();
+        try {
+            return (V) delete(bytes);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Object delete(byte[] bytes) {
+        Object node = root;
+        Node parent = null;
+        int parentKey = -1;
+        Node grandParent = null;
+        int grandParentKey = -1;
+        int depth = 0;
+        while (node != null) {
+            if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                if (!Arrays.equals(leaf.bytes, bytes))
+                    return null;
+                if (parent == null)
+                    root = null;
+                else
+                    removeChild(grandParent, grandParentKey, parent, parentKey);
+                size.decrementAndGet();
+                memory.addAndGet(-getMemory(leaf.bytes, leaf.key, leaf.value));
+                return leaf.value;
+            }
+            Node n = (Node) node;
+            byte[] prefix = n.prefix;
+            if (mismatch(prefix, bytes, depth) < prefix.length
+                    || (depth += prefix.length) >= bytes.length) {
+                return null;
+            }
+            int b = bytes[depth] & 0xFF;
+            grandParent = parent;
+            grandParentKey = parentKey;
+            parent = n;
+            parentKey = b;
+            node = n.findChild(b);
+            depth++;
+        }
+        return null;
+    }
+
+    private void removeChild(Node parent, int parentKey, Node n, int b) {
+        if (n.count == 2) {
+            // 只剩一个子节点时跟上一层合并，叶子节点直接挂到上一层，内部节点要把前缀连起来
+            int slot = n.findSlot(0);
+            while (n.getChild(slot) == null || n.getKey(slot) == b) {
+                slot++;
+            }
+            int otherKey = n.getKey(slot);
+            Object other = n.getChild(slot);
+            if (other instanceof Node) {
+                Node o = (Node) other;
+                byte[] prefix = new byte[n.prefix.length + 1 + o.prefix.length];
+                System.arraycopy(n.prefix, 0, prefix, 0, n.prefix.length);
+                prefix[n.prefix.length] = (byte) otherKey;
+                System.arraycopy(o.prefix, 0, prefix, n.prefix.length + 1, o.prefix.length);
+                other = o.copy(prefix);
+                o.markObsolete();
+            }
+            replace(parent, parentKey, other);
+            n.markObsolete();
+            return;
+        }
+        n.writeLock();
+        n.removeChild(b);
+        n.writeUnlock();
+        Node n2 = n.shrink();
+        if (n2 != null) {
+            replace(parent, parentKey, n2);
+            n.markObsolete();
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        byte[] bytes = encode(key);
+        writeLock.lock();
+        try {
+            Leaf leaf = (Leaf) find(bytes);
+            if (leaf != null && areValuesEqual(leaf.value, oldValue)) {
+                setValue(leaf, newValue);
+                return true;
+            }
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean areValuesEqual(Object a, Object b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null) {
+            return false;
+        }
+        return valueType.compare(a, b) == 0;
+    }
+
+    @Override
+    public K firstKey() {
+        return getKey(null, true, false);
+    }
+
+    @Override
+    public K lastKey() {
+        return getKey(null, true, true);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return getKey(key, false, true);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return getKey(key, true, true);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return getKey(key, false, false);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return getKey(key, true, false);
+    }
+
+    // key为null时没有边界，正序就是第一个key，逆序就是最后一个key
+    @SuppressWarnings("unchecked")
+    private K getKey(K key, boolean inclusive, boolean reverse) {
+        ArrayList<Leaf> list = scan(key == null ? null : encode(key), inclusive, reverse, 1);
+        return list.isEmpty() ? null : (K) list.get(0).key;
+    }
+
+    /**
+     * 从from开始按key的顺序找出最多max个叶子节点，reverse为true时按逆序，from为null时从头(或尾)开始.
+     */
+    private ArrayList<Leaf> scan(byte[] from, boolean inclusive, boolean reverse, int max) {
+        ArrayList<Leaf> list = new ArrayList<>(Math.min(max, CURSOR_BATCH_SIZE));
+        for (int i = 0; i < MAX_OPTIMISTIC_RETRIES; i++) {
+            Object r = root;
+            if (r == null || scan(r, from, inclusive, 0, from != null, reverse, max, list))
+                return list;
+            list.clear();
+        }
+        writeLock.lock();
+        try {
+            Object r = root;
+            if (r != null)
+                scan(r, from, inclusive, 0, from != null, reverse, max, list);
+            return list;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // bounded为true时子树中还有key在from的另一边，需要继续跟from比较，
+    // 返回false表示读的过程中节点被修改了
+    private boolean scan(Object node, byte[] from, boolean inclusive, int depth, boolean bounded,
+            boolean reverse, int max, ArrayList<Leaf> list) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            if (bounded) {
+                int c = Utils.compareNotNullUnsigned(leaf.bytes, from);
+                if (c == 0 ? !inclusive : (reverse ? c > 0 : c < 0))
+                    return true;
+            }
+            list.add(leaf);
+            return true;
+        }
+        Node n = (Node) node;
+        int version = n.version;
+        if ((version & 1) != 0)
+            return false;
+        byte[] prefix = n.prefix;
+        int boundKey = -1;
+        if (bounded) {
+            int c = comparePrefix(prefix, from, depth);
+            if (c == 0 && depth + prefix.length < from.length) {
+                boundKey = from[depth + prefix.length] & 0xFF;
+            } else {
+                // c为0时说明from在这里结束了，子树中的key都比from大
+                if (c == 0)
+                    c = 1;
+                // 整个子树都在from的另一边
+                if (reverse ? c > 0 : c < 0)
+                    return n.version == version;
+                bounded = false;
+            }
+        }
+        depth += prefix.length + 1;
+        if (reverse) {
+            int slot = bounded ? n.findSlot(boundKey + 1) - 1 : n.getSlotCount() - 1;
+            for (; slot >= 0; slot--) {
+                if (!scanChild(n, version, slot, from, inclusive, depth, bounded, boundKey, reverse,
+                        max, list))
+                    return false;
+                if (list.size() >= max)
+                    return true;
+            }
+        } else {
+            int slot = bounded ? n.findSlot(boundKey) : 0;
+            for (; slot < n.getSlotCount(); slot++) {
+                if (!scanChild(n, version, slot, from, inclusive, depth, bounded, boundKey, reverse,
+                        max, list))
+                    return false;
+                if (list.size() >= max)
+                    return true;
+            }
+        }
+        return n.version == version;
+    }
+
+    private boolean scanChild(Node n, int version, int slot, byte[] from, boolean inclusive, int depth,
+            boolean bounded, int boundKey, boolean reverse, int max, ArrayList<Leaf> list) {
+        int key = n.getKey(slot);
+        Object child = n.getChild(slot);
+        if (n.version != version)
+            return false;
+        if (child == null) // Node256的空槽位
+            return true;
+        return scan(child, from, inclusive, depth, bounded && key == boundKey, reverse, max, list);
+    }
+
+    // 比较prefix和from从depth开始的部分，from先结束时认为prefix大
+    private static int comparePrefix(byte[] prefix, byte[] from, int depth) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (depth + i >= from.length)
+                return 1;
+            int a = prefix[i] & 0xFF;
+            int b = from[depth + i] & 0xFF;
+            if (a != b)
+                return a > b ? 1 : -1;
+        }
+        return 0;
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
+    @Override
+    public StorageMapCursor<K, V> cursor(K from) {
+        return new ARTCursor(from);
+    }
+
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            root = null;
+            size.set(0);
+            memory.set(0);
+            maxKey.set(0);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void remove() {
+        close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        storage.closeMap(name);
+        clear();
+    }
+
+    @Override
+    public void save() {
+        // 数据只在内存中
+    }
+
+    @Override
+    public long getMemorySpaceUsed() {
+        return memory.get();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * 每次从树中取出一批叶子节点，取完后再从最后一个key的下一个位置开始取下一批，
+     * 这样游标不会一直占着节点，写操作也不会让游标失效.
+     */
+    private class ARTCursor implements StorageMapCursor<K, V> {
+
+        private ArrayList<Leaf> batch;
+        private int index;
+        private Leaf current;
+
+        ARTCursor(K from) {
+            batch = scan(from == null ? null : encode(from), true, false, CURSOR_BATCH_SIZE);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return current == null ? null : (K) current.key;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return current == null ? null : (V) current.value;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (index < batch.size())
+                return true;
+            if (batch.size() < CURSOR_BATCH_SIZE)
+                return false;
+            byte[] last = batch.get(batch.size() - 1).bytes;
+            batch = scan(last, false, false, CURSOR_BATCH_SIZE);
+            index = 0;
+            return !batch.isEmpty();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K next() {
+            current = batch.get(index++);
+            return (K) current.key;
+        }
+    }
+
+    private static final class Leaf {
+
+        final byte[] bytes;
+        final Object key;
+        volatile Object value;
+
+        Leaf(byte[] bytes, Object key, Object value) {
+            this.bytes = bytes;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 内部节点，子节点按key字节的顺序放在slot中.
+     * 读操作会访问的字段都是volatile的，最后再读一次版本号时，前面读到的内容一定不会比它新.
+     */
+    private static abstract class Node {
+
+        final byte[] prefix; // 不会修改，前缀变化时要复制一个新节点
+        volatile int version;
+        volatile int count;
+
+        Node(byte[] prefix) {
+            this.prefix = prefix;
+        }
+
+        // 写操作之间已经互斥了，不需要CAS
+        void writeLock() {
+            version++;
+        }
+
+        void writeUnlock() {
+            version++;
+        }
+
+        // 被替换掉的节点版本号一直是奇数，读到它的线程都会重新开始
+        void markObsolete() {
+            version++;
+        }
+
+        abstract Object findChild(int b);
+
+        abstract void addChild(int b, Object child);
+
+        abstract void replaceChild(int b, Object child);
+
+        abstract void removeChild(int b);
+
+        abstract boolean isFull();
+
+        abstract Node grow();
+
+        // 子节点太少时返回一个更小的节点，否则返回null
+        abstract Node shrink();
+
+        abstract Node copy(byte[] prefix);
+
+        abstract int getSlotCount();
+
+        // 返回第一个key大于等于b的slot，b可以是256
+        abstract int findSlot(int b);
+
+        abstract int getKey(int slot);
+
+        abstract Object getChild(int slot);
+    }
+
+    /**
+     * Node4和Node16，key字节按顺序放在两个long中，子节点放在对应的slot中.
+     */
+    private static final class SmallNode extends Node {
+
+        final AtomicReferenceArray<Object> children;
+        volatile long keys0;
+        volatile long keys1;
+
+        SmallNode(int capacity, byte[] prefix) {
+            super(prefix);
+            children = new AtomicReferenceArray<>(capacity);
+        }
+
+        @Override
+        Object findChild(int b) {
+            for (int i = 0, n = count; i < n; i++) {
+                if (getKey(i) == b)
+                    return children.get(i);
+            }
+            return null;
+        }
+
+        private int indexOf(int b) {
+            for (int i = 0, n = count; i < n; i++) {
+                if (getKey(i) == b)
+                    return i;
+            }
+            return -1;
+        }
+
+        private byte[] getKeys() {
+            byte[] keys = new byte[16];
+            for (int i = 0; i < 16; i++) {
+                keys[i] = (byte) getKey(i);
+            }
+            return keys;
+        }
+
+        private void setKeys(byte[] keys) {
+            long k0 = 0, k1 = 0;
+            for (int i = 0; i < 8; i++) {
+                k0 |= (keys[i] & 0xFFL) << (i << 3);
+                k1 |= (keys[i + 8] & 0xFFL) << (i << 3);
+            }
+            keys0 = k0;
+            keys1 = k1;
+        }
+
+        @Override
+        void addChild(int b, Object child) {
+            int n = count;
+            int slot = findSlot(b);
+            byte[] keys = getKeys();
+            for (int i = n; i > slot; i--) {
+                keys[i] = keys[i - 1];
+                children.set(i, children.get(i - 1));
+            }
+            keys[slot] = (byte) b;
+            children.set(slot, child);
+            setKeys(keys);
+            count = n + 1;
+        }
+
+        @Override
+        void replaceChild(int b, Object child) {
+            children.set(indexOf(b), child);
+        }
+
+        @Override
+        void removeChild(int b) {
+            int n = count;
+            int slot = indexOf(b);
+            byte[] keys = getKeys();
+            for (int i = slot; i < n - 1; i++) {
+                keys[i] = keys[i + 1];
+                children.set(i, children.get(i + 1));
+            }
+            children.set(n - 1, null);
+            setKeys(keys);
+            count = n - 1;
+        }
+
+        @Override
+        boolean isFull() {
+            return count == children.length();
+        }
+
+        @Override
+        Node grow() {
+            Node n = children.length() == 4 ? new SmallNode(16, prefix) : new Node256(prefix);
+            copyTo(n);
+            return n;
+        }
+
+        @Override
+        Node shrink() {
+            if (children.length() == 16 && count <= 3) {
+                Node n = new SmallNode(4, prefix);
+                copyTo(n);
+                return n;
+            }
+            return null;
+        }
+
+        @Override
+        Node copy(byte[] prefix) {
+            Node n = new SmallNode(children.length(), prefix);
+            copyTo(n);
+            return n;
+        }
+
+        private void copyTo(Node n) {
+            for (int i = 0, c = count; i < c; i++) {
+                n.addChild(getKey(i), children.get(i));
+            }
+        }
+
+        @Override
+        int getSlotCount() {
+            return count;
+        }
+
+        @Override
+        int findSlot(int b) {
+            int n = count;
+            for (int i = 0; i < n; i++) {
+                if (getKey(i) >= b)
+                    return i;
+            }
+            return n;
+        }
+
+        @Override
+        int getKey(int slot) {
+            long k = slot < 8 ? keys0 : keys1;
+            return (int) (k >>> ((slot & 7) << 3)) & 0xFF;
+        }
+
+        @Override
+        Object getChild(int slot) {
+            return children.get(slot);
+        }
+    }
+
+    /**
+     * 直接用key字节作为slot，没有子节点的slot是null.
+     */
+    private static final class Node256 extends Node {
+
+        final AtomicReferenceArray<Object> children = new AtomicReferenceArray<>(256);
+
+        Node256(byte[] prefix) {
+            super(prefix);
+        }
+
+        @Override
+        Object findChild(int b) {
+            return children.get(b);
+        }
+
+        @Override
+        void addChild(int b, Object child) {
+            children.set(b, child);
+            count++;
+        }
+
+        @Override
+        void replaceChild(int b, Object child) {
+            children.set(b, child);
+        }
+
+        @Override
+        void removeChild(int b) {
+            children.set(b, null);
+            count--;
+        }
+
+        @Override
+        boolean isFull() {
+            return false;
+        }
+
+        @Override
+        Node grow() {
+            return this;
+        }
+
+        @Override
+        Node shrink() {
+            if (count <= 12) {
+                Node n = new SmallNode(16, prefix);
+                copyTo(n);
+                return n;
+            }
+            return null;
+        }
+
+        @Override
+        Node copy(byte[] prefix) {
+            Node n = new Node256(prefix);
+            copyTo(n);
+            return n;
+        }
+
+        private void copyTo(Node n) {
+            for (int i = 0; i < 256; i++) {
+                Object child = children.get(i);
+                if (child != null)
+                    n.addChild(i, child);
+            }
+        }
+
+        @Override
+        int getSlotCount() {
+            return 256;
+        }
+
+        @Override
+        int findSlot(int b) {
+            return b;
+        }
+
+        @Override
+        int getKey(int slot) {
+            return slot;
+        }
+
+        @Override
+        Object getChild(int slot) {
+            return children.get(slot);
+        }
+    }
+}
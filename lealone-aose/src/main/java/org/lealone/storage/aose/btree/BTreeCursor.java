@@ -5,9 +5,13 @@
  */
 package org.lealone.storage.aose.btree;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.lealone.storage.CursorParameters;
 import org.lealone.storage.StorageMapCursor;
 import org.lealone.storage.aose.btree.page.Page;
+import org.lealone.storage.aose.btree.page.PageReference;
+import org.lealone.storage.page.PageOperationHandlerBase;
 
 /**
  * A cursor to iterate over elements in ascending order.
@@ -27,9 +31,15 @@ public class BTreeCursor<K, V> implements StorageMapCursor<K, V> {
     private K key;
     private V value;
 
+    // 预读是按父节点进行的，记下已经对哪个父节点的哪些子page发起过预读，避免重复检查
+    private final int readAheadPages;
+    private CursorPos readAheadParent;
+    private int readAheadEnd;
+
     public BTreeCursor(BTreeMap<K, ?> map, CursorParameters<K> parameters) {
         this.map = map;
         this.parameters = parameters;
+        readAheadPages = map.getBTreeStorage().getReadAheadPages();
         // 定位到>=from的第一个leaf page
         min(map.getRootPage(), parameters.from);
     }
@@ -74,9 +84,44 @@ public class BTreeCursor<K, V> implements StorageMapCursor<K, V> {
             value = (V) pos.page.getValue(index, true);
         else
             value = (V) pos.page.getValue(index, parameters.columnIndexes);
+        if (readAheadPages > 0 && pos.index == pos.page.getKeyCount())
+            checkNextLeafPage();
         return key;
     }
 
+    // 对后面几个还不在内存中的兄弟leaf page发起异步读，扫描到它们时多半已经在缓存中了
+    private void readAhead() {
+        CursorPos parent = pos.parent;
+        if (parent == null)
+            return;
+        int count = map.getChildPageCount(parent.page);
+        int start = parent.index;
+        if (readAheadParent == parent && readAheadEnd > start)
+            start = readAheadEnd;
+        int end = Math.min(parent.index + readAheadPages, count);
+        for (int i = start; i < end; i++) {
+            PageReference ref = parent.page.getChildPageReference(i);
+            if (ref.getPage() == null)
+                map.getBTreeStorage().readPageAsync(ref.getPos());
+        }
+        readAheadParent = parent;
+        readAheadEnd = end;
+    }
+
+    // 当前leaf page已经读完，如果下一个leaf page还没从硬盘读出来，
+    // 通知调度线程当前语句可以先让出执行权，等page读完后再继续，而不是在hasNext()中阻塞
+    private void checkNextLeafPage() {
+        CursorPos parent = pos.parent;
+        if (parent == null || parent.index >= map.getChildPageCount(parent.page))
+            return;
+        PageReference ref = parent.page.getChildPageReference(parent.index);
+        if (ref.getPage() == null) {
+            CompletableFuture<Page> f = map.getBTreeStorage().readPageAsync(ref.getPos());
+            if (f != null)
+                PageOperationHandlerBase.setPendingPageRead(f);
+        }
+    }
+
     /**
      * Fetch the next entry that is equal or larger than the given key, starting
      * from the given page. This method retains the stack.
@@ -92,6 +137,8 @@ public class BTreeCursor<K, V> implements StorageMapCursor<K, V> {
                     x = -x - 1;
                 }
                 pos = new CursorPos(p, x, pos);
+                if (readAheadPages > 0)
+                    readAhead();
                 break;
             }
             int x = from == null ? 0 : p.getPageIndex(from);
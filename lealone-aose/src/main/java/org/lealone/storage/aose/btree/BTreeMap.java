@@ -454,6 +454,21 @@ public class BTreeMap<K, V> extends StorageMapBase<K, V> {
         return btreeStorage.getMemorySpaceUsed();
     }
 
+    @Override
+    public long getCacheHits() {
+        return btreeStorage.getCacheHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return btreeStorage.getCacheMisses();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return btreeStorage.getCacheEvictions();
+    }
+
     public Page gotoLeafPage(Object key) {
         return root.gotoLeafPage(key);
     }
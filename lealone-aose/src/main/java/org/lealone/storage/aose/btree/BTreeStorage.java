@@ -7,6 +7,9 @@ package org.lealone.storage.aose.btree;
 
 import java.io.File;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.lealone.common.compress.CompressDeflate;
 import org.lealone.common.compress.CompressLZF;
@@ -17,11 +20,13 @@ import org.lealone.storage.aose.btree.chunk.Chunk;
 import org.lealone.storage.aose.btree.chunk.ChunkCompactor;
 import org.lealone.storage.aose.btree.chunk.ChunkManager;
 import org.lealone.storage.aose.btree.page.Page;
+import org.lealone.storage.aose.btree.page.PageCache;
+import org.lealone.storage.aose.btree.page.PageReader;
 import org.lealone.storage.aose.btree.page.PageReference;
 import org.lealone.storage.aose.btree.page.PageUtils;
-import org.lealone.storage.cache.CacheLongKeyLIRS;
 import org.lealone.storage.fs.FileStorage;
 import org.lealone.storage.fs.FileUtils;
+import org.lealone.storage.page.PageOperationHandlerBase;
 
 /**
  * A persistent storage for btree map.
@@ -35,14 +40,23 @@ public class BTreeStorage {
 
     private final int pageSplitSize;
     private final int minFillRate;
+    private final int readAheadPages;
 
     private final UncaughtExceptionHandler backgroundExceptionHandler;
 
     /**
-     * The page cache. The default size is 16 MB, and the average size is 2 KB.
-     * It is split in 16 segments. The stack move distance is 2% of the expected number of entries.
+     * The page cache shared by all maps, null if disabled.
      */
-    private final CacheLongKeyLIRS<Page> cache;
+    private final PageCache cache;
+    private final int cacheId;
+    // 多个调度线程会同时读写同一个map，用LongAdder避免在同一个计数器上竞争
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheEvictions = new LongAdder();
+    private final LongAdder cacheMemory = new LongAdder();
+
+    // 正在后台线程中读取的page，key是page的pos，读完放到缓存后删除
+    private final ConcurrentHashMap<Long, CompletableFuture<Page>> pendingReads = new ConcurrentHashMap<>();
 
     /**
      * The compression level for new pages (0 for disabled, 1 for fast, 2 for high).
@@ -68,23 +82,23 @@ public class BTreeStorage {
         if (minFillRate > 50) // 超过50没有实际意义
             minFillRate = 50;
         this.minFillRate = minFillRate;
+        readAheadPages = getIntValue("readAheadPages", 4);
         compressionLevel = getIntValue("compress", 0);
         backgroundExceptionHandler = (UncaughtExceptionHandler) map
                 .getConfig("backgroundExceptionHandler");
 
         chunkManager = new ChunkManager(this);
+        cacheId = PageCache.nextCacheId();
         if (map.isInMemory()) {
             cache = null;
             mapBaseDir = null;
             return;
         } else {
-            int mb = getIntValue("cacheSize", 16);
-            if (mb > 0) {
-                CacheLongKeyLIRS.Config cc = new CacheLongKeyLIRS.Config();
-                cc.maxMemory = mb * 1024L * 1024L;
-                cache = new CacheLongKeyLIRS<>(cc);
+            // 所有map共用一个页面缓存，总大小由pageCacheSize决定，当 cacheSize <= 0 时当前map不使用缓存
+            if (getIntValue("cacheSize", 16) > 0) {
+                cache = PageCache.getInstance(map.getConfig());
             } else {
-                cache = null; // 当 cacheSize <= 0 时禁用缓存
+                cache = null;
             }
         }
 
@@ -137,10 +151,39 @@ public class BTreeStorage {
      */
     public void cachePage(long pos, Page page, int memory) {
         if (cache != null) {
-            cache.put(pos, page, memory);
+            long key = PageCache.getKey(cacheId, pos);
+            if (cache.put(key, page, memory))
+                cacheMemory.add(memory);
+        }
+    }
+
+    /**
+     * 页面的内存变了，如果它还在缓存中就按新的内存重新放入.
+     * 
+     * @param pos the page position
+     * @param page the page
+     */
+    public void updateCachedPage(long pos, Page page) {
+        if (cache != null) {
+            long key = PageCache.getKey(cacheId, pos);
+            if (cache.contains(page, key))
+                cachePage(pos, page, page.getMemory());
         }
     }
 
+    /**
+     * The page was removed from the page cache.
+     *
+     * @param key the cache key
+     * @param memory the memory used by the page
+     * @param evicted true if the page was evicted because the cache was full
+     */
+    public void onPageRemoved(long key, int memory, boolean evicted) {
+        cacheMemory.add(-memory);
+        if (evicted)
+            cacheEvictions.increment();
+    }
+
     /**
      * Read a page.
      * 
@@ -161,21 +204,81 @@ public class BTreeStorage {
     }
 
     private Page getPageFromCache(long pos) {
-        return cache == null ? null : cache.get(pos);
+        if (cache == null)
+            return null;
+        Page p = cache.get(map, PageCache.getKey(cacheId, pos));
+        if (p != null) {
+            cacheHits.increment();
+            PageOperationHandlerBase.incrementPageCacheHitCount();
+        } else
+            cacheMisses.increment();
+        return p;
     }
 
     private Page readLocalPage(long pos) {
         Page p = getPageFromCache(pos);
         if (p != null)
             return p;
+        CompletableFuture<Page> f = pendingReads.get(pos);
+        if (f != null) {
+            // 已经在后台线程中读了，等它读完就好，读失败时再自己读一次，把异常抛给调用者
+            try {
+                return f.join();
+            } catch (Throwable t) {
+            }
+        }
+        return readPageFromFile(pos);
+    }
+
+    private Page readPageFromFile(long pos) {
         Chunk c = getChunk(pos);
         long filePos = Chunk.getFilePos(PageUtils.getPageOffset(pos));
         int pageLength = c.getPageLength(pos);
-        p = Page.read(map, c.fileStorage, pos, filePos, pageLength);
+        Page p = Page.read(map, c.fileStorage, pos, filePos, pageLength);
+        PageOperationHandlerBase.incrementPageReadCount();
         cachePage(pos, p, p.getMemory());
         return p;
     }
 
+    /**
+     * 范围扫描时最多预读多少个后面的兄弟leaf page，0表示不预读
+     */
+    public int getReadAheadPages() {
+        return cache == null ? 0 : readAheadPages;
+    }
+
+    /**
+     * 在PageReader的线程中读取page并放到页面缓存，调用者不用等它读完。
+     * 
+     * @param pos the page position
+     * @return 还没读完时返回对应的future，已经在缓存中或者不能异步读时返回null
+     */
+    public CompletableFuture<Page> readPageAsync(long pos) {
+        if (cache == null || pos <= 0 || closed)
+            return null;
+        CompletableFuture<Page> f = pendingReads.get(pos);
+        if (f != null)
+            return f.isDone() ? null : f;
+        if (cache.contains(map, PageCache.getKey(cacheId, pos)))
+            return null;
+        f = new CompletableFuture<>();
+        CompletableFuture<Page> old = pendingReads.putIfAbsent(pos, f);
+        if (old != null)
+            return old;
+        CompletableFuture<Page> future = f;
+        PageReader.getInstance(map.getConfig()).read(() -> {
+            try {
+                // 先放到缓存再从pendingReads中删除，其他线程总能从其中一个地方得到page
+                future.complete(readPageFromFile(pos));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                pendingReads.remove(pos, future);
+            }
+        });
+        return f;
+    }
+
     /**
      * Remove a page.
      * 
@@ -195,7 +298,7 @@ public class BTreeStorage {
         if (cache != null) {
             if (PageUtils.isLeafPage(pos)) {
                 // keep nodes in the cache, because they are still used for garbage collection
-                cache.remove(pos);
+                cache.remove(map, PageCache.getKey(cacheId, pos));
             }
         }
     }
@@ -227,7 +330,7 @@ public class BTreeStorage {
     }
 
     /**
-     * Get the maximum cache size, in MB.
+     * Get the maximum size of the shared page cache, in MB.
      * 
      * @return the cache size
      */
@@ -239,26 +342,34 @@ public class BTreeStorage {
     }
 
     /**
-     * Set the read cache size in MB.
+     * Set the size of the shared page cache in MB, this affects all maps.
      * 
      * @param mb the cache size in MB.
      */
     public void setCacheSize(int mb) {
         if (cache != null) {
             cache.setMaxMemory(mb * 1024 * 1024L);
-            cache.clear();
         }
     }
 
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public long getCacheEvictions() {
+        return cacheEvictions.sum();
+    }
+
     long getDiskSpaceUsed() {
         return FileUtils.folderSize(new File(mapBaseDir));
     }
 
     long getMemorySpaceUsed() {
-        if (cache != null)
-            return cache.getUsedMemory();
-        else
-            return 0;
+        return cacheMemory.sum();
     }
 
     /**
@@ -305,10 +416,10 @@ public class BTreeStorage {
         closed = true;
         synchronized (this) {
             chunkManager.close();
-            // release memory early - this is important when called
-            // because of out of memory
+            // LIRS不保证优先淘汰不再访问的页面，热点页面会一直占着共享缓存，
+            // 还会通过page.map引用已经关闭的map，所以要全部删除
             if (cache != null)
-                cache.clear();
+                cache.removeAll(map);
         }
     }
 
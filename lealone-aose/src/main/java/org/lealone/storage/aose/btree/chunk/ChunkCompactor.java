@@ -11,7 +11,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.lealone.common.metrics.MetricsRegistry;
 import org.lealone.storage.aose.btree.BTreeStorage;
 import org.lealone.storage.aose.btree.page.Page;
 import org.lealone.storage.aose.btree.page.PageUtils;
@@ -24,6 +26,17 @@ import org.lealone.storage.aose.btree.page.PageUtils;
  */
 public class ChunkCompactor {
 
+    // 所有storage共用，压缩不频繁，用原子变量就够了
+    private static final AtomicLong removedBytes = new AtomicLong();
+    private static final AtomicLong rewrittenBytes = new AtomicLong();
+
+    static {
+        MetricsRegistry.registerCounter("chunk_compactor_removed_bytes_total", null,
+                "Bytes of page data in chunk files deleted by compaction", () -> removedBytes.get());
+        MetricsRegistry.registerCounter("chunk_compactor_rewritten_bytes_total", null,
+                "Bytes of live pages rewritten by compaction", () -> rewrittenBytes.get());
+    }
+
     private final BTreeStorage btreeStorage;
     private final ChunkManager chunkManager;
 
@@ -83,6 +96,7 @@ public class ChunkCompactor {
             return;
         int size = removedPages.size();
         for (Chunk c : unusedChunks) {
+            removedBytes.addAndGet(c.sumOfPageLength);
             chunkManager.removeUnusedChunk(c);
             removedPages.removeAll(c.pagePositionToLengthMap.keySet());
         }
@@ -99,6 +113,7 @@ public class ChunkCompactor {
         List<Chunk> old = getRewritableChunks(chunks);
         boolean saveIfNeeded = false;
         for (Chunk c : old) {
+            rewrittenBytes.addAndGet(c.sumOfLivePageLength);
             for (Entry<Long, Integer> e : c.pagePositionToLengthMap.entrySet()) {
                 long pos = e.getKey();
                 if (PageUtils.isLeafPage(pos) && !removedPages.contains(pos)) {
@@ -6,6 +6,7 @@
 package org.lealone.storage.aose.btree.page;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 
 import org.lealone.common.util.DataUtils;
@@ -116,6 +117,7 @@ public class LeafPage extends LocalPage {
         Object[] bKeys = new Object[b];
         System.arraycopy(keys, 0, aKeys, 0, a);
         System.arraycopy(keys, a, bKeys, 0, b);
+        Object[] oldKeys = keys;
         keys = aKeys;
 
         Object[] aValues = new Object[a];
@@ -127,6 +129,8 @@ public class LeafPage extends LocalPage {
         totalCount = a;
         LeafPage newPage = create(map, bKeys, bValues, bKeys.length, 0);
         newPage.replicationHostIds = replicationHostIds;
+        newPage.copyComparableKeys(this, oldKeys, a);
+        copyComparableKeys(this, oldKeys, 0);
         recalculateMemory();
         return newPage;
     }
@@ -150,12 +154,14 @@ public class LeafPage extends LocalPage {
         int len = keys.length + 1;
         Object[] newKeys = new Object[len];
         DataUtils.copyWithGap(keys, newKeys, len - 1, index);
+        Object[] oldKeys = keys;
         keys = newKeys;
         Object[] newValues = new Object[len];
         DataUtils.copyWithGap(values, newValues, len - 1, index);
         values = newValues;
         keys[index] = key;
         values[index] = value;
+        onKeyInserted(oldKeys, index);
         totalCount++;
         map.incrementSize();// 累加全局计数器
         addMemory(map.getKeyType().getMemory(key) + map.getValueType().getMemory(value));
@@ -172,7 +178,7 @@ public class LeafPage extends LocalPage {
         newValues[index] = value;
         map.incrementSize();// 累加全局计数器
         addMemory(map.getKeyType().getMemory(key) + map.getValueType().getMemory(value));
-        LeafPage newPage = create(map, newKeys, newValues, totalCount + 1, getMemory());
+        LeafPage newPage = create(map, newKeys, newValues, totalCount + 1, memory);
         newPage.cachedCompare = cachedCompare;
         newPage.replicationHostIds = replicationHostIds;
         newPage.setParentRef(getParentRef());
@@ -226,7 +232,7 @@ public class LeafPage extends LocalPage {
         int type = buff.get();
         buff = expandPage(buff, type, start, pageLength);
 
-        map.getKeyType().read(buff, keys, keyLength);
+        readKeys(buff, keyLength, type);
         values = new Object[keyLength];
         map.getValueType().read(buff, values, keyLength);
         totalCount = keyLength;
@@ -253,7 +259,7 @@ public class LeafPage extends LocalPage {
         }
         buff = expandPage(buff, type, start, pageLength);
 
-        map.getKeyType().read(buff, keys, keyLength);
+        readKeys(buff, keyLength, type);
         values = new Object[keyLength];
         StorageDataType valueType = map.getValueType();
         for (int row = 0; row < keyLength; row++) {
@@ -265,6 +271,88 @@ public class LeafPage extends LocalPage {
         recalculateMemory();
     }
 
+    // 返回PAGE_PREFIX_COMPRESSED表示所有key的公共前缀只写了一次，每个key只写剩下的部分
+    private int writeKeys(DataBuffer buff, int keyLength) {
+        StorageDataType keyType = map.getKeyType();
+        if (keyLength > 1) {
+            DataBuffer keyBuff = DataBuffer.create(null, 1024, false);
+            int[] ends = new int[keyLength];
+            // 公共前缀不会比第一个和最后一个key的公共前缀长，如果这个都太短就不用再算了
+            keyType.write(keyBuff, keys[0]);
+            ends[0] = keyBuff.length();
+            keyType.write(keyBuff, keys[keyLength - 1]);
+            int lastEnd = keyBuff.length();
+            int prefix = getCommonPrefixLength(keyBuff.getBytes(), 0, ends[0], ends[0], lastEnd);
+            if (prefix > 1) {
+                for (int i = 1; i < keyLength - 1; i++) {
+                    keyType.write(keyBuff, keys[i]);
+                    ends[i] = keyBuff.length();
+                }
+                ends[keyLength - 1] = lastEnd;
+                byte[] bytes = keyBuff.getBytes();
+                int saved = -prefix - DataUtils.getVarIntLen(prefix);
+                for (int i = 0; i < keyLength; i++) {
+                    int start = getKeyStart(ends, i, lastEnd);
+                    prefix = getCommonPrefixLength(bytes, 0, prefix, start, ends[i]);
+                }
+                for (int i = 0; i < keyLength; i++) {
+                    int len = ends[i] - getKeyStart(ends, i, lastEnd) - prefix;
+                    saved += prefix - DataUtils.getVarIntLen(len);
+                }
+                if (prefix > 0 && saved > 0) {
+                    buff.putVarInt(prefix).put(bytes, 0, prefix);
+                    for (int i = 0; i < keyLength; i++) {
+                        int start = getKeyStart(ends, i, lastEnd) + prefix;
+                        buff.putVarInt(ends[i] - start).put(bytes, start, ends[i] - start);
+                    }
+                    return PageUtils.PAGE_PREFIX_COMPRESSED;
+                }
+            }
+        }
+        keyType.write(buff, keys, keyLength);
+        return 0;
+    }
+
+    // 第一个key在最前面，然后是最后一个key，中间的key放在最后
+    private static int getKeyStart(int[] ends, int i, int lastEnd) {
+        if (i == 0)
+            return 0;
+        else if (i == ends.length - 1)
+            return ends[0];
+        else if (i == 1)
+            return lastEnd;
+        else
+            return ends[i - 1];
+    }
+
+    private static int getCommonPrefixLength(byte[] bytes, int aStart, int aEnd, int bStart,
+            int bEnd) {
+        int len = Math.min(aEnd - aStart, bEnd - bStart);
+        for (int i = 0; i < len; i++) {
+            if (bytes[aStart + i] != bytes[bStart + i])
+                return i;
+        }
+        return len;
+    }
+
+    private void readKeys(ByteBuffer buff, int keyLength, int type) {
+        StorageDataType keyType = map.getKeyType();
+        if ((type & PageUtils.PAGE_PREFIX_COMPRESSED) == 0) {
+            keyType.read(buff, keys, keyLength);
+            return;
+        }
+        int prefix = DataUtils.readVarInt(buff);
+        byte[] bytes = new byte[prefix + 64];
+        buff.get(bytes, 0, prefix);
+        for (int i = 0; i < keyLength; i++) {
+            int len = DataUtils.readVarInt(buff);
+            if (prefix + len > bytes.length)
+                bytes = Arrays.copyOf(bytes, prefix + len);
+            buff.get(bytes, prefix, len);
+            keys[i] = keyType.read(ByteBuffer.wrap(bytes, 0, prefix + len));
+        }
+    }
+
     private void readColumnPage(int columnIndex) {
         ColumnPage page = (ColumnPage) map.getBTreeStorage().readPage(columnPages[columnIndex].pos);
         if (page.values == null) {
@@ -347,11 +435,12 @@ public class LeafPage extends LocalPage {
         int typePos = buff.position();
         buff.put((byte) type);
         int compressStart = buff.position();
-        map.getKeyType().write(buff, keys, keyLength);
+        int prefixCompressed = writeKeys(buff, keyLength);
         map.getValueType().write(buff, values, keyLength);
         writeReplicationHostIds(replicationHostIds, buff);
 
-        compressPage(buff, compressStart, type, typePos);
+        buff.putByte(typePos, (byte) (type | prefixCompressed));
+        compressPage(buff, compressStart, type | prefixCompressed, typePos);
         int pageLength = buff.position() - start;
         buff.putInt(start, pageLength);
         int chunkId = chunk.id;
@@ -383,12 +472,13 @@ public class LeafPage extends LocalPage {
             buff.putLong(0);
         }
         int compressStart = buff.position();
-        map.getKeyType().write(buff, keys, keyLength);
+        int prefixCompressed = writeKeys(buff, keyLength);
         for (int row = 0; row < keyLength; row++) {
             valueType.writeMeta(buff, values[row]);
         }
         writeReplicationHostIds(replicationHostIds, buff);
-        compressPage(buff, compressStart, type, typePos);
+        buff.putByte(typePos, (byte) (type | prefixCompressed));
+        compressPage(buff, compressStart, type | prefixCompressed, typePos);
 
         int pageLength = buff.position() - start;
         buff.putInt(start, pageLength);
@@ -432,8 +522,9 @@ public class LeafPage extends LocalPage {
     }
 
     private LeafPage copy(boolean removePage) {
-        LeafPage newPage = create(map, keys, values, totalCount, getMemory());
+        LeafPage newPage = create(map, keys, values, totalCount, memory);
         newPage.cachedCompare = cachedCompare;
+        newPage.copyComparableKeys(this, keys, 0);
         newPage.replicationHostIds = replicationHostIds;
         newPage.setParentRef(getParentRef());
         newPage.setRef(getRef());
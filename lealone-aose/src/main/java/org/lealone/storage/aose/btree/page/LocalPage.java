@@ -5,6 +5,8 @@
  */
 package org.lealone.storage.aose.btree.page;
 
+import java.util.Arrays;
+
 import org.lealone.common.util.DataUtils;
 import org.lealone.storage.aose.btree.BTreeMap;
 import org.lealone.storage.type.StorageDataType;
@@ -41,6 +43,51 @@ public abstract class LocalPage extends Page {
      */
     protected volatile boolean removedInMemory;
 
+    /**
+     * 跟keys对应的可以按字节比较的key，只在key类型支持时才有。
+     * 第一次查找时才建，之后插入、删除、替换key和split时增量更新，只需要编码新的key。
+     */
+    private volatile ComparableKeys comparableKeys;
+
+    private static class ComparableKeys {
+
+        final Object[] keys;
+        final byte[][] bytes; // 为null时说明这些key不支持按字节比较
+        final int prefix; // 所有key的公共前缀长度，key是有序的，所以只需要看第一个和最后一个
+        final int memory; // bytes占用的内存，算在页面的内存中
+
+        ComparableKeys(Object[] keys, byte[][] bytes) {
+            this(keys, bytes, getMemory(bytes));
+        }
+
+        ComparableKeys(Object[] keys, byte[][] bytes, int memory) {
+            this.keys = keys;
+            this.bytes = bytes;
+            this.memory = memory;
+            if (bytes != null) {
+                byte[] first = bytes[0];
+                byte[] last = bytes[bytes.length - 1];
+                prefix = getCommonPrefixLength(first, last, Math.min(first.length, last.length));
+            } else {
+                prefix = 0;
+            }
+        }
+
+        static int getMemory(byte[][] bytes) {
+            if (bytes == null)
+                return 0;
+            int mem = 24 + 16;
+            for (byte[] b : bytes) {
+                mem += getMemory(b);
+            }
+            return mem;
+        }
+
+        static int getMemory(byte[] b) {
+            return 8 + 16 + b.length;
+        }
+    }
+
     protected LocalPage(BTreeMap<?, ?> map) {
         super(map);
     }
@@ -91,8 +138,19 @@ public abstract class LocalPage extends Page {
         }
         Object[] k = keys;
         StorageDataType keyType = map.getKeyType();
+        ComparableKeys ck = getComparableKeys(k, keyType);
+        byte[] ckey = ck == null ? null : keyType.getComparableBytes(key);
+        byte[][] cks = null;
+        int prefix = 0;
+        if (ckey != null) {
+            cks = ck.bytes;
+            // 查找的key也有这个公共前缀时，只需要比较前缀后面的字节
+            if (getCommonPrefixLength(ckey, cks[0], ck.prefix) == ck.prefix)
+                prefix = ck.prefix;
+        }
         while (low <= high) {
-            int compare = keyType.compare(key, k[x]);
+            int compare = cks != null ? compareUnsigned(ckey, cks[x], prefix)
+                    : keyType.compare(key, k[x]);
             if (compare > 0) {
                 low = x + 1;
             } else if (compare < 0) {
@@ -107,6 +165,136 @@ public abstract class LocalPage extends Page {
         return -(low + 1);
     }
 
+    private ComparableKeys getComparableKeys(Object[] k, StorageDataType keyType) {
+        ComparableKeys old = comparableKeys;
+        if (old != null && old.keys == k)
+            return old.bytes == null ? null : old;
+        byte[][] bytes = null;
+        if (k.length > 0 && (old == null || old.bytes != null || old.keys.length == 0)) {
+            bytes = new byte[k.length][];
+            // 通常只是插入或删除了一个key，其他key的编码可以直接重用
+            Object[] oldKeys = old == null || old.bytes == null ? null : old.keys;
+            for (int i = 0, j = 0; i < k.length; i++) {
+                if (oldKeys != null && j < oldKeys.length && k[i] == oldKeys[j]) {
+                    bytes[i] = old.bytes[j++];
+                    continue;
+                }
+                if (oldKeys != null && j + 1 < oldKeys.length && k[i] == oldKeys[j + 1]) {
+                    bytes[i] = old.bytes[j + 1];
+                    j += 2;
+                    continue;
+                }
+                bytes[i] = keyType.getComparableBytes(k[i]);
+                if (bytes[i] == null) {
+                    bytes = null;
+                    break;
+                }
+            }
+        }
+        ComparableKeys ck = new ComparableKeys(k, bytes);
+        comparableKeys = ck;
+        // 旧的bytes被丢弃了，换成新的，页面已经在缓存中时要按新的内存重新计算缓存占用的内存
+        if (ck.memory != (old == null ? 0 : old.memory) && pos > 0)
+            map.getBTreeStorage().updateCachedPage(pos, this);
+        return bytes == null ? null : ck;
+    }
+
+    private static int getCommonPrefixLength(byte[] a, byte[] b, int maxLength) {
+        int len = Math.min(maxLength, Math.min(a.length, b.length));
+        for (int i = 0; i < len; i++) {
+            if (a[i] != b[i])
+                return i;
+        }
+        return len;
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b, int start) {
+        int len = Math.min(a.length, b.length);
+        for (int i = start; i < len; i++) {
+            if (a[i] != b[i])
+                return (a[i] & 0xff) > (b[i] & 0xff) ? 1 : -1;
+        }
+        return Integer.signum(a.length - b.length);
+    }
+
+    // 只有改变前的keys已经编码过才增量更新，否则还是等到下一次查找时再建
+    private ComparableKeys getEncodedKeys(Object[] oldKeys) {
+        ComparableKeys ck = comparableKeys;
+        return ck != null && ck.keys == oldKeys && ck.bytes != null ? ck : null;
+    }
+
+    // 新的key不支持按字节比较时，整个页面都不用了
+    private byte[] getComparableBytes(int index) {
+        byte[] b = map.getKeyType().getComparableBytes(keys[index]);
+        if (b == null)
+            comparableKeys = new ComparableKeys(keys, null);
+        return b;
+    }
+
+    /**
+     * 在index处插入了一个key，keys已经换成新的数组
+     */
+    protected void onKeyInserted(Object[] oldKeys, int index) {
+        ComparableKeys old = getEncodedKeys(oldKeys);
+        if (old == null)
+            return;
+        byte[] b = getComparableBytes(index);
+        if (b == null)
+            return;
+        byte[][] bytes = new byte[keys.length][];
+        DataUtils.copyWithGap(old.bytes, bytes, old.bytes.length, index);
+        bytes[index] = b;
+        comparableKeys = new ComparableKeys(keys, bytes, old.memory + ComparableKeys.getMemory(b));
+    }
+
+    /**
+     * 删除了index处的key，keys已经换成新的数组
+     */
+    protected void onKeyRemoved(Object[] oldKeys, int index) {
+        ComparableKeys old = getEncodedKeys(oldKeys);
+        if (old == null)
+            return;
+        if (keys.length == 0) {
+            comparableKeys = null;
+            return;
+        }
+        byte[][] bytes = new byte[keys.length][];
+        DataUtils.copyExcept(old.bytes, bytes, old.bytes.length, index);
+        comparableKeys = new ComparableKeys(keys, bytes,
+                old.memory - ComparableKeys.getMemory(old.bytes[index]));
+    }
+
+    /**
+     * 替换了index处的key，keys已经换成新的数组
+     */
+    protected void onKeyReplaced(Object[] oldKeys, int index) {
+        ComparableKeys old = getEncodedKeys(oldKeys);
+        if (old == null)
+            return;
+        byte[] b = getComparableBytes(index);
+        if (b == null)
+            return;
+        byte[][] bytes = old.bytes.clone();
+        bytes[index] = b;
+        comparableKeys = new ComparableKeys(keys, bytes, old.memory
+                - ComparableKeys.getMemory(old.bytes[index]) + ComparableKeys.getMemory(b));
+    }
+
+    /**
+     * 当前页面的keys是从page的oldKeys中的from下标开始复制的，比如copy和split，直接复制对应的编码
+     */
+    protected void copyComparableKeys(LocalPage page, Object[] oldKeys, int from) {
+        ComparableKeys old = page.getEncodedKeys(oldKeys);
+        if (old == null || keys.length == 0)
+            return;
+        if (from == 0 && keys.length == old.bytes.length) {
+            comparableKeys = new ComparableKeys(keys, old.bytes, old.memory);
+        } else {
+            byte[][] bytes = Arrays.copyOfRange(old.bytes, from, from + keys.length);
+            comparableKeys = new ComparableKeys(keys, bytes);
+        }
+    }
+
     @Override
     boolean needSplit() {
         return memory > map.getBTreeStorage().getPageSplitSize() && keys.length > 1;
@@ -116,6 +304,7 @@ public abstract class LocalPage extends Page {
     public void setKey(int index, Object key) {
         // this is slightly slower:
         // keys = Arrays.copyOf(keys, keys.length);
+        Object[] oldKeys = keys;
         keys = keys.clone();
         Object old = keys[index];
         StorageDataType keyType = map.getKeyType();
@@ -125,6 +314,7 @@ public abstract class LocalPage extends Page {
         }
         addMemory(mem);
         keys[index] = key;
+        onKeyReplaced(oldKeys, index);
     }
 
     @Override
@@ -135,7 +325,9 @@ public abstract class LocalPage extends Page {
         addMemory(-map.getKeyType().getMemory(old));
         Object[] newKeys = new Object[keyLength - 1];
         DataUtils.copyExcept(keys, newKeys, keyLength, keyIndex);
+        Object[] oldKeys = keys;
         keys = newKeys;
+        onKeyRemoved(oldKeys, keyIndex);
     }
 
     protected abstract void recalculateMemory();
@@ -159,7 +351,8 @@ public abstract class LocalPage extends Page {
                         "Memory calculation error");
             }
         }
-        return memory;
+        ComparableKeys ck = comparableKeys;
+        return ck == null ? memory : memory + ck.memory;
     }
 
     protected void addMemory(int mem) {
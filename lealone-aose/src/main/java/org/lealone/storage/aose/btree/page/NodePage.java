@@ -79,6 +79,7 @@ public class NodePage extends LocalPage {
         Object[] bKeys = new Object[b - 1];
         System.arraycopy(keys, 0, aKeys, 0, a);
         System.arraycopy(keys, a + 1, bKeys, 0, b - 1);
+        Object[] oldKeys = keys;
         keys = aKeys;
 
         // children的长度要比keys的长度多1并且右边所有leaf的key都大于或等于at下标对应的key
@@ -89,6 +90,8 @@ public class NodePage extends LocalPage {
         children = aChildren;
 
         NodePage newPage = create(map, bKeys, bChildren, 0);
+        newPage.copyComparableKeys(this, oldKeys, a + 1);
+        copyComparableKeys(this, oldKeys, 0);
         recalculateMemory();
         return newPage;
     }
@@ -143,7 +146,9 @@ public class NodePage extends LocalPage {
         Object[] newKeys = new Object[keys.length + 1];
         DataUtils.copyWithGap(keys, newKeys, keys.length, index);
         newKeys[index] = tmpNodePage.key;
+        Object[] oldKeys = keys;
         keys = newKeys;
+        onKeyInserted(oldKeys, index);
 
         int childCount = children.length;
         PageReference[] newChildren = new PageReference[childCount + 1];
@@ -161,7 +166,9 @@ public class NodePage extends LocalPage {
         Object[] newKeys = new Object[keys.length + 1];
         DataUtils.copyWithGap(keys, newKeys, keys.length, index);
         newKeys[index] = key;
+        Object[] oldKeys = keys;
         keys = newKeys;
+        onKeyInserted(oldKeys, index);
 
         int childCount = children.length;
         PageReference[] newChildren = new PageReference[childCount + 1];
@@ -350,8 +357,9 @@ public class NodePage extends LocalPage {
     }
 
     private NodePage copy(boolean removePage) {
-        NodePage newPage = create(map, keys, children, getMemory());
+        NodePage newPage = create(map, keys, children, memory);
         newPage.cachedCompare = cachedCompare;
+        newPage.copyComparableKeys(this, keys, 0);
         newPage.setParentRef(getParentRef());
         newPage.setRef(getRef());
         if (removePage) {
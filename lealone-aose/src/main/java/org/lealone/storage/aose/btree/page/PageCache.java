@@ -0,0 +1,126 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.storage.aose.btree.page;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lealone.common.metrics.MetricsRegistry;
+import org.lealone.storage.aose.btree.BTreeMap;
+import org.lealone.storage.cache.CacheLongKeyLIRS;
+
+/**
+ * 所有BTreeMap共用的页面缓存，所有map的页面一起按LIRS算法淘汰，总内存不超过pageCacheSize(单位MB)，
+ * 默认是最大堆内存的四分之一。
+ *
+ * 缓存的key由map的cacheId和页面的pos混合而成，同一个map的key不会重复，
+ * 不同map的key有极小的概率重复，所以取出页面后还要检查它是否属于当前map。
+ */
+public class PageCache {
+
+    private static final AtomicInteger nextCacheId = new AtomicInteger();
+    private static volatile PageCache instance;
+
+    public static PageCache getInstance(Map<String, Object> config) {
+        if (instance == null) {
+            synchronized (PageCache.class) {
+                if (instance == null)
+                    instance = new PageCache(config);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 每个map一个，用来计算缓存的key
+     */
+    public static int nextCacheId() {
+        return nextCacheId.incrementAndGet();
+    }
+
+    public static long getKey(int cacheId, long pos) {
+        // 乘以一个奇数再异或，对同一个cacheId来说是一一映射
+        return pos ^ (cacheId * 0x9E3779B97F4A7C15L);
+    }
+
+    private final CacheLongKeyLIRS<Page> cache;
+
+    private PageCache(Map<String, Object> config) {
+        Object mb = config.get("pageCacheSize");
+        CacheLongKeyLIRS.Config cc = new CacheLongKeyLIRS.Config();
+        if (mb != null)
+            cc.maxMemory = Long.parseLong(mb.toString()) * 1024 * 1024;
+        else
+            cc.maxMemory = Math.max(16 * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+        cc.removalListener = (CacheLongKeyLIRS.RemovalListener<Page>) (key, page, memory,
+                evicted) -> page.map.getBTreeStorage().onPageRemoved(key, memory, evicted);
+        cache = new CacheLongKeyLIRS<>(cc);
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        MetricsRegistry.registerCounter("page_cache_hits_total", null, "Page cache hits",
+                () -> cache.getHits());
+        MetricsRegistry.registerCounter("page_cache_misses_total", null, "Page cache misses",
+                () -> cache.getMisses());
+        MetricsRegistry.registerGauge("page_cache_hit_ratio", null,
+                "Page cache hits divided by all lookups", () -> getHitRatio());
+        MetricsRegistry.registerGauge("page_cache_used_bytes", null, "Memory used by the page cache",
+                () -> cache.getUsedMemory());
+        MetricsRegistry.registerGauge("page_cache_max_bytes", null, "Memory limit of the page cache",
+                () -> cache.getMaxMemory());
+    }
+
+    public double getHitRatio() {
+        long hits = cache.getHits();
+        long total = hits + cache.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public Page get(BTreeMap<?, ?> map, long key) {
+        Page p = cache.get(key);
+        return p != null && p.map == map ? p : null;
+    }
+
+    // 只检查是否在缓存中，不影响命中率的统计和淘汰顺序
+    public boolean contains(BTreeMap<?, ?> map, long key) {
+        Page p = cache.peek(key);
+        return p != null && p.map == map;
+    }
+
+    public boolean contains(Page page, long key) {
+        return cache.peek(key) == page;
+    }
+
+    // 页面太大放不进缓存时返回false
+    public boolean put(long key, Page page, int memory) {
+        cache.put(key, page, memory);
+        return cache.getMemory(key) > 0;
+    }
+
+    public void remove(BTreeMap<?, ?> map, long key) {
+        Page p = cache.peek(key);
+        if (p != null && p.map == map)
+            cache.remove(key);
+    }
+
+    // 删除map的所有页面，直接扫描缓存，不需要为每个map单独记录它放在缓存中的key
+    public void removeAll(BTreeMap<?, ?> map) {
+        cache.removeIf(p -> p.map == map);
+    }
+
+    public long getMaxMemory() {
+        return cache.getMaxMemory();
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        cache.setMaxMemory(maxMemory);
+    }
+
+    public long getUsedMemory() {
+        return cache.getUsedMemory();
+    }
+}
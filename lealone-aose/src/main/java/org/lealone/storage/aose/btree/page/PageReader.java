@@ -0,0 +1,75 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.storage.aose.btree.page;
+
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lealone.common.metrics.MetricsRegistry;
+
+/**
+ * 所有BTreeMap共用的一个小线程池，专门从硬盘读page，线程数由pageReaderThreads决定，默认是2。
+ *
+ * 调度线程同时要处理网络IO和很多session，如果直接在调度线程中读硬盘，
+ * 一个冷数据的范围扫描就会卡住这个调度线程上的所有session，
+ * 所以页面缓存没有命中时可以把读page的操作交给这里，调度线程转去执行其他session。
+ */
+public class PageReader {
+
+    private static volatile PageReader instance;
+
+    public static PageReader getInstance(Map<String, Object> config) {
+        if (instance == null) {
+            synchronized (PageReader.class) {
+                if (instance == null)
+                    instance = new PageReader(config);
+            }
+        }
+        return instance;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong readCount = new AtomicLong();
+
+    private PageReader(Map<String, Object> config) {
+        Object v = config.get("pageReaderThreads");
+        int threads = v != null ? Integer.parseInt(v.toString()) : 2;
+        if (threads < 1)
+            threads = 1;
+        AtomicInteger id = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "PageReader-" + id.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        // 空闲时不占用线程
+        executor.allowCoreThreadTimeOut(true);
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        MetricsRegistry.registerCounter("page_reader_reads_total", null,
+                "Pages read from disk by the page reader threads", () -> readCount.get());
+        MetricsRegistry.registerGauge("page_reader_queue_size", null,
+                "Page reads waiting for a page reader thread", () -> executor.getQueue().size());
+    }
+
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    public void read(Runnable task) {
+        executor.execute(() -> {
+            task.run();
+            readCount.incrementAndGet();
+        });
+    }
+}
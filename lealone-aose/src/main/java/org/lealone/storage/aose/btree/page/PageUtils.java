@@ -37,6 +37,11 @@ public class PageUtils {
      */
     public static final int PAGE_COMPRESSED_HIGH = 2 + 4;
 
+    /**
+     * The bit mask for leaf pages whose keys share a common prefix that is only stored once.
+     */
+    public static final int PAGE_PREFIX_COMPRESSED = 8;
+
     /**
      * The estimated number of bytes used per page object.
      */
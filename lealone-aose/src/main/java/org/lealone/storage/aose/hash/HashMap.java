@@ -0,0 +1,567 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.storage.aose.hash;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.StampedLock;
+
+import org.lealone.db.async.AsyncHandler;
+import org.lealone.db.async.AsyncResult;
+import org.lealone.db.value.ValueLong;
+import org.lealone.storage.CursorParameters;
+import org.lealone.storage.StorageMap;
+import org.lealone.storage.StorageMapBase;
+import org.lealone.storage.StorageMapCursor;
+import org.lealone.storage.aose.btree.BTreeMap;
+
+/**
+ * 用开放寻址哈希表加速等值查找的map，供HASH索引使用.
+ *
+ * <p>
+ * 数据还是通过一个BTreeMap持久化，检查点、redo log、重启后的加载都跟BTreeMap一样，
+ * 同时在内存中维护一个线性探测的哈希表，get和按哈希查找(find)时不需要从root page逐层往下查找.
+ * <p>
+ * 哈希表的写操作用写锁互斥，读操作先用乐观读，没有并发的写操作时不会阻塞，也不需要加锁；
+ * firstKey、cursor这类有序的操作直接交给BTreeMap，只有明确要求按哈希查找的cursor才用哈希表.
+ * <p>
+ * 哈希表常驻内存，打开map时会加载所有的key和value，并且一直强引用它们，不受BTreeMap页面缓存大小的限制，
+ * 所以HASH索引只适合能全部放到内存中的数据，getMemorySpaceUsed会算上哈希表中所有key和value占用的内存.
+ *
+ * @param <K> the key class
+ * @param <V> the value class
+ */
+public class HashMap<K, V> extends StorageMapBase<K, V> {
+
+    private static final Object TOMBSTONE = new Object();
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final BTreeMap<K, V> btreeMap;
+    private final StampedLock lock = new StampedLock();
+    private volatile HashTable table;
+
+    public HashMap(BTreeMap<K, V> btreeMap) {
+        super(btreeMap.getName(), btreeMap.getKeyType(), btreeMap.getValueType(),
+                btreeMap.getStorage());
+        this.btreeMap = btreeMap;
+        HashTable t = new HashTable(getCapacity(btreeMap.size()));
+        StorageMapCursor<K, V> cursor = btreeMap.cursor();
+        while (cursor.hasNext()) {
+            K key = cursor.next();
+            t.add(key, hash(key), cursor.getValue());
+        }
+        table = t;
+    }
+
+    // 重建后的负载因子不超过3/8，这样至少还能再加同样多的key才需要再次重建
+    private static int getCapacity(long size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity * 3L / 8 < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private int hash(Object key) {
+        int h = keyType.hashCode(key) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public BTreeMap<K, V> getBTreeMap() {
+        return btreeMap;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int hash = hash(key);
+        long stamp = lock.tryOptimisticRead();
+        Object value = table.get(key, hash);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = table.get(key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return (V) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V putInTable(K key, V value, boolean onlyIfAbsent) {
+        int hash = hash(key);
+        long stamp = lock.writeLock();
+        try {
+            HashTable t = table;
+            if (t.used >= t.threshold) {
+                t = t.rehash();
+                table = t;
+            }
+            return (V) t.put(key, hash, value, onlyIfAbsent);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V removeFromTable(K key) {
+        int hash = hash(key);
+        long stamp = lock.writeLock();
+        try {
+            return (V) table.remove(key, hash);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private boolean replaceInTable(K key, V oldValue, V newValue) {
+        int hash = hash(key);
+        long stamp = lock.writeLock();
+        try {
+            return table.replace(key, hash, oldValue, newValue);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // 哈希表是判断key是否存在的依据，BTreeMap只负责持久化
+    @Override
+    public V put(K key, V value) {
+        V old = putInTable(key, value, false);
+        btreeMap.put(key, value);
+        return old;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        V old = putInTable(key, value, true);
+        if (old == null)
+            btreeMap.put(key, value);
+        return old;
+    }
+
+    @Override
+    public V remove(K key) {
+        V old = removeFromTable(key);
+        btreeMap.remove(key);
+        return old;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (!replaceInTable(key, oldValue, newValue))
+            return false;
+        btreeMap.put(key, newValue);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K append(V value) {
+        K key = (K) ValueLong.get(btreeMap.getAndAddKey(1) + 1);
+        put(key, value);
+        return key;
+    }
+
+    @Override
+    public void setMaxKey(K key) {
+        btreeMap.setMaxKey(key);
+    }
+
+    @Override
+    public long getAndAddKey(long delta) {
+        return btreeMap.getAndAddKey(delta);
+    }
+
+    @Override
+    public long getMaxKey() {
+        return btreeMap.getMaxKey();
+    }
+
+    @Override
+    public K firstKey() {
+        return btreeMap.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return btreeMap.lastKey();
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return btreeMap.lowerKey(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return btreeMap.floorKey(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return btreeMap.higherKey(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return btreeMap.ceilingKey(key);
+    }
+
+    @Override
+    public boolean areValuesEqual(Object a, Object b) {
+        return btreeMap.areValuesEqual(a, b);
+    }
+
+    @Override
+    public long size() {
+        return btreeMap.size();
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return btreeMap.isInMemory();
+    }
+
+    @Override
+    public StorageMapCursor<K, V> cursor(K from) {
+        return btreeMap.cursor(from);
+    }
+
+    /**
+     * 调用者通过CursorParameters.createHashLookup指明是按哈希查找时，只在from所在的哈希组中找出[from, to]之间的key，
+     * 否则跟BTreeMap一样按范围遍历.
+     */
+    @Override
+    public StorageMapCursor<K, V> cursor(CursorParameters<K> parameters) {
+        if (parameters.hashLookup && parameters.from != null && parameters.to != null)
+            return find(parameters.from, parameters.to);
+        return btreeMap.cursor(parameters);
+    }
+
+    /**
+     * 按哈希查找，[from, to]之间的key必须跟from有相同的哈希码，找到的key按顺序返回.
+     *
+     * @param from the first key (inclusive)
+     * @param to the last key (inclusive)
+     * @return the cursor
+     */
+    public StorageMapCursor<K, V> find(K from, K to) {
+        int hash = hash(from);
+        ArrayList<Object[]> list = new ArrayList<>();
+        long stamp = lock.readLock();
+        try {
+            table.find(from, to, hash, list);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (list.size() > 1)
+            list.sort((a, b) -> keyType.compare(a[0], b[0]));
+        return new HashCursor(list);
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new HashTable(MIN_CAPACITY);
+            btreeMap.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void remove() {
+        btreeMap.remove();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return btreeMap.isClosed();
+    }
+
+    @Override
+    public void close() {
+        btreeMap.close();
+    }
+
+    @Override
+    public void save() {
+        btreeMap.save();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return btreeMap.getDiskSpaceUsed();
+    }
+
+    // 哈希表中的key和value在BTreeMap的page被淘汰后还被哈希表引用着，所以要全部算上，
+    // 还在页面缓存中的page会被重复计算，宁可多算也不能少算
+    @Override
+    public long getMemorySpaceUsed() {
+        HashTable t = table;
+        return btreeMap.getMemorySpaceUsed() + t.memory + t.hashes.length * 12L;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return btreeMap.getCacheHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return btreeMap.getCacheMisses();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return btreeMap.getCacheEvictions();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    //////////////////// 以下是异步API的实现 ////////////////////////////////
+
+    @Override
+    public void put(K key, V value, AsyncHandler<AsyncResult<V>> handler) {
+        putInTable(key, value, false);
+        btreeMap.put(key, value, handler);
+    }
+
+    @Override
+    public void putIfAbsent(K key, V value, AsyncHandler<AsyncResult<V>> handler) {
+        V old = putInTable(key, value, true);
+        if (old == null)
+            btreeMap.put(key, value, handler);
+        else
+            StorageMap.handleAsyncResult(handler, old);
+    }
+
+    @Override
+    public void replace(K key, V oldValue, V newValue, AsyncHandler<AsyncResult<Boolean>> handler) {
+        if (replaceInTable(key, oldValue, newValue)) {
+            btreeMap.put(key, newValue, ar -> {
+                if (ar.isFailed())
+                    handler.handle(new AsyncResult<>(ar.getCause()));
+                else
+                    StorageMap.handleAsyncResult(handler, true);
+            });
+        } else {
+            StorageMap.handleAsyncResult(handler, false);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public K append(V value, AsyncHandler<AsyncResult<K>> handler) {
+        K key = (K) ValueLong.get(btreeMap.getAndAddKey(1) + 1);
+        putInTable(key, value, false);
+        btreeMap.put(key, value, ar -> {
+            if (ar.isFailed())
+                handler.handle(new AsyncResult<>(ar.getCause()));
+            else
+                StorageMap.handleAsyncResult(handler, key);
+        });
+        return key;
+    }
+
+    @Override
+    public void remove(K key, AsyncHandler<AsyncResult<V>> handler) {
+        removeFromTable(key);
+        btreeMap.remove(key, handler);
+    }
+
+    /**
+     * 线性探测的哈希表，槽位上同时保存key的哈希码，探测时哈希码不相等就不用比较key.
+     *
+     * <p>
+     * 删除的key用TOMBSTONE标记，不移动后面的key，这样乐观读和写操作并发时最多读到不一致的结果，
+     * 校验失败后再加读锁重读一次，不会因为key被移动而漏掉.
+     */
+    private final class HashTable {
+
+        final int[] hashes;
+        final Object[] keys;
+        final Object[] values;
+        final int mask;
+        final int threshold;
+        int size; // 有效key的个数
+        int used; // 有效key和TOMBSTONE占用的槽位数
+        long memory; // 有效key和value占用的内存
+
+        HashTable(int capacity) {
+            hashes = new int[capacity];
+            keys = new Object[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            threshold = capacity == MAX_CAPACITY ? capacity - 1 : capacity / 4 * 3;
+        }
+
+        // 乐观读时数组可能正在被修改，所以最多只探测capacity次
+        private int indexOf(Object key, int hash) {
+            int i = hash & mask;
+            for (int n = 0; n <= mask; n++) {
+                Object k = keys[i];
+                if (k == null)
+                    return -1;
+                if (k != TOMBSTONE && hashes[i] == hash && keyType.compare(k, key) == 0)
+                    return i;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        Object get(Object key, int hash) {
+            int i = indexOf(key, hash);
+            return i < 0 ? null : values[i];
+        }
+
+        Object put(Object key, int hash, Object value, boolean onlyIfAbsent) {
+            int i = hash & mask;
+            int free = -1;
+            while (true) {
+                Object k = keys[i];
+                if (k == null)
+                    break;
+                if (k == TOMBSTONE) {
+                    if (free < 0)
+                        free = i;
+                } else if (hashes[i] == hash && keyType.compare(k, key) == 0) {
+                    Object old = values[i];
+                    if (!onlyIfAbsent) {
+                        values[i] = value;
+                        memory += getMemory(value) - getMemory(old);
+                    }
+                    return old;
+                }
+                i = (i + 1) & mask;
+            }
+            if (free < 0) {
+                free = i;
+                used++;
+            }
+            hashes[free] = hash;
+            values[free] = value;
+            keys[free] = key;
+            size++;
+            memory += keyType.getMemory(key) + getMemory(value);
+            return null;
+        }
+
+        private int getMemory(Object value) {
+            return value == null ? 0 : valueType.getMemory(value);
+        }
+
+        // 只在确定key不存在时使用，不需要比较key
+        void add(Object key, int hash, Object value) {
+            int i = hash & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            values[i] = value;
+            keys[i] = key;
+            size++;
+            used++;
+            memory += keyType.getMemory(key) + getMemory(value);
+        }
+
+        Object remove(Object key, int hash) {
+            int i = indexOf(key, hash);
+            if (i < 0)
+                return null;
+            Object old = values[i];
+            memory -= keyType.getMemory(keys[i]) + getMemory(old);
+            keys[i] = TOMBSTONE;
+            values[i] = null;
+            size--;
+            return old;
+        }
+
+        boolean replace(Object key, int hash, Object oldValue, Object newValue) {
+            int i = indexOf(key, hash);
+            if (i < 0 || !btreeMap.areValuesEqual(values[i], oldValue))
+                return false;
+            memory += getMemory(newValue) - getMemory(values[i]);
+            values[i] = newValue;
+            return true;
+        }
+
+        // 同一个哈希组的key都在从hash & mask开始的连续槽位中，遇到空槽位就可以结束了
+        void find(Object from, Object to, int hash, ArrayList<Object[]> list) {
+            int i = hash & mask;
+            for (int n = 0; n <= mask; n++) {
+                Object k = keys[i];
+                if (k == null)
+                    break;
+                if (k != TOMBSTONE && hashes[i] == hash && keyType.compare(from, k) <= 0
+                        && keyType.compare(k, to) <= 0) {
+                    list.add(new Object[] { k, values[i] });
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        // 按有效key的个数重新计算容量，同时清除TOMBSTONE
+        HashTable rehash() {
+            HashTable t = new HashTable(getCapacity(size));
+            for (int i = 0; i <= mask; i++) {
+                Object k = keys[i];
+                if (k != null && k != TOMBSTONE)
+                    t.add(k, hashes[i], values[i]);
+            }
+            return t;
+        }
+    }
+
+    private class HashCursor implements StorageMapCursor<K, V> {
+
+        private final ArrayList<Object[]> list;
+        private int index = -1;
+
+        HashCursor(ArrayList<Object[]> list) {
+            this.list = list;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index + 1 < list.size();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K next() {
+            return (K) list.get(++index)[0];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return (K) list.get(index)[0];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) list.get(index)[1];
+        }
+    }
+}
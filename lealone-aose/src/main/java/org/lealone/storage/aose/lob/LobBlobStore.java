@@ -0,0 +1,238 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.storage.aose.lob;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lealone.common.util.DataUtils;
+import org.lealone.storage.Storage;
+import org.lealone.storage.StorageEventListener;
+import org.lealone.storage.StorageMapCursor;
+import org.lealone.storage.aose.btree.BTreeMap;
+import org.lealone.storage.fs.FileStorage;
+import org.lealone.storage.fs.FileUtils;
+
+/**
+ * 存放大对象中较大的数据块，数据块按顺序追加到blob文件中，只用(文件id, 偏移量, 长度)引用，
+ * 这样就不会经过BTreeMap的页面缓存，也不会在chunk合并和保存时被反复重写。
+ *
+ * 每个blob文件写满maxFileSize后换一个新文件，
+ * 文件中还有多少字节被引用记录在一个BTreeMap中，等到一个文件中的数据块全被删除后就删除整个文件。
+ *
+ * 数据块的引用保存在lobMap和lobData中，它们只在存储保存时才写到硬盘，
+ * 所以blob文件在存储保存前同步，不用每写一个大对象就同步一次；
+ * 不再被引用的文件也要等删除引用之后的那次保存完成了才能删除，否则崩溃后重新打开时会引用到已经删除的文件。
+ */
+public class LobBlobStore implements StorageEventListener {
+
+    private static final String FILE_PREFIX = "blob_";
+    private static final String FILE_SUFFIX = ".data";
+
+    private final String dir;
+    private final Map<String, Object> config;
+
+    /**
+     * Key: 文件id (int).
+     * Value: 文件中还在使用的字节数 (long).
+     */
+    private final BTreeMap<Integer, Long> fileMap;
+    private final HashMap<Integer, FileStorage> files = new HashMap<>();
+    // 等待删除的文件，下一次保存开始时移到deletableFiles，保存完成后再删除
+    private final ArrayList<Integer> pendingDeletes = new ArrayList<>();
+    private ArrayList<Integer> deletableFiles;
+
+    private long maxFileSize = 64 * 1024 * 1024;
+    private int currentFileId;
+    private FileStorage currentFile;
+    private boolean unsynced;
+
+    public LobBlobStore(String dir, BTreeMap<Integer, Long> fileMap) {
+        this.dir = dir;
+        this.config = fileMap.getConfig();
+        this.fileMap = fileMap;
+        if (!FileUtils.exists(dir))
+            FileUtils.createDirectories(dir);
+        Integer lastFileId = fileMap.lastKey();
+        currentFileId = lastFileId == null ? 1 : lastFileId;
+        for (String f : FileUtils.newDirectoryStream(dir)) {
+            String name = FileUtils.getName(f);
+            if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)) {
+                int id = Integer.parseInt(
+                        name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+                if (lastFileId == null || id > lastFileId) {
+                    // fileMap总是在引用它们的map之前保存，所以fileMap中没有的文件也不会被引用
+                    FileUtils.delete(f);
+                } else if (id < currentFileId) {
+                    Long used = fileMap.get(id);
+                    if (used == null)
+                        FileUtils.delete(f);
+                    else if (used <= 0)
+                        pendingDeletes.add(id); // 在删除文件前进程退出了，等下次保存后再删除
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the size after which a new blob file is started. The default is 64 MB.
+     *
+     * @param maxFileSize the new value
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    private String getFileName(int fileId) {
+        return dir + File.separator + FILE_PREFIX + fileId + FILE_SUFFIX;
+    }
+
+    private FileStorage getFile(int fileId) {
+        FileStorage file = files.get(fileId);
+        if (file == null) {
+            file = new FileStorage();
+            file.open(getFileName(fileId), config);
+            files.put(fileId, file);
+        }
+        return file;
+    }
+
+    /**
+     * Append a block to the current blob file.
+     *
+     * @param data the block
+     * @return the file id and the offset of the block
+     */
+    public synchronized long[] write(byte[] data) {
+        if (currentFile == null) {
+            currentFile = getFile(currentFileId);
+        }
+        if (currentFile.size() > 0 && currentFile.size() + data.length > maxFileSize) {
+            sync();
+            int oldFileId = currentFileId;
+            currentFileId++;
+            currentFile = getFile(currentFileId);
+            // 当前文件中的数据块在切换前就已经全被删除了
+            Long used = fileMap.get(oldFileId);
+            if (used != null && used <= 0)
+                pendingDeletes.add(oldFileId);
+        }
+        long offset = currentFile.size();
+        currentFile.writeFully(offset, ByteBuffer.wrap(data));
+        Long used = fileMap.get(currentFileId);
+        fileMap.put(currentFileId, (used == null ? 0 : used) + data.length);
+        unsynced = true;
+        return new long[] { currentFileId, offset };
+    }
+
+    /**
+     * Read part of a block directly into the given array.
+     *
+     * @param fileId the file id
+     * @param offset the offset in the file
+     * @param b the target array
+     * @param off the offset in the target array
+     * @param len the number of bytes to read
+     */
+    public void read(int fileId, long offset, byte[] b, int off, int len) {
+        FileStorage file;
+        synchronized (this) {
+            file = getFile(fileId);
+        }
+        DataUtils.readFully(file.getFile(), offset, ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * A block is not referenced anymore. If the file does not contain any used block,
+     * and it's not the current file, it is deleted after the next save.
+     *
+     * @param fileId the file id
+     * @param len the length of the block
+     */
+    public synchronized void free(int fileId, int len) {
+        Long used = fileMap.get(fileId);
+        if (used == null || used <= 0)
+            return;
+        long remaining = Math.max(0, used - len);
+        fileMap.put(fileId, remaining);
+        if (remaining == 0 && fileId != currentFileId)
+            pendingDeletes.add(fileId);
+    }
+
+    private void deleteFile(int fileId) {
+        fileMap.remove(fileId);
+        FileStorage file = files.remove(fileId);
+        if (file != null)
+            file.close();
+        FileUtils.delete(getFileName(fileId));
+    }
+
+    @Override
+    public synchronized void beforeSave(Storage storage) {
+        // 引用数据块的map保存前，数据块和新文件的记录要先写到硬盘
+        sync();
+        fileMap.save();
+        if (!pendingDeletes.isEmpty()) {
+            deletableFiles = new ArrayList<>(pendingDeletes);
+            pendingDeletes.clear();
+        }
+    }
+
+    @Override
+    public synchronized void afterSave(Storage storage) {
+        // 此时删除引用的操作已经保存了，可以删除文件了
+        if (deletableFiles != null) {
+            for (int fileId : deletableFiles)
+                deleteFile(fileId);
+            deletableFiles = null;
+        }
+    }
+
+    @Override
+    public void beforeClose(Storage storage) {
+        close();
+    }
+
+    /**
+     * Flush the data written to the current file.
+     */
+    public synchronized void sync() {
+        if (unsynced && currentFile != null) {
+            currentFile.sync();
+            unsynced = false;
+        }
+    }
+
+    public synchronized int getPendingDeleteCount() {
+        return pendingDeletes.size();
+    }
+
+    public synchronized long getFileCount() {
+        return fileMap.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        long used = 0;
+        StorageMapCursor<Integer, Long> cursor = fileMap.cursor();
+        while (cursor.hasNext()) {
+            cursor.next();
+            used += cursor.getValue();
+        }
+        return used;
+    }
+
+    public synchronized void close() {
+        sync();
+        for (FileStorage file : files.values()) {
+            file.close();
+        }
+        files.clear();
+        currentFile = null;
+    }
+}
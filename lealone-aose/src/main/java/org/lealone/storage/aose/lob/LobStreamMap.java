@@ -34,7 +34,10 @@ import org.lealone.storage.aose.btree.BTreeMap;
  * int), then the key (a variable size long). Multiple ids can be concatenated
  * to concatenate the data. If the id is large, it is stored itself, which is
  * encoded as 2, the total length (a variable size long), and the key of the
- * block that contains the id (a variable size long).
+ * block that contains the id (a variable size long). A large block that is
+ * stored in a blob file is encoded as 3, the length of the block (a variable
+ * size int), the file id (a variable size int), then the offset in the file
+ * (a variable size long).
  * 
  * @author H2 Group
  * @author zhh
@@ -54,6 +57,10 @@ public class LobStreamMap {
     private int minBlockSize = 256;
     private int maxBlockSize = 256 * 1024;
 
+    // 不小于blobBlockSize的数据块放到blob文件中，blobStore为null时都放到map中
+    private LobBlobStore blobStore;
+    private int blobBlockSize = 64 * 1024;
+
     /**
      * Create a stream store instance.
      *
@@ -109,6 +116,23 @@ public class LobStreamMap {
         return maxBlockSize;
     }
 
+    public void setBlobStore(LobBlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    public LobBlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * Set the minimum size of the blocks that are stored in blob files. The default is 64 KB.
+     *
+     * @param blobBlockSize the new value
+     */
+    public void setBlobBlockSize(int blobBlockSize) {
+        this.blobBlockSize = blobBlockSize;
+    }
+
     /**
      * Store the stream, and return the id. The stream is not closed.
      *
@@ -172,6 +196,13 @@ public class LobStreamMap {
             id.write(0);
             DataUtils.writeVarInt(id, len);
             id.write(buff);
+        } else if (blobStore != null && len >= blobBlockSize) {
+            // blob: 3, len (int), fileId (int), offset (long)
+            long[] fileIdAndOffset = blobStore.write(buff);
+            id.write(3);
+            DataUtils.writeVarInt(id, len);
+            DataUtils.writeVarInt(id, (int) fileIdAndOffset[0]);
+            DataUtils.writeVarLong(id, fileIdAndOffset[1]);
         } else {
             // block: 1, len (int), blockId (long)
             id.write(1);
@@ -288,6 +319,12 @@ public class LobStreamMap {
                     maxKey = Math.max(maxKey, m);
                 }
                 break;
+            case 3:
+                // blob: 3, len (int), fileId (int), offset (long)
+                DataUtils.readVarInt(idBuffer);
+                DataUtils.readVarInt(idBuffer);
+                DataUtils.readVarLong(idBuffer);
+                break;
             default:
                 throw DataUtils.newIllegalArgumentException("Unsupported id {0}", Arrays.toString(id));
             }
@@ -323,6 +360,13 @@ public class LobStreamMap {
                 remove(map.get(k2));
                 map.remove(k2);
                 break;
+            case 3:
+                // blob: 3, len (int), fileId (int), offset (long)
+                int blobLen = DataUtils.readVarInt(idBuffer);
+                int fileId = DataUtils.readVarInt(idBuffer);
+                DataUtils.readVarLong(idBuffer);
+                getBlobStore(id).free(fileId, blobLen);
+                break;
             default:
                 throw DataUtils.newIllegalArgumentException("Unsupported id {0}", Arrays.toString(id));
             }
@@ -364,6 +408,15 @@ public class LobStreamMap {
                 block = DataUtils.readVarLong(idBuffer);
                 buff.append("indirect block ").append(block).append(" len=").append(len);
                 break;
+            case 3:
+                // blob: 3, len (int), fileId (int), offset (long)
+                len = DataUtils.readVarInt(idBuffer);
+                length += len;
+                int fileId = DataUtils.readVarInt(idBuffer);
+                long offset = DataUtils.readVarLong(idBuffer);
+                buff.append("blob file ").append(fileId).append(" offset=").append(offset)
+                        .append(" len=").append(len);
+                break;
             default:
                 buff.append("error");
             }
@@ -401,6 +454,12 @@ public class LobStreamMap {
                 length += DataUtils.readVarLong(idBuffer);
                 DataUtils.readVarLong(idBuffer);
                 break;
+            case 3:
+                // blob: 3, len (int), fileId (int), offset (long)
+                length += DataUtils.readVarInt(idBuffer);
+                DataUtils.readVarInt(idBuffer);
+                DataUtils.readVarLong(idBuffer);
+                break;
             default:
                 throw DataUtils.newIllegalArgumentException("Unsupported id {0}", Arrays.toString(id));
             }
@@ -437,6 +496,14 @@ public class LobStreamMap {
         return new Stream(this, id);
     }
 
+    private LobBlobStore getBlobStore(byte[] id) {
+        if (blobStore == null) {
+            throw DataUtils.newIllegalStateException(DataUtils.ERROR_BLOCK_NOT_FOUND,
+                    "Blob store not found for id {0}", Arrays.toString(id));
+        }
+        return blobStore;
+    }
+
     /**
      * Get the block.
      *
@@ -465,6 +532,11 @@ public class LobStreamMap {
         private long skip;
         private long pos;
 
+        // 当前正在读的blob文件中的数据块，直接从文件读到调用者的数组中，不经过中间的byte[]
+        private int blobFileId;
+        private long blobOffset;
+        private int blobRemaining;
+
         Stream(LobStreamMap lobStreamMap, byte[] id) {
             this.lobStreamMap = lobStreamMap;
             this.length = lobStreamMap.length(id);
@@ -487,7 +559,11 @@ public class LobStreamMap {
             if (n == 0) {
                 return 0;
             }
-            if (buffer != null) {
+            if (blobRemaining > 0) {
+                n = Math.min(n, blobRemaining);
+                blobOffset += n;
+                blobRemaining -= n;
+            } else if (buffer != null) {
                 long s = buffer.skip(n);
                 if (s > 0) {
                     n = s;
@@ -505,6 +581,7 @@ public class LobStreamMap {
         @Override
         public void close() {
             buffer = null;
+            blobRemaining = 0;
             idBuffer.position(idBuffer.limit());
             pos = length;
         }
@@ -515,6 +592,19 @@ public class LobStreamMap {
                 return 0;
             }
             while (true) {
+                if (blobRemaining > 0) {
+                    len = Math.min(len, blobRemaining);
+                    try {
+                        lobStreamMap.getBlobStore(idBuffer.array()).read(blobFileId, blobOffset, b,
+                                off, len);
+                    } catch (IllegalStateException e) {
+                        throw new IOException(e);
+                    }
+                    blobOffset += len;
+                    blobRemaining -= len;
+                    pos += len;
+                    return len;
+                }
                 if (buffer == null) {
                     try {
                         buffer = nextBuffer();
@@ -524,6 +614,8 @@ public class LobStreamMap {
                         throw new IOException(msg, e);
                     }
                     if (buffer == null) {
+                        if (blobRemaining > 0)
+                            continue;
                         return -1;
                     }
                 }
@@ -579,6 +671,20 @@ public class LobStreamMap {
                     idBuffer = newBuffer;
                     return nextBuffer();
                 }
+                case 3: {
+                    int len = DataUtils.readVarInt(idBuffer);
+                    int fileId = DataUtils.readVarInt(idBuffer);
+                    long offset = DataUtils.readVarLong(idBuffer);
+                    if (skip >= len) {
+                        skip -= len;
+                        continue;
+                    }
+                    blobFileId = fileId;
+                    blobOffset = offset + skip;
+                    blobRemaining = (int) (len - skip);
+                    skip = 0;
+                    return null; // 由read方法直接从blob文件中读
+                }
                 default:
                     throw DataUtils.newIllegalArgumentException("Unsupported id {0}",
                             Arrays.toString(idBuffer.array()));
@@ -5,6 +5,7 @@
  */
 package org.lealone.storage.aose.lob;
 
+import java.io.File;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -91,6 +92,14 @@ public class LobStreamStorage implements LobStorage {
         lobMap = storage.openBTreeMap("lobMap");
         refMap = storage.openBTreeMap("lobRef");
         lobStreamMap = new LobStreamMap(storage.openBTreeMap("lobData"));
+        if (!storage.isInMemory()) {
+            // 较大的数据块放到单独的blob文件中，目录跟map的目录放在一起，备份时也能一起备份
+            LobBlobStore blobStore = new LobBlobStore(
+                    storage.getStoragePath() + File.separator + "lobBlob",
+                    storage.openBTreeMap("lobBlobFiles"));
+            lobStreamMap.setBlobStore(blobStore);
+            storage.registerEventListener(blobStore);
+        }
 
         // garbage collection of the last blocks
         if (storage.isReadOnly()) {
@@ -0,0 +1,86 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.storage.aose.lsm;
+
+import java.nio.ByteBuffer;
+
+import org.lealone.db.DataBuffer;
+
+/**
+ * 每个SortedRun一个布隆过滤器，按key的哈希码(见StorageDataType.hashCode)判断key是否可能在run中，
+ * 每个key大约占10个bit，用7个哈希函数，误判率在1%左右.
+ */
+class BloomFilter {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASH_COUNT = 7;
+
+    private final long[] bits;
+    private final long bitCount;
+
+    BloomFilter(int expectedKeys) {
+        this(new long[Math.max(1, (int) ((Math.max(1L, expectedKeys) * BITS_PER_KEY + 63) >>> 6))]);
+    }
+
+    private BloomFilter(long[] bits) {
+        this.bits = bits;
+        bitCount = bits.length * 64L;
+    }
+
+    // 用两个哈希值组合出多个哈希函数(Kirsch-Mitzenmacher)
+    void add(int hash) {
+        int h1 = mix1(hash);
+        int h2 = mix2(hash);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long index = ((h1 + i * h2) & 0xFFFFFFFFL) % bitCount;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    boolean mightContain(int hash) {
+        int h1 = mix1(hash);
+        int h2 = mix2(hash);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long index = ((h1 + i * h2) & 0xFFFFFFFFL) % bitCount;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static int mix1(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int mix2(int h) {
+        h = Integer.rotateLeft(h, 15) * 0x85EBCA6B;
+        return (h ^ (h >>> 13)) | 1;
+    }
+
+    int getMemory() {
+        return bits.length * 8 + 24;
+    }
+
+    int getLength() {
+        return 4 + bits.length * 8;
+    }
+
+    void write(DataBuffer buff) {
+        buff.putInt(bits.length);
+        for (long b : bits) {
+            buff.putLong(b);
+        }
+    }
+
+    static BloomFilter read(ByteBuffer buff) {
+        long[] bits = new long[buff.getInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = buff.getLong();
+        }
+        return new BloomFilter(bits);
+    }
+}
@@ -0,0 +1,971 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.storage.aose.lsm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import org.lealone.common.util.DataUtils;
+import org.lealone.storage.StorageMapBase;
+import org.lealone.storage.StorageMapCursor;
+import org.lealone.storage.aose.AOStorage;
+import org.lealone.storage.cache.CacheLongKeyLIRS;
+import org.lealone.storage.fs.FileUtils;
+import org.lealone.storage.type.StorageDataType;
+
+/**
+ * 日志结构合并树(LSM-tree)实现的map，适合写多读少、key比较随机的场景，比如只追加的事件表和它的二级索引.
+ *
+ * <p>
+ * 写操作只修改内存中的memtable(一个ConcurrentSkipListMap)，不需要像BTreeMap那样修改叶子page，
+ * 检查点调用save时把memtable按key的顺序整个写到一个新的SortedRun文件中，写好的run不再修改，
+ * 所以不会像BTreeMap那样因为零散的修改重写整条脏page路径.
+ * 删除操作写入一个删除标记，读操作按memtable、正在刷新的memtable、从新到旧的run的顺序查找，先找到的就是最新的值，
+ * 每个run有一个布隆过滤器，key不在run中时通常不需要读文件.
+ * <p>
+ * 刷新memtable后按大小分层(size-tiered)合并：从最新的run开始，大小相近的run达到compactThreshold个就合并成一个，
+ * 跟BTreeMap的ChunkCompactor一样在检查点线程中执行，不阻塞读写操作，合并时包含了最老的run才能丢弃删除标记.
+ * <p>
+ * 事务层会原地修改value对象(TransactionalValue)，所以同一个key要返回同一个value对象：
+ * run中的block解码后放在缓存中，刷新memtable时写出的block也直接放到缓存中，
+ * 被还没有结束的事务锁住的value(见StorageDataType.isLocked)刷新后还留在新的memtable中，下次刷新时再写一次，
+ * 从run中读出的value被锁住时也通过pin放到memtable中，这样block被淘汰后锁也不会丢失.
+ * <p>
+ * 读写操作都只加共享锁，切换memtable和替换run时才加排它锁.
+ *
+ * @param <K> the key class
+ * @param <V> the value class
+ */
+public class LSMMap<K, V> extends StorageMapBase<K, V> {
+
+    // 删除标记，放在memtable和run中
+    static final Object TOMBSTONE = new Object();
+
+    private static final SortedRun[] EMPTY_RUNS = new SortedRun[0];
+    // 相邻两个run的大小相差不超过这个倍数就认为大小相近，可以放在一起合并
+    private static final int SIZE_RATIO = 2;
+    // 估算memtable内存时每条记录的额外开销
+    private static final int ENTRY_MEMORY = 48;
+
+    private final Map<String, Object> config;
+    private final boolean inMemory;
+    private final boolean readOnly;
+    private final String mapBaseDir;
+    private final int blockSize;
+    private final int compactThreshold;
+    private final CacheLongKeyLIRS<SortedRun.Block> blockCache;
+
+    private final StampedLock lock = new StampedLock();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong memTableMemory = new AtomicLong();
+    private volatile ConcurrentSkipListMap<Object, Object> memTable;
+    private volatile ConcurrentSkipListMap<Object, Object> immutable; // 正在刷新的memtable
+    private volatile SortedRun[] runs = EMPTY_RUNS; // 从新到旧
+    private int nextRunId = 1;
+    private volatile boolean closed;
+
+    @SuppressWarnings("unchecked")
+    public LSMMap(String name, StorageDataType keyType, StorageDataType valueType,
+            Map<String, Object> config, AOStorage storage) {
+        super(name, keyType, valueType, storage);
+        DataUtils.checkNotNull(config, "config");
+        this.config = config;
+        inMemory = config.containsKey("inMemory");
+        readOnly = config.containsKey("readOnly");
+        blockSize = getIntValue("pageSplitSize", 16 * 1024);
+        compactThreshold = Math.max(2, getIntValue("compactThreshold", 4));
+        memTable = newMemTable();
+        if (inMemory) {
+            mapBaseDir = null;
+            blockCache = null;
+            return;
+        }
+        CacheLongKeyLIRS.Config cc = new CacheLongKeyLIRS.Config();
+        cc.maxMemory = Math.max(1, getIntValue("cacheSize", 16)) * 1024L * 1024L;
+        blockCache = new CacheLongKeyLIRS<>(cc);
+
+        mapBaseDir = storage.getStoragePath() + File.separator + name;
+        if (!FileUtils.exists(mapBaseDir))
+            FileUtils.createDirectories(mapBaseDir);
+        else
+            openRuns();
+        setMaxKey((K) lastKey());
+    }
+
+    private int getIntValue(String key, int defaultValue) {
+        Object value = config.get(key);
+        return value != null ? Integer.parseInt(value.toString()) : defaultValue;
+    }
+
+    private ConcurrentSkipListMap<Object, Object> newMemTable() {
+        return new ConcurrentSkipListMap<>(keyType::compare);
+    }
+
+    private void openRuns() {
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (String f : new File(mapBaseDir).list()) {
+            if (!f.startsWith(SortedRun.FILE_NAME_PREFIX))
+                continue;
+            if (f.endsWith(SortedRun.TEMP_FILE_SUFFIX)) {
+                // 没有写完的run
+                FileUtils.delete(mapBaseDir + File.separator + f);
+            } else if (f.endsWith(AOStorage.SUFFIX_AO_FILE)) {
+                ids.add(Integer.parseInt(f.substring(SortedRun.FILE_NAME_PREFIX.length(),
+                        f.length() - AOStorage.SUFFIX_AO_FILE_LENGTH)));
+            }
+        }
+        Collections.sort(ids, Collections.reverseOrder());
+        ArrayList<SortedRun> list = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            nextRunId = Math.max(nextRunId, id + 1);
+            // 已经合并到更新的run中了，只是合并后还没来得及删除
+            boolean replaced = false;
+            for (SortedRun run : list) {
+                if (id >= run.minReplacedId && id <= run.maxReplacedId) {
+                    replaced = true;
+                    break;
+                }
+            }
+            if (replaced)
+                FileUtils.delete(SortedRun.getFileName(mapBaseDir, id, false));
+            else
+                list.add(SortedRun.open(mapBaseDir, id, config, keyType));
+        }
+        runs = list.toArray(EMPTY_RUNS);
+        if (runs.length > 0)
+            size.set(runs[0].mapSize);
+    }
+
+    public Map<String, Object> getConfig() {
+        return config;
+    }
+
+    private void checkWrite() {
+        if (readOnly) {
+            throw DataUtils.newUnsupportedOperationException("This map is read-only");
+        }
+    }
+
+    private void addMemory(Object key, Object value) {
+        int memory = keyType.getMemory(key) + ENTRY_MEMORY;
+        if (value != TOMBSTONE)
+            memory += valueType.getMemory(value);
+        memTableMemory.addAndGet(memory);
+    }
+
+    // ---------------------------- block cache ----------------------------
+
+    private static long getCacheKey(int runId, int index) {
+        return ((long) runId << 32) | index;
+    }
+
+    void cacheBlock(int runId, int index, SortedRun.Block block) {
+        blockCache.put(getCacheKey(runId, index), block, Math.max(1, block.memory));
+    }
+
+    // run已经被合并删除时返回null
+    private SortedRun.Block getBlock(SortedRun run, int index) {
+        long key = getCacheKey(run.id, index);
+        SortedRun.Block block = blockCache.get(key);
+        if (block == null) {
+            // 并发读同一个block时只能有一个放到缓存中，否则同一个key会读到不同的value对象
+            synchronized (run) {
+                block = blockCache.peek(key);
+                if (block == null) {
+                    block = run.readBlock(index, keyType, valueType);
+                    if (block != null)
+                        cacheBlock(run.id, index, block);
+                }
+            }
+        }
+        return block;
+    }
+
+    void uncacheBlocks(int runId, int blockCount) {
+        for (int i = 0; i < blockCount; i++) {
+            blockCache.remove(getCacheKey(runId, i));
+        }
+    }
+
+    private void deleteRun(SortedRun run) {
+        run.delete();
+        uncacheBlocks(run.id, run.getBlockCount());
+    }
+
+    // ---------------------------- read ----------------------------
+
+    // 在正在刷新的memtable和run中查找，调用者已经加了共享锁，所以run不会被删除
+    private Object getFromOlder(Object key) {
+        ConcurrentSkipListMap<Object, Object> imm = immutable;
+        if (imm != null) {
+            Object value = imm.get(key);
+            if (value != null)
+                return value;
+        }
+        SortedRun[] runs = this.runs;
+        if (runs.length == 0)
+            return null;
+        int hash = keyType.hashCode(key);
+        for (SortedRun run : runs) {
+            if (!run.mightContain(key, hash, keyType))
+                continue;
+            SortedRun.Block block = getBlock(run, run.findBlock(key, keyType));
+            int index = block.binarySearch(key, keyType);
+            if (index >= 0)
+                return block.values[index];
+        }
+        return null;
+    }
+
+    private Object getLatest(Object key) {
+        Object value = memTable.get(key);
+        return value != null ? value : getFromOlder(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        long stamp = lock.readLock();
+        try {
+            Object value = getLatest(key);
+            return value == TOMBSTONE ? null : (V) value;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    @Override
+    public boolean areValuesEqual(Object a, Object b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null) {
+            return false;
+        }
+        return valueType.compare(a, b) == 0;
+    }
+
+    // ---------------------------- write ----------------------------
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        DataUtils.checkNotNull(value, "value");
+        checkWrite();
+        long stamp = lock.readLock();
+        try {
+            Object old = memTable.put(key, value);
+            addMemory(key, value);
+            if (old == null)
+                old = getFromOlder(key);
+            if (old == null || old == TOMBSTONE) {
+                size.incrementAndGet();
+                return null;
+            }
+            return (V) old;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(K key, V value) {
+        DataUtils.checkNotNull(value, "value");
+        checkWrite();
+        long stamp = lock.readLock();
+        try {
+            while (true) {
+                Object current = memTable.get(key);
+                boolean ok;
+                if (current == null) {
+                    Object old = getFromOlder(key);
+                    if (old != null && old != TOMBSTONE)
+                        return (V) old;
+                    ok = memTable.putIfAbsent(key, value) == null;
+                } else if (current == TOMBSTONE) {
+                    ok = memTable.replace(key, TOMBSTONE, value);
+                } else {
+                    return (V) current;
+                }
+                if (ok) {
+                    addMemory(key, value);
+                    size.incrementAndGet();
+                    return null;
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        checkWrite();
+        long stamp = lock.readLock();
+        try {
+            Object old;
+            if (immutable == null && runs.length == 0) {
+                // 没有更老的数据时不需要删除标记
+                old = memTable.remove(key);
+            } else {
+                old = memTable.put(key, TOMBSTONE);
+                addMemory(key, TOMBSTONE);
+                if (old == null)
+                    old = getFromOlder(key);
+            }
+            if (old == null || old == TOMBSTONE)
+                return null;
+            size.decrementAndGet();
+            return (V) old;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        DataUtils.checkNotNull(newValue, "value");
+        checkWrite();
+        long stamp = lock.readLock();
+        try {
+            while (true) {
+                Object current = memTable.get(key);
+                Object value = current != null ? current : getFromOlder(key);
+                if (value == null || value == TOMBSTONE || !areValuesEqual(value, oldValue))
+                    return false;
+                boolean ok;
+                if (current == null)
+                    ok = memTable.putIfAbsent(key, newValue) == null;
+                else
+                    ok = memTable.replace(key, current, newValue);
+                if (ok) {
+                    addMemory(key, newValue);
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // run中的value只在block缓存中，被事务锁住后放到memtable中，block被淘汰了也不会丢失，
+    // 刷新时被锁住的value会留在新的memtable中，直到解锁后再刷新一次
+    @Override
+    public void pin(K key, V value) {
+        if (readOnly)
+            return;
+        long stamp = lock.readLock();
+        try {
+            if (memTable.get(key) == null && memTable.putIfAbsent(key, value) == null)
+                addMemory(key, value);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        checkWrite();
+        SortedRun[] oldRuns;
+        long stamp = lock.writeLock();
+        try {
+            memTable = newMemTable();
+            memTableMemory.set(0);
+            oldRuns = runs;
+            runs = EMPTY_RUNS;
+            size.set(0);
+            maxKey.set(0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        for (SortedRun run : oldRuns) {
+            deleteRun(run);
+        }
+    }
+
+    // ---------------------------- ordered ----------------------------
+
+    @Override
+    public K firstKey() {
+        return findHigher(null, true);
+    }
+
+    @Override
+    public K lastKey() {
+        return findLower(null, true);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return findLower(key, false);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return findLower(key, true);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return findHigher(key, false);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return findHigher(key, true);
+    }
+
+    private K findHigher(K key, boolean inclusive) {
+        LSMCursor cursor = new LSMCursor(key, inclusive);
+        return cursor.hasNext() ? cursor.next() : null;
+    }
+
+    // key为null时找最大的key，找到的key被删除了就接着往前找
+    @SuppressWarnings("unchecked")
+    private K findLower(Object key, boolean inclusive) {
+        long stamp = lock.readLock();
+        try {
+            while (true) {
+                Object candidate = max(lower(memTable, key, inclusive), null);
+                ConcurrentSkipListMap<Object, Object> imm = immutable;
+                if (imm != null)
+                    candidate = max(lower(imm, key, inclusive), candidate);
+                for (SortedRun run : runs) {
+                    candidate = max(lower(run, key, inclusive), candidate);
+                }
+                if (candidate == null)
+                    return null;
+                Object value = getLatest(candidate);
+                if (value != null && value != TOMBSTONE)
+                    return (K) candidate;
+                key = candidate;
+                inclusive = false;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Object max(Object a, Object b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        return keyType.compare(a, b) >= 0 ? a : b;
+    }
+
+    private static Object lower(ConcurrentSkipListMap<Object, Object> map, Object key,
+            boolean inclusive) {
+        if (key == null) {
+            Entry<Object, Object> e = map.lastEntry();
+            return e == null ? null : e.getKey();
+        }
+        return inclusive ? map.floorKey(key) : map.lowerKey(key);
+    }
+
+    private Object lower(SortedRun run, Object key, boolean inclusive) {
+        if (run.getBlockCount() == 0)
+            return null;
+        if (key == null)
+            return run.getLastKey();
+        int blockIndex = run.findBlock(key, keyType);
+        if (blockIndex < 0)
+            return null;
+        SortedRun.Block block = getBlock(run, blockIndex);
+        int index = block.binarySearch(key, keyType);
+        if (index >= 0)
+            index = inclusive ? index : index - 1;
+        else
+            index = -index - 2;
+        if (index >= 0)
+            return block.keys[index];
+        // key就是这个block的第一个key，要在前一个block中找
+        if (blockIndex == 0)
+            return null;
+        block = getBlock(run, blockIndex - 1);
+        return block.keys[block.keys.length - 1];
+    }
+
+    @Override
+    public StorageMapCursor<K, V> cursor(K from) {
+        return new LSMCursor(from, true);
+    }
+
+    // ---------------------------- save & compact ----------------------------
+
+    /**
+     * 把memtable写到一个新的run中，然后看看需不需要合并run
+     */
+    @Override
+    public synchronized void save() {
+        if (inMemory || closed)
+            return;
+        if (readOnly) {
+            throw DataUtils.newIllegalStateException(DataUtils.ERROR_WRITING_FAILED,
+                    "This storage is read-only");
+        }
+        flush();
+        while (compact()) {
+            // 合并后可能又有一组大小相近的run
+        }
+    }
+
+    private void flush() {
+        ConcurrentSkipListMap<Object, Object> imm;
+        long mapSize;
+        long stamp = lock.writeLock();
+        try {
+            imm = memTable;
+            if (imm.isEmpty())
+                return;
+            immutable = imm;
+            memTable = newMemTable();
+            memTableMemory.set(0);
+            mapSize = size.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        ArrayList<Entry<Object, Object>> lockedEntries = new ArrayList<>();
+        SortedRun run;
+        SortedRun.Writer writer = null;
+        try {
+            writer = new SortedRun.Writer(this, mapBaseDir, nextRunId++, blockSize, imm.size());
+            for (Entry<Object, Object> e : imm.entrySet()) {
+                Object value = e.getValue();
+                writer.add(e.getKey(), value);
+                if (value != TOMBSTONE && valueType.isLocked(value))
+                    lockedEntries.add(e);
+            }
+            run = writer.finish(mapSize, 0, 0);
+        } catch (RuntimeException e) {
+            if (writer != null)
+                writer.abort();
+            // 写失败了就把数据放回memtable，新的值优先
+            stamp = lock.writeLock();
+            try {
+                for (Entry<Object, Object> entry : imm.entrySet()) {
+                    if (memTable.putIfAbsent(entry.getKey(), entry.getValue()) == null)
+                        addMemory(entry.getKey(), entry.getValue());
+                }
+                immutable = null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            throw e;
+        }
+
+        stamp = lock.writeLock();
+        try {
+            SortedRun[] newRuns = new SortedRun[runs.length + 1];
+            newRuns[0] = run;
+            System.arraycopy(runs, 0, newRuns, 1, runs.length);
+            runs = newRuns;
+            immutable = null;
+            // 被锁住的value还会被事务原地修改，留在memtable中，下次刷新时再写一次
+            for (Entry<Object, Object> e : lockedEntries) {
+                if (memTable.putIfAbsent(e.getKey(), e.getValue()) == null)
+                    addMemory(e.getKey(), e.getValue());
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // 从最新的run开始找出大小相近的一组run，个数达到compactThreshold就合并成一个新的run
+    private boolean compact() {
+        SortedRun[] runs = this.runs;
+        int count = 1;
+        while (count < runs.length && runs[count].length <= runs[count - 1].length * SIZE_RATIO) {
+            count++;
+        }
+        if (runs.length == 0 || count < compactThreshold)
+            return false;
+
+        SortedRun[] inputs = Arrays.copyOf(runs, count);
+        // 包含了最老的run时，删除标记后面没有更老的数据了，可以丢弃
+        boolean dropTombstones = count == runs.length;
+        long expectedKeys = 0;
+        int minReplacedId = Integer.MAX_VALUE;
+        int maxReplacedId = 0;
+        for (SortedRun run : inputs) {
+            expectedKeys += run.entryCount;
+            minReplacedId = Math.min(minReplacedId,
+                    run.minReplacedId > 0 ? run.minReplacedId : run.id);
+            maxReplacedId = Math.max(maxReplacedId, run.id);
+        }
+
+        SortedRun.Writer writer = new SortedRun.Writer(this, mapBaseDir, nextRunId++, blockSize,
+                (int) Math.min(expectedKeys, Integer.MAX_VALUE));
+        SortedRun output;
+        try {
+            PriorityQueue<RunSource> queue = new PriorityQueue<>();
+            for (int i = 0; i < count; i++) {
+                RunSource source = new RunSource(inputs[i], i);
+                if (source.seek(null, true))
+                    queue.add(source);
+            }
+            while (!queue.isEmpty()) {
+                RunSource source = queue.poll();
+                Object key = source.key;
+                Object value = source.value;
+                if (source.next())
+                    queue.add(source);
+                // 更老的run中相同的key已经被覆盖了
+                while (!queue.isEmpty() && keyType.compare(queue.peek().key, key) == 0) {
+                    RunSource s = queue.poll();
+                    if (s.next())
+                        queue.add(s);
+                }
+                if (value != TOMBSTONE || !dropTombstones)
+                    writer.add(key, value);
+            }
+            output = writer.finish(inputs[0].mapSize, minReplacedId, maxReplacedId);
+        } catch (RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            SortedRun[] newRuns = new SortedRun[this.runs.length - count + 1];
+            newRuns[0] = output;
+            System.arraycopy(this.runs, count, newRuns, 1, newRuns.length - 1);
+            this.runs = newRuns;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        for (SortedRun run : inputs) {
+            deleteRun(run);
+        }
+        return true;
+    }
+
+    // ---------------------------- close & remove ----------------------------
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        if (!readOnly)
+            save();
+        closed = true;
+        storage.closeMap(name);
+        closeRuns();
+    }
+
+    @Override
+    public synchronized void remove() {
+        closed = true;
+        storage.closeMap(name);
+        closeRuns();
+        if (!inMemory)
+            FileUtils.deleteRecursive(mapBaseDir, true);
+    }
+
+    private void closeRuns() {
+        SortedRun[] oldRuns = runs;
+        runs = EMPTY_RUNS;
+        for (SortedRun run : oldRuns) {
+            run.close();
+        }
+        if (blockCache != null)
+            blockCache.clear();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        if (inMemory)
+            return 0;
+        return FileUtils.folderSize(new File(mapBaseDir));
+    }
+
+    @Override
+    public long getMemorySpaceUsed() {
+        long memory = memTableMemory.get();
+        if (blockCache != null)
+            memory += blockCache.getUsedMemory();
+        for (SortedRun run : runs) {
+            memory += run.getMemory();
+        }
+        return memory;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return blockCache == null ? 0 : blockCache.getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return blockCache == null ? 0 : blockCache.getMisses();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    // ---------------------------- cursor ----------------------------
+
+    /**
+     * 按key的顺序合并多个有序的数据源，相同的key只取最新的数据源中的值，priority越小越新
+     */
+    private abstract class Source implements Comparable<Source> {
+
+        final int priority;
+        Object key;
+        Object value;
+
+        Source(int priority) {
+            this.priority = priority;
+        }
+
+        // 移到下一条记录，没有了返回false
+        abstract boolean next();
+
+        boolean isStale() {
+            return false;
+        }
+
+        @Override
+        public int compareTo(Source o) {
+            int comp = keyType.compare(key, o.key);
+            return comp != 0 ? comp : Integer.compare(priority, o.priority);
+        }
+    }
+
+    private class MemSource extends Source {
+
+        private final Iterator<Entry<Object, Object>> iterator;
+
+        MemSource(ConcurrentSkipListMap<Object, Object> map, Object from, boolean inclusive,
+                int priority) {
+            super(priority);
+            iterator = (from == null ? map : map.tailMap(from, inclusive)).entrySet().iterator();
+        }
+
+        @Override
+        boolean next() {
+            if (!iterator.hasNext())
+                return false;
+            Entry<Object, Object> e = iterator.next();
+            key = e.getKey();
+            value = e.getValue();
+            return true;
+        }
+    }
+
+    private class RunSource extends Source {
+
+        private final SortedRun run;
+        private SortedRun.Block block;
+        private int blockIndex;
+        private int index;
+        // run已经被合并删除了，游标需要用新的run重新定位
+        private boolean stale;
+
+        RunSource(SortedRun run, int priority) {
+            super(priority);
+            this.run = run;
+        }
+
+        boolean seek(Object from, boolean inclusive) {
+            if (run.getBlockCount() == 0)
+                return false;
+            if (from == null) {
+                blockIndex = 0;
+                index = 0;
+            } else {
+                blockIndex = Math.max(0, run.findBlock(from, keyType));
+                index = -1;
+            }
+            block = getBlock(run, blockIndex);
+            if (block == null) {
+                stale = true;
+                return false;
+            }
+            if (index < 0) {
+                index = block.binarySearch(from, keyType);
+                if (index >= 0)
+                    index = inclusive ? index : index + 1;
+                else
+                    index = -index - 1;
+            }
+            return load();
+        }
+
+        @Override
+        boolean next() {
+            index++;
+            return load();
+        }
+
+        @Override
+        boolean isStale() {
+            return stale;
+        }
+
+        private boolean load() {
+            while (index >= block.keys.length) {
+                if (++blockIndex >= run.getBlockCount())
+                    return false;
+                block = getBlock(run, blockIndex);
+                if (block == null) {
+                    stale = true;
+                    return false;
+                }
+                index = 0;
+            }
+            key = block.keys[index];
+            value = block.values[index];
+            return true;
+        }
+    }
+
+    private class LSMCursor implements StorageMapCursor<K, V> {
+
+        private Object from;
+        private boolean inclusive;
+        private PriorityQueue<Source> queue;
+        private boolean retry;
+
+        private Object nextKey;
+        private Object nextValue;
+        private K key;
+        private V value;
+
+        LSMCursor(Object from, boolean inclusive) {
+            this.from = from;
+            this.inclusive = inclusive;
+            init();
+        }
+
+        // 取出当前所有数据源的快照，刷新memtable后旧的memtable还能继续读，run被合并删除时重新初始化
+        private void init() {
+            queue = new PriorityQueue<>();
+            retry = false;
+            long stamp = lock.readLock();
+            try {
+                int priority = 0;
+                add(new MemSource(memTable, from, inclusive, priority++));
+                ConcurrentSkipListMap<Object, Object> imm = immutable;
+                if (imm != null)
+                    add(new MemSource(imm, from, inclusive, priority++));
+                for (SortedRun run : runs) {
+                    RunSource source = new RunSource(run, priority++);
+                    if (source.seek(from, inclusive))
+                        queue.add(source);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private void add(Source source) {
+            if (source.next())
+                queue.add(source);
+        }
+
+        private void advance(Source source) {
+            if (source.next())
+                queue.add(source);
+            else if (source.isStale())
+                retry = true;
+        }
+
+        private boolean fetch() {
+            while (true) {
+                Source source = queue.poll();
+                if (source == null)
+                    return false;
+                Object k = source.key;
+                Object v = source.value;
+                advance(source);
+                while (!queue.isEmpty() && keyType.compare(queue.peek().key, k) == 0) {
+                    advance(queue.poll());
+                }
+                if (retry) {
+                    // 从上一次返回的key之后重新开始
+                    if (key != null) {
+                        from = key;
+                        inclusive = false;
+                    }
+                    init();
+                    continue;
+                }
+                if (v != TOMBSTONE) {
+                    nextKey = k;
+                    nextValue = v;
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextKey != null || fetch();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            key = (K) nextKey;
+            value = (V) nextValue;
+            nextKey = null;
+            nextValue = null;
+            return key;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+    }
+}
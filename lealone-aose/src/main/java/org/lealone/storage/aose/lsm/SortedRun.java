@@ -0,0 +1,390 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.storage.aose.lsm;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lealone.common.util.DataUtils;
+import org.lealone.db.DataBuffer;
+import org.lealone.storage.aose.AOStorage;
+import org.lealone.storage.fs.FileStorage;
+import org.lealone.storage.fs.FileUtils;
+import org.lealone.storage.type.StorageDataType;
+
+/**
+ * 写入后就不再修改的有序文件，保存memtable刷出来的数据或者合并多个run后的数据.
+ *
+ * <p>
+ * 文件格式: [header(4K)][block 0]...[block n-1][index][bloom filter]
+ * <p>
+ * header跟chunk header一样是文本格式的key-value对，最后是fletcher32校验码；
+ * 每个block包含多条记录，每条记录是key、标记字节(0是删除标记，1是value)、value；
+ * index记录每个block的第一个key、位置和长度，最后是整个run的最大key，打开run时一次读到内存中.
+ * <p>
+ * 先写到r_[id].tmp，写完并sync后再改名成r_[id].db，所以看到的.db文件都是完整的.
+ */
+class SortedRun {
+
+    private static final int HEADER_SIZE = 4 * 1024;
+    private static final int FORMAT_VERSION = 1;
+
+    static final String FILE_NAME_PREFIX = "r_";
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    static String getFileName(String mapBaseDir, int id, boolean temp) {
+        return mapBaseDir + File.separator + FILE_NAME_PREFIX + id
+                + (temp ? TEMP_FILE_SUFFIX : AOStorage.SUFFIX_AO_FILE);
+    }
+
+    /**
+     * 解码后的block，放到LSMMap的block缓存中，同一个block里的key和value在缓存中只有一份，
+     * 这样按key读到的总是同一个value对象，跟BTreeMap的page一样
+     */
+    static class Block {
+
+        final Object[] keys;
+        final Object[] values; // 删除标记是LSMMap.TOMBSTONE
+        final int memory;
+
+        Block(Object[] keys, Object[] values, int memory) {
+            this.keys = keys;
+            this.values = values;
+            this.memory = memory;
+        }
+
+        int binarySearch(Object key, StorageDataType keyType) {
+            int low = 0, high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int comp = keyType.compare(keys[mid], key);
+                if (comp < 0)
+                    low = mid + 1;
+                else if (comp > 0)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -(low + 1);
+        }
+    }
+
+    final int id;
+    final String fileName;
+    final FileStorage fileStorage;
+
+    // 合并生成的run记录被它替换的run的id范围，重启时用来删除合并后没来得及删除的旧run
+    int minReplacedId;
+    int maxReplacedId;
+    long entryCount;
+    long mapSize;
+    long length;
+
+    private int blockCount;
+    private Object[] firstKeys;
+    private Object lastKey;
+    private long[] blockPositions;
+    private int[] blockLengths;
+    private BloomFilter bloomFilter;
+    private int memory;
+    private volatile boolean closed;
+
+    private SortedRun(int id, String fileName, FileStorage fileStorage) {
+        this.id = id;
+        this.fileName = fileName;
+        this.fileStorage = fileStorage;
+    }
+
+    static SortedRun open(String mapBaseDir, int id, Map<String, ?> config,
+            StorageDataType keyType) {
+        String fileName = getFileName(mapBaseDir, id, false);
+        FileStorage fileStorage = new FileStorage();
+        fileStorage.open(fileName, config);
+        SortedRun run = new SortedRun(id, fileName, fileStorage);
+        try {
+            run.read(keyType);
+        } catch (RuntimeException e) {
+            fileStorage.close();
+            throw e;
+        }
+        return run;
+    }
+
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    Object getLastKey() {
+        return lastKey;
+    }
+
+    int getMemory() {
+        return memory;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    boolean mightContain(Object key, int hash, StorageDataType keyType) {
+        if (blockCount == 0 || keyType.compare(key, firstKeys[0]) < 0
+                || keyType.compare(key, lastKey) > 0)
+            return false;
+        return bloomFilter.mightContain(hash);
+    }
+
+    /**
+     * 返回第一个key小于等于指定key的block，指定的key比run中的所有key都小时返回-1
+     */
+    int findBlock(Object key, StorageDataType keyType) {
+        int low = 0, high = blockCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keyType.compare(firstKeys[mid], key) <= 0)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+
+    // run已经被合并删除时返回null，调用者需要用新的run重新读
+    Block readBlock(int index, StorageDataType keyType, StorageDataType valueType) {
+        if (closed)
+            return null;
+        ByteBuffer buff;
+        try {
+            buff = fileStorage.readFully(blockPositions[index], blockLengths[index]);
+        } catch (RuntimeException e) {
+            // 读的过程中run被关闭了
+            if (closed)
+                return null;
+            throw e;
+        }
+        ArrayList<Object> keys = new ArrayList<>();
+        ArrayList<Object> values = new ArrayList<>();
+        int memory = 0;
+        while (buff.hasRemaining()) {
+            Object key = keyType.read(buff);
+            Object value;
+            if (buff.get() == 0) {
+                value = LSMMap.TOMBSTONE;
+            } else {
+                value = valueType.read(buff);
+                memory += valueType.getMemory(value);
+            }
+            memory += keyType.getMemory(key) + 16;
+            keys.add(key);
+            values.add(value);
+        }
+        return new Block(keys.toArray(), values.toArray(), memory);
+    }
+
+    synchronized void close() {
+        if (!closed) {
+            closed = true;
+            fileStorage.close();
+        }
+    }
+
+    void delete() {
+        close();
+        FileUtils.delete(fileName);
+    }
+
+    private void read(StorageDataType keyType) {
+        HashMap<String, String> m = readHeader();
+        long format = DataUtils.readHexLong(m, "format", FORMAT_VERSION);
+        if (format > FORMAT_VERSION) {
+            throw DataUtils.newIllegalStateException(DataUtils.ERROR_UNSUPPORTED_FORMAT,
+                    "The run format {0} is larger than the supported format {1}", format,
+                    FORMAT_VERSION);
+        }
+        blockCount = DataUtils.readHexInt(m, "blockCount", 0);
+        long indexPos = DataUtils.readHexLong(m, "indexPos", 0);
+        int indexLength = DataUtils.readHexInt(m, "indexLength", 0);
+        long bloomPos = DataUtils.readHexLong(m, "bloomPos", 0);
+        int bloomLength = DataUtils.readHexInt(m, "bloomLength", 0);
+        entryCount = DataUtils.readHexLong(m, "entryCount", 0);
+        mapSize = DataUtils.readHexLong(m, "mapSize", 0);
+        minReplacedId = DataUtils.readHexInt(m, "minReplacedId", 0);
+        maxReplacedId = DataUtils.readHexInt(m, "maxReplacedId", 0);
+        length = fileStorage.size();
+
+        firstKeys = new Object[blockCount];
+        blockPositions = new long[blockCount];
+        blockLengths = new int[blockCount];
+        ByteBuffer buff = fileStorage.readFully(indexPos, indexLength);
+        int memory = 0;
+        for (int i = 0; i < blockCount; i++) {
+            firstKeys[i] = keyType.read(buff);
+            blockPositions[i] = buff.getLong();
+            blockLengths[i] = buff.getInt();
+            memory += keyType.getMemory(firstKeys[i]) + 12;
+        }
+        if (blockCount > 0)
+            lastKey = keyType.read(buff);
+        bloomFilter = BloomFilter.read(fileStorage.readFully(bloomPos, bloomLength));
+        this.memory = memory + bloomFilter.getMemory();
+    }
+
+    private HashMap<String, String> readHeader() {
+        ByteBuffer header = fileStorage.readFully(0, HEADER_SIZE);
+        String s = new String(header.array(), 0, HEADER_SIZE, DataUtils.LATIN).trim();
+        try {
+            HashMap<String, String> m = DataUtils.parseMap(s);
+            int check = DataUtils.readHexInt(m, "fletcher", 0);
+            m.remove("fletcher");
+            s = s.substring(0, s.lastIndexOf("fletcher") - 1);
+            byte[] bytes = s.getBytes(DataUtils.LATIN);
+            if (check == DataUtils.getFletcher32(bytes, bytes.length))
+                return m;
+        } catch (Exception e) {
+            // 下面统一抛出异常
+        }
+        throw DataUtils.newIllegalStateException(DataUtils.ERROR_FILE_CORRUPT,
+                "Run header is corrupt: {0}", fileName);
+    }
+
+    /**
+     * 按key的顺序写入记录，finish之后得到可以读的run
+     */
+    static class Writer {
+
+        private final LSMMap<?, ?> map;
+        private final String mapBaseDir;
+        private final int id;
+        private final int blockSize;
+        private final StorageDataType keyType;
+        private final StorageDataType valueType;
+        private final FileStorage fileStorage;
+        private final DataBuffer buff = DataBuffer.create();
+        private final BloomFilter bloomFilter;
+
+        private final ArrayList<Object> firstKeys = new ArrayList<>();
+        private final ArrayList<Long> blockPositions = new ArrayList<>();
+        private final ArrayList<Integer> blockLengths = new ArrayList<>();
+        private final ArrayList<Object> keys = new ArrayList<>();
+        private final ArrayList<Object> values = new ArrayList<>();
+        private int blockMemory;
+        private long pos = HEADER_SIZE;
+        private long entryCount;
+        private Object lastKey;
+        private boolean closed;
+
+        Writer(LSMMap<?, ?> map, String mapBaseDir, int id, int blockSize, int expectedKeys) {
+            this.map = map;
+            this.mapBaseDir = mapBaseDir;
+            this.id = id;
+            this.blockSize = blockSize;
+            keyType = map.getKeyType();
+            valueType = map.getValueType();
+            bloomFilter = new BloomFilter(expectedKeys);
+            fileStorage = new FileStorage();
+            fileStorage.open(getFileName(mapBaseDir, id, true), map.getConfig());
+        }
+
+        void add(Object key, Object value) {
+            keyType.write(buff, key);
+            if (value == LSMMap.TOMBSTONE) {
+                buff.put((byte) 0);
+            } else {
+                buff.put((byte) 1);
+                valueType.write(buff, value);
+                blockMemory += valueType.getMemory(value);
+            }
+            blockMemory += keyType.getMemory(key) + 16;
+            keys.add(key);
+            values.add(value);
+            bloomFilter.add(keyType.hashCode(key));
+            lastKey = key;
+            entryCount++;
+            if (buff.position() >= blockSize)
+                writeBlock();
+        }
+
+        private void writeBlock() {
+            ByteBuffer b = buff.getAndFlipBuffer();
+            int len = b.remaining();
+            fileStorage.writeFully(pos, b);
+            buff.clear();
+            int index = firstKeys.size();
+            firstKeys.add(keys.get(0));
+            blockPositions.add(pos);
+            blockLengths.add(len);
+            pos += len;
+            // 刚写入的block直接放到缓存中，memtable中的value对象在刷新后还能通过缓存读到
+            map.cacheBlock(id, index, new Block(keys.toArray(), values.toArray(), blockMemory));
+            keys.clear();
+            values.clear();
+            blockMemory = 0;
+        }
+
+        SortedRun finish(long mapSize, int minReplacedId, int maxReplacedId) {
+            try {
+                if (!keys.isEmpty())
+                    writeBlock();
+                int blockCount = firstKeys.size();
+                for (int i = 0; i < blockCount; i++) {
+                    keyType.write(buff, firstKeys.get(i));
+                    buff.putLong(blockPositions.get(i));
+                    buff.putInt(blockLengths.get(i));
+                }
+                if (blockCount > 0)
+                    keyType.write(buff, lastKey);
+                long indexPos = pos;
+                int indexLength = buff.position();
+                long bloomPos = indexPos + indexLength;
+                bloomFilter.write(buff);
+                int bloomLength = buff.position() - indexLength;
+                fileStorage.writeFully(indexPos, buff.getAndFlipBuffer());
+
+                StringBuilder header = new StringBuilder();
+                DataUtils.appendMap(header, "id", id);
+                DataUtils.appendMap(header, "format", FORMAT_VERSION);
+                DataUtils.appendMap(header, "blockCount", blockCount);
+                DataUtils.appendMap(header, "indexPos", indexPos);
+                DataUtils.appendMap(header, "indexLength", indexLength);
+                DataUtils.appendMap(header, "bloomPos", bloomPos);
+                DataUtils.appendMap(header, "bloomLength", bloomLength);
+                DataUtils.appendMap(header, "entryCount", entryCount);
+                DataUtils.appendMap(header, "mapSize", mapSize);
+                DataUtils.appendMap(header, "minReplacedId", minReplacedId);
+                DataUtils.appendMap(header, "maxReplacedId", maxReplacedId);
+                byte[] bytes = header.toString().getBytes(DataUtils.LATIN);
+                DataUtils.appendMap(header, "fletcher", DataUtils.getFletcher32(bytes, bytes.length));
+                header.append("\n");
+                ByteBuffer headerBuff = ByteBuffer.allocate(HEADER_SIZE);
+                headerBuff.put(header.toString().getBytes(DataUtils.LATIN));
+                headerBuff.rewind();
+                fileStorage.writeFully(0, headerBuff);
+                fileStorage.sync();
+            } finally {
+                close();
+            }
+            FileUtils.move(getFileName(mapBaseDir, id, true), getFileName(mapBaseDir, id, false));
+            return open(mapBaseDir, id, map.getConfig(), keyType);
+        }
+
+        // 写入失败时删除临时文件和已经放到缓存中的block
+        void abort() {
+            close();
+            FileUtils.delete(getFileName(mapBaseDir, id, true));
+            map.uncacheBlocks(id, firstKeys.size());
+        }
+
+        private void close() {
+            if (!closed) {
+                closed = true;
+                fileStorage.close();
+                buff.close();
+            }
+        }
+    }
+}
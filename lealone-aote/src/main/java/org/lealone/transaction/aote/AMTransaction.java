@@ -8,6 +8,7 @@ package org.lealone.transaction.aote;
 import java.sql.Connection;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
@@ -59,6 +60,8 @@ public class AMTransaction implements Transaction {
 
     private final ConcurrentHashMap<TransactionalValue, TransactionalValue.LockOwner> tValues = new ConcurrentHashMap<>();
 
+    private List<CommitListener> commitListeners;
+
     public AMTransaction(AMTransactionEngine engine, long tid) {
         this(engine, tid, null);
     }
@@ -274,6 +277,11 @@ public class AMTransaction implements Transaction {
         commitFinal();
     }
 
+    @Override
+    public void setCommitListeners(List<CommitListener> listeners) {
+        commitListeners = listeners;
+    }
+
     @Override
     public void commitFinal() {
         commitFinal(transactionId);
@@ -288,6 +296,9 @@ public class AMTransaction implements Transaction {
         t.commitTimestamp = t.transactionEngine.nextEvenTransactionId(); // 生成新的
         // 先提交，事务变成结束状态再解锁
         UndoLog undoLog = t.undoLog;
+        // 在undoLog.commit之前通知，此时还能拿到旧值
+        if (t.commitListeners != null)
+            undoLog.fireCommit(t.commitListeners);
         undoLog.commit(transactionEngine, tid);
         t.endTransaction(false);
         undoLog.unlock();
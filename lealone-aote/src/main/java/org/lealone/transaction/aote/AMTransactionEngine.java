@@ -17,6 +17,8 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.lealone.common.logging.Logger;
 import org.lealone.common.logging.LoggerFactory;
+import org.lealone.common.metrics.Metric;
+import org.lealone.common.metrics.MetricsRegistry;
 import org.lealone.common.util.MapUtils;
 import org.lealone.common.util.ShutdownHookUtils;
 import org.lealone.db.RunMode;
@@ -50,6 +52,7 @@ public class AMTransactionEngine extends TransactionEngineBase implements Storag
     private final ConcurrentHashMap<String, MapInfo> maps = new ConcurrentHashMap<>();
     // key: transactionId
     private final ConcurrentSkipListMap<Long, AMTransaction> currentTransactions = new ConcurrentSkipListMap<>();
+    private Metric activeTransactionsMetric;
     private final AtomicLong lastTransactionId = new AtomicLong();
     private final ConcurrentHashMap<TransactionalValue, TransactionalValue.OldValue> tValues = new ConcurrentHashMap<>();
 
@@ -141,7 +144,11 @@ public class AMTransactionEngine extends TransactionEngineBase implements Storag
         this.lastTransactionId.set(lastTransactionId);
 
         // 调用完initPendingRedoLog后再启动logSyncService
+        logSyncService.registerMetrics();
         logSyncService.start();
+        activeTransactionsMetric = MetricsRegistry.registerGauge("transactions_active",
+                "engine=\"" + getName() + "\"", "Transactions not yet committed or rolled back",
+                () -> currentTransactions.size());
         // checkpointService.start();
 
         ShutdownHookUtils.addShutdownHook(this, () -> {
@@ -153,6 +160,7 @@ public class AMTransactionEngine extends TransactionEngineBase implements Storag
     public synchronized void close() {
         if (logSyncService == null)
             return;
+        MetricsRegistry.unregister(activeTransactionsMetric);
         // logSyncService放在最后关闭，这样还能执行一次checkpoint，下次启动时能减少redo操作的次数
         try {
             checkpointService.close();
@@ -618,6 +618,8 @@ public class AMTransactionMap<K, V> implements TransactionMap<K, V> {
             // 当前行已经被其他事务锁住了
             return addWaitingTransaction(key, tv);
         }
+        if (!isLockedBySelf)
+            map.pin(key, tv);
         Object oldValue = tv.getValue();
         tv.setTransaction(transaction);
         tv.setValue(value);
@@ -654,6 +656,7 @@ public class AMTransactionMap<K, V> implements TransactionMap<K, V> {
         TransactionalValue tv = (TransactionalValue) oldTValue;
 
         if (tv.tryLock(transaction, columnIndexes)) {
+            map.pin(key, tv);
             if (isForUpdate) {
                 // select for update，在提交阶段解锁
                 transaction.undoLog.add(getName(), key, null, tv, true);
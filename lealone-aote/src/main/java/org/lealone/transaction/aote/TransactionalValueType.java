@@ -46,6 +46,11 @@ public class TransactionalValueType implements StorageDataType {
         return Long.signum(comp);
     }
 
+    @Override
+    public boolean isLocked(Object obj) {
+        return ((TransactionalValue) obj).getTid() != 0;
+    }
+
     @Override
     public void read(ByteBuffer buff, Object[] obj, int len) {
         for (int i = 0; i < len; i++) {
@@ -5,6 +5,7 @@
  */
 package org.lealone.transaction.aote.log;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
@@ -13,6 +14,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.lealone.common.exceptions.DbException;
+import org.lealone.common.metrics.Metric;
+import org.lealone.common.metrics.MetricsRegistry;
 import org.lealone.common.util.MapUtils;
 import org.lealone.transaction.RedoLogSyncListener;
 import org.lealone.transaction.aote.AMTransaction;
@@ -38,6 +41,14 @@ public abstract class LogSyncService extends Thread {
     protected volatile long lastSyncedAt = System.currentTimeMillis();
     protected long syncIntervalMillis;
 
+    // 以下几个字段只在当前线程中更新，用于导出指标
+    private long syncCount;
+    private long syncNanos;
+    private long lastSyncNanos;
+    private long syncedRecordCount;
+    private int lastSyncBatchSize;
+    private final ArrayList<Metric> metrics = new ArrayList<>();
+
     public LogSyncService(Map<String, String> config) {
         setName(getClass().getSimpleName());
         // setDaemon(true);
@@ -81,10 +92,34 @@ public abstract class LogSyncService extends Thread {
     }
 
     private void sync() {
-        redoLog.save();
+        long start = System.nanoTime();
+        int count = redoLog.save();
+        if (count > 0) {
+            lastSyncNanos = System.nanoTime() - start;
+            lastSyncBatchSize = count;
+            syncNanos += lastSyncNanos;
+            syncedRecordCount += count;
+            syncCount++;
+        }
         notifyComplete();
     }
 
+    public void registerMetrics() {
+        String labels = "service=\"" + getName() + "\"";
+        metrics.add(MetricsRegistry.registerCounter("redo_log_syncs_total", labels,
+                "Redo log syncs that wrote at least one record", () -> syncCount));
+        metrics.add(MetricsRegistry.registerCounter("redo_log_sync_seconds_total", labels,
+                "Time spent writing and syncing the redo log", () -> syncNanos / 1e9));
+        metrics.add(MetricsRegistry.registerCounter("redo_log_synced_records_total", labels,
+                "Redo log records written", () -> syncedRecordCount));
+        metrics.add(MetricsRegistry.registerGauge("redo_log_last_sync_seconds", labels,
+                "Latency of the last redo log sync", () -> lastSyncNanos / 1e9));
+        metrics.add(MetricsRegistry.registerGauge("redo_log_last_sync_batch_size", labels,
+                "Records written by the last redo log sync", () -> lastSyncBatchSize));
+        metrics.add(MetricsRegistry.registerGauge("redo_log_pending_records", labels,
+                "Redo log records waiting to be synced", () -> redoLog.size()));
+    }
+
     private void notifyComplete() {
         if (hasWaitingListeners.compareAndSet(true, false)) {
             for (int i = 0; i < waitingQueueSize; i++) {
@@ -134,6 +169,7 @@ public abstract class LogSyncService extends Thread {
 
     public void close() {
         running = false;
+        MetricsRegistry.unregister(metrics);
         wakeUp();
     }
 
@@ -128,11 +128,12 @@ public class RedoLog {
         currentChunk.close();
     }
 
-    void save() {
-        currentChunk.save();
+    int save() {
+        int count = currentChunk.save();
         if (currentChunk.logChunkSize() > logChunkSize) {
             currentChunk.close();
             currentChunk = new RedoLogChunk(currentChunk.getId() + 1, config);
         }
+        return count;
     }
 }
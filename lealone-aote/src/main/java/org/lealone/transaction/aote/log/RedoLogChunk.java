@@ -86,7 +86,9 @@ class RedoLogChunk implements Comparable<RedoLogChunk> {
         fileStorage.close();
     }
 
-    synchronized void save() {
+    // 返回写入的日志记录个数
+    synchronized int save() {
+        int count = 0;
         if (logQueueSize.get() > 0) {
             // System.out.println("logQueueSize: " + logQueueSize.get());
 
@@ -103,6 +105,7 @@ class RedoLogChunk implements Comparable<RedoLogChunk> {
                 if (buff.position() > BUFF_SIZE)
                     chunkLength += write(buff);
                 logQueueSize.decrementAndGet();
+                count++;
             }
             chunkLength += write(buff);
             if (chunkLength > 0) {
@@ -115,6 +118,7 @@ class RedoLogChunk implements Comparable<RedoLogChunk> {
             if (buff.capacity() > BUFF_SIZE * 3)
                 buff = DataBuffer.create(BUFF_SIZE);
         }
+        return count;
     }
 
     private int write(DataBuffer buff) {
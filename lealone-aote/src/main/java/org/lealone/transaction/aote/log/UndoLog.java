@@ -5,9 +5,13 @@
  */
 package org.lealone.transaction.aote.log;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 import org.lealone.db.DataBuffer;
+import org.lealone.transaction.Transaction.Change;
+import org.lealone.transaction.Transaction.CommitListener;
 import org.lealone.transaction.aote.AMTransactionEngine;
 import org.lealone.transaction.aote.TransactionalValue;
 
@@ -78,6 +82,40 @@ public class UndoLog {
         }
     }
 
+    // 按mapName和key合并变更，只保留最早的旧值和最新的新值，然后通知CommitListener
+    public void fireCommit(List<CommitListener> listeners) {
+        for (CommitListener listener : listeners) {
+            HashMap<String, HashMap<Object, Change>> maps = null;
+            ArrayList<Change> changes = null;
+            UndoLogRecord r = first;
+            while (r != null) {
+                if (r.isChange() && listener.isListening(r.getMapName())) {
+                    if (maps == null) {
+                        maps = new HashMap<>();
+                        changes = new ArrayList<>();
+                    }
+                    HashMap<Object, Change> map = maps.computeIfAbsent(r.getMapName(),
+                            k -> new HashMap<>());
+                    Change c = map.get(r.getKey());
+                    if (c == null) {
+                        c = new Change(r.getMapName(), r.getKey(), r.getOldValue(), r.getNewValue());
+                        map.put(r.getKey(), c);
+                        changes.add(c);
+                    } else {
+                        c.newValue = r.getNewValue();
+                    }
+                }
+                r = r.next;
+            }
+            if (changes != null) {
+                // 同一个事务中先insert后delete的记录不算变更
+                changes.removeIf(c -> c.oldValue == null && c.newValue == null);
+                if (!changes.isEmpty())
+                    listener.onCommit(changes);
+            }
+        }
+    }
+
     public void unlock() {
         UndoLogRecord r = first;
         while (r != null) {
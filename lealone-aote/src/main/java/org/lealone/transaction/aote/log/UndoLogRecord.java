@@ -59,6 +59,15 @@ public class UndoLogRecord {
         this.undone = undone;
     }
 
+    // 被撤销的记录和select for update产生的记录不算变更
+    public boolean isChange() {
+        return !undone && !isForUpdate;
+    }
+
+    public Object getNewValue() {
+        return newTV == null ? null : newTV.getValue();
+    }
+
     public void setRetryReplicationNames(List<String> retryReplicationNames) {
         if (newTV != null)
             newTV.setRetryReplicationNames(retryReplicationNames);
@@ -14,37 +14,58 @@ import org.lealone.client.result.RowCountDeterminedClientResult;
 import org.lealone.client.session.ClientSession;
 import org.lealone.common.exceptions.DbException;
 import org.lealone.common.trace.Trace;
-import org.lealone.common.util.Utils;
 import org.lealone.db.CommandParameter;
-import org.lealone.db.SysProperties;
+import org.lealone.db.Constants;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.async.AsyncCallback;
 import org.lealone.db.async.Future;
 import org.lealone.db.result.Result;
 import org.lealone.db.value.Value;
 import org.lealone.net.TransferInputStream;
+import org.lealone.server.protocol.AckPacket;
+import org.lealone.server.protocol.AckPacketHandler;
 import org.lealone.server.protocol.Packet;
 import org.lealone.server.protocol.batch.BatchStatementPreparedUpdate;
 import org.lealone.server.protocol.batch.BatchStatementUpdateAck;
+import org.lealone.server.protocol.ps.ClientCommandParameter;
 import org.lealone.server.protocol.ps.PreparedStatementClose;
 import org.lealone.server.protocol.ps.PreparedStatementGetMetaData;
 import org.lealone.server.protocol.ps.PreparedStatementGetMetaDataAck;
 import org.lealone.server.protocol.ps.PreparedStatementPrepare;
 import org.lealone.server.protocol.ps.PreparedStatementPrepareAck;
+import org.lealone.server.protocol.ps.PreparedStatementPrepareQuery;
 import org.lealone.server.protocol.ps.PreparedStatementPrepareReadParams;
 import org.lealone.server.protocol.ps.PreparedStatementPrepareReadParamsAck;
+import org.lealone.server.protocol.ps.PreparedStatementPrepareUpdate;
 import org.lealone.server.protocol.ps.PreparedStatementQuery;
 import org.lealone.server.protocol.ps.PreparedStatementUpdate;
 import org.lealone.server.protocol.statement.StatementQueryAck;
 import org.lealone.server.protocol.statement.StatementUpdateAck;
 
+// 创建时不需要访问服务器，能在客户端数出参数个数时，第一次执行才把SQL跟参数一起发过去，
+// 服务器prepare后用commandId缓存起来，之后的执行只发commandId和参数。
+// 服务器端的缓存过期后会返回OBJECT_CLOSED，此时换一个commandId再发一次SQL，调用者感知不到。
+// 因为创建时没有访问服务器，SQL的语法错误要到第一次执行时才会抛出。
+// 服务器的协议版本低于TCP_PROTOCOL_VERSION_2时不支持合并的协议包，还是在创建时prepare，执行时单独发包。
 public class ClientPreparedSQLCommand extends ClientSQLCommand {
 
     private ArrayList<CommandParameter> parameters;
+    private boolean paramsRead; // 参数的元数据是否已经从服务器读过
+    private boolean isQueryKnown;
+    private volatile boolean prepared; // 服务器端是否已经用commandId缓存了prepare好的语句
 
     public ClientPreparedSQLCommand(ClientSession session, String sql, int fetchSize) {
         super(session, sql, fetchSize);
         // commandId重新prepare时会变，但是parameters不会变
-        parameters = Utils.newSmallArrayList();
-        prepare(true);
+        int count = isPrepareAndExecuteSupported() ? getParameterCount(sql) : -1;
+        if (count < 0) {
+            prepare(true);
+        } else {
+            parameters = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                parameters.add(new ClientCommandParameter(i));
+            }
+        }
     }
 
     @Override
@@ -61,23 +82,56 @@ public class ClientPreparedSQLCommand extends ClientSQLCommand {
             Future<PreparedStatementPrepareReadParamsAck> f = session.send(packet);
             PreparedStatementPrepareReadParamsAck ack = f.get();
             isQuery = ack.isQuery;
+            ArrayList<CommandParameter> old = parameters;
             parameters = new ArrayList<>(ack.params);
+            // 已经设置的参数值要保留
+            if (old != null) {
+                for (int i = 0, size = Math.min(old.size(), parameters.size()); i < size; i++) {
+                    Value v = old.get(i).getValue();
+                    if (v != null)
+                        parameters.get(i).setValue(v);
+                }
+            }
+            paramsRead = true;
         } else {
             PreparedStatementPrepare packet = new PreparedStatementPrepare(commandId, sql);
             Future<PreparedStatementPrepareAck> f = session.send(packet);
             PreparedStatementPrepareAck ack = f.get();
             isQuery = ack.isQuery;
         }
+        isQueryKnown = true;
+        prepared = true;
+    }
+
+    private boolean isPrepareAndExecuteSupported() {
+        return session.getProtocolVersion() >= Constants.TCP_PROTOCOL_VERSION_2;
     }
 
     private void prepareIfRequired() {
         session.checkClosed();
-        if (commandId <= session.getCurrentId() - SysProperties.SERVER_CACHED_OBJECTS) {
-            // object is too old - we need to prepare again
+        if (!prepared) {
             prepare(false);
         }
     }
 
+    /**
+     * 返回带有类型信息的参数，参数个数是在客户端数出来的时候要到服务器读一次
+     */
+    public ArrayList<CommandParameter> readParameterMetaData() {
+        if (!paramsRead) {
+            session.checkClosed();
+            prepare(true);
+        }
+        return parameters;
+    }
+
+    @Override
+    public boolean isQuery() {
+        if (!isQueryKnown)
+            prepareIfRequired();
+        return isQuery;
+    }
+
     @Override
     public ArrayList<CommandParameter> getParameters() {
         return parameters;
@@ -85,14 +139,22 @@ public class ClientPreparedSQLCommand extends ClientSQLCommand {
 
     @Override
     public Result getMetaData() {
-        if (!isQuery) {
+        if (!isQuery()) {
             return null;
         }
         prepareIfRequired();
         try {
-            Future<PreparedStatementGetMetaDataAck> f = session
-                    .send(new PreparedStatementGetMetaData(commandId));
-            PreparedStatementGetMetaDataAck ack = f.get();
+            PreparedStatementGetMetaDataAck ack;
+            try {
+                ack = session.<PreparedStatementGetMetaDataAck> send(
+                        new PreparedStatementGetMetaData(commandId)).get();
+            } catch (DbException e) {
+                if (!isInvalidated(e))
+                    throw e;
+                prepare(false);
+                ack = session.<PreparedStatementGetMetaDataAck> send(
+                        new PreparedStatementGetMetaData(commandId)).get();
+            }
             ClientResult result = new RowCountDeterminedClientResult(session,
                     (TransferInputStream) ack.in, -1, ack.columnCount, 0, 0);
             return result;
@@ -104,25 +166,120 @@ public class ClientPreparedSQLCommand extends ClientSQLCommand {
 
     @Override
     protected Future<Result> query(int maxRows, boolean scrollable, int fetch, int resultId) {
-        Packet packet = new PreparedStatementQuery(resultId, maxRows, fetch, scrollable, commandId,
-                getValues());
-        return session.<Result, StatementQueryAck> send(packet, ack -> {
+        return execute(prepare -> {
+            Value[] values = getValues();
+            if (prepare)
+                return new PreparedStatementPrepareQuery(resultId, maxRows, fetch, scrollable,
+                        commandId, values, sql);
+            else
+                return new PreparedStatementQuery(resultId, maxRows, fetch, scrollable, commandId,
+                        values);
+        }, (StatementQueryAck ack) -> {
             return getQueryResult(ack, fetch, resultId);
         });
     }
 
     @Override
     public Future<Integer> executeUpdate() {
-        Packet packet = new PreparedStatementUpdate(commandId, getValues());
-        // 如果不给send方法传递packetId，它会自己创建一个，所以这里的调用是安全的
-        return session.<Integer, StatementUpdateAck> send(packet, ack -> {
+        return execute(prepare -> {
+            Value[] values = getValues();
+            if (prepare)
+                return new PreparedStatementPrepareUpdate(commandId, values, sql);
+            else
+                return new PreparedStatementUpdate(commandId, values);
+        }, (StatementUpdateAck ack) -> {
             return ack.updateCount;
         });
     }
 
-    private Value[] getValues() {
+    private static interface PacketFactory {
+        Packet create(boolean prepare);
+    }
+
+    private <R, P extends AckPacket> Future<R> execute(PacketFactory packetFactory,
+            AckPacketHandler<R, P> ackPacketHandler) {
         checkParameters();
-        prepareIfRequired();
+        session.checkClosed();
+        AsyncCallback<R> ac = new AsyncCallback<>();
+        ac.setNetworkTimeout(session.getNetworkTimeout());
+        if (!prepared) {
+            prepareAndExecute(packetFactory, ackPacketHandler, ac);
+        } else {
+            int id = commandId;
+            // 如果不给send方法传递packetId，它会自己创建一个，所以这里的调用是安全的
+            session.<R, P> send(packetFactory.create(false), ackPacketHandler).onComplete(ar -> {
+                if (ar.isFailed() && isInvalidated(ar.getCause())) {
+                    // 服务器端缓存的语句过期了，重新prepare后再执行一次
+                    if (commandId == id)
+                        prepared = false;
+                    prepareAndExecute(packetFactory, ackPacketHandler, ac);
+                } else {
+                    ac.setAsyncResult(ar);
+                }
+            });
+        }
+        return ac;
+    }
+
+    private <R, P extends AckPacket> void prepareAndExecute(PacketFactory packetFactory,
+            AckPacketHandler<R, P> ackPacketHandler, AsyncCallback<R> ac) {
+        if (!isPrepareAndExecuteSupported()) {
+            prepareThenExecute(packetFactory, ackPacketHandler, ac);
+            return;
+        }
+        int id = commandId = session.getNextId();
+        // 服务器按顺序处理同一个session的协议包，所以不用等响应，后续的执行就可以直接用commandId了
+        prepared = true;
+        Packet packet;
+        try {
+            packet = packetFactory.create(true);
+        } catch (Throwable t) {
+            prepared = false;
+            ac.setAsyncResult(t);
+            return;
+        }
+        session.<R, P> send(packet, ackPacketHandler).onComplete(ar -> {
+            if (ar.isFailed()) {
+                if (commandId == id)
+                    prepared = false;
+            } else if (packet instanceof PreparedStatementQuery) {
+                isQuery = true;
+                isQueryKnown = true;
+            }
+            ac.setAsyncResult(ar);
+        });
+    }
+
+    // 老版本的服务器只能先prepare再执行，这里可能在网络线程中运行，所以不能同步等待prepare的结果
+    private <R, P extends AckPacket> void prepareThenExecute(PacketFactory packetFactory,
+            AckPacketHandler<R, P> ackPacketHandler, AsyncCallback<R> ac) {
+        int id = commandId = session.getNextId();
+        prepared = true;
+        session.<PreparedStatementPrepareAck> send(new PreparedStatementPrepare(id, sql))
+                .onComplete(ar -> {
+                    if (ar.isFailed()) {
+                        if (commandId == id)
+                            prepared = false;
+                        ac.setAsyncResult(ar.getCause());
+                        return;
+                    }
+                    isQuery = ar.getResult().isQuery;
+                    isQueryKnown = true;
+                    try {
+                        session.<R, P> send(packetFactory.create(false), ackPacketHandler)
+                                .onComplete(ac::setAsyncResult);
+                    } catch (Throwable t) {
+                        ac.setAsyncResult(t);
+                    }
+                });
+    }
+
+    private static boolean isInvalidated(Throwable t) {
+        return t instanceof DbException
+                && ((DbException) t).getErrorCode() == ErrorCode.OBJECT_CLOSED;
+    }
+
+    private Value[] getValues() {
         int size = parameters.size();
         Value[] values = new Value[size];
         for (int i = 0; i < size; i++) {
@@ -142,27 +299,49 @@ public class ClientPreparedSQLCommand extends ClientSQLCommand {
         if (session == null || session.isClosed()) {
             return;
         }
-        int packetId = session.getNextId();
-        session.traceOperation("COMMAND_CLOSE", packetId);
-        try {
-            session.send(new PreparedStatementClose(commandId));
-        } catch (Exception e) {
-            session.getTrace().error(e, "close session");
+        clearParameters();
+        // 放回session的缓存中，下次prepare同样的SQL时直接复用
+        if (session.cachePreparedSQLCommand(this)) {
+            return;
+        }
+        closeInternal();
+    }
+
+    /**
+     * 真正关闭命令，释放服务器端缓存的语句
+     */
+    public void closeInternal() {
+        if (session == null || session.isClosed()) {
+            return;
+        }
+        if (prepared) {
+            int packetId = session.getNextId();
+            session.traceOperation("COMMAND_CLOSE", packetId);
+            try {
+                session.send(new PreparedStatementClose(commandId));
+            } catch (Exception e) {
+                session.getTrace().error(e, "close session");
+            }
         }
+        clearParameters();
+        parameters = null;
+        session = null;
+    }
+
+    private void clearParameters() {
         if (parameters != null) {
             try {
                 for (CommandParameter p : parameters) {
                     Value v = p.getValue();
                     if (v != null) {
                         v.close();
+                        p.setValue(null);
                     }
                 }
             } catch (DbException e) {
                 session.getTrace().error(e, "close command parameters");
             }
-            parameters = null;
         }
-        session = null;
     }
 
     @Override
@@ -172,13 +351,88 @@ public class ClientPreparedSQLCommand extends ClientSQLCommand {
 
     public int[] executeBatchPreparedSQLCommands(List<Value[]> batchParameters) {
         try {
+            prepareIfRequired();
             Future<BatchStatementUpdateAck> f = session.send(new BatchStatementPreparedUpdate(commandId,
                     batchParameters.size(), batchParameters));
-            BatchStatementUpdateAck ack = f.get();
+            BatchStatementUpdateAck ack;
+            try {
+                ack = f.get();
+            } catch (DbException e) {
+                if (!isInvalidated(e))
+                    throw e;
+                prepare(false);
+                ack = session.<BatchStatementUpdateAck> send(new BatchStatementPreparedUpdate(
+                        commandId, batchParameters.size(), batchParameters)).get();
+            }
             return ack.results;
         } catch (Exception e) {
             session.handleException(e);
         }
         return null;
     }
+
+    /**
+     * 在客户端数出SQL中的参数个数，跳过字符串、带引号的标识符和注释中的问号。
+     * 遇到?1、$1这类带序号的参数或不好判断的写法时返回-1，这时还是要到服务器prepare一次。
+     */
+    public static int getParameterCount(String sql) {
+        int count = 0;
+        int len = sql.length();
+        for (int i = 0; i < len; i++) {
+            char c = sql.charAt(i);
+            switch (c) {
+            case '?':
+                if (i + 1 < len && Character.isDigit(sql.charAt(i + 1)))
+                    return -1;
+                count++;
+                break;
+            case '\'':
+            case '"':
+            case '`':
+                // 两个连续的引号是转义，当成两个相邻的字符串处理也不影响结果
+                int end = sql.indexOf(c, i + 1);
+                if (end < 0)
+                    return -1;
+                // 有些模式下反斜杠也是转义字符，\'不是字符串的结尾，交给服务器判断
+                for (int j = i + 1; j < end; j++) {
+                    if (sql.charAt(j) == '\\')
+                        return -1;
+                }
+                i = end;
+                break;
+            case '-':
+                if (i + 1 < len && sql.charAt(i + 1) == '-') {
+                    i = skipLineComment(sql, i);
+                }
+                break;
+            case '/':
+                if (i + 1 < len && sql.charAt(i + 1) == '/') {
+                    i = skipLineComment(sql, i);
+                } else if (i + 1 < len && sql.charAt(i + 1) == '*') {
+                    i = sql.indexOf("*/", i + 2);
+                    if (i < 0)
+                        return -1;
+                    i++;
+                }
+                break;
+            case '$': // $$字符串和PostgreSQL风格的参数
+            case '[': // 有些模式下是带引号的标识符
+            case ';': // 多条语句
+                return -1;
+            default:
+            }
+        }
+        return count;
+    }
+
+    private static int skipLineComment(String sql, int i) {
+        int len = sql.length();
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\n' || c == '\r')
+                break;
+            i++;
+        }
+        return i;
+    }
 }
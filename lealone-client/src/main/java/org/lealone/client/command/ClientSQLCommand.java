@@ -12,6 +12,7 @@ import java.util.List;
 import org.lealone.client.result.ClientResult;
 import org.lealone.client.result.RowCountDeterminedClientResult;
 import org.lealone.client.result.RowCountUndeterminedClientResult;
+import org.lealone.client.result.StreamingClientResult;
 import org.lealone.client.session.ClientSession;
 import org.lealone.common.exceptions.DbException;
 import org.lealone.db.CommandParameter;
@@ -47,6 +48,10 @@ public class ClientSQLCommand implements SQLCommand {
         return CLIENT_SQL_COMMAND;
     }
 
+    public String getSQL() {
+        return sql;
+    }
+
     @Override
     public int getFetchSize() {
         return fetchSize;
@@ -105,7 +110,12 @@ public class ClientSQLCommand implements SQLCommand {
         try {
             TransferInputStream in = (TransferInputStream) ack.in;
             in.setSession(session);
-            if (rowCount < 0)
+            // 一批就能取完的结果集没有必要用流模式
+            int credits = session.getResultStreamCredits();
+            if (credits > 0 && (rowCount < 0 || rowCount > fetch))
+                result = new StreamingClientResult(session, in, resultId, columnCount, rowCount,
+                        fetch, credits);
+            else if (rowCount < 0)
                 result = new RowCountUndeterminedClientResult(session, in, resultId, columnCount, fetch);
             else
                 result = new RowCountDeterminedClientResult(session, in, resultId, columnCount, rowCount,
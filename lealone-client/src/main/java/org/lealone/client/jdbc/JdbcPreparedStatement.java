@@ -1337,6 +1337,8 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
                 debugCodeAssign(TraceObjectType.PARAMETER_META_DATA, id, "getParameterMetaData()");
             }
             checkClosed();
+            if (command instanceof ClientPreparedSQLCommand)
+                ((ClientPreparedSQLCommand) command).readParameterMetaData();
             JdbcParameterMetaData meta = new JdbcParameterMetaData(this, command, id);
             return meta;
         } catch (Exception e) {
@@ -3123,16 +3123,13 @@ public class JdbcResultSet extends JdbcWrapper implements ResultSet {
     private Value get(int columnIndex) {
         checkColumnIndex(columnIndex);
         checkOnValidRow();
-        Value[] list;
-        if (patchedRows == null) {
-            list = result.currentRow();
+        Value value;
+        Value[] list = patchedRows == null ? null : patchedRows.get(result.getRowId());
+        if (list == null) {
+            value = result.currentValue(columnIndex - 1);
         } else {
-            list = patchedRows.get(result.getRowId());
-            if (list == null) {
-                list = result.currentRow();
-            }
+            value = list[columnIndex - 1];
         }
-        Value value = list[columnIndex - 1];
         wasNull = value == ValueNull.INSTANCE;
         return value;
     }
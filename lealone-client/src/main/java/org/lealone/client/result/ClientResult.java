@@ -11,11 +11,13 @@ import java.util.ArrayList;
 import org.lealone.client.session.ClientSession;
 import org.lealone.common.exceptions.DbException;
 import org.lealone.common.util.Utils;
+import org.lealone.db.Constants;
 import org.lealone.db.SysProperties;
 import org.lealone.db.result.Result;
 import org.lealone.db.value.Value;
 import org.lealone.net.TransferInputStream;
 import org.lealone.server.protocol.result.ResultChangeId;
+import org.lealone.server.protocol.result.ColumnarRowBatch;
 import org.lealone.server.protocol.result.ResultClose;
 import org.lealone.server.protocol.result.ResultFetchRows;
 import org.lealone.server.protocol.result.ResultFetchRowsAck;
@@ -40,6 +42,10 @@ public abstract class ClientResult implements Result {
     protected final int rowCount;
     protected int rowId, rowOffset;
     protected ArrayList<Value[]> result;
+    // 协议版本3及以上时，服务器端可能按列编码一批记录，此时记录只在batch中，result为空
+    protected final boolean columnar;
+    protected ColumnarRowBatch batch;
+    protected int batchRowIndex = -1;
 
     public ClientResult(ClientSession session, TransferInputStream in, int resultId, int columnCount,
             int rowCount, int fetchSize) throws IOException {
@@ -54,6 +60,7 @@ public abstract class ClientResult implements Result {
         rowId = -1;
         result = Utils.newSmallArrayList();
         this.fetchSize = fetchSize;
+        columnar = session.getProtocolVersion() >= Constants.TCP_PROTOCOL_VERSION_3;
         fetchRows(false);
     }
 
@@ -62,6 +69,43 @@ public abstract class ClientResult implements Result {
 
     protected abstract void fetchRows(boolean sendFetch);
 
+    // 返回true表示读到了结束标记
+    protected boolean readRows(int fetch) throws IOException {
+        if (columnar && in.readInt() == ColumnarRowBatch.FORMAT_COLUMNAR) {
+            batch = new ColumnarRowBatch(in, columns.length);
+            return batch.isEnd();
+        }
+        for (int r = 0; r < fetch; r++) {
+            boolean row = in.readBoolean();
+            if (!row) {
+                return true;
+            }
+            int len = columns.length;
+            Value[] values = new Value[len];
+            for (int i = 0; i < len; i++) {
+                Value v = in.readValue();
+                values[i] = v;
+            }
+            result.add(values);
+        }
+        return false;
+    }
+
+    protected int batchSize() {
+        return batch != null ? batch.getRowCount() : result.size();
+    }
+
+    protected void clearRows() {
+        result.clear();
+        batch = null;
+    }
+
+    // index是在当前这批记录中的位置，-1表示没有当前行
+    protected void setCurrentRow(int index) {
+        batchRowIndex = index;
+        currentRow = index < 0 || batch != null ? null : result.get(index);
+    }
+
     @Override
     public String getAlias(int i) {
         return columns[i].alias;
@@ -115,7 +159,7 @@ public abstract class ClientResult implements Result {
     @Override
     public void reset() {
         rowId = -1;
-        currentRow = null;
+        setCurrentRow(-1);
         if (session == null) {
             return;
         }
@@ -131,9 +175,21 @@ public abstract class ClientResult implements Result {
 
     @Override
     public Value[] currentRow() {
+        if (currentRow == null && batchRowIndex >= 0 && batch != null) {
+            currentRow = batch.getRow(batchRowIndex);
+        }
         return currentRow;
     }
 
+    @Override
+    public Value currentValue(int i) {
+        // 按列编码时不用构造整行，只解码用到的列
+        if (currentRow == null && batchRowIndex >= 0 && batch != null) {
+            return batch.getValue(batchRowIndex, i);
+        }
+        return currentRow[i];
+    }
+
     @Override
     public int getRowId() {
         return rowId;
@@ -150,7 +206,7 @@ public abstract class ClientResult implements Result {
     }
 
     public int getCurrentRowCount() {
-        return result.size();
+        return batchSize();
     }
 
     protected void sendClose() {
@@ -179,6 +235,7 @@ public abstract class ClientResult implements Result {
     @Override
     public void close() {
         result = null;
+        batch = null;
         sendClose();
     }
 
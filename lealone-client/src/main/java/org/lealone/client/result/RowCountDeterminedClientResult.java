@@ -9,7 +9,6 @@ import java.io.IOException;
 
 import org.lealone.client.session.ClientSession;
 import org.lealone.common.exceptions.DbException;
-import org.lealone.db.value.Value;
 import org.lealone.net.TransferInputStream;
 
 public class RowCountDeterminedClientResult extends ClientResult {
@@ -25,13 +24,13 @@ public class RowCountDeterminedClientResult extends ClientResult {
             rowId++;
             remapIfOld();
             if (rowId < rowCount) {
-                if (rowId - rowOffset >= result.size()) {
+                if (rowId - rowOffset >= batchSize()) {
                     fetchRows(true);
                 }
-                currentRow = result.get(rowId - rowOffset);
+                setCurrentRow(rowId - rowOffset);
                 return true;
             }
-            currentRow = null;
+            setCurrentRow(-1);
         }
         return false;
     }
@@ -40,26 +39,14 @@ public class RowCountDeterminedClientResult extends ClientResult {
     protected void fetchRows(boolean sendFetch) {
         session.checkClosed();
         try {
-            rowOffset += result.size();
-            result.clear();
+            rowOffset += batchSize();
+            clearRows();
             int fetch = Math.min(fetchSize, rowCount - rowOffset);
             if (sendFetch) {
                 sendFetch(fetch);
             }
-            for (int r = 0; r < fetch; r++) {
-                boolean row = in.readBoolean();
-                if (!row) {
-                    break;
-                }
-                int len = columns.length;
-                Value[] values = new Value[len];
-                for (int i = 0; i < len; i++) {
-                    Value v = in.readValue();
-                    values[i] = v;
-                }
-                result.add(values);
-            }
-            if (rowOffset + result.size() >= rowCount) {
+            readRows(fetch);
+            if (rowOffset + batchSize() >= rowCount) {
                 sendClose();
             }
         } catch (IOException e) {
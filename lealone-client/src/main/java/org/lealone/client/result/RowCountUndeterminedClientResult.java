@@ -9,7 +9,6 @@ import java.io.IOException;
 
 import org.lealone.client.session.ClientSession;
 import org.lealone.common.exceptions.DbException;
-import org.lealone.db.value.Value;
 import org.lealone.net.TransferInputStream;
 
 public class RowCountUndeterminedClientResult extends ClientResult {
@@ -20,32 +19,41 @@ public class RowCountUndeterminedClientResult extends ClientResult {
 
     public RowCountUndeterminedClientResult(ClientSession session, TransferInputStream in, int resultId,
             int columnCount, int fetchSize) throws IOException {
-        super(session, in, resultId, columnCount, -1, fetchSize);
+        this(session, in, resultId, columnCount, -1, fetchSize);
+    }
+
+    protected RowCountUndeterminedClientResult(ClientSession session, TransferInputStream in,
+            int resultId, int columnCount, int rowCount, int fetchSize) throws IOException {
+        super(session, in, resultId, columnCount, rowCount, fetchSize);
     }
 
     @Override
     public boolean next() {
-        if (isEnd && rowId - rowOffset >= result.size() - 1) {
-            currentRow = null;
+        if (isEnd && rowId - rowOffset >= batchSize() - 1) {
+            setCurrentRow(-1);
             return false;
         }
 
         rowId++;
         if (!isEnd) {
             remapIfOld();
-            if (rowId - rowOffset >= result.size()) {
+            if (rowId - rowOffset >= batchSize()) {
                 fetchRows(true);
-                if (isEnd && result.isEmpty()) {
-                    currentRow = null;
+                if (isEnd && batchSize() == 0) {
+                    setCurrentRow(-1);
                     return false;
                 }
             }
         }
-        currentRow = result.get(rowId - rowOffset);
+        setCurrentRow(rowId - rowOffset);
         return true;
 
     }
 
+    protected boolean isEnd() {
+        return isEnd;
+    }
+
     @Override
     public int getRowCount() {
         return Integer.MAX_VALUE; // 不能返回-1，JdbcResultSet那边会抛异常
@@ -55,26 +63,14 @@ public class RowCountUndeterminedClientResult extends ClientResult {
     protected void fetchRows(boolean sendFetch) {
         session.checkClosed();
         try {
-            rowOffset += result.size();
-            result.clear();
+            rowOffset += batchSize();
+            clearRows();
             if (sendFetch) {
                 sendFetch(fetchSize);
             }
-            for (int r = 0; r < fetchSize; r++) {
-                boolean row = in.readBoolean();
-                if (!row) {
-                    isEnd = true;
-                    break;
-                }
-                int len = columns.length;
-                Value[] values = new Value[len];
-                for (int i = 0; i < len; i++) {
-                    Value v = in.readValue();
-                    values[i] = v;
-                }
-                result.add(values);
+            if (readRows(fetchSize)) {
+                isEnd = true;
             }
-
             if (isEnd)
                 sendClose();
         } catch (IOException e) {
@@ -0,0 +1,134 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.client.result;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.lealone.client.session.ClientSession;
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.async.AsyncCallback;
+import org.lealone.db.async.AsyncResult;
+import org.lealone.net.NetInputStream;
+import org.lealone.net.TransferInputStream;
+import org.lealone.server.protocol.result.ResultStream;
+import org.lealone.server.protocol.result.ResultStreamCredit;
+
+/**
+ * 结果集的流模式，需要多批才能取完的结果集都可以用。
+ * 
+ * 第一批记录消费完后发送RESULT_STREAM，之后服务器端用同一个packetId持续推送记录，
+ * 最多同时有credits批记录在路上，每消费一批就再补充一个credit。
+ * 不管行数是否确定，都跟行数不确定的结果集一样以结束标记判断是否取完。
+ */
+public class StreamingClientResult extends RowCountUndeterminedClientResult {
+
+    private final int credits;
+    private StreamCallback stream;
+
+    public StreamingClientResult(ClientSession session, TransferInputStream in, int resultId,
+            int columnCount, int rowCount, int fetchSize, int credits) throws IOException {
+        super(session, in, resultId, columnCount, rowCount, fetchSize);
+        this.credits = credits;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount >= 0 ? rowCount : super.getRowCount();
+    }
+
+    @Override
+    protected void sendFetch(int fetchSize) throws IOException {
+        // 释放buffer
+        in.closeInputStream();
+        if (stream == null) {
+            stream = new StreamCallback();
+            session.send(new ResultStream(resultId, fetchSize, credits), stream.packetId, stream);
+        } else {
+            session.send(new ResultStreamCredit(resultId, 1));
+        }
+        in = stream.take(session.getNetworkTimeout());
+    }
+
+    @Override
+    protected void sendClose() {
+        // 在super的构造函数中就可能调用了，也可能被调用多次
+        if (stream != null && session != null) {
+            stream.close();
+        }
+        // 会发送RESULT_CLOSE，服务器端收到后不再推送
+        super.sendClose();
+    }
+
+    @Override
+    public void reset() {
+        throw DbException.getUnsupportedException("reset streaming result");
+    }
+
+    private class StreamCallback extends AsyncCallback<Void> {
+
+        // TransferInputStream或Throwable
+        private final LinkedBlockingQueue<Object> batches = new LinkedBlockingQueue<>();
+        private final int packetId = session.getNextId();
+        private volatile boolean closed;
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+
+        @Override
+        protected void runInternal(NetInputStream in) throws Exception {
+            // 关闭后还在路上的批次直接丢弃
+            if (closed)
+                ((TransferInputStream) in).closeInputStream();
+            else
+                batches.add(in);
+        }
+
+        @Override
+        public void setAsyncResult(AsyncResult<Void> asyncResult) {
+            if (asyncResult != null && asyncResult.isFailed())
+                batches.add(asyncResult.getCause());
+            super.setAsyncResult(asyncResult);
+        }
+
+        TransferInputStream take(int timeoutMillis) {
+            Object batch;
+            try {
+                if (timeoutMillis > 0)
+                    batch = batches.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+                else
+                    batch = batches.take();
+            } catch (InterruptedException e) {
+                throw DbException.convert(e);
+            }
+            if (batch == null)
+                throw DbException.get(ErrorCode.NETWORK_TIMEOUT_1,
+                        "stream rows timeout, result id: " + resultId);
+            if (batch instanceof Throwable)
+                throw DbException.convert((Throwable) batch);
+            TransferInputStream in = (TransferInputStream) batch;
+            in.setSession(session);
+            return in;
+        }
+
+        void close() {
+            closed = true;
+            for (Object batch; (batch = batches.poll()) != null;) {
+                if (batch instanceof TransferInputStream)
+                    ((TransferInputStream) batch).closeInputStream();
+            }
+            // 不管是否正常结束都删除回调，提前关闭时服务器端收到RESULT_CLOSE前推送的批次直接丢弃
+            if (isEnd())
+                session.removeAsyncCallback(packetId);
+            else
+                session.discardAsyncCallback(packetId);
+        }
+    }
+}
@@ -6,6 +6,8 @@
 package org.lealone.client.session;
 
 import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 import org.lealone.client.command.ClientPreparedSQLCommand;
 import org.lealone.client.command.ClientSQLCommand;
@@ -13,6 +15,7 @@ import org.lealone.common.exceptions.DbException;
 import org.lealone.common.trace.Trace;
 import org.lealone.common.trace.TraceModuleType;
 import org.lealone.db.ConnectionInfo;
+import org.lealone.db.ConnectionSetting;
 import org.lealone.db.DataHandler;
 import org.lealone.db.DbSetting;
 import org.lealone.db.LocalDataHandler;
@@ -50,12 +53,19 @@ import org.lealone.storage.lob.LobLocalStorage;
 // 虽然ConnectionInfo允许在JDBC URL中指定多个server，但是放在ClientSessionFactory中处理了。
 public class ClientSession extends SessionBase implements LobLocalStorage.LobReader {
 
+    private static final int DEFAULT_PREPARED_STATEMENT_CACHE_SIZE = 32;
+
     private final TcpClientConnection tcpConnection;
     private final ConnectionInfo ci;
     private final String server;
     private final int id;
     private final LocalDataHandler dataHandler;
     private final Trace trace;
+    private final int resultStreamCredits;
+    // 按SQL缓存关闭后的PreparedStatement，按放回的先后顺序淘汰
+    private final int preparedSQLCommandCacheSize;
+    private final LinkedHashMap<String, ClientPreparedSQLCommand> preparedSQLCommandCache;
+    private boolean preparedSQLCommandCacheClosed; // 受session锁保护
 
     ClientSession(TcpClientConnection tcpConnection, ConnectionInfo ci, String server, int id) {
         this.tcpConnection = tcpConnection;
@@ -69,6 +79,10 @@ public class ClientSession extends SessionBase implements LobLocalStorage.LobRea
 
         initTraceSystem(ci);
         trace = traceSystem == null ? Trace.NO_TRACE : traceSystem.getTrace(TraceModuleType.JDBC);
+        resultStreamCredits = ci.getProperty(ConnectionSetting.RESULT_STREAM_CREDITS, 0);
+        preparedSQLCommandCacheSize = ci.getProperty(ConnectionSetting.PREPARED_STATEMENT_CACHE_SIZE,
+                DEFAULT_PREPARED_STATEMENT_CACHE_SIZE);
+        preparedSQLCommandCache = preparedSQLCommandCacheSize > 0 ? new LinkedHashMap<>() : null;
     }
 
     @Override
@@ -163,9 +177,48 @@ public class ClientSession extends SessionBase implements LobLocalStorage.LobRea
     @Override
     public SQLCommand prepareSQLCommand(String sql, int fetchSize) {
         checkClosed();
+        if (preparedSQLCommandCache != null) {
+            ClientPreparedSQLCommand command;
+            // 同一个连接可能被多个线程共享，缓存的读写和close中的清理都用session做锁
+            synchronized (this) {
+                command = preparedSQLCommandCache.remove(sql);
+            }
+            if (command != null) {
+                command.setFetchSize(fetchSize);
+                return command;
+            }
+        }
         return new ClientPreparedSQLCommand(this, sql, fetchSize);
     }
 
+    /**
+     * 把关闭的命令放回缓存，返回false时调用者需要真正关闭它
+     */
+    public boolean cachePreparedSQLCommand(ClientPreparedSQLCommand command) {
+        if (preparedSQLCommandCache == null)
+            return false;
+        String sql = command.getSQL();
+        ClientPreparedSQLCommand eldest = null;
+        synchronized (this) {
+            // close已经清理过缓存时不能再放回去
+            if (preparedSQLCommandCacheClosed || isClosed())
+                return false;
+            // 同样的SQL同时打开了多个时只缓存一个
+            if (preparedSQLCommandCache.containsKey(sql))
+                return false;
+            if (preparedSQLCommandCache.size() >= preparedSQLCommandCacheSize) {
+                Iterator<ClientPreparedSQLCommand> it = preparedSQLCommandCache.values().iterator();
+                eldest = it.next();
+                it.remove();
+            }
+            preparedSQLCommandCache.put(sql, command);
+        }
+        // 发送关闭命令的网络操作不放在锁里面
+        if (eldest != null)
+            eldest.closeInternal();
+        return true;
+    }
+
     @Override
     public void close() {
         if (closed)
@@ -173,6 +226,11 @@ public class ClientSession extends SessionBase implements LobLocalStorage.LobRea
         try {
             RuntimeException closeError = null;
             synchronized (this) {
+                // 服务器端关闭session时会释放所有缓存的语句
+                if (preparedSQLCommandCache != null) {
+                    preparedSQLCommandCache.clear();
+                    preparedSQLCommandCacheClosed = true;
+                }
                 try {
                     send(new SessionClose());
                     tcpConnection.removeSession(id);
@@ -296,7 +354,32 @@ public class ClientSession extends SessionBase implements LobLocalStorage.LobRea
         return ac;
     }
 
+    // 用于流模式，同一个回调会收到多个响应包
+    public void send(Packet packet, int packetId, AsyncCallback<?> ac) {
+        traceOperation(packet.getType().name(), packetId);
+        ac.setPacket(packet);
+        tcpConnection.addAsyncCallback(packetId, ac);
+        try {
+            checkClosed();
+            TransferOutputStream out = tcpConnection.createTransferOutputStream(this);
+            out.writeRequestHeader(packetId, packet.getType());
+            packet.encode(out, getProtocolVersion());
+            out.flush();
+        } catch (Throwable e) {
+            removeAsyncCallback(packetId);
+            ac.setAsyncResult(e);
+        }
+    }
+
+    public int getResultStreamCredits() {
+        return resultStreamCredits;
+    }
+
     public void removeAsyncCallback(int packetId) {
         tcpConnection.removeAsyncCallback(packetId);
     }
+
+    public void discardAsyncCallback(int packetId) {
+        tcpConnection.discardAsyncCallback(packetId);
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.common.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * 一个指标只是对某个内部字段的引用，只有在导出时才读取它的值，
+ * 所以更新指标的代码路径上只有对普通字段的修改，不需要额外的开销。
+ */
+public class Metric {
+
+    public static enum Type {
+        COUNTER,
+        GAUGE
+    }
+
+    private final String name;
+    private final String labels;
+    private final String help;
+    private final Type type;
+    private final DoubleSupplier value;
+
+    Metric(String name, String labels, String help, Type type, DoubleSupplier value) {
+        this.name = name;
+        this.labels = labels == null ? "" : labels;
+        this.help = help;
+        this.type = type;
+        this.value = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 格式跟Prometheus一样，例如: handler="ScheduleService-0"，没有标签时是空串
+     */
+    public String getLabels() {
+        return labels;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public double getValue() {
+        return value.getAsDouble();
+    }
+
+    String getKey() {
+        return labels.isEmpty() ? name : name + "{" + labels + "}";
+    }
+
+    // 给JMX用的属性名，例如: lealone_scheduler_load.ScheduleService-0
+    String getAttributeName() {
+        if (labels.isEmpty())
+            return name;
+        StringBuilder buff = new StringBuilder(name);
+        for (String label : labels.split(",")) {
+            int pos = label.indexOf('=');
+            buff.append('.').append(label.substring(pos + 1).replace("\"", ""));
+        }
+        return buff.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getKey() + " " + getValue();
+    }
+}
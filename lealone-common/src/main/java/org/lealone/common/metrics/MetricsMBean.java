@@ -0,0 +1,77 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.common.metrics;
+
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+
+/**
+ * 把注册表中的每个指标都当成一个只读属性，每次访问时都重新读取注册表，所以动态加入的指标也能看到。
+ */
+class MetricsMBean implements DynamicMBean {
+
+    private Metric getMetric(String attribute) {
+        for (Metric m : MetricsRegistry.getMetrics()) {
+            if (m.getAttributeName().equals(attribute))
+                return m;
+        }
+        return null;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Metric m = getMetric(attribute);
+        if (m == null)
+            throw new AttributeNotFoundException(attribute);
+        return MetricsRegistry.getValue(m);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Read only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Metric m = getMetric(attribute);
+            if (m != null)
+                list.add(new Attribute(attribute, MetricsRegistry.getValue(m)));
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<Metric> metrics = MetricsRegistry.getMetrics();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[metrics.size()];
+        for (int i = 0; i < attributes.length; i++) {
+            Metric m = metrics.get(i);
+            attributes[i] = new MBeanAttributeInfo(m.getAttributeName(), "double", m.getHelp(), true,
+                    false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "Lealone metrics", attributes, null,
+                new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.common.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.lealone.common.logging.Logger;
+import org.lealone.common.logging.LoggerFactory;
+
+/**
+ * 所有内部指标的注册表，指标可以通过JMX(org.lealone:type=Metrics)和Prometheus文本格式导出。
+ *
+ * 指标名会自动加上lealone_前缀，按名称排序，同名的指标在导出时排在一起。
+ */
+public class MetricsRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    public static final String PREFIX = "lealone_";
+    public static final String MBEAN_NAME = "org.lealone:type=Metrics";
+
+    private static final ConcurrentSkipListMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    private static ObjectName mbeanName;
+
+    private MetricsRegistry() {
+    }
+
+    public static Metric registerCounter(String name, String labels, String help, DoubleSupplier value) {
+        return register(new Metric(PREFIX + name, labels, help, Metric.Type.COUNTER, value));
+    }
+
+    public static Metric registerGauge(String name, String labels, String help, DoubleSupplier value) {
+        return register(new Metric(PREFIX + name, labels, help, Metric.Type.GAUGE, value));
+    }
+
+    // 同名同标签的指标会替换掉旧的
+    private static Metric register(Metric metric) {
+        metrics.put(metric.getKey(), metric);
+        return metric;
+    }
+
+    public static void unregister(Metric metric) {
+        metrics.remove(metric.getKey(), metric);
+    }
+
+    public static void unregister(Collection<Metric> list) {
+        for (Metric m : list)
+            unregister(m);
+    }
+
+    public static List<Metric> getMetrics() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    public static Metric getMetric(String name, String labels) {
+        String key = PREFIX + name;
+        if (labels != null && !labels.isEmpty())
+            key += "{" + labels + "}";
+        return metrics.get(key);
+    }
+
+    /**
+     * 按Prometheus的文本格式(version 0.0.4)输出所有指标。
+     */
+    public static String toPrometheusText() {
+        StringBuilder buff = new StringBuilder();
+        String lastName = null;
+        for (Metric m : metrics.values()) {
+            if (!m.getName().equals(lastName)) {
+                lastName = m.getName();
+                buff.append("# HELP ").append(lastName).append(' ').append(m.getHelp()).append('\n');
+                buff.append("# TYPE ").append(lastName).append(' ')
+                        .append(m.getType().name().toLowerCase()).append('\n');
+            }
+            buff.append(m.getKey()).append(' ');
+            appendValue(buff, getValue(m));
+            buff.append('\n');
+        }
+        return buff.toString();
+    }
+
+    static double getValue(Metric m) {
+        try {
+            return m.getValue();
+        } catch (Throwable t) {
+            // 对应的组件可能已经关闭了
+            return Double.NaN;
+        }
+    }
+
+    private static void appendValue(StringBuilder buff, double v) {
+        if (Double.isNaN(v))
+            buff.append("NaN");
+        else if (Double.isInfinite(v))
+            buff.append(v > 0 ? "+Inf" : "-Inf");
+        else if (v == (long) v)
+            buff.append((long) v);
+        else
+            buff.append(v);
+    }
+
+    public static synchronized void registerMBean() {
+        if (mbeanName != null)
+            return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(new MetricsMBean(), name);
+            mbeanName = name;
+        } catch (Throwable t) {
+            logger.warn("Failed to register metrics mbean", t);
+        }
+    }
+
+    public static synchronized void unregisterMBean() {
+        if (mbeanName == null)
+            return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(mbeanName))
+                server.unregisterMBean(mbeanName);
+        } catch (Throwable t) {
+            logger.warn("Failed to unregister metrics mbean", t);
+        }
+        mbeanName = null;
+    }
+}
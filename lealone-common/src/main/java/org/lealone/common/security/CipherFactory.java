@@ -27,7 +27,7 @@ public class CipherFactory {
         if ("XTEA".equalsIgnoreCase(algorithm)) {
             return new XTEA();
         } else if ("AES".equalsIgnoreCase(algorithm)) {
-            return new AES();
+            return JceAES.create();
         } else if ("FOG".equalsIgnoreCase(algorithm)) {
             return new Fog();
         }
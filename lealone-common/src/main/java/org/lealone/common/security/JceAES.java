@@ -0,0 +1,88 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.common.security;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.lealone.common.exceptions.DbException;
+
+/**
+ * 基于JDK的javax.crypto实现的AES，跟纯java实现的AES结果完全一样，
+ * 但是JDK在支持AES-NI的CPU上会使用硬件指令，速度快很多。
+ *
+ * 跟AES一样一次可以加密多个16字节的块(ECB模式)，但是实例不是线程安全的。
+ */
+public class JceAES implements BlockCipher {
+
+    private static final String TRANSFORMATION = "AES/ECB/NoPadding";
+    private static final boolean AVAILABLE = checkAvailable();
+
+    private static boolean checkAvailable() {
+        try {
+            Cipher.getInstance(TRANSFORMATION);
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 有些精简的JRE没有AES的实现，此时只能使用纯java实现的AES
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * 优先使用JDK的实现
+     */
+    public static BlockCipher create() {
+        return AVAILABLE ? new JceAES() : new AES();
+    }
+
+    private Cipher encryptCipher;
+    private Cipher decryptCipher;
+
+    @Override
+    public void setKey(byte[] key) {
+        SecretKeySpec keySpec = new SecretKeySpec(key, 0, getKeyLength(), "AES");
+        try {
+            encryptCipher = Cipher.getInstance(TRANSFORMATION);
+            encryptCipher.init(Cipher.ENCRYPT_MODE, keySpec);
+            decryptCipher = Cipher.getInstance(TRANSFORMATION);
+            decryptCipher.init(Cipher.DECRYPT_MODE, keySpec);
+        } catch (GeneralSecurityException e) {
+            throw DbException.convert(e);
+        }
+    }
+
+    @Override
+    public int getKeyLength() {
+        return 16;
+    }
+
+    @Override
+    public void encrypt(byte[] bytes, int off, int len) {
+        try {
+            // 输入和输出可以是同一个数组
+            encryptCipher.doFinal(bytes, off, len, bytes, off);
+        } catch (GeneralSecurityException e) {
+            throw DbException.convert(e);
+        }
+    }
+
+    @Override
+    public void decrypt(byte[] bytes, int off, int len) {
+        try {
+            decryptCipher.doFinal(bytes, off, len, bytes, off);
+        } catch (GeneralSecurityException e) {
+            throw DbException.convert(e);
+        }
+    }
+}
@@ -19,4 +19,13 @@ public enum ConnectionSetting {
 
     IS_SHARED,
     MAX_SHARED_SIZE,
+
+    // 大于0时，行数不确定的结果集使用流模式，值是服务器端最多可以提前推送的批数
+    RESULT_STREAM_CREDITS,
+
+    // 为true时协商使用TCP_PROTOCOL_VERSION_3，结果集的记录按列编码传输
+    COLUMNAR_RESULT,
+
+    // 每个连接在客户端最多缓存多少个关闭后可以复用的PreparedStatement，为0时不缓存
+    PREPARED_STATEMENT_CACHE_SIZE,
 }
@@ -54,6 +54,18 @@ public class Constants {
      */
     public static final int TCP_PROTOCOL_VERSION_1 = 1;
 
+    /**
+     * The TCP protocol version number 2.
+     * 支持把prepare和执行合并到一个协议包中
+     */
+    public static final int TCP_PROTOCOL_VERSION_2 = 2;
+
+    /**
+     * The TCP protocol version number 3.
+     * 结果集的记录可以按列编码
+     */
+    public static final int TCP_PROTOCOL_VERSION_3 = 3;
+
     /**
      * The min TCP protocol version number.
      */
@@ -62,12 +74,12 @@ public class Constants {
     /**
      * The max TCP protocol version number.
      */
-    public static final int TCP_PROTOCOL_VERSION_MAX = TCP_PROTOCOL_VERSION_1;
+    public static final int TCP_PROTOCOL_VERSION_MAX = TCP_PROTOCOL_VERSION_3;
 
     /**
      * The current TCP protocol version number.
      */
-    public static final int TCP_PROTOCOL_VERSION_CURRENT = TCP_PROTOCOL_VERSION_1;
+    public static final int TCP_PROTOCOL_VERSION_CURRENT = TCP_PROTOCOL_VERSION_3;
 
     /**
      * The number of milliseconds after which to check for a deadlock if locking
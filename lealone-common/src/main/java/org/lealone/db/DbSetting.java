@@ -22,6 +22,7 @@ public enum DbSetting {
     LARGE_RESULT_BUFFER_SIZE,
     // LARGE_TRANSACTIONS, //暂时用不到
     // MAX_COMPACT_TIME, //暂时用不到
+    MATERIALIZED_VIEW_MAX_PENDING_CHANGES,
     MAX_QUERY_TIMEOUT,
     OPTIMIZE_DISTINCT,
     OPTIMIZE_EVALUATABLE_SUBQUERIES,
@@ -30,6 +31,7 @@ public enum DbSetting {
     OPTIMIZE_IN_SELECT,
     OPTIMIZE_IS_NULL,
     OPTIMIZE_OR,
+    OPTIMIZE_SUBQUERY_HASH_JOIN,
     OPTIMIZE_TWO_EQUALS,
     QUERY_CACHE_SIZE,
     RECOMPILE_ALWAYS,
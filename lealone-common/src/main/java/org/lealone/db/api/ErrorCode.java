@@ -1923,6 +1923,19 @@ public class ErrorCode {
 
     public static final int NETWORK_TIMEOUT_1 = 90147;
 
+    /**
+     * The error with code <code>90148</code> is thrown when
+     * trying to insert a row into a partitioned table and no partition
+     * accepts the value of the partition column.
+     */
+    public static final int NO_PARTITION_FOR_VALUE_2 = 90148;
+
+    /**
+     * The error with code <code>90149</code> is thrown when
+     * trying to drop or truncate a partition that does not exist.
+     */
+    public static final int PARTITION_NOT_FOUND_1 = 90149;
+
     // next are 90056, 90110, 90122, 90143
 
     private ErrorCode() {
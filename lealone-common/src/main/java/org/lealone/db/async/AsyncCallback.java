@@ -96,6 +96,11 @@ public class AsyncCallback<T> implements Future<T> {
     protected void runInternal(NetInputStream in) throws Exception {
     }
 
+    // 流模式的回调会收到多个响应包，不能在收到第一个响应包时就删除，由回调自己负责删除
+    public boolean isStreaming() {
+        return false;
+    }
+
     @Override
     public T get() {
         long timeoutMillis = networkTimeout > 0 ? networkTimeout : -1;
@@ -26,6 +26,16 @@ public interface Result extends AutoCloseable {
      */
     Value[] currentRow();
 
+    /**
+     * Get a value of the current row.
+     *
+     * @param i the column index (0,1,...)
+     * @return the value
+     */
+    default Value currentValue(int i) {
+        return currentRow()[i];
+    }
+
     /**
      * Go to the next row.
      *
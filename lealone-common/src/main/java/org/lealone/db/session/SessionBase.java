@@ -28,6 +28,7 @@ public abstract class SessionBase implements Session {
     protected boolean closed;
     protected RunMode runMode;
     protected TraceSystem traceSystem;
+    protected int protocolVersion = Constants.TCP_PROTOCOL_VERSION_1;
 
     @Override
     public boolean isAutoCommit() {
@@ -65,6 +66,16 @@ public abstract class SessionBase implements Session {
         }
     }
 
+    @Override
+    public void setProtocolVersion(int version) {
+        this.protocolVersion = version;
+    }
+
+    @Override
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
     @Override
     public void setRunMode(RunMode runMode) {
         this.runMode = runMode;
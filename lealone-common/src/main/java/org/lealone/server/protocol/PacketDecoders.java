@@ -15,8 +15,10 @@ import org.lealone.server.protocol.ps.PreparedStatementGetMetaData;
 import org.lealone.server.protocol.ps.PreparedStatementGetMetaDataAck;
 import org.lealone.server.protocol.ps.PreparedStatementPrepare;
 import org.lealone.server.protocol.ps.PreparedStatementPrepareAck;
+import org.lealone.server.protocol.ps.PreparedStatementPrepareQuery;
 import org.lealone.server.protocol.ps.PreparedStatementPrepareReadParams;
 import org.lealone.server.protocol.ps.PreparedStatementPrepareReadParamsAck;
+import org.lealone.server.protocol.ps.PreparedStatementPrepareUpdate;
 import org.lealone.server.protocol.ps.PreparedStatementQuery;
 import org.lealone.server.protocol.ps.PreparedStatementUpdate;
 import org.lealone.server.protocol.result.ResultChangeId;
@@ -24,6 +26,9 @@ import org.lealone.server.protocol.result.ResultClose;
 import org.lealone.server.protocol.result.ResultFetchRows;
 import org.lealone.server.protocol.result.ResultFetchRowsAck;
 import org.lealone.server.protocol.result.ResultReset;
+import org.lealone.server.protocol.result.ResultStream;
+import org.lealone.server.protocol.result.ResultStreamCredit;
+import org.lealone.server.protocol.result.ResultStreamRows;
 import org.lealone.server.protocol.session.SessionCancelStatement;
 import org.lealone.server.protocol.session.SessionClose;
 import org.lealone.server.protocol.session.SessionInit;
@@ -72,6 +77,10 @@ public class PacketDecoders {
         register(PacketType.PREPARED_STATEMENT_GET_META_DATA_ACK,
                 PreparedStatementGetMetaDataAck.decoder);
         register(PacketType.PREPARED_STATEMENT_CLOSE, PreparedStatementClose.decoder);
+        register(PacketType.PREPARED_STATEMENT_PREPARE_QUERY,
+                PreparedStatementPrepareQuery.decoder);
+        register(PacketType.PREPARED_STATEMENT_PREPARE_UPDATE,
+                PreparedStatementPrepareUpdate.decoder);
 
         register(PacketType.STATEMENT_QUERY, StatementQuery.decoder);
         register(PacketType.STATEMENT_QUERY_ACK, StatementQueryAck.decoder);
@@ -87,6 +96,9 @@ public class PacketDecoders {
         register(PacketType.RESULT_CHANGE_ID, ResultChangeId.decoder);
         register(PacketType.RESULT_RESET, ResultReset.decoder);
         register(PacketType.RESULT_CLOSE, ResultClose.decoder);
+        register(PacketType.RESULT_STREAM, ResultStream.decoder);
+        register(PacketType.RESULT_STREAM_ROWS, ResultStreamRows.decoder);
+        register(PacketType.RESULT_STREAM_CREDIT, ResultStreamCredit.decoder);
 
         register(PacketType.LOB_READ, LobRead.decoder);
         register(PacketType.LOB_READ_ACK, LobReadAck.decoder);
@@ -26,6 +26,8 @@ public enum PacketType {
     PREPARED_STATEMENT_GET_META_DATA(18),
     PREPARED_STATEMENT_GET_META_DATA_ACK(19),
     PREPARED_STATEMENT_CLOSE(20),
+    PREPARED_STATEMENT_PREPARE_QUERY(21), // prepare后直接执行，ACK直接用STATEMENT_QUERY_ACK
+    PREPARED_STATEMENT_PREPARE_UPDATE(22), // ACK直接用STATEMENT_UPDATE_ACK
 
     STATEMENT_QUERY(30),
     STATEMENT_QUERY_ACK(31),
@@ -41,6 +43,9 @@ public enum PacketType {
     RESULT_CHANGE_ID(52),
     RESULT_RESET(53),
     RESULT_CLOSE(54),
+    RESULT_STREAM(55),
+    RESULT_STREAM_ROWS(56),
+    RESULT_STREAM_CREDIT(57),
 
     LOB_READ(60),
     LOB_READ_ACK(61),
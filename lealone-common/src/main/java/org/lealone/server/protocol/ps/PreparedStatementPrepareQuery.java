@@ -0,0 +1,53 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.server.protocol.ps;
+
+import java.io.IOException;
+
+import org.lealone.db.value.Value;
+import org.lealone.net.NetInputStream;
+import org.lealone.net.NetOutputStream;
+import org.lealone.server.protocol.PacketDecoder;
+import org.lealone.server.protocol.PacketType;
+
+// 在一个协议包中完成prepare和执行，服务器端用客户端指定的commandId缓存prepare好的语句，
+// 之后的执行直接用PreparedStatementQuery，不需要再单独发一次prepare请求
+public class PreparedStatementPrepareQuery extends PreparedStatementQuery {
+
+    public final String sql;
+
+    public PreparedStatementPrepareQuery(int resultId, int maxRows, int fetchSize, boolean scrollable,
+            int commandId, Value[] parameters, String sql) {
+        super(resultId, maxRows, fetchSize, scrollable, commandId, parameters);
+        this.sql = sql;
+    }
+
+    public PreparedStatementPrepareQuery(NetInputStream in, int version) throws IOException {
+        super(in, version);
+        sql = in.readString();
+    }
+
+    @Override
+    public PacketType getType() {
+        return PacketType.PREPARED_STATEMENT_PREPARE_QUERY;
+    }
+
+    @Override
+    public void encode(NetOutputStream out, int version) throws IOException {
+        super.encode(out, version);
+        out.writeString(sql);
+    }
+
+    public static final Decoder decoder = new Decoder();
+
+    private static class Decoder implements PacketDecoder<PreparedStatementPrepareQuery> {
+        @Override
+        public PreparedStatementPrepareQuery decode(NetInputStream in, int version)
+                throws IOException {
+            return new PreparedStatementPrepareQuery(in, version);
+        }
+    }
+}
@@ -6,14 +6,10 @@
 package org.lealone.server.protocol.ps;
 
 import java.io.IOException;
-import java.sql.ResultSetMetaData;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.lealone.common.exceptions.DbException;
 import org.lealone.db.CommandParameter;
-import org.lealone.db.api.ErrorCode;
-import org.lealone.db.value.Value;
 import org.lealone.net.NetInputStream;
 import org.lealone.net.NetOutputStream;
 import org.lealone.server.protocol.AckPacket;
@@ -75,88 +71,4 @@ public class PreparedStatementPrepareReadParamsAck implements AckPacket {
             return new PreparedStatementPrepareReadParamsAck(isQuery, params);
         }
     }
-
-    /**
-     * A client side parameter.
-     */
-    private static class ClientCommandParameter implements CommandParameter {
-
-        private final int index;
-        private Value value;
-        private int dataType = Value.UNKNOWN;
-        private long precision;
-        private int scale;
-        private int nullable = ResultSetMetaData.columnNullableUnknown;
-
-        public ClientCommandParameter(int index) {
-            this.index = index;
-        }
-
-        @Override
-        public int getIndex() {
-            return index;
-        }
-
-        @Override
-        public void setValue(Value newValue, boolean closeOld) {
-            if (closeOld && value != null) {
-                value.close();
-            }
-            value = newValue;
-        }
-
-        @Override
-        public void setValue(Value value) {
-            this.value = value;
-        }
-
-        @Override
-        public Value getValue() {
-            return value;
-        }
-
-        @Override
-        public void checkSet() {
-            if (value == null) {
-                throw DbException.get(ErrorCode.PARAMETER_NOT_SET_1, "#" + (index + 1));
-            }
-        }
-
-        @Override
-        public boolean isValueSet() {
-            return value != null;
-        }
-
-        @Override
-        public int getType() {
-            return value == null ? dataType : value.getType();
-        }
-
-        @Override
-        public long getPrecision() {
-            return value == null ? precision : value.getPrecision();
-        }
-
-        @Override
-        public int getScale() {
-            return value == null ? scale : value.getScale();
-        }
-
-        @Override
-        public int getNullable() {
-            return nullable;
-        }
-
-        /**
-         * Read the parameter meta data from the out object.
-         *
-         * @param in the NetInputStream
-         */
-        public void readMetaData(NetInputStream in) throws IOException {
-            dataType = in.readInt();
-            precision = in.readLong();
-            scale = in.readInt();
-            nullable = in.readInt();
-        }
-    }
 }
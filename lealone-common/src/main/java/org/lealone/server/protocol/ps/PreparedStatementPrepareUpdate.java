@@ -0,0 +1,51 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.server.protocol.ps;
+
+import java.io.IOException;
+
+import org.lealone.db.value.Value;
+import org.lealone.net.NetInputStream;
+import org.lealone.net.NetOutputStream;
+import org.lealone.server.protocol.PacketDecoder;
+import org.lealone.server.protocol.PacketType;
+
+// 跟PreparedStatementPrepareQuery一样，prepare后直接执行更新
+public class PreparedStatementPrepareUpdate extends PreparedStatementUpdate {
+
+    public final String sql;
+
+    public PreparedStatementPrepareUpdate(int commandId, Value[] parameters, String sql) {
+        super(commandId, parameters);
+        this.sql = sql;
+    }
+
+    public PreparedStatementPrepareUpdate(NetInputStream in, int version) throws IOException {
+        super(in, version);
+        sql = in.readString();
+    }
+
+    @Override
+    public PacketType getType() {
+        return PacketType.PREPARED_STATEMENT_PREPARE_UPDATE;
+    }
+
+    @Override
+    public void encode(NetOutputStream out, int version) throws IOException {
+        super.encode(out, version);
+        out.writeString(sql);
+    }
+
+    public static final Decoder decoder = new Decoder();
+
+    private static class Decoder implements PacketDecoder<PreparedStatementPrepareUpdate> {
+        @Override
+        public PreparedStatementPrepareUpdate decode(NetInputStream in, int version)
+                throws IOException {
+            return new PreparedStatementPrepareUpdate(in, version);
+        }
+    }
+}
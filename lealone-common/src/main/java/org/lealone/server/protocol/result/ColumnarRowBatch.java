@@ -0,0 +1,368 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.server.protocol.result;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lealone.common.compress.CompressLZF;
+import org.lealone.common.exceptions.DbException;
+import org.lealone.common.util.DataUtils;
+import org.lealone.db.DataBuffer;
+import org.lealone.db.result.Result;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueByte;
+import org.lealone.db.value.ValueInt;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
+import org.lealone.db.value.ValueShort;
+import org.lealone.db.value.ValueString;
+import org.lealone.db.value.ValueStringFixed;
+import org.lealone.db.value.ValueStringIgnoreCase;
+import org.lealone.net.NetInputStream;
+import org.lealone.net.NetOutputStream;
+
+/**
+ * 按列编码的一批记录，协议版本TCP_PROTOCOL_VERSION_3及以上才使用。
+ *
+ * 每批记录先写一个int表示格式，FORMAT_ROW还是原来的按行格式，
+ * FORMAT_COLUMNAR之后是: 行数、是否结束、是否压缩、原始长度、列块字节。
+ *
+ * 列块中每列以长度开头，客户端只在第一次访问某一列时才解码这一列。
+ * 每列的格式: 编码方式、null的个数和位图(不全是null也不全非null时才有)，然后是非null的值:
+ * 整数类型用zigzag差值变长编码，重复多的字符串用字典编码，其他类型每个值单独编码。
+ */
+public class ColumnarRowBatch {
+
+    public static final int FORMAT_ROW = 0;
+    public static final int FORMAT_COLUMNAR = 1;
+
+    private static final int ALL_NULL = 0;
+    private static final int DELTA = 1;
+    private static final int DICTIONARY = 2;
+    private static final int STRING = 3;
+    private static final int GENERIC = 4;
+
+    // 超过这个长度的列块才尝试压缩
+    private static final int MIN_COMPRESS_LENGTH = 1024;
+
+    private final int rowCount;
+    private final boolean end;
+    private final ByteBuffer block;
+    private final int[] columnOffsets;
+    private final Value[][] columns;
+
+    public ColumnarRowBatch(NetInputStream in, int columnCount) throws IOException {
+        rowCount = in.readInt();
+        end = in.readBoolean();
+        boolean compressed = in.readBoolean();
+        int length = in.readInt();
+        byte[] bytes = in.readBytes();
+        if (compressed) {
+            byte[] expanded = new byte[length];
+            new CompressLZF().expand(bytes, 0, bytes.length, expanded, 0, length);
+            bytes = expanded;
+        }
+        block = ByteBuffer.wrap(bytes);
+        columnOffsets = new int[columnCount];
+        columns = new Value[columnCount][];
+        for (int i = 0, pos = 0; i < columnCount; i++) {
+            block.position(pos);
+            int len = DataUtils.readVarInt(block);
+            columnOffsets[i] = block.position();
+            pos = columnOffsets[i] + len;
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isEnd() {
+        return end;
+    }
+
+    public Value getValue(int row, int column) {
+        Value[] values = columns[column];
+        if (values == null) {
+            values = columns[column] = readColumn(column);
+        }
+        return values[row];
+    }
+
+    public Value[] getRow(int row) {
+        Value[] values = new Value[columns.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValue(row, i);
+        }
+        return values;
+    }
+
+    private Value[] readColumn(int column) {
+        ByteBuffer buff = block.duplicate();
+        buff.position(columnOffsets[column]);
+        Value[] values = new Value[rowCount];
+        int mode = DataUtils.readVarInt(buff);
+        if (mode == ALL_NULL) {
+            for (int i = 0; i < rowCount; i++) {
+                values[i] = ValueNull.INSTANCE;
+            }
+            return values;
+        }
+        int type = buff.get();
+        byte[] nulls = null;
+        int nullCount = DataUtils.readVarInt(buff);
+        if (nullCount > 0) {
+            nulls = new byte[(rowCount + 7) / 8];
+            buff.get(nulls);
+        }
+        Value[] dictionary = null;
+        if (mode == DICTIONARY) {
+            dictionary = new Value[DataUtils.readVarInt(buff)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = getString(type, readString(buff));
+            }
+        }
+        long last = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (nulls != null && (nulls[i >> 3] & (1 << (i & 7))) != 0) {
+                values[i] = ValueNull.INSTANCE;
+                continue;
+            }
+            switch (mode) {
+            case DELTA:
+                long delta = DataUtils.readVarLong(buff);
+                last += (delta >>> 1) ^ -(delta & 1);
+                values[i] = getNumber(type, last);
+                break;
+            case DICTIONARY:
+                values[i] = dictionary[DataUtils.readVarInt(buff)];
+                break;
+            case STRING:
+                values[i] = getString(type, readString(buff));
+                break;
+            default:
+                values[i] = DataBuffer.readValue(buff);
+            }
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer buff) {
+        return DataUtils.readString(buff, DataUtils.readVarInt(buff));
+    }
+
+    private static Value getNumber(int type, long v) {
+        switch (type) {
+        case Value.BYTE:
+            return ValueByte.get((byte) v);
+        case Value.SHORT:
+            return ValueShort.get((short) v);
+        case Value.INT:
+            return ValueInt.get((int) v);
+        default:
+            return ValueLong.get(v);
+        }
+    }
+
+    private static Value getString(int type, String s) {
+        switch (type) {
+        case Value.STRING_IGNORECASE:
+            return ValueStringIgnoreCase.get(s);
+        case Value.STRING_FIXED:
+            return ValueStringFixed.get(s);
+        default:
+            return ValueString.get(s);
+        }
+    }
+
+    // 返回true表示结果集已经没有记录了
+    public static boolean write(NetOutputStream out, Result result, int count) throws IOException {
+        int columnCount = result.getVisibleColumnCount();
+        ArrayList<Value[]> rows = new ArrayList<>(Math.min(count, 1024));
+        boolean end = false;
+        Throwable error = null;
+        try {
+            for (int i = 0; i < count; i++) {
+                if (result.next()) {
+                    rows.add(result.currentRow());
+                } else {
+                    end = true;
+                    break;
+                }
+            }
+        } catch (Throwable e) {
+            // 跟按行格式一样，已经取到的记录加上结束标记，后面再跟一个异常包
+            end = true;
+            error = e;
+        }
+        DataBuffer buff = null;
+        if (!rows.isEmpty()) {
+            buff = DataBuffer.create(null, 1024, false);
+            for (int i = 0; i < columnCount; i++) {
+                if (!writeColumn(buff, rows, i)) {
+                    buff = null;
+                    break;
+                }
+            }
+        }
+        if (buff == null) {
+            out.writeInt(FORMAT_ROW);
+            for (Value[] row : rows) {
+                out.writeBoolean(true);
+                for (int i = 0; i < columnCount; i++) {
+                    out.writeValue(row[i]);
+                }
+            }
+            if (end)
+                out.writeBoolean(false);
+        } else {
+            int length = buff.length();
+            byte[] bytes = buff.getBytes();
+            boolean compressed = false;
+            if (length >= MIN_COMPRESS_LENGTH) {
+                byte[] compressedBytes = new byte[length * 2];
+                int len = new CompressLZF().compress(bytes, length, compressedBytes, 0);
+                if (len < length) {
+                    bytes = compressedBytes;
+                    length = len;
+                    compressed = true;
+                }
+            }
+            out.writeInt(FORMAT_COLUMNAR);
+            out.writeInt(rows.size());
+            out.writeBoolean(end);
+            out.writeBoolean(compressed);
+            out.writeInt(buff.length());
+            if (bytes.length != length) {
+                byte[] b = new byte[length];
+                System.arraycopy(bytes, 0, b, 0, length);
+                bytes = b;
+            }
+            out.writeBytes(bytes);
+        }
+        if (error != null)
+            throw DbException.convert(error);
+        return end;
+    }
+
+    // 返回false表示这一列不适合按列编码，整批记录改用按行格式
+    private static boolean writeColumn(DataBuffer buff, ArrayList<Value[]> rows, int column) {
+        int rowCount = rows.size();
+        int type = Value.NULL;
+        int nullCount = 0;
+        boolean mixed = false;
+        for (Value[] row : rows) {
+            Value v = row[column];
+            int t = v.getType();
+            switch (t) {
+            case Value.NULL:
+                nullCount++;
+                continue;
+            case Value.BLOB:
+            case Value.CLOB:
+            case Value.JAVA_OBJECT:
+            case Value.ARRAY:
+            case Value.RESULT_SET:
+                // 这些类型需要按行格式那样特殊处理(比如lob的hmac)
+                return false;
+            }
+            if (type == Value.NULL)
+                type = t;
+            else if (type != t)
+                mixed = true;
+        }
+        DataBuffer col = DataBuffer.create(null, 256, false);
+        if (nullCount == rowCount) {
+            col.putVarInt(ALL_NULL);
+        } else {
+            HashMap<String, Integer> dictionary = null;
+            int mode;
+            if (mixed) {
+                mode = GENERIC;
+            } else {
+                switch (type) {
+                case Value.BYTE:
+                case Value.SHORT:
+                case Value.INT:
+                case Value.LONG:
+                    mode = DELTA;
+                    break;
+                case Value.STRING:
+                case Value.STRING_IGNORECASE:
+                case Value.STRING_FIXED:
+                    dictionary = new HashMap<>();
+                    int limit = (rowCount - nullCount) / 2;
+                    for (Value[] row : rows) {
+                        Value v = row[column];
+                        if (v != ValueNull.INSTANCE) {
+                            dictionary.putIfAbsent(v.getString(), dictionary.size());
+                            if (dictionary.size() > limit)
+                                break;
+                        }
+                    }
+                    if (dictionary.size() > limit) {
+                        dictionary = null;
+                        mode = STRING;
+                    } else {
+                        mode = DICTIONARY;
+                    }
+                    break;
+                default:
+                    mode = GENERIC;
+                }
+            }
+            col.putVarInt(mode).put((byte) type).putVarInt(nullCount);
+            if (nullCount > 0) {
+                byte[] nulls = new byte[(rowCount + 7) / 8];
+                for (int i = 0; i < rowCount; i++) {
+                    if (rows.get(i)[column] == ValueNull.INSTANCE)
+                        nulls[i >> 3] |= 1 << (i & 7);
+                }
+                col.put(nulls);
+            }
+            if (dictionary != null) {
+                String[] strings = new String[dictionary.size()];
+                for (Map.Entry<String, Integer> e : dictionary.entrySet()) {
+                    strings[e.getValue()] = e.getKey();
+                }
+                col.putVarInt(strings.length);
+                for (String s : strings) {
+                    col.putVarInt(s.length()).putStringData(s, s.length());
+                }
+            }
+            long last = 0;
+            for (Value[] row : rows) {
+                Value v = row[column];
+                if (v == ValueNull.INSTANCE)
+                    continue;
+                switch (mode) {
+                case DELTA:
+                    long x = v.getLong();
+                    long delta = x - last;
+                    last = x;
+                    col.putVarLong((delta << 1) ^ (delta >> 63));
+                    break;
+                case DICTIONARY:
+                    col.putVarInt(dictionary.get(v.getString()));
+                    break;
+                case STRING:
+                    String s = v.getString();
+                    col.putVarInt(s.length()).putStringData(s, s.length());
+                    break;
+                default:
+                    col.writeValue(v);
+                }
+            }
+        }
+        buff.putVarInt(col.length());
+        buff.put(col.getBytes(), 0, col.length());
+        return true;
+    }
+}
@@ -8,6 +8,7 @@ package org.lealone.server.protocol.result;
 import java.io.IOException;
 
 import org.lealone.common.exceptions.DbException;
+import org.lealone.db.Constants;
 import org.lealone.db.result.Result;
 import org.lealone.db.value.Value;
 import org.lealone.net.NetInputStream;
@@ -41,7 +42,7 @@ public class ResultFetchRowsAck implements AckPacket {
 
     @Override
     public void encode(NetOutputStream out, int version) throws IOException {
-        writeRow(out, result, count);
+        writeRow(out, result, count, version);
     }
 
     public static final Decoder decoder = new Decoder();
@@ -53,7 +54,11 @@ public class ResultFetchRowsAck implements AckPacket {
         }
     }
 
-    public static void writeRow(NetOutputStream out, Result result, int count) throws IOException {
+    // 返回true表示结果集已经没有记录了
+    public static boolean writeRow(NetOutputStream out, Result result, int count, int version)
+            throws IOException {
+        if (version >= Constants.TCP_PROTOCOL_VERSION_3)
+            return ColumnarRowBatch.write(out, result, count);
         try {
             int visibleColumnCount = result.getVisibleColumnCount();
             for (int i = 0; i < count; i++) {
@@ -65,9 +70,10 @@ public class ResultFetchRowsAck implements AckPacket {
                     }
                 } else {
                     out.writeBoolean(false);
-                    break;
+                    return true;
                 }
             }
+            return false;
         } catch (Throwable e) {
             // 如果取结果集的下一行记录时发生了异常，
             // 结果集包必须加一个结束标记，结果集包后面跟一个异常包。
@@ -0,0 +1,53 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.server.protocol.result;
+
+import java.io.IOException;
+
+import org.lealone.net.NetInputStream;
+import org.lealone.net.NetOutputStream;
+import org.lealone.server.protocol.Packet;
+import org.lealone.server.protocol.PacketDecoder;
+import org.lealone.server.protocol.PacketType;
+
+// 把结果集切换到流模式，服务器端在credits用完前会不断用同一个packetId推送RESULT_STREAM_ROWS，
+// 不需要客户端再发RESULT_FETCH_ROWS，客户端每消费完一批再通过RESULT_STREAM_CREDIT补充credits
+public class ResultStream implements Packet {
+
+    public final int resultId;
+    public final int fetchSize;
+    public final int credits;
+
+    public ResultStream(int resultId, int fetchSize, int credits) {
+        this.resultId = resultId;
+        this.fetchSize = fetchSize;
+        this.credits = credits;
+    }
+
+    @Override
+    public PacketType getType() {
+        return PacketType.RESULT_STREAM;
+    }
+
+    @Override
+    public PacketType getAckType() {
+        return PacketType.RESULT_STREAM_ROWS;
+    }
+
+    @Override
+    public void encode(NetOutputStream out, int version) throws IOException {
+        out.writeInt(resultId).writeInt(fetchSize).writeInt(credits);
+    }
+
+    public static final Decoder decoder = new Decoder();
+
+    private static class Decoder implements PacketDecoder<ResultStream> {
+        @Override
+        public ResultStream decode(NetInputStream in, int version) throws IOException {
+            return new ResultStream(in.readInt(), in.readInt(), in.readInt());
+        }
+    }
+}
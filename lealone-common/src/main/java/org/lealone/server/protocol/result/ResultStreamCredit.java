@@ -0,0 +1,44 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.server.protocol.result;
+
+import java.io.IOException;
+
+import org.lealone.net.NetInputStream;
+import org.lealone.net.NetOutputStream;
+import org.lealone.server.protocol.NoAckPacket;
+import org.lealone.server.protocol.PacketDecoder;
+import org.lealone.server.protocol.PacketType;
+
+public class ResultStreamCredit implements NoAckPacket {
+
+    public final int resultId;
+    public final int credits;
+
+    public ResultStreamCredit(int resultId, int credits) {
+        this.resultId = resultId;
+        this.credits = credits;
+    }
+
+    @Override
+    public PacketType getType() {
+        return PacketType.RESULT_STREAM_CREDIT;
+    }
+
+    @Override
+    public void encode(NetOutputStream out, int version) throws IOException {
+        out.writeInt(resultId).writeInt(credits);
+    }
+
+    public static final Decoder decoder = new Decoder();
+
+    private static class Decoder implements PacketDecoder<ResultStreamCredit> {
+        @Override
+        public ResultStreamCredit decode(NetInputStream in, int version) throws IOException {
+            return new ResultStreamCredit(in.readInt(), in.readInt());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.server.protocol.result;
+
+import java.io.IOException;
+
+import org.lealone.db.result.Result;
+import org.lealone.net.NetInputStream;
+import org.lealone.net.NetOutputStream;
+import org.lealone.server.protocol.AckPacket;
+import org.lealone.server.protocol.PacketDecoder;
+import org.lealone.server.protocol.PacketType;
+
+// 行的格式跟RESULT_FETCH_ROWS_ACK一样，最后一批带结束标记
+public class ResultStreamRows implements AckPacket {
+
+    public final NetInputStream in;
+    public final Result result;
+    public final int count;
+    private boolean end;
+
+    public ResultStreamRows(NetInputStream in) {
+        this.in = in;
+        this.result = null;
+        this.count = 0;
+    }
+
+    public ResultStreamRows(Result result, int count) {
+        this.in = null;
+        this.result = result;
+        this.count = count;
+    }
+
+    @Override
+    public PacketType getType() {
+        return PacketType.RESULT_STREAM_ROWS;
+    }
+
+    @Override
+    public void encode(NetOutputStream out, int version) throws IOException {
+        end = true; // 出现异常时也结束推送
+        end = ResultFetchRowsAck.writeRow(out, result, count, version);
+    }
+
+    // 只在服务器端编码之后才有意义
+    public boolean isEnd() {
+        return end;
+    }
+
+    public static final Decoder decoder = new Decoder();
+
+    private static class Decoder implements PacketDecoder<ResultStreamRows> {
+        @Override
+        public ResultStreamRows decode(NetInputStream in, int version) throws IOException {
+            return new ResultStreamRows(in);
+        }
+    }
+}
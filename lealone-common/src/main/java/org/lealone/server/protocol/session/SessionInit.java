@@ -9,6 +9,7 @@ import java.io.IOException;
 
 import org.lealone.common.exceptions.DbException;
 import org.lealone.db.ConnectionInfo;
+import org.lealone.db.ConnectionSetting;
 import org.lealone.db.Constants;
 import org.lealone.db.api.ErrorCode;
 import org.lealone.net.NetInputStream;
@@ -46,7 +47,11 @@ public class SessionInit implements Packet {
     public void encode(NetOutputStream out, int version) throws IOException {
         out.setSSL(ci.isSSL());
         out.writeInt(Constants.TCP_PROTOCOL_VERSION_1); // minClientVersion
-        out.writeInt(Constants.TCP_PROTOCOL_VERSION_1); // maxClientVersion
+        // 按列编码结果集需要显式打开，否则最多用版本2的协议
+        if (ci.getProperty(ConnectionSetting.COLUMNAR_RESULT, false))
+            out.writeInt(Constants.TCP_PROTOCOL_VERSION_3); // maxClientVersion
+        else
+            out.writeInt(Constants.TCP_PROTOCOL_VERSION_2); // maxClientVersion
         out.writeString(ci.getDatabaseName());
         out.writeString(ci.getURL()); // 不带参数的URL
         out.writeString(ci.getUserName());
@@ -78,7 +83,8 @@ public class SessionInit implements Packet {
             if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_MAX) {
                 clientVersion = Constants.TCP_PROTOCOL_VERSION_CURRENT;
             } else {
-                clientVersion = minClientVersion;
+                // 取双方都支持的最高版本
+                clientVersion = Math.max(minClientVersion, maxClientVersion);
             }
             ConnectionInfo ci = createConnectionInfo(in);
             return new SessionInit(ci, clientVersion);
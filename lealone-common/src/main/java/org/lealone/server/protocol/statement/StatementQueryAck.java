@@ -54,7 +54,7 @@ public class StatementQueryAck implements AckPacket {
         for (int i = 0; i < columnCount; i++) {
             PreparedStatementGetMetaDataAck.writeColumn(out, result, i);
         }
-        ResultFetchRowsAck.writeRow(out, result, fetchSize);
+        ResultFetchRowsAck.writeRow(out, result, fetchSize, version);
     }
 
     // ----------------------------------------------------------------
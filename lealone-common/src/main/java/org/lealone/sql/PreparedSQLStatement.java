@@ -5,10 +5,13 @@
  */
 package org.lealone.sql;
 
+import java.util.List;
+
 import org.lealone.db.async.AsyncHandler;
 import org.lealone.db.async.AsyncResult;
 import org.lealone.db.result.Result;
 import org.lealone.db.session.Session;
+import org.lealone.db.value.Value;
 
 public interface PreparedSQLStatement extends SQLStatement {
 
@@ -63,6 +66,10 @@ public interface PreparedSQLStatement extends SQLStatement {
 
     Yieldable<Integer> createYieldableUpdate(AsyncHandler<AsyncResult<Integer>> asyncHandler);
 
+    // 用每组参数执行一次，所有参数组在同一个事务中执行，返回每组参数的更新行数
+    Yieldable<int[]> createYieldableBatchUpdate(List<Value[]> batchParameters,
+            AsyncHandler<AsyncResult<int[]>> asyncHandler);
+
     static interface Yieldable<T> {
 
         void run();
@@ -223,6 +223,26 @@ public interface SQLStatement extends SQLCommand {
      */
     int DEALLOCATE = 43;
 
+    /**
+     * The type of a CREATE MATERIALIZED VIEW statement.
+     */
+    int CREATE_MATERIALIZED_VIEW = 44;
+
+    /**
+     * The type of a REFRESH MATERIALIZED VIEW statement.
+     */
+    int REFRESH_MATERIALIZED_VIEW = 45;
+
+    /**
+     * The type of a ALTER TABLE DROP PARTITION statement.
+     */
+    int ALTER_TABLE_DROP_PARTITION = 46;
+
+    /**
+     * The type of a ALTER TABLE TRUNCATE PARTITION statement.
+     */
+    int ALTER_TABLE_TRUNCATE_PARTITION = 47;
+
     /**
      * The type of a DROP AGGREGATE statement.
      */
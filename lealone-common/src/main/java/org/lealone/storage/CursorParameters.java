@@ -16,6 +16,8 @@ public class CursorParameters<K> {
     public final List<PageKey> pageKeys;
     public final int[] columnIndexes;
     public final boolean allColumns;
+    // 调用者保证[from, to]之间的key跟from的哈希码都相同，支持按哈希查找的map可以只找一个哈希组
+    public final boolean hashLookup;
 
     public CursorParameters(K from, K to, List<PageKey> pageKeys, int[] columnIndexes) {
         this(from, to, pageKeys, columnIndexes, false);
@@ -23,15 +25,21 @@ public class CursorParameters<K> {
 
     public CursorParameters(K from, K to, List<PageKey> pageKeys, int[] columnIndexes,
             boolean allColumns) {
+        this(from, to, pageKeys, columnIndexes, allColumns, false);
+    }
+
+    public CursorParameters(K from, K to, List<PageKey> pageKeys, int[] columnIndexes,
+            boolean allColumns, boolean hashLookup) {
         this.from = from;
         this.to = to;
         this.pageKeys = pageKeys;
         this.columnIndexes = columnIndexes;
         this.allColumns = allColumns;
+        this.hashLookup = hashLookup;
     }
 
     public <K2> CursorParameters<K2> copy(K2 from, K2 to) {
-        return new CursorParameters<>(from, to, pageKeys, columnIndexes, allColumns);
+        return new CursorParameters<>(from, to, pageKeys, columnIndexes, allColumns, hashLookup);
     }
 
     public static <K> CursorParameters<K> create(K from) {
@@ -42,6 +50,10 @@ public class CursorParameters<K> {
         return new CursorParameters<>(from, to, null, null);
     }
 
+    public static <K> CursorParameters<K> createHashLookup(K from, K to) {
+        return new CursorParameters<>(from, to, null, null, false, true);
+    }
+
     public static <K> CursorParameters<K> create(K from, List<PageKey> pageKeys) {
         return new CursorParameters<>(from, null, pageKeys, null);
     }
@@ -97,8 +97,12 @@ public abstract class StorageBase implements Storage {
 
     @Override
     public void save() {
+        for (StorageEventListener listener : listeners.values())
+            listener.beforeSave(this);
         for (StorageMap<?, ?> map : maps.values())
             map.save();
+        for (StorageEventListener listener : listeners.values())
+            listener.afterSave(this);
     }
 
     @Override
@@ -147,6 +147,17 @@ public abstract class StorageBuilder {
         return set("backgroundExceptionHandler", exceptionHandler);
     }
 
+    /**
+     * Set the number of sibling leaf pages that a range scan reads ahead
+     * in the background (0 to disable).
+     * 
+     * @param readAheadPages the number of pages
+     * @return this
+     */
+    public StorageBuilder readAheadPages(int readAheadPages) {
+        return set("readAheadPages", readAheadPages);
+    }
+
     public StorageBuilder minFillRate(int minFillRate) {
         return set("minFillRate", minFillRate);
     }
@@ -9,6 +9,12 @@ public interface StorageEventListener {
 
     void beforeClose(Storage storage);
 
+    default void beforeSave(Storage storage) {
+    }
+
+    default void afterSave(Storage storage) {
+    }
+
     // void beforeDrop(Storage storage);
 
 }
@@ -225,6 +225,24 @@ public interface StorageMap<K, V> {
 
     long getMemorySpaceUsed();
 
+    // 页面缓存的命中次数、未命中次数和被淘汰的页面数，不使用页面缓存的map都返回0
+    default long getCacheHits() {
+        return 0;
+    }
+
+    default long getCacheMisses() {
+        return 0;
+    }
+
+    default long getCacheEvictions() {
+        return 0;
+    }
+
+    // 事务层加锁后会原地修改value，value只放在可淘汰缓存中的map要把它固定在内存中，
+    // 否则缓存淘汰后再读到的是一个新的value对象，锁和修改就丢了
+    default void pin(K key, V value) {
+    }
+
     //////////////////// 以下是异步API， 默认用同步API实现 ////////////////////////////////
 
     default void get(K key, AsyncHandler<AsyncResult<V>> handler) {
@@ -11,6 +11,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import org.lealone.common.util.DataUtils;
 
@@ -57,6 +58,7 @@ public class CacheLongKeyLIRS<V> {
     private final int segmentMask;
     private final int stackMoveDistance;
     private final int nonResidentQueueSize;
+    private final RemovalListener<V> removalListener;
 
     /**
      * Create a new cache with the given memory size.
@@ -72,6 +74,7 @@ public class CacheLongKeyLIRS<V> {
         this.segmentCount = config.segmentCount;
         this.segmentMask = segmentCount - 1;
         this.stackMoveDistance = config.stackMoveDistance;
+        this.removalListener = (RemovalListener<V>) config.removalListener;
         segments = new Segment[segmentCount];
         clear();
         // use the high bits for the segment
@@ -85,6 +88,7 @@ public class CacheLongKeyLIRS<V> {
         long max = Math.max(1, maxMemory / segmentCount);
         for (int i = 0; i < segmentCount; i++) {
             segments[i] = new Segment<V>(max, stackMoveDistance, 8, nonResidentQueueSize);
+            segments[i].removalListener = removalListener;
         }
     }
 
@@ -197,6 +201,23 @@ public class CacheLongKeyLIRS<V> {
         }
     }
 
+    /**
+     * Remove all resident entries whose value matches the filter. The
+     * segments are scanned one by one, so no separate index of the keys is
+     * needed.
+     *
+     * @param filter the filter
+     */
+    public void removeIf(Predicate<? super V> filter) {
+        for (int i = 0; i < segments.length; i++) {
+            Segment<V> s = segments[i];
+            synchronized (s) {
+                s = resizeIfNeeded(s, i);
+                s.removeIf(filter);
+            }
+        }
+    }
+
     /**
      * Get the memory used for the given key.
      *
@@ -568,6 +589,11 @@ public class CacheLongKeyLIRS<V> {
          */
         private int stackMoveCounter;
 
+        /**
+         * The listener to call when a resident entry is removed, or null.
+         */
+        RemovalListener<V> removalListener;
+
         /**
          * Create a new cache segment.
          *
@@ -608,6 +634,7 @@ public class CacheLongKeyLIRS<V> {
          */
         Segment(Segment<V> old, int len) {
             this(old.maxMemory, old.stackMoveDistance, len, old.nonResidentQueueSize);
+            removalListener = old.removalListener;
             hits = old.hits;
             misses = old.misses;
             Entry<V> s = old.stack.stackPrev;
@@ -850,6 +877,9 @@ public class CacheLongKeyLIRS<V> {
             }
             mapSize--;
             usedMemory -= e.memory;
+            if (old != null && removalListener != null) {
+                removalListener.onRemoval(key, old, e.memory, false);
+            }
             if (e.stackNext != null) {
                 removeFromStack(e);
             }
@@ -893,6 +923,9 @@ public class CacheLongKeyLIRS<V> {
                 Entry<V> e = queue.queuePrev;
                 usedMemory -= e.memory;
                 removeFromQueue(e);
+                if (removalListener != null) {
+                    removalListener.onRemoval(e.key, e.value, e.memory, true);
+                }
                 e.value = null;
                 e.memory = 0;
                 addToQueue(queue2, e);
@@ -1045,6 +1078,27 @@ public class CacheLongKeyLIRS<V> {
             return e != null && e.value != null;
         }
 
+        /**
+         * Remove all resident entries whose value matches the filter.
+         *
+         * @param filter the filter
+         */
+        synchronized void removeIf(Predicate<? super V> filter) {
+            // 冷数据可能同时在stack和queue中
+            HashSet<Long> keys = new HashSet<Long>();
+            for (Entry<V> e = stack.stackNext; e != stack; e = e.stackNext) {
+                if (e.value != null && filter.test(e.value))
+                    keys.add(e.key);
+            }
+            for (Entry<V> e = queue.queueNext; e != queue; e = e.queueNext) {
+                if (e.value != null && filter.test(e.value))
+                    keys.add(e.key);
+            }
+            for (long key : keys) {
+                remove(key, getHash(key));
+            }
+        }
+
         /**
          * Get the set of keys for resident entries.
          *
@@ -1169,6 +1223,31 @@ public class CacheLongKeyLIRS<V> {
          */
         public int nonResidentQueueSize = 3;
 
+        /**
+         * The listener to call when a resident entry is removed, or null.
+         */
+        public RemovalListener<?> removalListener;
+
+    }
+
+    /**
+     * A listener for resident entries that are removed from the cache.
+     * It is called while the segment is locked, so it should be fast.
+     *
+     * @param <V> the value type
+     */
+    public interface RemovalListener<V> {
+
+        /**
+         * An entry was removed from the cache.
+         *
+         * @param key the key
+         * @param value the value
+         * @param memory the memory used for the entry
+         * @param evicted true if the entry was evicted because the cache was full,
+         *            false if it was removed or replaced explicitly
+         */
+        void onRemoval(long key, V value, int memory, boolean evicted);
     }
 
 }
@@ -13,9 +13,11 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
 
-import org.lealone.common.security.AES;
 import org.lealone.common.security.BlockCipher;
+import org.lealone.common.security.JceAES;
 import org.lealone.common.security.SHA256;
 import org.lealone.common.util.DataUtils;
 import org.lealone.common.util.MathUtils;
@@ -155,6 +157,19 @@ public class FilePathEncrypt extends FilePathWrapper {
          */
         private static final int HASH_ITERATIONS = 10;
 
+        /**
+         * The position of the format version in the header. Files written
+         * before the version was introduced have a 0 there.
+         */
+        private static final int FORMAT_VERSION_POS = SALT_POS + SALT_LENGTH;
+
+        /**
+         * The format version: XTS with AES-128, the key is derived with PBKDF2
+         * (SHA-256). The JDK and the pure Java AES produce the same data, so
+         * the cipher backend is not part of the format.
+         */
+        private static final byte FORMAT_VERSION = 0;
+
         private final FileChannel base;
 
         /**
@@ -193,19 +208,24 @@ public class FilePathEncrypt extends FilePathWrapper {
                 byte[] header = Arrays.copyOf(HEADER, BLOCK_SIZE);
                 salt = MathUtils.secureRandomBytes(SALT_LENGTH);
                 System.arraycopy(salt, 0, header, SALT_POS, salt.length);
+                header[FORMAT_VERSION_POS] = FORMAT_VERSION;
                 DataUtils.writeFully(base, 0, ByteBuffer.wrap(header));
                 size = 0;
             } else {
-                salt = new byte[SALT_LENGTH];
-                DataUtils.readFully(base, SALT_POS, ByteBuffer.wrap(salt));
+                byte[] buff = new byte[SALT_LENGTH + 1];
+                DataUtils.readFully(base, SALT_POS, ByteBuffer.wrap(buff));
+                if (buff[SALT_LENGTH] != FORMAT_VERSION) {
+                    throw new IOException("Unsupported encryption format version "
+                            + buff[SALT_LENGTH] + " of file " + name);
+                }
+                salt = Arrays.copyOf(buff, SALT_LENGTH);
                 if ((size & BLOCK_SIZE_MASK) != 0) {
                     size -= BLOCK_SIZE;
                 }
             }
-            AES cipher = new AES();
-            cipher.setKey(SHA256.getPBKDF2(encryptionKey, salt, HASH_ITERATIONS, 16));
+            byte[] key = SHA256.getPBKDF2(encryptionKey, salt, HASH_ITERATIONS, 16);
             encryptionKey = null;
-            xts = new XTS(cipher);
+            xts = new XTS(key);
         }
 
         @Override
@@ -267,12 +287,8 @@ public class FilePathEncrypt extends FilePathWrapper {
         private void readInternal(ByteBuffer dst, long position, int len) throws IOException {
             int x = dst.position();
             readFully(base, position + HEADER_LENGTH, dst);
-            long block = position / BLOCK_SIZE;
-            while (len > 0) {
-                xts.decrypt(block++, BLOCK_SIZE, dst.array(), dst.arrayOffset() + x);
-                x += BLOCK_SIZE;
-                len -= BLOCK_SIZE;
-            }
+            xts.decrypt(position / BLOCK_SIZE, BLOCK_SIZE, len / BLOCK_SIZE, dst.array(),
+                    dst.arrayOffset() + x);
         }
 
         private static void readFully(FileChannel file, long pos, ByteBuffer dst) throws IOException {
@@ -311,7 +327,9 @@ public class FilePathEncrypt extends FilePathWrapper {
                 long p2 = position + len;
                 size = Math.max(size, p2);
                 int plus = (int) (size & BLOCK_SIZE_MASK);
-                if (plus > 0) {
+                // the length of the last block is only stored after the last block,
+                // so a write in the middle of the file must not touch it
+                if (plus > 0 && p + l >= size) {
                     temp = ByteBuffer.allocate(plus);
                     DataUtils.writeFully(base, p + HEADER_LENGTH + l, temp);
                 }
@@ -327,13 +345,8 @@ public class FilePathEncrypt extends FilePathWrapper {
             ByteBuffer crypt = ByteBuffer.allocate(len);
             crypt.put(src);
             crypt.flip();
-            long block = position / BLOCK_SIZE;
-            int x = 0, l = len;
-            while (l > 0) {
-                xts.encrypt(block++, BLOCK_SIZE, crypt.array(), crypt.arrayOffset() + x);
-                x += BLOCK_SIZE;
-                l -= BLOCK_SIZE;
-            }
+            xts.encrypt(position / BLOCK_SIZE, BLOCK_SIZE, len / BLOCK_SIZE, crypt.array(),
+                    crypt.arrayOffset());
             writeFully(base, position + HEADER_LENGTH, crypt);
         }
 
@@ -402,6 +415,12 @@ public class FilePathEncrypt extends FilePathWrapper {
      * IEEE P1619 (Standard Architecture for Encrypted Shared Storage Media).
      * See also
      * http://axelkenzo.ru/downloads/1619-2007-NIST-Submission.pdf
+     * <p>
+     * The tweaks of a whole sector are computed first, so the cipher can
+     * process all blocks of the sector in one call (the JDK cipher uses
+     * AES-NI if available). Ciphers are not thread-safe, so each thread
+     * borrows one from a pool; reads and writes of many sectors are split
+     * among multiple threads.
      */
     static class XTS {
 
@@ -415,22 +434,95 @@ public class FilePathEncrypt extends FilePathWrapper {
          */
         private static final int CIPHER_BLOCK_SIZE = 16;
 
-        private final BlockCipher cipher;
+        /**
+         * The minimum number of sectors per thread when processing sectors in
+         * parallel.
+         */
+        private static final int MIN_SECTORS_PER_THREAD = 16;
 
-        XTS(BlockCipher cipher) {
-            this.cipher = cipher;
+        private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+        private final byte[] key;
+        private final ConcurrentLinkedQueue<BlockCipher> ciphers = new ConcurrentLinkedQueue<>();
+
+        XTS(byte[] key) {
+            this.key = key;
+        }
+
+        private BlockCipher getCipher() {
+            BlockCipher cipher = ciphers.poll();
+            if (cipher == null) {
+                cipher = JceAES.create();
+                cipher.setKey(key);
+            }
+            return cipher;
         }
 
         /**
-         * Encrypt the data.
+         * Encrypt a number of consecutive sectors.
          *
-         * @param id the (sector) id
-         * @param len the number of bytes
+         * @param id the id of the first sector
+         * @param sectorSize the sector size
+         * @param count the number of sectors
          * @param data the data
          * @param offset the offset within the data
          */
-        void encrypt(long id, int len, byte[] data, int offset) {
-            byte[] tweak = initTweak(id);
+        void encrypt(long id, int sectorSize, int count, byte[] data, int offset) {
+            process(true, id, sectorSize, count, data, offset);
+        }
+
+        /**
+         * Decrypt a number of consecutive sectors.
+         *
+         * @param id the id of the first sector
+         * @param sectorSize the sector size
+         * @param count the number of sectors
+         * @param data the data
+         * @param offset the offset within the data
+         */
+        void decrypt(long id, int sectorSize, int count, byte[] data, int offset) {
+            process(false, id, sectorSize, count, data, offset);
+        }
+
+        private void process(boolean encrypt, long id, int sectorSize, int count, byte[] data,
+                int offset) {
+            int threads = Math.min(PARALLELISM, count / MIN_SECTORS_PER_THREAD);
+            if (threads <= 1) {
+                processSectors(encrypt, id, sectorSize, 0, count, data, offset);
+                return;
+            }
+            IntStream.range(0, threads).parallel().forEach(t -> {
+                int from = (int) ((long) count * t / threads);
+                int to = (int) ((long) count * (t + 1) / threads);
+                processSectors(encrypt, id, sectorSize, from, to, data, offset);
+            });
+        }
+
+        private void processSectors(boolean encrypt, long id, int sectorSize, int from, int to,
+                byte[] data, int offset) {
+            BlockCipher cipher = getCipher();
+            try {
+                for (int i = from; i < to; i++) {
+                    if (encrypt) {
+                        encrypt(cipher, id + i, sectorSize, data, offset + i * sectorSize);
+                    } else {
+                        decrypt(cipher, id + i, sectorSize, data, offset + i * sectorSize);
+                    }
+                }
+            } finally {
+                ciphers.add(cipher);
+            }
+        }
+
+        private static void encrypt(BlockCipher cipher, long id, int len, byte[] data, int offset) {
+            byte[] tweak = initTweak(cipher, id);
+            if ((len % CIPHER_BLOCK_SIZE) == 0) {
+                byte[] tweaks = getTweaks(tweak, len);
+                xorTweaks(data, offset, tweaks);
+                cipher.encrypt(data, offset, len);
+                xorTweaks(data, offset, tweaks);
+                return;
+            }
             int i = 0;
             for (; i + CIPHER_BLOCK_SIZE <= len; i += CIPHER_BLOCK_SIZE) {
                 if (i > 0) {
@@ -449,16 +541,15 @@ public class FilePathEncrypt extends FilePathWrapper {
             }
         }
 
-        /**
-         * Decrypt the data.
-         *
-         * @param id the (sector) id
-         * @param len the number of bytes
-         * @param data the data
-         * @param offset the offset within the data
-         */
-        void decrypt(long id, int len, byte[] data, int offset) {
-            byte[] tweak = initTweak(id), tweakEnd = tweak;
+        private static void decrypt(BlockCipher cipher, long id, int len, byte[] data, int offset) {
+            byte[] tweak = initTweak(cipher, id), tweakEnd = tweak;
+            if ((len % CIPHER_BLOCK_SIZE) == 0) {
+                byte[] tweaks = getTweaks(tweak, len);
+                xorTweaks(data, offset, tweaks);
+                cipher.decrypt(data, offset, len);
+                xorTweaks(data, offset, tweaks);
+                return;
+            }
             int i = 0;
             for (; i + CIPHER_BLOCK_SIZE <= len; i += CIPHER_BLOCK_SIZE) {
                 if (i > 0) {
@@ -480,7 +571,7 @@ public class FilePathEncrypt extends FilePathWrapper {
             }
         }
 
-        private byte[] initTweak(long id) {
+        private static byte[] initTweak(BlockCipher cipher, long id) {
             byte[] tweak = new byte[CIPHER_BLOCK_SIZE];
             for (int j = 0; j < CIPHER_BLOCK_SIZE; j++, id >>>= 8) {
                 tweak[j] = (byte) (id & 0xff);
@@ -489,6 +580,27 @@ public class FilePathEncrypt extends FilePathWrapper {
             return tweak;
         }
 
+        /**
+         * Get the tweaks of all cipher blocks of a sector. The length must be
+         * a multiple of the cipher block size.
+         */
+        private static byte[] getTweaks(byte[] tweak, int len) {
+            byte[] tweaks = new byte[len];
+            for (int i = 0; i < len; i += CIPHER_BLOCK_SIZE) {
+                if (i > 0) {
+                    updateTweak(tweak);
+                }
+                System.arraycopy(tweak, 0, tweaks, i, CIPHER_BLOCK_SIZE);
+            }
+            return tweaks;
+        }
+
+        private static void xorTweaks(byte[] data, int pos, byte[] tweaks) {
+            for (int i = 0, len = tweaks.length; i < len; i++) {
+                data[pos + i] ^= tweaks[i];
+            }
+        }
+
         private static void xorTweak(byte[] data, int pos, byte[] tweak) {
             for (int i = 0; i < CIPHER_BLOCK_SIZE; i++) {
                 data[pos + i] ^= tweak[i];
@@ -42,11 +42,13 @@ public class DefaultPageOperationHandler extends PageOperationHandlerBase
         ShutdownHookUtils.addShutdownHook(getName(), () -> {
             stopHandler();
         });
+        registerMetrics();
         start();
     }
 
     public void stopHandler() {
         stopped = true;
+        unregisterMetrics();
         wakeUp();
     }
 
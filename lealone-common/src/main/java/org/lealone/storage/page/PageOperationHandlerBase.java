@@ -5,12 +5,16 @@
  */
 package org.lealone.storage.page;
 
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.lealone.common.logging.Logger;
+import org.lealone.common.metrics.Metric;
+import org.lealone.common.metrics.MetricsRegistry;
 import org.lealone.storage.page.PageOperation.PageOperationResult;
 
 public abstract class PageOperationHandlerBase extends Thread implements PageOperationHandler {
@@ -24,6 +28,15 @@ public abstract class PageOperationHandlerBase extends Thread implements PageOpe
     protected final AtomicBoolean hasWaitingHandlers = new AtomicBoolean(false);
     protected PageOperation lockedTask;
 
+    // 只被当前线程修改，用于统计每条语句从硬盘读了多少个page，命中了多少次页面缓存
+    private long pageReadCount;
+    private long pageCacheHitCount;
+
+    // 当前语句接下来要用的page正在后台线程中读取，语句可以先让出执行权，读完后再继续
+    private CompletableFuture<?> pendingPageRead;
+
+    protected final ArrayList<Metric> metrics = new ArrayList<>();
+
     public PageOperationHandlerBase(int handlerId, String name, int waitingQueueSize) {
         super(name);
         setDaemon(false);
@@ -44,6 +57,83 @@ public abstract class PageOperationHandlerBase extends Thread implements PageOpe
         return size.get();
     }
 
+    protected String getMetricLabels() {
+        return "handler=\"" + getName() + "\"";
+    }
+
+    public void registerMetrics() {
+        String labels = getMetricLabels();
+        metrics.add(MetricsRegistry.registerGauge("page_operation_handler_load", labels,
+                "Current load of the page operation handler", () -> getLoad()));
+        metrics.add(MetricsRegistry.registerGauge("page_operation_handler_queue_size", labels,
+                "Pending page operations", () -> size.get()));
+        metrics.add(MetricsRegistry.registerCounter("page_operation_handler_page_reads_total", labels,
+                "Pages read from disk by the handler thread", () -> pageReadCount));
+    }
+
+    public void unregisterMetrics() {
+        MetricsRegistry.unregister(metrics);
+        metrics.clear();
+    }
+
+    public static void incrementPageReadCount() {
+        Thread t = Thread.currentThread();
+        if (t instanceof PageOperationHandlerBase)
+            ((PageOperationHandlerBase) t).pageReadCount++;
+    }
+
+    public static long getPageReadCount() {
+        Thread t = Thread.currentThread();
+        if (t instanceof PageOperationHandlerBase)
+            return ((PageOperationHandlerBase) t).pageReadCount;
+        return 0;
+    }
+
+    public static void incrementPageCacheHitCount() {
+        Thread t = Thread.currentThread();
+        if (t instanceof PageOperationHandlerBase)
+            ((PageOperationHandlerBase) t).pageCacheHitCount++;
+    }
+
+    public static long getPageCacheHitCount() {
+        Thread t = Thread.currentThread();
+        if (t instanceof PageOperationHandlerBase)
+            return ((PageOperationHandlerBase) t).pageCacheHitCount;
+        return 0;
+    }
+
+    public static void setPendingPageRead(CompletableFuture<?> future) {
+        Thread t = Thread.currentThread();
+        if (t instanceof PageOperationHandlerBase)
+            ((PageOperationHandlerBase) t).pendingPageRead = future;
+    }
+
+    public static boolean hasPendingPageRead() {
+        Thread t = Thread.currentThread();
+        if (t instanceof PageOperationHandlerBase) {
+            PageOperationHandlerBase h = (PageOperationHandlerBase) t;
+            if (h.pendingPageRead != null) {
+                if (!h.pendingPageRead.isDone())
+                    return true;
+                h.pendingPageRead = null;
+            }
+        }
+        return false;
+    }
+
+    // 取出还没读完的page对应的future，取出后就清除了
+    public static CompletableFuture<?> removePendingPageRead() {
+        Thread t = Thread.currentThread();
+        if (t instanceof PageOperationHandlerBase) {
+            PageOperationHandlerBase h = (PageOperationHandlerBase) t;
+            CompletableFuture<?> f = h.pendingPageRead;
+            h.pendingPageRead = null;
+            if (f != null && !f.isDone())
+                return f;
+        }
+        return null;
+    }
+
     @Override
     public void handlePageOperation(PageOperation task) {
         size.incrementAndGet();
@@ -85,6 +85,39 @@ public interface StorageDataType {
      */
     int compare(Object aObj, Object bObj);
 
+    /**
+     * 返回跟compare方法的顺序一致的字节数组，两个key可以直接按无符号字节比较，
+     * 不支持这种编码的key返回null。
+     *
+     * @param obj the key
+     * @return the comparable bytes, or null if not supported
+     */
+    default byte[] getComparableBytes(Object obj) {
+        return null;
+    }
+
+    /**
+     * 返回key的哈希码，compare方法认为相等的两个key哈希码也必须相等。
+     * 哈希map按哈希码分组，按key的前缀查找时，前缀相同的key要返回相同的哈希码。
+     *
+     * @param obj the key
+     * @return the hash code
+     */
+    default int hashCode(Object obj) {
+        return obj.hashCode();
+    }
+
+    /**
+     * 判断value是否被还没有结束的事务锁住了，被锁住的value还会在原地修改，
+     * 不能只依赖已经写到文件中的数据，LSMMap刷新memtable时要把它留在新的memtable中。
+     *
+     * @param obj the value
+     * @return true if the value is locked
+     */
+    default boolean isLocked(Object obj) {
+        return false;
+    }
+
     /**
      * Estimate the used memory in bytes.
      *
@@ -6,11 +6,13 @@
 package org.lealone.transaction;
 
 import java.sql.Connection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 import org.lealone.common.exceptions.DbException;
 import org.lealone.db.session.Session;
+import org.lealone.db.session.SessionStatus;
 import org.lealone.storage.Storage;
 import org.lealone.storage.type.StorageDataType;
 
@@ -128,6 +130,34 @@ public interface Transaction {
 
     int addWaitingTransaction(Object key, Transaction transaction, Listener listener);
 
+    // 事务提交时把监听的map上的变更通知给这些CommitListener，比如用来增量刷新物化视图
+    default void setCommitListeners(List<CommitListener> listeners) {
+    }
+
+    interface CommitListener {
+
+        boolean isListening(String mapName);
+
+        // 同一个事务对同一个key的多次修改已经合并成一个Change，
+        // 在提交事务的线程中调用，实现类不能做耗时的操作
+        void onCommit(List<Change> changes);
+    }
+
+    public static class Change {
+
+        public final String mapName;
+        public final Object key;
+        public final Object oldValue; // 为null时表示insert
+        public Object newValue; // 为null时表示delete
+
+        public Change(String mapName, Object key, Object oldValue, Object newValue) {
+            this.mapName = mapName;
+            this.key = key;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+    }
+
     interface Listener {
         default void beforeOperation() {
         }
@@ -153,6 +183,11 @@ public interface Transaction {
         default void wakeUp() {
         }
 
+        // 指定的session等待的锁、page读取或事务提交已经完成，默认只唤醒监听器
+        default void wakeUp(Session session) {
+            wakeUp();
+        }
+
         default Object addSession(Session session, Object parentSessionInfo) {
             return null;
         }
@@ -213,8 +248,12 @@ public interface Transaction {
             // 避免重复调用
             if (transaction.getStatus() == STATUS_WAITING) {
                 transaction.setStatus(STATUS_OPEN);
+                // 锁已经释放，session不再处于等待状态，调度器才会重新执行被阻塞的语句
+                Session session = transaction.getSession();
+                if (session != null && session.getStatus() == SessionStatus.WAITING)
+                    session.setStatus(SessionStatus.TRANSACTION_NOT_COMMIT);
                 if (listener != null)
-                    listener.wakeUp();
+                    listener.wakeUp(session);
             }
         }
 
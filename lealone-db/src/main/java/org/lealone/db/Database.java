@@ -20,6 +20,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.lealone.common.exceptions.DbException;
@@ -71,6 +72,7 @@ import org.lealone.storage.StorageEngine;
 import org.lealone.storage.fs.FileStorage;
 import org.lealone.storage.fs.FileUtils;
 import org.lealone.storage.lob.LobStorage;
+import org.lealone.transaction.Transaction;
 import org.lealone.transaction.TransactionEngine;
 
 /**
@@ -181,7 +183,7 @@ public class Database implements DataHandler, DbObject {
     private SourceCompiler compiler;
     private DatabaseEventListener eventListener;
     private DbException backgroundException;
-    private QueryStatisticsData queryStatisticsData;
+    private volatile QueryStatisticsData queryStatisticsData;
 
     private final int id;
     private final String name;
@@ -204,6 +206,9 @@ public class Database implements DataHandler, DbObject {
 
     private final DbObjectVersionManager dbObjectVersionManager = new DbObjectVersionManager();
 
+    // 增量刷新的物化视图会注册到这里，事务提交时收集它们关心的基表变更
+    private final CopyOnWriteArrayList<Transaction.CommitListener> commitListeners = new CopyOnWriteArrayList<>();
+
     public Database(int id, String name, Map<String, String> parameters) {
         this.id = id;
         this.name = name;
@@ -1608,6 +1613,19 @@ public class Database implements DataHandler, DbObject {
         this.closeDelay = value;
     }
 
+    public void addCommitListener(Transaction.CommitListener listener) {
+        commitListeners.add(listener);
+    }
+
+    public void removeCommitListener(Transaction.CommitListener listener) {
+        commitListeners.remove(listener);
+    }
+
+    // 没有监听器时返回null，这样事务提交时不需要遍历undo log
+    public List<Transaction.CommitListener> getCommitListeners() {
+        return commitListeners.isEmpty() ? null : commitListeners;
+    }
+
     public SystemSession getSystemSession() {
         return systemSession;
     }
@@ -1760,7 +1778,7 @@ public class Database implements DataHandler, DbObject {
         if (session == null && waitingSessions != null) {
             for (ServerSession s : waitingSessions) {
                 s.setStatus(SessionStatus.TRANSACTION_NOT_COMMIT);
-                s.getTransactionListener().wakeUp();
+                s.getTransactionListener().wakeUp(s);
             }
             waitingSessions = null;
         }
@@ -151,6 +151,15 @@ public class DbSettings extends SettingsBase {
      */
     // public final int maxCompactTime = get(DbSetting.MAX_COMPACT_TIME, 200); // TODO 这个参数可以用到存储引擎中
 
+    /**
+     * Database setting <code>MATERIALIZED_VIEW_MAX_PENDING_CHANGES</code> (default: 100000).<br />
+     * The maximum number of committed base table changes an incremental
+     * materialized view keeps until its next query. If there are more, they
+     * are dropped and the next query recomputes the whole view.
+     */
+    public final int materializedViewMaxPendingChanges = get(
+            DbSetting.MATERIALIZED_VIEW_MAX_PENDING_CHANGES, 100000);
+
     /**
      * Database setting <code>MAX_QUERY_TIMEOUT</code> (default: 0).<br />
      * The maximum timeout of a query in milliseconds. The default is 0, meaning
@@ -213,6 +222,14 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean optimizeOr = get(DbSetting.OPTIMIZE_OR, true);
 
+    /**
+     * Database setting <code>OPTIMIZE_SUBQUERY_HASH_JOIN</code> (default: true).<br />
+     * Evaluate EXISTS(SELECT ...) and IN(SELECT ...) with a hash table of the
+     * subquery result instead of running the subquery once for each row.
+     * Correlated subqueries are decorrelated into hash semi joins.
+     */
+    public final boolean optimizeSubqueryHashJoin = get(DbSetting.OPTIMIZE_SUBQUERY_HASH_JOIN, true);
+
     /**
      * Database setting <code>OPTIMIZE_TWO_EQUALS</code> (default: true).<br />
      * Optimize expressions of the form A=B AND B=1. In this case, AND A=1 is
@@ -6,84 +6,209 @@
 package org.lealone.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lealone.common.util.MathUtils;
+import org.lealone.storage.page.PageOperationHandler;
 
 /**
  * Maintains query statistics.
+ *
+ * 统计数据分散到多个分片中，每个调度线程只更新自己的分片，读的时候再合并，
+ * 这样多个调度线程同时执行完语句时不会争用同一把锁。
  */
 public class QueryStatisticsData {
 
     private static final Comparator<QueryEntry> QUERY_ENTRY_COMPARATOR = new Comparator<QueryEntry>() {
         @Override
         public int compare(QueryEntry o1, QueryEntry o2) {
-            return (int) Math.signum(o1.lastUpdateTime - o2.lastUpdateTime);
+            return Long.compare(o1.lastUpdateTime, o2.lastUpdateTime);
         }
     };
 
-    private final HashMap<String, QueryEntry> map = new HashMap<String, QueryEntry>();
-
-    private int maxQueryEntries;
+    private final Stripe[] stripes;
+    // 所有分片的记录数之和，按它判断是否超过maxQueryEntries，而不是每个分片各自判断
+    private final AtomicInteger entryCount = new AtomicInteger();
+    private volatile int maxQueryEntries;
 
     public QueryStatisticsData(int maxQueryEntries) {
         this.maxQueryEntries = maxQueryEntries;
+        int n = MathUtils.nextPowerOf2(Math.max(4, Runtime.getRuntime().availableProcessors()));
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe();
+        }
     }
 
-    public synchronized void setMaxQueryEntries(int maxQueryEntries) {
+    public void setMaxQueryEntries(int maxQueryEntries) {
         this.maxQueryEntries = maxQueryEntries;
     }
 
-    public synchronized List<QueryEntry> getQueries() {
-        // return a copy of the map so we don't have to
-        // worry about external synchronization
-        ArrayList<QueryEntry> list = new ArrayList<QueryEntry>();
-        list.addAll(map.values());
-        // only return the newest 100 entries
-        Collections.sort(list, QUERY_ENTRY_COMPARATOR);
+    public List<QueryEntry> getQueries() {
+        // 合并所有分片中相同语句的统计数据，返回的是副本，不需要再做同步
+        HashMap<String, QueryEntry> map = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (QueryEntry e : stripe.map.values()) {
+                    QueryEntry entry = map.get(e.sqlStatement);
+                    if (entry == null) {
+                        entry = new QueryEntry(e.sqlStatement, e.statementType);
+                        map.put(e.sqlStatement, entry);
+                    }
+                    entry.merge(e);
+                }
+            }
+        }
+        ArrayList<QueryEntry> list = new ArrayList<>(map.values());
+        // only return the newest entries
+        Collections.sort(list, Collections.reverseOrder(QUERY_ENTRY_COMPARATOR));
         return list.subList(0, Math.min(list.size(), maxQueryEntries));
     }
 
+    // 调度线程的id是连续的，直接用它选分片，其他线程用线程id
+    private Stripe getStripe() {
+        Thread t = Thread.currentThread();
+        long id = t instanceof PageOperationHandler ? ((PageOperationHandler) t).getHandlerId()
+                : t.getId();
+        return stripes[(int) (id & (stripes.length - 1))];
+    }
+
     /**
      * Update query statistics.
      *
      * @param sqlStatement the statement being executed
+     * @param statementType the type of the statement, e.g. SELECT
      * @param executionTimeNanos the time in nanoseconds the query/update took
      *            to execute
      * @param rowCount the query or update row count
+     * @param rowScanCount the number of rows scanned
+     * @param pageReadCount the number of pages read from disk
      */
-    public synchronized void update(String sqlStatement, long executionTimeNanos, int rowCount) {
-        QueryEntry entry = map.get(sqlStatement);
-        if (entry == null) {
-            entry = new QueryEntry(sqlStatement);
-            map.put(sqlStatement, entry);
+    public void update(String sqlStatement, String statementType, long executionTimeNanos,
+            int rowCount, long rowScanCount, long pageReadCount) {
+        Stripe stripe = getStripe();
+        boolean added = false;
+        synchronized (stripe) {
+            QueryEntry entry = stripe.map.get(sqlStatement);
+            if (entry == null) {
+                entry = new QueryEntry(sqlStatement, statementType);
+                stripe.map.put(sqlStatement, entry);
+                added = true;
+            }
+            entry.update(executionTimeNanos, rowCount, rowScanCount, pageReadCount);
         }
-        entry.update(executionTimeNanos, rowCount);
-
         // Age-out the oldest entries if the map gets too big.
         // Test against 1.5 x max-size so we don't do this too often
-        if (map.size() > maxQueryEntries * 1.5f) {
-            // Sort the entries by age
-            ArrayList<QueryEntry> list = new ArrayList<QueryEntry>();
-            list.addAll(map.values());
-            Collections.sort(list, QUERY_ENTRY_COMPARATOR);
-            // Create a set of the oldest 1/3 of the entries
-            HashSet<QueryEntry> oldestSet = new HashSet<QueryEntry>(list.subList(0, list.size() / 3));
-            // Loop over the map using the set and remove
-            // the oldest 1/3 of the entries.
-            for (Iterator<Entry<String, QueryEntry>> it = map.entrySet().iterator(); it.hasNext();) {
-                Entry<String, QueryEntry> mapEntry = it.next();
-                if (oldestSet.contains(mapEntry.getValue())) {
-                    it.remove();
+        if (added && entryCount.incrementAndGet() > maxQueryEntries * 1.5f) {
+            removeOldest();
+        }
+    }
+
+    // 删除所有分片中最旧的三分之一，不在持有分片锁时调用，同时只让一个线程删除
+    private void removeOldest() {
+        synchronized (stripes) {
+            if (entryCount.get() <= maxQueryEntries * 1.5f)
+                return;
+            long[] times = new long[entryCount.get() + stripes.length];
+            int size = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    for (QueryEntry e : stripe.map.values()) {
+                        if (size == times.length)
+                            times = Arrays.copyOf(times, size * 2);
+                        times[size++] = e.lastUpdateTime;
+                    }
+                }
+            }
+            int count = size / 3;
+            if (count == 0)
+                return;
+            Arrays.sort(times, 0, size);
+            long maxTime = times[count - 1];
+            // 最后更新时间等于maxTime的记录可能有很多，只删除够数的
+            int equalCount = 0;
+            for (int i = count - 1; i >= 0 && times[i] == maxTime; i--)
+                equalCount++;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    Iterator<QueryEntry> iterator = stripe.map.values().iterator();
+                    while (iterator.hasNext()) {
+                        long time = iterator.next().lastUpdateTime;
+                        if (time < maxTime || time == maxTime && equalCount-- > 0) {
+                            iterator.remove();
+                            entryCount.decrementAndGet();
+                        }
+                    }
                 }
             }
         }
     }
 
+    private static class Stripe {
+        private final HashMap<String, QueryEntry> map = new HashMap<>();
+    }
+
+    /**
+     * 执行时间的直方图，单位是微秒。
+     * 小于16微秒的每个值一个桶，之后每个2的幂区间分成4个桶，相对误差不超过25%，
+     * 记录时只是给数组中的一个元素加1，不会分配内存。
+     */
+    static final class LatencyHistogram {
+
+        private static final int LINEAR_BUCKETS = 16;
+        private static final int SUB_BUCKETS = 4;
+        private static final int MAX_EXPONENT = 40; // 大约12天
+        private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - 3) * SUB_BUCKETS;
+
+        private final long[] counts = new long[BUCKET_COUNT];
+
+        static int getBucket(long micros) {
+            if (micros < LINEAR_BUCKETS)
+                return (int) Math.max(0, micros);
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            if (exponent > MAX_EXPONENT)
+                return BUCKET_COUNT - 1;
+            int sub = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+        }
+
+        // 桶中的最大值
+        static long getBucketMaxValue(int bucket) {
+            if (bucket < LINEAR_BUCKETS)
+                return bucket;
+            int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+            int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1L) << (exponent - 2)) - 1;
+        }
+
+        void record(long nanos) {
+            counts[getBucket(nanos / 1000)]++;
+        }
+
+        void merge(LatencyHistogram h) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += h.counts[i];
+            }
+        }
+
+        long getPercentileNanos(double percentile, long totalCount) {
+            long target = Math.max(1, (long) Math.ceil(totalCount * percentile));
+            long sum = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                sum += counts[i];
+                if (sum >= target)
+                    return getBucketMaxValue(i) * 1000;
+            }
+            return getBucketMaxValue(BUCKET_COUNT - 1) * 1000;
+        }
+    }
+
     /**
      * The collected statistics for one query.
      */
@@ -94,6 +219,11 @@ public class QueryStatisticsData {
          */
         public final String sqlStatement;
 
+        /**
+         * The type of the statement, e.g. SELECT or INSERT.
+         */
+        public final String statementType;
+
         /**
          * The number of times the statement was executed.
          */
@@ -108,7 +238,7 @@ public class QueryStatisticsData {
         /**
          * The minimum execution time, in nanoseconds.
          */
-        public long executionTimeMinNanos;
+        public long executionTimeMinNanos = Long.MAX_VALUE;
 
         /**
          * The maximum execution time, in nanoseconds.
@@ -123,7 +253,7 @@ public class QueryStatisticsData {
         /**
          * The minimum number of rows.
          */
-        public int rowCountMin;
+        public int rowCountMin = Integer.MAX_VALUE;
 
         /**
          * The maximum number of rows.
@@ -135,6 +265,16 @@ public class QueryStatisticsData {
          */
         public long rowCountCumulative;
 
+        /**
+         * The total number of rows scanned.
+         */
+        public long rowScanCountCumulative;
+
+        /**
+         * The total number of pages read from disk.
+         */
+        public long pageReadCountCumulative;
+
         /**
          * The mean execution time.
          */
@@ -152,8 +292,11 @@ public class QueryStatisticsData {
         private double executionTimeM2Nanos;
         private double rowCountM2;
 
-        public QueryEntry(String sql) {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        public QueryEntry(String sql, String statementType) {
             this.sqlStatement = sql;
+            this.statementType = statementType;
         }
 
         /**
@@ -161,8 +304,10 @@ public class QueryStatisticsData {
          *
          * @param timeNanos the execution time in nanos
          * @param rows the number of rows
+         * @param rowScanCount the number of rows scanned
+         * @param pageReadCount the number of pages read from disk
          */
-        void update(long timeNanos, int rows) {
+        void update(long timeNanos, int rows, long rowScanCount, long pageReadCount) {
             count++;
             executionTimeMinNanos = Math.min(timeNanos, executionTimeMinNanos);
             executionTimeMaxNanos = Math.max(timeNanos, executionTimeMaxNanos);
@@ -179,9 +324,38 @@ public class QueryStatisticsData {
 
             executionTimeCumulativeNanos += timeNanos;
             rowCountCumulative += rows;
+            rowScanCountCumulative += rowScanCount;
+            pageReadCountCumulative += pageReadCount;
+            histogram.record(timeNanos);
             lastUpdateTime = System.currentTimeMillis();
         }
 
+        // 合并平均值和方差用的是Chan等人的并行算法
+        void merge(QueryEntry e) {
+            int n = count + e.count;
+            if (n == 0)
+                return;
+            double timeDelta = e.executionTimeMeanNanos - executionTimeMeanNanos;
+            executionTimeMeanNanos += timeDelta * e.count / n;
+            executionTimeM2Nanos += e.executionTimeM2Nanos
+                    + timeDelta * timeDelta * count * e.count / n;
+            double rowDelta = e.rowCountMean - rowCountMean;
+            rowCountMean += rowDelta * e.count / n;
+            rowCountM2 += e.rowCountM2 + rowDelta * rowDelta * count * e.count / n;
+            count = n;
+
+            executionTimeMinNanos = Math.min(executionTimeMinNanos, e.executionTimeMinNanos);
+            executionTimeMaxNanos = Math.max(executionTimeMaxNanos, e.executionTimeMaxNanos);
+            rowCountMin = Math.min(rowCountMin, e.rowCountMin);
+            rowCountMax = Math.max(rowCountMax, e.rowCountMax);
+            executionTimeCumulativeNanos += e.executionTimeCumulativeNanos;
+            rowCountCumulative += e.rowCountCumulative;
+            rowScanCountCumulative += e.rowScanCountCumulative;
+            pageReadCountCumulative += e.pageReadCountCumulative;
+            histogram.merge(e.histogram);
+            lastUpdateTime = Math.max(lastUpdateTime, e.lastUpdateTime);
+        }
+
         public double getExecutionTimeStandardDeviation() {
             // population standard deviation
             return Math.sqrt(executionTimeM2Nanos / count);
@@ -192,6 +366,19 @@ public class QueryStatisticsData {
             return Math.sqrt(rowCountM2 / count);
         }
 
+        /**
+         * Get the execution time at the given percentile, e.g. 0.99 for p99.
+         * The result is an upper bound of the bucket, but never larger than the maximum.
+         *
+         * @param percentile the percentile, between 0 and 1
+         * @return the execution time in nanoseconds
+         */
+        public long getExecutionTimePercentileNanos(double percentile) {
+            if (count == 0)
+                return 0;
+            long nanos = histogram.getPercentileNanos(percentile, count);
+            return Math.max(executionTimeMinNanos, Math.min(nanos, executionTimeMaxNanos));
+        }
     }
 
 }
@@ -105,7 +105,8 @@ public class TransactionalDbObjects {
     }
 
     public void rollback() {
-        if (old != null) {
+        // 同一个事务中先add再remove(比如建表失败)时会回调两次，只有第一次需要恢复copy之前的版本
+        if (version != 0 && old != null) {
             dbObjects = old.dbObjects;
             old = old.old;
         }
@@ -5,51 +5,114 @@
  */
 package org.lealone.db.index.hash;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
 import org.lealone.common.exceptions.DbException;
 import org.lealone.db.index.Cursor;
-import org.lealone.db.index.IndexBase;
 import org.lealone.db.index.IndexColumn;
 import org.lealone.db.index.IndexConditionType;
 import org.lealone.db.index.IndexType;
+import org.lealone.db.index.standard.HashKeyDataType;
+import org.lealone.db.index.standard.StandardSecondaryIndex;
+import org.lealone.db.index.standard.ValueDataType;
+import org.lealone.db.result.SearchRow;
 import org.lealone.db.result.SortOrder;
 import org.lealone.db.session.ServerSession;
 import org.lealone.db.table.Column;
-import org.lealone.db.table.Table;
-
-public abstract class HashIndex extends IndexBase {
-
-    /**
-     * The index of the indexed column.
-     */
-    protected final int indexColumn;
+import org.lealone.db.table.StandardTable;
+import org.lealone.db.value.CompareMode;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueArray;
+import org.lealone.db.value.ValueLong;
+import org.lealone.storage.CursorParameters;
+import org.lealone.transaction.TransactionMapEntry;
+
+/**
+ * 只支持等值查找的哈希索引。
+ *
+ * 跟StandardSecondaryIndex一样，索引记录的key由索引字段加上rowKey组成，通过事务map读写，
+ * 只是底层使用AOSE的HashMap，所有索引字段都是等值条件时直接定位到对应的哈希组，不用从B-Tree的root page往下查找。
+ * 索引字段有按排序规则比较的字符串时底层还是用BTreeMap，等值查找退化成范围查找。
+ *
+ * @author zhh
+ */
+public class HashIndex extends StandardSecondaryIndex {
 
-    protected HashIndex(Table table, int id, String indexName, IndexType indexType,
-            IndexColumn[] columns) {
-        super(table, id, indexName, indexType, columns);
-        this.indexColumn = columns[0].column.getColumnId();
-        reset();
+    public HashIndex(ServerSession session, StandardTable table, int id, String indexName,
+            IndexType indexType, IndexColumn[] indexColumns) {
+        super(session, table, id, indexName, indexType, indexColumns);
     }
 
-    protected abstract void reset();
-
     @Override
-    public void truncate(ServerSession session) {
-        reset();
+    protected ValueDataType createKeyType(int[] sortTypes) {
+        return new HashKeyDataType(database, database.getCompareMode(), sortTypes,
+                indexType.isUnique());
     }
 
     @Override
-    public long getDiskSpaceUsed() {
-        return 0;
+    protected Map<String, String> getDataMapParameters() {
+        Map<String, String> tableParameters = getTable().getParameters();
+        Map<String, String> parameters = tableParameters == null ? new HashMap<>(1)
+                : new HashMap<>(tableParameters);
+        // 按排序规则比较的字符串无法算出跟compare一致的哈希码，这个索引还是用BTreeMap
+        if (hasCollatedString())
+            parameters.remove("mapType");
+        else
+            parameters.put("mapType", "HashMap");
+        return parameters;
     }
 
-    @Override
-    public void close(ServerSession session) {
-        // nothing to do
+    private boolean hasCollatedString() {
+        CompareMode compareMode = database.getCompareMode();
+        if (CompareMode.OFF.equals(compareMode.getName()))
+            return false;
+        for (Column c : columns) {
+            switch (c.getType()) {
+            case Value.STRING:
+            case Value.STRING_FIXED:
+            case Value.STRING_IGNORECASE:
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
-    public void remove(ServerSession session) {
-        // nothing to do
+    public Cursor find(ServerSession session, SearchRow first, SearchRow last) {
+        if (!isEqualityLookup(first, last))
+            return super.find(session, first, last);
+        ValueArray from = convertToKey(first);
+        ValueArray to = convertToKey(last);
+        from.getList()[columns.length] = ValueLong.get(Long.MIN_VALUE);
+        to.getList()[columns.length] = ValueLong.get(Long.MAX_VALUE);
+        Iterator<TransactionMapEntry<ValueArray, Value>> entries = getMap(session)
+                .entryIterator(CursorParameters.createHashLookup(from, to));
+        Iterator<ValueArray> keys = new Iterator<ValueArray>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public ValueArray next() {
+                return entries.next().getKey();
+            }
+        };
+        return createCursor(session, keys, last);
+    }
+
+    // 所有索引字段都有值并且first和last相等时才能按哈希组查找
+    private boolean isEqualityLookup(SearchRow first, SearchRow last) {
+        if (first == null || last == null)
+            return false;
+        for (Column c : columns) {
+            int index = c.getColumnId();
+            if (first.getValue(index) == null || last.getValue(index) == null)
+                return false;
+        }
+        return compareRows(first, last) == 0;
     }
 
     @Override
@@ -67,11 +130,6 @@ public abstract class HashIndex extends IndexBase {
         return 2;
     }
 
-    @Override
-    public void checkRename() {
-        // ok
-    }
-
     @Override
     public boolean canGetFirstOrLast() {
         return false;
@@ -88,12 +146,7 @@ public abstract class HashIndex extends IndexBase {
     }
 
     @Override
-    public boolean needRebuild() {
-        return true;
-    }
-
-    @Override
-    public boolean isInMemory() {
-        return true;
+    public boolean supportsDistinctQuery() {
+        return false;
     }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.db.index.standard;
+
+import org.lealone.db.DataHandler;
+import org.lealone.db.value.CompareMode;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueArray;
+
+/**
+ * HASH索引的key类型，只用索引字段计算哈希码，不包括最后的rowKey，
+ * 这样索引字段相同的key都在同一个哈希组中，按索引字段查找时只需要找一个哈希组。
+ */
+public class HashKeyDataType extends ValueDataType {
+
+    private final boolean unique;
+
+    public HashKeyDataType(DataHandler handler, CompareMode compareMode, int[] sortTypes,
+            boolean unique) {
+        super(handler, compareMode, sortTypes);
+        this.unique = unique;
+    }
+
+    @Override
+    protected boolean isUniqueKey() {
+        return unique;
+    }
+
+    @Override
+    public int hashCode(Object obj) {
+        if (!(obj instanceof ValueArray))
+            return hashValue((Value) obj);
+        Value[] list = ((ValueArray) obj).getList();
+        return hashValues(list, list.length - 1);
+    }
+}
@@ -7,8 +7,11 @@ package org.lealone.db.index.standard;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 
 import org.lealone.common.exceptions.DbException;
 import org.lealone.db.Constants;
@@ -24,6 +27,7 @@ import org.lealone.db.result.SearchRow;
 import org.lealone.db.result.SortOrder;
 import org.lealone.db.session.ServerSession;
 import org.lealone.db.table.Column;
+import org.lealone.db.table.Partitioning;
 import org.lealone.db.table.StandardTable;
 import org.lealone.db.table.TableAlterHistoryRecord;
 import org.lealone.db.value.Value;
@@ -58,6 +62,10 @@ public class StandardPrimaryIndex extends StandardIndex {
     private final TransactionMap<Value, VersionedValue> dataMap;
     private int mainIndexColumn = -1;
 
+    // 分区表每个分区对应一个map，跟partitioning中的分区一一对应，不分区时为null
+    private Partitioning partitioning;
+    private TransactionMap<Value, VersionedValue>[] partitionMaps;
+
     public StandardPrimaryIndex(ServerSession session, StandardTable table) {
         super(table, table.getId(), table.getName() + "_DATA", IndexType.createScan(),
                 IndexColumn.wrap(table.getColumns()));
@@ -76,10 +84,46 @@ public class StandardPrimaryIndex extends StandardIndex {
 
         // session.getRunMode()是针对当前session的，如果是SystemSession，就算数据库是ShardingMode，也不管它
         Transaction t = transactionEngine.beginTransaction(false, session.getRunMode());
-        dataMap = t.openMap(mapName, keyType, vvType, storage, table.getParameters());
+        partitioning = table.getPartitioning();
+        if (partitioning == null) {
+            dataMap = t.openMap(mapName, keyType, vvType, storage, table.getParameters());
+        } else {
+            int count = partitioning.getPartitionCount();
+            partitionMaps = newMapArray(count);
+            for (int i = 0; i < count; i++) {
+                partitionMaps[i] = t.openMap(getMapNameForPartition(partitioning.getPartitionName(i)),
+                        keyType, vvType, storage, table.getParameters());
+            }
+            dataMap = partitionMaps[0];
+        }
         t.commit(); // 避免产生内部未提交的事务
     }
 
+    @SuppressWarnings("unchecked")
+    private static TransactionMap<Value, VersionedValue>[] newMapArray(int length) {
+        return new TransactionMap[length];
+    }
+
+    private String getMapNameForPartition(String partitionName) {
+        return mapName + Constants.NAME_SEPARATOR + "p" + Constants.NAME_SEPARATOR + partitionName;
+    }
+
+    /**
+     * Whether the map stores rows of this index.
+     *
+     * @param name the map name
+     * @return true if it is the data map or the map of a partition
+     */
+    public boolean isDataMap(String name) {
+        if (partitionMaps == null)
+            return mapName.equals(name);
+        for (TransactionMap<Value, VersionedValue> map : partitionMaps) {
+            if (map.getName().equals(name))
+                return true;
+        }
+        return false;
+    }
+
     @Override
     public StandardTable getTable() {
         return table;
@@ -119,6 +163,9 @@ public class StandardPrimaryIndex extends StandardIndex {
             long k = row.getValue(mainIndexColumn).getLong();
             row.setKey(k);
         }
+        if (partitionMaps != null && mainIndexColumn == -1) {
+            throw DbException.getUnsupportedException("partitioned table without integer primary key");
+        }
 
         if (table.containsLargeObject()) {
             for (int i = 0, len = row.getColumnCount(); i < len; i++) {
@@ -134,7 +181,7 @@ public class StandardPrimaryIndex extends StandardIndex {
         }
 
         AsyncCallback<Integer> ac = new AsyncCallback<>();
-        TransactionMap<Value, VersionedValue> map = getMap(session);
+        TransactionMap<Value, VersionedValue> map = getMap(session, row.getKey());
         VersionedValue value = new VersionedValue(row.getVersion(), ValueArray.get(row.getValueList()));
         if (checkDuplicateKey) {
             Value key = ValueLong.get(row.getKey());
@@ -187,7 +234,7 @@ public class StandardPrimaryIndex extends StandardIndex {
                 }
             }
         }
-        TransactionMap<Value, VersionedValue> map = getMap(session);
+        TransactionMap<Value, VersionedValue> map = getMap(session, oldRow.getKey());
         if (!isLockedBySelf && map.isLocked(oldRow.getTValue(), updateColumns))
             return Future.succeededFuture(
                     map.addWaitingTransaction(ValueLong.get(oldRow.getKey()), oldRow.getTValue()));
@@ -222,7 +269,7 @@ public class StandardPrimaryIndex extends StandardIndex {
     public Future<Integer> remove(ServerSession session, Row row, boolean isLockedBySelf) {
         Value key = ValueLong.get(row.getKey());
         Object tv = row.getTValue();
-        TransactionMap<Value, VersionedValue> map = getMap(session);
+        TransactionMap<Value, VersionedValue> map = getMap(session, row.getKey());
 
         if (!isLockedBySelf && map.isLocked(tv, null))
             return Future.succeededFuture(map.addWaitingTransaction(key, tv));
@@ -240,7 +287,7 @@ public class StandardPrimaryIndex extends StandardIndex {
 
     @Override
     public boolean tryLock(ServerSession session, Row row, int[] lockColumns, boolean isForUpdate) {
-        TransactionMap<Value, VersionedValue> map = getMap(session);
+        TransactionMap<Value, VersionedValue> map = getMap(session, row.getKey());
         return map.tryLock(ValueLong.get(row.getKey()), row.getTValue(), lockColumns, isForUpdate);
     }
 
@@ -255,13 +302,21 @@ public class StandardPrimaryIndex extends StandardIndex {
         ValueLong to = getPK(parameters.to);
         CursorParameters<Value> newParameters = parameters.copy(from, to);
         return new StandardPrimaryIndexCursor(session, table, this,
-                getMap(session).entryIterator(newParameters), to);
+                entryIterator(session, newParameters), to);
     }
 
     @Override
     public Cursor findFirstOrLast(ServerSession session, boolean first) {
-        TransactionMap<Value, VersionedValue> map = getMap(session);
-        ValueLong v = (ValueLong) (first ? map.firstKey() : map.lastKey());
+        TransactionMap<Value, VersionedValue> map = null;
+        ValueLong v = null;
+        for (TransactionMap<Value, VersionedValue> m : getMaps(session)) {
+            ValueLong k = (ValueLong) (first ? m.firstKey() : m.lastKey());
+            if (k != null && (v == null || (first ? k.getLong() < v.getLong()
+                    : k.getLong() > v.getLong()))) {
+                v = k;
+                map = m;
+            }
+        }
         if (v == null) {
             return EmptyCursor.INSTANCE;
         }
@@ -280,7 +335,7 @@ public class StandardPrimaryIndex extends StandardIndex {
     }
 
     public Row getRow(ServerSession session, long key, int[] columnIndexes) {
-        Object[] valueAndRef = getMap(session).getValueAndRef(ValueLong.get(key), columnIndexes);
+        Object[] valueAndRef = getMap(session, key).getValueAndRef(ValueLong.get(key), columnIndexes);
         VersionedValue v = (VersionedValue) valueAndRef[0];
         ValueArray array = v.value;
         array = v.value;
@@ -292,7 +347,7 @@ public class StandardPrimaryIndex extends StandardIndex {
     }
 
     public Row getRow(ServerSession session, long key, Object oldTValue) {
-        Object value = getMap(session).getValue(oldTValue);
+        Object value = getMap(session, key).getValue(oldTValue);
         // 已经删除了
         if (value == null)
             return null;
@@ -309,7 +364,7 @@ public class StandardPrimaryIndex extends StandardIndex {
     @Override
     public double getCost(ServerSession session, int[] masks, SortOrder sortOrder) {
         try {
-            return 10 * (dataMap.getRawSize() + Constants.COST_ROW_OFFSET);
+            return 10 * (getRowCountMax() + Constants.COST_ROW_OFFSET);
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
         }
@@ -323,9 +378,10 @@ public class StandardPrimaryIndex extends StandardIndex {
 
     @Override
     public void remove(ServerSession session) {
-        TransactionMap<Value, VersionedValue> map = getMap(session);
-        if (!map.isClosed()) {
-            map.remove();
+        for (TransactionMap<Value, VersionedValue> map : getMaps(session)) {
+            if (!map.isClosed()) {
+                map.remove();
+            }
         }
     }
 
@@ -335,12 +391,64 @@ public class StandardPrimaryIndex extends StandardIndex {
         if (table.containsLargeObject() && database.getLobStorage() != null) {
             database.getLobStorage().removeAllForTable(table.getId());
         }
-        getMap(session).clear();
+        for (TransactionMap<Value, VersionedValue> map : getMaps(session)) {
+            map.clear();
+        }
+    }
+
+    /**
+     * Remove all rows of a partition, the map itself is kept.
+     *
+     * @param session the session
+     * @param index the partition index
+     */
+    public void truncatePartition(ServerSession session, int index) {
+        // 跟truncate一样直接清空map，不需要逐条删除记录
+        getInstance(session, partitionMaps[index]).clear();
+    }
+
+    /**
+     * Remove a partition together with its map.
+     *
+     * @param session the session
+     * @param index the partition index
+     * @param newPartitioning the partitioning without the removed partition
+     */
+    public void dropPartition(ServerSession session, int index, Partitioning newPartitioning) {
+        TransactionMap<Value, VersionedValue> map = getInstance(session, partitionMaps[index]);
+        TransactionMap<Value, VersionedValue>[] maps = newMapArray(partitionMaps.length - 1);
+        for (int i = 0, j = 0; i < partitionMaps.length; i++) {
+            if (i != index)
+                maps[j++] = partitionMaps[i];
+        }
+        partitionMaps = maps;
+        partitioning = newPartitioning;
+        // 删除map时会把它的目录一起删掉
+        if (!map.isClosed()) {
+            map.remove();
+        }
+    }
+
+    /**
+     * Iterate over the rows of a partition.
+     *
+     * @param session the session
+     * @param index the partition index
+     * @return the cursor
+     */
+    public Cursor findInPartition(ServerSession session, int index) {
+        TransactionMap<Value, VersionedValue> map = getInstance(session, partitionMaps[index]);
+        return new StandardPrimaryIndexCursor(session, table, this,
+                map.entryIterator(CursorParameters.create((Value) null)), null);
     }
 
     @Override
     public long getRowCount(ServerSession session) {
-        return getMap(session).size();
+        long count = 0;
+        for (TransactionMap<Value, VersionedValue> map : getMaps(session)) {
+            count += map.size();
+        }
+        return count;
     }
 
     /**
@@ -350,7 +458,13 @@ public class StandardPrimaryIndex extends StandardIndex {
      */
     public long getRowCountMax() {
         try {
-            return dataMap.getRawSize();
+            if (partitionMaps == null)
+                return dataMap.getRawSize();
+            long count = 0;
+            for (TransactionMap<Value, VersionedValue> map : partitionMaps) {
+                count += map.getRawSize();
+            }
+            return count;
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
         }
@@ -363,12 +477,24 @@ public class StandardPrimaryIndex extends StandardIndex {
 
     @Override
     public long getDiskSpaceUsed() {
-        return dataMap.getDiskSpaceUsed();
+        if (partitionMaps == null)
+            return dataMap.getDiskSpaceUsed();
+        long size = 0;
+        for (TransactionMap<Value, VersionedValue> map : partitionMaps) {
+            size += map.getDiskSpaceUsed();
+        }
+        return size;
     }
 
     @Override
     public long getMemorySpaceUsed() {
-        return dataMap.getMemorySpaceUsed();
+        if (partitionMaps == null)
+            return dataMap.getMemorySpaceUsed();
+        long size = 0;
+        for (TransactionMap<Value, VersionedValue> map : partitionMaps) {
+            size += map.getMemorySpaceUsed();
+        }
+        return size;
     }
 
     /**
@@ -401,8 +527,8 @@ public class StandardPrimaryIndex extends StandardIndex {
      * @return the cursor
      */
     Cursor find(ServerSession session, ValueLong first, ValueLong last) {
-        return new StandardPrimaryIndexCursor(session, table, this, getMap(session).entryIterator(first),
-                last);
+        return new StandardPrimaryIndexCursor(session, table, this,
+                entryIterator(session, CursorParameters.create(first, last)), last);
     }
 
     @Override
@@ -411,16 +537,64 @@ public class StandardPrimaryIndex extends StandardIndex {
     }
 
     /**
-     * Get the map to store the data.
+     * Get the map to store the row with the given key.
      *
      * @param session the session
+     * @param key the row key
      * @return the map
      */
-    private TransactionMap<Value, VersionedValue> getMap(ServerSession session) {
+    private TransactionMap<Value, VersionedValue> getMap(ServerSession session, long key) {
+        TransactionMap<Value, VersionedValue> map = dataMap;
+        if (partitionMaps != null) {
+            int index = partitioning.getPartition(key);
+            if (index < 0) {
+                throw DbException.get(ErrorCode.NO_PARTITION_FOR_VALUE_2, table.getSQL(),
+                        String.valueOf(key));
+            }
+            map = partitionMaps[index];
+        }
+        return getInstance(session, map);
+    }
+
+    private static TransactionMap<Value, VersionedValue> getInstance(ServerSession session,
+            TransactionMap<Value, VersionedValue> map) {
         if (session == null) {
-            return dataMap;
+            return map;
         }
-        return dataMap.getInstance(session.getTransaction());
+        return map.getInstance(session.getTransaction());
+    }
+
+    private List<TransactionMap<Value, VersionedValue>> getMaps(ServerSession session) {
+        if (partitionMaps == null)
+            return Arrays.asList(getInstance(session, dataMap));
+        ArrayList<TransactionMap<Value, VersionedValue>> maps = new ArrayList<>(partitionMaps.length);
+        for (TransactionMap<Value, VersionedValue> map : partitionMaps) {
+            maps.add(getInstance(session, map));
+        }
+        return maps;
+    }
+
+    // 只扫描跟[from, to]有交集的分区，RANGE分区按顺序连接起来，HASH分区按key归并
+    private Iterator<TransactionMapEntry<Value, VersionedValue>> entryIterator(ServerSession session,
+            CursorParameters<Value> parameters) {
+        if (partitionMaps == null)
+            return getInstance(session, dataMap).entryIterator(parameters);
+        Long from = parameters.from == null ? null : parameters.from.getLong();
+        Long to = parameters.to == null ? null : parameters.to.getLong();
+        int first = partitioning.getFirstPartition(from, to);
+        int last = partitioning.getLastPartition(from, to);
+        if (first > last)
+            return Collections.emptyIterator();
+        if (first == last)
+            return getInstance(session, partitionMaps[first]).entryIterator(parameters);
+        ArrayList<TransactionMap<Value, VersionedValue>> maps = new ArrayList<>(last - first + 1);
+        for (int i = first; i <= last; i++) {
+            maps.add(getInstance(session, partitionMaps[i]));
+        }
+        if (partitioning.isOrdered())
+            return new ConcatIterator(maps, parameters);
+        else
+            return new MergeIterator(maps, parameters);
     }
 
     @Override
@@ -516,4 +690,84 @@ public class StandardPrimaryIndex extends StandardIndex {
             }
         }
     }
+
+    private static class ConcatIterator implements Iterator<TransactionMapEntry<Value, VersionedValue>> {
+
+        private final List<TransactionMap<Value, VersionedValue>> maps;
+        private final CursorParameters<Value> parameters;
+        private Iterator<TransactionMapEntry<Value, VersionedValue>> current;
+        private int index;
+
+        ConcatIterator(List<TransactionMap<Value, VersionedValue>> maps,
+                CursorParameters<Value> parameters) {
+            this.maps = maps;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null || !current.hasNext()) {
+                if (index >= maps.size())
+                    return false;
+                // 用到时才打开下一个分区的迭代器
+                current = maps.get(index++).entryIterator(parameters);
+            }
+            return true;
+        }
+
+        @Override
+        public TransactionMapEntry<Value, VersionedValue> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return current.next();
+        }
+    }
+
+    private static class MergeIterator implements Iterator<TransactionMapEntry<Value, VersionedValue>> {
+
+        private final PriorityQueue<PeekingIterator> queue;
+
+        MergeIterator(List<TransactionMap<Value, VersionedValue>> maps,
+                CursorParameters<Value> parameters) {
+            queue = new PriorityQueue<>(maps.size(),
+                    (a, b) -> Long.compare(a.peek.getKey().getLong(), b.peek.getKey().getLong()));
+            for (TransactionMap<Value, VersionedValue> map : maps) {
+                PeekingIterator it = new PeekingIterator(map.entryIterator(parameters));
+                if (it.peek != null)
+                    queue.add(it);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public TransactionMapEntry<Value, VersionedValue> next() {
+            PeekingIterator it = queue.poll();
+            if (it == null)
+                throw new NoSuchElementException();
+            TransactionMapEntry<Value, VersionedValue> e = it.peek;
+            if (it.advance())
+                queue.add(it);
+            return e;
+        }
+    }
+
+    private static class PeekingIterator {
+
+        final Iterator<TransactionMapEntry<Value, VersionedValue>> iterator;
+        TransactionMapEntry<Value, VersionedValue> peek;
+
+        PeekingIterator(Iterator<TransactionMapEntry<Value, VersionedValue>> iterator) {
+            this.iterator = iterator;
+            advance();
+        }
+
+        boolean advance() {
+            peek = iterator.hasNext() ? iterator.next() : null;
+            return peek != null;
+        }
+    }
 }
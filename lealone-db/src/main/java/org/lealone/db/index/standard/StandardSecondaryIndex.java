@@ -8,9 +8,11 @@ package org.lealone.db.index.standard;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 import org.lealone.common.exceptions.DbException;
+import org.lealone.common.util.CaseInsensitiveMap;
 import org.lealone.db.api.ErrorCode;
 import org.lealone.db.async.AsyncCallback;
 import org.lealone.db.async.Future;
@@ -56,32 +58,67 @@ public class StandardSecondaryIndex extends StandardIndex {
         // even for unique indexes, as some of the index columns could be null
         keyColumns = indexColumns.length + 1;
 
-        dataMap = openMap(session, mapName);
+        dataMap = openMap(session, mapName, getDataMapParameters());
     }
 
     private TransactionMap<ValueArray, Value> openMap(ServerSession session, String mapName) {
+        return openMap(session, mapName, table.getParameters());
+    }
+
+    private TransactionMap<ValueArray, Value> openMap(ServerSession session, String mapName,
+            Map<String, String> parameters) {
         int[] sortTypes = new int[keyColumns];
         for (int i = 0; i < indexColumns.length; i++) {
             sortTypes[i] = indexColumns[i].sortType;
         }
         sortTypes[keyColumns - 1] = SortOrder.ASCENDING;
 
-        ValueDataType keyType;
-        if (indexType.isUnique())
-            keyType = new UniqueKeyDataType(database, database.getCompareMode(), sortTypes);
-        else
-            keyType = new ValueDataType(database, database.getCompareMode(), sortTypes);
+        ValueDataType keyType = createKeyType(sortTypes);
         ValueDataType valueType = new ValueDataType(null, null, null);
 
+        if (parameters != null && "ART".equalsIgnoreCase(parameters.get("mapType"))
+                && !supportsComparableBytes()) {
+            // ART map的key要编码成可比较的字节数组，有索引字段不支持时还是用BTreeMap
+            parameters = new CaseInsensitiveMap<>(parameters);
+            parameters.remove("mapType");
+        }
         Storage storage = database.getStorage(table.getStorageEngine());
         TransactionMap<ValueArray, Value> map = session.getTransaction().openMap(mapName, keyType,
-                valueType, storage, table.getParameters());
+                valueType, storage, parameters);
         if (!keyType.equals(map.getKeyType())) {
             throw DbException.getInternalError("Incompatible key type");
         }
         return map;
     }
 
+    private boolean supportsComparableBytes() {
+        CompareMode compareMode = database.getCompareMode();
+        for (Column c : columns) {
+            if (!ValueDataType.supportsComparableBytes(compareMode, c.getType()))
+                return false;
+        }
+        return true;
+    }
+
+    protected ValueDataType createKeyType(int[] sortTypes) {
+        if (indexType.isUnique())
+            return new UniqueKeyDataType(database, database.getCompareMode(), sortTypes);
+        else
+            return new ValueDataType(database, database.getCompareMode(), sortTypes);
+    }
+
+    // 索引数据所在map的参数，重建索引时用到的临时map总是使用表的参数
+    // 表参数中有indexMapType时二级索引用它指定的map类型，比如主键用BTreeMap，二级索引用LSMMap
+    protected Map<String, String> getDataMapParameters() {
+        Map<String, String> parameters = table.getParameters();
+        String indexMapType = parameters == null ? null : parameters.get("indexMapType");
+        if (indexMapType == null)
+            return parameters;
+        parameters = new CaseInsensitiveMap<>(parameters);
+        parameters.put("mapType", indexMapType);
+        return parameters;
+    }
+
     @Override
     public StandardTable getTable() {
         return table;
@@ -116,7 +153,10 @@ public class StandardSecondaryIndex extends StandardIndex {
     @Override
     public Future<Integer> update(ServerSession session, Row oldRow, Row newRow, int[] updateColumns,
             boolean isLockedBySelf) {
-        // 只有索引字段被更新时才更新索引
+        // 只有索引字段被更新时才更新索引，修改了作为rowKey的主键字段时索引中的rowKey也要跟着变
+        if (oldRow.getKey() != newRow.getKey()) {
+            return super.update(session, oldRow, newRow, updateColumns, isLockedBySelf);
+        }
         for (Column c : columns) {
             if (StandardPrimaryIndex.containsColumn(updateColumns, c)) {
                 return super.update(session, oldRow, newRow, updateColumns, isLockedBySelf);
@@ -142,10 +182,15 @@ public class StandardSecondaryIndex extends StandardIndex {
         if (min != null) {
             min.getList()[keyColumns - 1] = ValueLong.get(Long.MIN_VALUE);
         }
-        return new StandardSecondaryIndexRegularCursor(session, getMap(session).keyIterator(min), last);
+        return createCursor(session, getMap(session).keyIterator(min), last);
+    }
+
+    protected Cursor createCursor(ServerSession session, Iterator<ValueArray> iterator,
+            SearchRow last) {
+        return new StandardSecondaryIndexRegularCursor(session, iterator, last);
     }
 
-    private ValueArray convertToKey(SearchRow r) {
+    protected ValueArray convertToKey(SearchRow r) {
         if (r == null) {
             return null;
         }
@@ -245,7 +290,7 @@ public class StandardSecondaryIndex extends StandardIndex {
      * @param session the session
      * @return the map
      */
-    private TransactionMap<ValueArray, Value> getMap(ServerSession session) {
+    protected TransactionMap<ValueArray, Value> getMap(ServerSession session) {
         if (session == null) {
             return dataMap;
         }
@@ -14,7 +14,11 @@ import org.lealone.db.result.SortOrder;
 import org.lealone.db.value.CompareMode;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueArray;
+import org.lealone.db.value.ValueDate;
 import org.lealone.db.value.ValueNull;
+import org.lealone.db.value.ValueTime;
+import org.lealone.db.value.ValueTimestamp;
+import org.lealone.db.value.ValueUuid;
 import org.lealone.storage.type.StorageDataType;
 
 /**
@@ -25,11 +29,13 @@ public class ValueDataType implements StorageDataType {
     final DataHandler handler;
     final CompareMode compareMode;
     final int[] sortTypes;
+    private final boolean binaryCollation;
 
     public ValueDataType(DataHandler handler, CompareMode compareMode, int[] sortTypes) {
         this.handler = handler;
         this.compareMode = compareMode;
         this.sortTypes = sortTypes;
+        binaryCollation = compareMode == null || CompareMode.OFF.equals(compareMode.getName());
     }
 
     protected boolean isUniqueKey() {
@@ -98,6 +104,238 @@ public class ValueDataType implements StorageDataType {
         return a.compareTypeSafe(b, compareMode);
     }
 
+    // 唯一索引key不包括最后的rowId，跟compare方法一致
+    @Override
+    public int hashCode(Object obj) {
+        if (!(obj instanceof ValueArray))
+            return hashValue((Value) obj);
+        Value[] list = ((ValueArray) obj).getList();
+        return hashValues(list, isUniqueKey() ? list.length - 1 : list.length);
+    }
+
+    protected int hashValues(Value[] list, int len) {
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + hashValue(list[i]);
+        }
+        return h;
+    }
+
+    // 必须跟compare方法一致，compare认为相等的值哈希码也要相等
+    protected int hashValue(Value v) {
+        if (v == null || v == ValueNull.INSTANCE)
+            return 0;
+        switch (v.getType()) {
+        case Value.DECIMAL:
+            // 1.0和1.00是相等的
+            return v.getBigDecimal().stripTrailingZeros().hashCode();
+        case Value.STRING:
+        case Value.STRING_FIXED:
+        case Value.STRING_IGNORECASE:
+            // 按排序规则比较时不同的字符串也可能相等，只能返回相同的哈希码
+            return binaryCollation ? v.hashCode() : 0;
+        default:
+            return v.hashCode();
+        }
+    }
+
+    // 每个字段前面的标记字节，null是为了查找所有记录时用的，总是最小
+    private static final int MARKER_JAVA_NULL = 0;
+    private static final int MARKER_NULL_LOW = 1;
+    private static final int MARKER_NOT_NULL = 2;
+    private static final int MARKER_NULL_HIGH = 3;
+    // 比所有标记字节都大，这样字段多的key比字段少的key小，跟compare方法一致
+    private static final int MARKER_END = 4;
+
+    // 从根节点到叶子节点的每一层都要用查找的key，缓存最后一次的编码结果
+    private volatile ComparableKey lastComparableKey;
+
+    private static class ComparableKey {
+
+        final Object key;
+        final byte[] bytes;
+
+        ComparableKey(Object key, byte[] bytes) {
+            this.key = key;
+            this.bytes = bytes;
+        }
+    }
+
+    // 只对多字段的索引key编码，单个字段直接比较更快
+    @Override
+    public byte[] getComparableBytes(Object obj) {
+        if (!(obj instanceof ValueArray) || compareMode == null
+                || compareMode.getClass() != CompareMode.class) {
+            return null;
+        }
+        ComparableKey last = lastComparableKey;
+        if (last != null && last.key == obj) {
+            return last.bytes;
+        }
+        byte[] bytes = encode((ValueArray) obj);
+        lastComparableKey = new ComparableKey(obj, bytes);
+        return bytes;
+    }
+
+    /**
+     * 判断指定类型的字段能不能编码成可比较的字节数组。
+     *
+     * @param compareMode the compare mode
+     * @param type the value type
+     * @return true if supported
+     */
+    public static boolean supportsComparableBytes(CompareMode compareMode, int type) {
+        switch (type) {
+        case Value.BOOLEAN:
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.FLOAT:
+        case Value.DOUBLE:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIMESTAMP:
+        case Value.UUID:
+            return true;
+        case Value.STRING:
+        case Value.STRING_FIXED:
+            return compareMode.getClass() == CompareMode.class;
+        default:
+            return false;
+        }
+    }
+
+    private byte[] encode(ValueArray obj) {
+        Value[] list = obj.getList();
+        // 唯一索引key不需要比较最后的rowId
+        int size = isUniqueKey() ? list.length - 1 : list.length;
+        if (size > sortTypes.length) {
+            return null;
+        }
+        ComparableBytes bytes = new ComparableBytes();
+        for (int i = 0; i < size; i++) {
+            if (!bytes.write(list[i], sortTypes[i])) {
+                return null;
+            }
+        }
+        bytes.put(MARKER_END);
+        return bytes.toByteArray();
+    }
+
+    private static class ComparableBytes {
+
+        private byte[] bytes = new byte[32];
+        private int length;
+
+        private void ensureCapacity(int len) {
+            if (length + len > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + len));
+            }
+        }
+
+        void put(int b) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void putLong(long x) {
+            ensureCapacity(8);
+            for (int i = 56; i >= 0; i -= 8) {
+                bytes[length++] = (byte) (x >>> i);
+            }
+        }
+
+        // 最高位取反后有符号数的顺序就跟无符号字节的顺序一样了
+        void putSignedLong(long x) {
+            putLong(x ^ Long.MIN_VALUE);
+        }
+
+        // 跟Double.compare的顺序一致，包括-0.0和NaN
+        void putDouble(long bits) {
+            putLong(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+        }
+
+        // 小于0x7F的字符加1后用一个字节，其他字符用三个字节，第一个字节总是大于0x7F，最后以0x00结尾，
+        // 这样短的字符串总是排在以它为前缀的长字符串前面，跟String.compareTo一致
+        void putString(String s) {
+            int len = s.length();
+            ensureCapacity(len * 3 + 1);
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c < 0x7F) {
+                    bytes[length++] = (byte) (c + 1);
+                } else {
+                    bytes[length++] = (byte) (0x80 | (c >>> 14));
+                    bytes[length++] = (byte) ((c >>> 7) & 0x7F);
+                    bytes[length++] = (byte) (c & 0x7F);
+                }
+            }
+            bytes[length++] = 0;
+        }
+
+        boolean write(Value v, int sortType) {
+            if (v == null) {
+                put(MARKER_JAVA_NULL);
+                return true;
+            }
+            if (v == ValueNull.INSTANCE) {
+                put(SortOrder.compareNull(true, sortType) < 0 ? MARKER_NULL_LOW : MARKER_NULL_HIGH);
+                return true;
+            }
+            put(MARKER_NOT_NULL);
+            int start = length;
+            switch (v.getType()) {
+            case Value.BOOLEAN:
+                put(v.getBoolean() ? 1 : 0);
+                break;
+            case Value.BYTE:
+            case Value.SHORT:
+            case Value.INT:
+            case Value.LONG:
+                putSignedLong(v.getLong());
+                break;
+            case Value.FLOAT:
+                putDouble(Double.doubleToLongBits(v.getFloat()));
+                break;
+            case Value.DOUBLE:
+                putDouble(Double.doubleToLongBits(v.getDouble()));
+                break;
+            case Value.DATE:
+                putSignedLong(((ValueDate) v).getDateValue());
+                break;
+            case Value.TIME:
+                putSignedLong(((ValueTime) v).getNanos());
+                break;
+            case Value.TIMESTAMP:
+                putSignedLong(((ValueTimestamp) v).getDateValue());
+                putSignedLong(((ValueTimestamp) v).getNanos());
+                break;
+            case Value.UUID:
+                putSignedLong(((ValueUuid) v).getHigh());
+                putSignedLong(((ValueUuid) v).getLow());
+                break;
+            case Value.STRING:
+            case Value.STRING_FIXED:
+                putString(v.getString());
+                break;
+            default:
+                return false;
+            }
+            // 降序时把字段的字节取反，因为每个字段的编码都不是其他编码的前缀，取反后顺序正好相反
+            if ((sortType & SortOrder.DESCENDING) != 0) {
+                for (int i = start; i < length; i++) {
+                    bytes[i] = (byte) ~bytes[i];
+                }
+            }
+            return true;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
     @Override
     public int getMemory(Object obj) {
         return getMemory((Value) obj);
@@ -681,6 +681,20 @@ public class Schema extends DbObjectBase {
      * @return the created {@link Table} object
      */
     public Table createTable(CreateTableData data) {
+        StorageEngine engine = getStorageEngine(data);
+        if (engine instanceof TableFactory) {
+            return ((TableFactory) engine).createTable(data);
+        }
+        return new StandardTable(data, engine);
+    }
+
+    /**
+     * Get the storage engine for the table to create.
+     *
+     * @param data the create table information
+     * @return the storage engine
+     */
+    public StorageEngine getStorageEngine(CreateTableData data) {
         data.schema = this;
         // 用默认的数据库参数
         if (data.storageEngineName == null) {
@@ -697,11 +711,7 @@ public class Schema extends DbObjectBase {
                     throw DbException.convert(e);
                 }
             }
-
-            if (engine instanceof TableFactory) {
-                return ((TableFactory) engine).createTable(data);
-            }
-            return new StandardTable(data, engine);
+            return engine;
         }
         throw DbException.convert(new NullPointerException("table engine is null"));
     }
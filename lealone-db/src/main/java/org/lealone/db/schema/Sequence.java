@@ -6,11 +6,14 @@
 package org.lealone.db.schema;
 
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import org.lealone.common.exceptions.DbException;
 import org.lealone.db.DbObjectType;
 import org.lealone.db.api.ErrorCode;
 import org.lealone.db.session.ServerSession;
+import org.lealone.storage.page.PageOperationHandler;
 
 /**
  * A sequence is created using the statement
@@ -26,7 +29,11 @@ public class Sequence extends SchemaObjectBase {
      */
     public static final int DEFAULT_CACHE_SIZE = 32;
 
-    private long value;
+    private static final AtomicLongFieldUpdater<Sequence> VALUE_UPDATER = //
+            AtomicLongFieldUpdater.newUpdater(Sequence.class, "value");
+
+    // 在PER SCHEDULER模式下，value是所有调度线程共享的高水位，小于它的值都已经分配给某个区间了
+    private volatile long value;
     private long valueWithMargin;
     private long increment;
     private long cacheSize;
@@ -34,11 +41,19 @@ public class Sequence extends SchemaObjectBase {
     private long maxValue;
     private boolean cycle;
     private boolean belongsToTable;
+    private boolean perScheduler;
+
+    // 每个调度线程独享的区间，下标是调度线程的id
+    private volatile Range[] ranges = new Range[0];
+    // 非调度线程共用的区间，需要同步
+    private final Range sharedRange = new Range(null);
+    // 修改序列的属性后所有区间都要作废
+    private volatile int rangeVersion;
 
     /**
      * The last valueWithMargin we flushed. We do a little dance with this to avoid an ABBA deadlock.
      */
-    private long lastFlushValueWithMargin;
+    private volatile long lastFlushValueWithMargin;
 
     /**
      * Creates a new sequence for an auto-increment column.
@@ -126,6 +141,8 @@ public class Sequence extends SchemaObjectBase {
         this.minValue = minValue;
         this.maxValue = maxValue;
         this.increment = increment;
+        this.lastFlushValueWithMargin = startValue;
+        rangeVersion++;
     }
 
     /**
@@ -207,7 +224,9 @@ public class Sequence extends SchemaObjectBase {
         if (cycle) {
             buff.append(" CYCLE");
         }
-        if (cacheSize != DEFAULT_CACHE_SIZE) {
+        if (perScheduler) {
+            buff.append(" CACHE ").append(cacheSize).append(" PER SCHEDULER");
+        } else if (cacheSize != DEFAULT_CACHE_SIZE) {
             buff.append(" CACHE ").append(cacheSize);
         }
         if (belongsToTable) {
@@ -231,6 +250,9 @@ public class Sequence extends SchemaObjectBase {
      * @return the next value
      */
     public long getNext(ServerSession session) {
+        if (perScheduler) {
+            return getNextPerScheduler(session);
+        }
         boolean needsFlush = false;
         long retVal;
         long flushValueWithMargin = -1;
@@ -260,6 +282,117 @@ public class Sequence extends SchemaObjectBase {
         return retVal;
     }
 
+    // 每个调度线程从自己的区间中分配，区间用完了才通过CAS从共享的高水位中再预留cacheSize个值，
+    // 只有预留区间时才需要持久化，所以不同调度线程拿到的值不是递增的，但一定是唯一的
+    private long getNextPerScheduler(ServerSession session) {
+        Range range = getRange();
+        if (range == sharedRange) {
+            synchronized (range) {
+                return range.next(session);
+            }
+        }
+        return range.next(session);
+    }
+
+    private Range getRange() {
+        Thread t = Thread.currentThread();
+        if (t instanceof PageOperationHandler) {
+            int id = ((PageOperationHandler) t).getHandlerId();
+            Range[] ranges = this.ranges;
+            Range range = id >= 0 && id < ranges.length ? ranges[id] : null;
+            if (range == null)
+                range = addRange(id, t);
+            // 不同类型的PageOperationHandler的id可能相同
+            if (range.owner == t)
+                return range;
+        }
+        return sharedRange;
+    }
+
+    private synchronized Range addRange(int id, Thread owner) {
+        if (id < 0)
+            return sharedRange;
+        Range[] ranges = this.ranges;
+        if (id >= ranges.length)
+            ranges = Arrays.copyOf(ranges, id + 1);
+        else
+            ranges = ranges.clone();
+        if (ranges[id] == null)
+            ranges[id] = new Range(owner);
+        this.ranges = ranges;
+        return ranges[id];
+    }
+
+    private class Range {
+
+        private final Thread owner;
+        private long next;
+        private long remaining;
+        private int version;
+        private boolean allocated;
+
+        Range(Thread owner) {
+            this.owner = owner;
+        }
+
+        long next(ServerSession session) {
+            if (remaining <= 0 || version != rangeVersion)
+                reserve(session);
+            long v = next;
+            next += increment;
+            remaining--;
+            allocated = true;
+            return v;
+        }
+
+        private void reserve(ServerSession session) {
+            // 高水位是区间最后一个值再加上increment，它也不能溢出，
+            // 所以最后能分配的值不超过Long.MAX_VALUE - increment(increment小于0时类似)
+            long bound = increment > 0 ? Math.min(maxValue, Long.MAX_VALUE - increment)
+                    : Math.max(minValue, Long.MIN_VALUE - increment);
+            while (true) {
+                int version = rangeVersion;
+                long start = value;
+                if ((increment > 0 && start > bound) || (increment < 0 && start < bound)) {
+                    if (!cycle)
+                        throw DbException.get(ErrorCode.SEQUENCE_EXHAUSTED, getName());
+                    long restart = increment > 0 ? minValue : maxValue;
+                    if (VALUE_UPDATER.compareAndSet(Sequence.this, start, restart)) {
+                        // 回到起点后之前持久化的高水位不能再用来判断是否需要持久化
+                        synchronized (Sequence.this) {
+                            lastFlushValueWithMargin = restart;
+                        }
+                    }
+                    continue;
+                }
+                // 不能超出bound，increment * count也不能溢出
+                long available;
+                try {
+                    available = Math.subtractExact(bound, start) / increment + 1;
+                } catch (ArithmeticException e) {
+                    available = Long.MAX_VALUE;
+                }
+                long count = Math.min(Math.min(cacheSize, available),
+                        Long.MAX_VALUE / Math.abs(increment));
+                long end = Math.addExact(start, Math.multiplyExact(increment, count));
+                if (VALUE_UPDATER.compareAndSet(Sequence.this, start, end)) {
+                    this.next = start;
+                    this.remaining = count;
+                    this.version = version;
+                    if (needsFlush(end))
+                        flush(session, end);
+                    return;
+                }
+            }
+        }
+    }
+
+    // 其他调度线程可能已经把更大的高水位持久化了
+    private boolean needsFlush(long end) {
+        long last = lastFlushValueWithMargin;
+        return increment > 0 ? last < end : last > end;
+    }
+
     /**
      * Flush the current value to disk.
      */
@@ -293,6 +426,22 @@ public class Sequence extends SchemaObjectBase {
     }
 
     private void flushInternal(ServerSession session, long flushValueWithMargin) {
+        if (perScheduler) {
+            // value就是高水位，不需要加上margin，
+            // 后面的flush读到的高水位不会比前面的小，所以直接覆盖就可以了
+            synchronized (this) {
+                if (!needsFlush(flushValueWithMargin))
+                    return;
+            }
+            long highWaterMark = value;
+            if (!isTemporary()) {
+                database.updateMeta(session, this);
+            }
+            synchronized (this) {
+                lastFlushValueWithMargin = highWaterMark;
+            }
+            return;
+        }
         // final boolean metaWasLocked = database.lockMeta(session);
         synchronized (this) {
             if (flushValueWithMargin == lastFlushValueWithMargin) {
@@ -328,6 +477,12 @@ public class Sequence extends SchemaObjectBase {
     }
 
     public synchronized long getCurrentValue() {
+        if (perScheduler) {
+            // 只能返回当前线程最后分配的值
+            Range range = getRange();
+            if (range.allocated && range.version == rangeVersion)
+                return range.next - increment;
+        }
         return value - increment;
     }
 
@@ -343,4 +498,19 @@ public class Sequence extends SchemaObjectBase {
         return cacheSize;
     }
 
+    public synchronized void setPerScheduler(boolean perScheduler) {
+        if (this.perScheduler != perScheduler) {
+            this.perScheduler = perScheduler;
+            if (!perScheduler) {
+                // 各个区间中没用完的值都丢弃，从高水位开始分配
+                valueWithMargin = value;
+            }
+            rangeVersion++;
+        }
+    }
+
+    public boolean isPerScheduler() {
+        return perScheduler;
+    }
+
 }
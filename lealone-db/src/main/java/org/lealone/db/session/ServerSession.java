@@ -13,6 +13,7 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 import org.lealone.common.exceptions.DbException;
 import org.lealone.common.trace.Trace;
@@ -477,6 +478,7 @@ public class ServerSession extends SessionBase {
         if (transaction != null) {
             transaction.setStatus(Transaction.STATUS_COMMITTING);
             sessionStatus = SessionStatus.TRANSACTION_COMMITTING;
+            transaction.setCommitListeners(database.getCommitListeners());
             transaction.asyncCommit(asyncTask);
         } else {
             // 在手动提交模式下执行了COMMIT语句，然后再手动提交事务，
@@ -491,6 +493,10 @@ public class ServerSession extends SessionBase {
         transactionStart = 0;
         commitFinal();
         transaction = null;
+        // 提交完成后当前session的下一条命令可以执行了
+        Transaction.Listener listener = transactionListener;
+        if (listener != null)
+            listener.wakeUp(this);
     }
 
     public void commit() {
@@ -515,6 +521,7 @@ public class ServerSession extends SessionBase {
         if (!isAutoCommit() && transaction.getSavepointId() > 0)
             database.getNextModificationDataId();
 
+        transaction.setCommitListeners(database.getCommitListeners());
         if (globalTransactionName == null)
             transaction.commit();
         else
@@ -801,7 +808,7 @@ public class ServerSession extends SessionBase {
 
     public <T> void stopCurrentCommand(AsyncHandler<AsyncResult<T>> asyncHandler,
             AsyncResult<T> asyncResult) {
-        if (executingNestedStatement)
+        if (executingNestedStatement > 0)
             return;
         closeTemporaryResults();
         closeCurrentCommand();
@@ -1285,6 +1292,11 @@ public class ServerSession extends SessionBase {
     public YieldableCommand getYieldableCommand(boolean checkTimeout, TimeoutListener timeoutListener) {
         if (yieldableCommand == null)
             return null;
+        if (pageReadFuture != null) {
+            if (!pageReadFuture.isDone())
+                return null;
+            pageReadFuture = null;
+        }
 
         // session处于以下状态时不会被当成候选的对象
         switch (getStatus()) {
@@ -1315,6 +1327,17 @@ public class ServerSession extends SessionBase {
         }
     }
 
+    // 当前命令要用的page正在后台线程中读取，读完之前不调度
+    private CompletableFuture<?> pageReadFuture;
+
+    public void waitForPageRead(CompletableFuture<?> future) {
+        pageReadFuture = future;
+        // 读完后唤醒调度器，有可能为null，比如启动阶段执行SQL
+        Transaction.Listener listener = transactionListener;
+        if (listener != null)
+            future.whenComplete((p, t) -> listener.wakeUp(this));
+    }
+
     public boolean canExecuteNextCommand() {
         // 在同一session中，只有前面一条SQL执行完后才可以执行下一条
         return yieldableCommand == null;
@@ -1412,6 +1435,10 @@ public class ServerSession extends SessionBase {
         return cache.get(k);
     }
 
+    public AutoCloseable getCache(Integer k, boolean ifAvailable) {
+        return cache.get(k, ifAvailable);
+    }
+
     public AutoCloseable removeCache(Integer k, boolean ifAvailable) {
         return cache.remove(k, ifAvailable);
     }
@@ -1547,14 +1574,15 @@ public class ServerSession extends SessionBase {
         return settings;
     }
 
-    private boolean executingNestedStatement;
+    // 嵌套语句里面还可能再执行嵌套语句，比如批量更新时检查约束，所以要计数
+    private int executingNestedStatement;
 
     public void startNestedStatement() {
-        executingNestedStatement = true;
+        executingNestedStatement++;
     }
 
     public void endNestedStatement() {
-        executingNestedStatement = false;
+        executingNestedStatement--;
     }
 
     private Row currentLockedRow;
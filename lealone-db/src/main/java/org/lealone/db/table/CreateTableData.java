@@ -81,6 +81,11 @@ public class CreateTableData {
      */
     public boolean isHidden;
 
+    /**
+     * The partitioning of the table, or null if the table is not partitioned.
+     */
+    public Partitioning partitioning;
+
     public boolean isMemoryTable() {
         return !session.getDatabase().isPersistent() || globalTemporary || temporary || !persistData
                 || id < 0;
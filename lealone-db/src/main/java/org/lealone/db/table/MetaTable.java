@@ -61,6 +61,8 @@ import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueNull;
 import org.lealone.db.value.ValueString;
 import org.lealone.db.value.ValueStringIgnoreCase;
+import org.lealone.storage.Storage;
+import org.lealone.storage.StorageMap;
 
 /**
  * This class is responsible to build the database meta data pseudo tables.
@@ -105,7 +107,8 @@ public class MetaTable extends Table {
     private static final int QUERY_STATISTICS = 28;
     private static final int DATABASES = 29;
     private static final int SYS_TABLE = 30;
-    private static final int META_TABLE_TYPE_COUNT = SYS_TABLE + 1;
+    private static final int PAGE_CACHE = 31;
+    private static final int META_TABLE_TYPE_COUNT = PAGE_CACHE + 1;
 
     private final int type;
     private final int indexColumn;
@@ -295,7 +298,10 @@ public class MetaTable extends Table {
                     "MAX_EXECUTION_TIME DOUBLE", "CUMULATIVE_EXECUTION_TIME DOUBLE",
                     "AVERAGE_EXECUTION_TIME DOUBLE", "STD_DEV_EXECUTION_TIME DOUBLE",
                     "MIN_ROW_COUNT INT", "MAX_ROW_COUNT INT", "CUMULATIVE_ROW_COUNT LONG",
-                    "AVERAGE_ROW_COUNT DOUBLE", "STD_DEV_ROW_COUNT DOUBLE");
+                    "AVERAGE_ROW_COUNT DOUBLE", "STD_DEV_ROW_COUNT DOUBLE", "STATEMENT_TYPE",
+                    "P50_EXECUTION_TIME DOUBLE", "P90_EXECUTION_TIME DOUBLE",
+                    "P99_EXECUTION_TIME DOUBLE", "CUMULATIVE_ROWS_SCANNED LONG",
+                    "CUMULATIVE_PAGE_READS LONG");
             break;
         }
         case DATABASES:
@@ -306,6 +312,11 @@ public class MetaTable extends Table {
             setObjectName("SYS_TABLE");
             cols = createColumns("ID", "TYPE", "SQL");
             break;
+        case PAGE_CACHE:
+            setObjectName("PAGE_CACHE");
+            cols = createColumns("STORAGE_NAME", "MAP_NAME", "CACHE_HITS LONG", "CACHE_MISSES LONG",
+                    "CACHE_EVICTIONS LONG", "MEMORY_USED LONG");
+            break;
         default:
             throw DbException.getInternalError("type=" + type);
         }
@@ -1400,7 +1411,19 @@ public class MetaTable extends Table {
                             // AVERAGE_ROW_COUNT
                             "" + entry.rowCountMean,
                             // STD_DEV_ROW_COUNT
-                            "" + entry.getRowCountStandardDeviation());
+                            "" + entry.getRowCountStandardDeviation(),
+                            // STATEMENT_TYPE
+                            entry.statementType,
+                            // P50_EXECUTION_TIME
+                            "" + entry.getExecutionTimePercentileNanos(0.5) / 1000d / 1000,
+                            // P90_EXECUTION_TIME
+                            "" + entry.getExecutionTimePercentileNanos(0.9) / 1000d / 1000,
+                            // P99_EXECUTION_TIME
+                            "" + entry.getExecutionTimePercentileNanos(0.99) / 1000d / 1000,
+                            // CUMULATIVE_ROWS_SCANNED
+                            "" + entry.rowScanCountCumulative,
+                            // CUMULATIVE_PAGE_READS
+                            "" + entry.pageReadCountCumulative);
                 }
             }
             break;
@@ -1440,6 +1463,31 @@ public class MetaTable extends Table {
             }
             break;
         }
+        case PAGE_CACHE: {
+            if (!admin)
+                break;
+            for (Storage storage : database.getStorages()) {
+                for (String mapName : storage.getMapNames()) {
+                    StorageMap<?, ?> map = storage.getMap(mapName);
+                    if (map == null || map.isInMemory())
+                        continue;
+                    add(rows,
+                            // STORAGE_NAME
+                            storage.getStoragePath(),
+                            // MAP_NAME
+                            mapName,
+                            // CACHE_HITS
+                            "" + map.getCacheHits(),
+                            // CACHE_MISSES
+                            "" + map.getCacheMisses(),
+                            // CACHE_EVICTIONS
+                            "" + map.getCacheEvictions(),
+                            // MEMORY_USED
+                            "" + map.getMemorySpaceUsed());
+                }
+            }
+            break;
+        }
         default:
             DbException.throwInternalError("type=" + type);
         }
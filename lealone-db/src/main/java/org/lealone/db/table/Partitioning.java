@@ -0,0 +1,235 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.db.table;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.common.util.StatementBuilder;
+import org.lealone.db.SQLEngineHolder;
+import org.lealone.db.api.ErrorCode;
+
+/**
+ * 表的分区定义(PARTITION BY RANGE/HASH)。
+ *
+ * 分区字段必须是整数类型的单字段主键，也就是直接用作rowKey的字段，
+ * 这样通过rowKey就能定位到分区，二级索引也不需要知道分区的存在。
+ * 每个分区对应主索引中的一个map，对象本身是不可变的，删除分区时生成一个新的对象。
+ *
+ * @author zhh
+ */
+public class Partitioning {
+
+    public static final int RANGE = 0;
+    public static final int HASH = 1;
+
+    private final int type;
+    private final String columnName;
+    private final String[] names;
+    // RANGE分区每个分区的上界(不包含)，按从小到大排列
+    private final long[] bounds;
+    // 最后一个RANGE分区是VALUES LESS THAN (MAXVALUE)
+    private final boolean maxValue;
+
+    private Partitioning(int type, String columnName, String[] names, long[] bounds, boolean maxValue) {
+        this.type = type;
+        this.columnName = columnName;
+        this.names = names;
+        this.bounds = bounds;
+        this.maxValue = maxValue;
+    }
+
+    /**
+     * Create a range partitioning.
+     *
+     * @param columnName the partition column
+     * @param names the partition names
+     * @param bounds the exclusive upper bound of each partition
+     * @param maxValue whether the last partition has no upper bound
+     * @return the partitioning
+     */
+    public static Partitioning createRange(String columnName, String[] names, long[] bounds,
+            boolean maxValue) {
+        int count = names.length;
+        if (count == 0 || count != bounds.length)
+            throw DbException.getInvalidValueException("partitions", count);
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && bounds[i] <= bounds[i - 1] && !(maxValue && i == count - 1))
+                throw DbException.getInvalidValueException("VALUES LESS THAN", bounds[i]);
+            for (int j = 0; j < i; j++) {
+                if (names[i].equals(names[j]))
+                    throw DbException.getInvalidValueException("PARTITION", names[i]);
+            }
+        }
+        return new Partitioning(RANGE, columnName, names, bounds, maxValue);
+    }
+
+    /**
+     * Create a hash partitioning, the partitions are named P0 .. P(count - 1).
+     *
+     * @param columnName the partition column
+     * @param count the number of partitions
+     * @return the partitioning
+     */
+    public static Partitioning createHash(String columnName, int count) {
+        if (count <= 0)
+            throw DbException.getInvalidValueException("PARTITIONS", count);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "P" + i;
+        }
+        return new Partitioning(HASH, columnName, names, null, false);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public int getPartitionCount() {
+        return names.length;
+    }
+
+    public String getPartitionName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Get the index of the partition with the given name.
+     *
+     * @param name the partition name
+     * @return the index
+     * @throws DbException if there is no such partition
+     */
+    public int getPartitionIndex(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name))
+                return i;
+        }
+        throw DbException.get(ErrorCode.PARTITION_NOT_FOUND_1, name);
+    }
+
+    /**
+     * Get the partition that stores the given key.
+     *
+     * @param key the value of the partition column
+     * @return the partition index, or -1 if no partition accepts the key
+     */
+    public int getPartition(long key) {
+        if (type == HASH)
+            return (int) Math.floorMod(key, (long) names.length);
+        int last = names.length - 1;
+        if (maxValue && (last == 0 || key >= bounds[last - 1]))
+            return last;
+        // 找第一个上界大于key的分区
+        int low = 0, high = maxValue ? last - 1 : last;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid] <= key)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return low <= last ? low : -1;
+    }
+
+    /**
+     * Get the first partition that may contain keys in the range.
+     *
+     * @param from the lower bound (inclusive), or null
+     * @param to the upper bound (inclusive), or null
+     * @return the first partition index
+     */
+    public int getFirstPartition(Long from, Long to) {
+        if (type == HASH)
+            return isSingleHashPartition(from, to) ? getPartition(from) : 0;
+        if (from == null)
+            return 0;
+        int p = getPartition(from);
+        return p < 0 ? names.length : p;
+    }
+
+    /**
+     * Get the last partition that may contain keys in the range.
+     *
+     * @param from the lower bound (inclusive), or null
+     * @param to the upper bound (inclusive), or null
+     * @return the last partition index, smaller than the first if the range is empty
+     */
+    public int getLastPartition(Long from, Long to) {
+        if (type == HASH)
+            return isSingleHashPartition(from, to) ? getPartition(from) : names.length - 1;
+        if (to == null)
+            return names.length - 1;
+        int p = getPartition(to);
+        return p < 0 ? names.length - 1 : p;
+    }
+
+    private static boolean isSingleHashPartition(Long from, Long to) {
+        return from != null && to != null && from.longValue() == to.longValue();
+    }
+
+    /**
+     * Whether scanning the partitions in order returns the keys in order.
+     *
+     * @return true for range partitions
+     */
+    public boolean isOrdered() {
+        return type == RANGE;
+    }
+
+    /**
+     * Create a new partitioning without the given partition.
+     *
+     * @param index the partition index
+     * @return the new partitioning
+     */
+    public Partitioning dropPartition(int index) {
+        if (type == HASH)
+            throw DbException.getUnsupportedException("DROP PARTITION of hash partitioned table");
+        if (names.length == 1)
+            throw DbException.getUnsupportedException("DROP the last PARTITION");
+        int count = names.length - 1;
+        String[] newNames = new String[count];
+        long[] newBounds = new long[count];
+        for (int i = 0, j = 0; i < names.length; i++) {
+            if (i != index) {
+                newNames[j] = names[i];
+                newBounds[j++] = bounds[i];
+            }
+        }
+        boolean newMaxValue = maxValue && index != names.length - 1;
+        return new Partitioning(RANGE, columnName, newNames, newBounds, newMaxValue);
+    }
+
+    public String getSQL() {
+        StatementBuilder buff = new StatementBuilder("PARTITION BY ");
+        buff.append(type == HASH ? "HASH(" : "RANGE(");
+        buff.append(SQLEngineHolder.quoteIdentifier(columnName)).append(')');
+        if (type == HASH) {
+            buff.append(" PARTITIONS ").append(names.length);
+        } else {
+            buff.append("(\n    ");
+            for (int i = 0; i < names.length; i++) {
+                buff.appendExceptFirst(",\n    ");
+                buff.append("PARTITION ").append(SQLEngineHolder.quoteIdentifier(names[i])).append(" VALUES LESS THAN (");
+                if (maxValue && i == names.length - 1)
+                    buff.append("MAXVALUE");
+                else
+                    buff.append(bounds[i]);
+                buff.append(')');
+            }
+            buff.append("\n)");
+        }
+        return buff.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getSQL();
+    }
+}
@@ -26,12 +26,12 @@ import org.lealone.db.async.AsyncResult;
 import org.lealone.db.async.Future;
 import org.lealone.db.constraint.Constraint;
 import org.lealone.db.constraint.ConstraintReferential;
+import org.lealone.db.index.Cursor;
 import org.lealone.db.index.Index;
 import org.lealone.db.index.IndexColumn;
 import org.lealone.db.index.IndexRebuilder;
 import org.lealone.db.index.IndexType;
-import org.lealone.db.index.hash.NonUniqueHashIndex;
-import org.lealone.db.index.hash.UniqueHashIndex;
+import org.lealone.db.index.hash.HashIndex;
 import org.lealone.db.index.standard.StandardDelegateIndex;
 import org.lealone.db.index.standard.StandardPrimaryIndex;
 import org.lealone.db.index.standard.StandardSecondaryIndex;
@@ -63,6 +63,7 @@ public class StandardTable extends Table {
     private int nextAnalyze;
     private boolean containsLargeObject;
     private Column rowIdColumn;
+    private Partitioning partitioning;
 
     public StandardTable(CreateTableData data, StorageEngine storageEngine) {
         super(data.schema, data.id, data.tableName, data.persistIndexes, data.persistData);
@@ -74,7 +75,8 @@ public class StandardTable extends Table {
         }
         globalTemporary = data.globalTemporary;
 
-        if (data.isMemoryTable())
+        // ART map只在内存中保存数据，索引和其他map也跟着放到内存中
+        if (data.isMemoryTable() || "ART".equalsIgnoreCase(parameters.get("mapType")))
             parameters.put("inMemory", "1");
         isHidden = data.isHidden;
         nextAnalyze = database.getSettings().analyzeAuto;
@@ -86,6 +88,10 @@ public class StandardTable extends Table {
                 containsLargeObject = true;
             }
         }
+        if (data.partitioning != null) {
+            getColumn(data.partitioning.getColumnName()); // 字段不存在时抛出异常
+            partitioning = data.partitioning;
+        }
         primaryIndex = new StandardPrimaryIndex(data.session, this);
         indexes.add(primaryIndex);
         indexesExcludeDelegate.add(primaryIndex);
@@ -95,6 +101,89 @@ public class StandardTable extends Table {
         return primaryIndex.getMapName();
     }
 
+    /**
+     * Check whether the map stores the rows of this table.
+     *
+     * @param mapName the map name
+     * @return true if it is the data map or the map of a partition
+     */
+    public boolean isDataMap(String mapName) {
+        return primaryIndex.isDataMap(mapName);
+    }
+
+    public Partitioning getPartitioning() {
+        return partitioning;
+    }
+
+    /**
+     * Check that the partition column is the integer primary key that is used as the row key.
+     */
+    public void checkPartitioning() {
+        if (partitioning == null)
+            return;
+        int c = primaryIndex.getMainIndexColumn();
+        if (c < 0 || !columns[c].getName().equals(partitioning.getColumnName())) {
+            throw DbException.getUnsupportedException(
+                    "PARTITION BY a column that is not the integer primary key");
+        }
+    }
+
+    /**
+     * Remove all rows of the partition.
+     *
+     * @param session the session
+     * @param partitionName the partition name
+     */
+    public void truncatePartition(ServerSession session, String partitionName) {
+        int index = getPartitionIndex(partitionName);
+        lastModificationId = database.getNextModificationDataId();
+        removePartitionFromOtherIndexes(session, index);
+        primaryIndex.truncatePartition(session, index);
+    }
+
+    /**
+     * Remove the partition and all its rows.
+     *
+     * @param session the session
+     * @param partitionName the partition name
+     */
+    public void dropPartition(ServerSession session, String partitionName) {
+        int index = getPartitionIndex(partitionName);
+        Partitioning newPartitioning = partitioning.dropPartition(index);
+        lastModificationId = database.getNextModificationDataId();
+        removePartitionFromOtherIndexes(session, index);
+        primaryIndex.dropPartition(session, index, newPartitioning);
+        partitioning = newPartitioning;
+    }
+
+    private int getPartitionIndex(String partitionName) {
+        if (partitioning == null)
+            throw DbException.get(ErrorCode.PARTITION_NOT_FOUND_1, partitionName);
+        return partitioning.getPartitionIndex(partitionName);
+    }
+
+    // 分区自己的map可以直接清空或删除，但是二级索引和大对象是所有分区共用的，只能逐条删除
+    private void removePartitionFromOtherIndexes(ServerSession session, int index) {
+        int size = indexesExcludeDelegate.size();
+        if (size <= 1 && !containsLargeObject)
+            return;
+        Cursor cursor = primaryIndex.findInPartition(session, index);
+        while (cursor.next()) {
+            Row row = cursor.get();
+            for (int i = 1; i < size; i++) {
+                indexesExcludeDelegate.get(i).remove(session, row, true);
+            }
+            if (containsLargeObject) {
+                for (int i = 0, len = row.getColumnCount(); i < len; i++) {
+                    Value v = row.getValue(i);
+                    if (v.isLinked()) {
+                        session.unlinkAtCommit(v);
+                    }
+                }
+            }
+        }
+    }
+
     public StorageEngine getStorageEngine() {
         return storageEngine;
     }
@@ -145,6 +234,9 @@ public class StandardTable extends Table {
             buff.append(" PARAMETERS");
             Database.appendMap(buff, parameters);
         }
+        if (partitioning != null) {
+            buff.append('\n').append(partitioning.getSQL());
+        }
         if (!isPersistIndexes() && !isPersistData()) {
             buff.append("\nNOT PERSISTENT");
         }
@@ -247,12 +339,8 @@ public class StandardTable extends Table {
             }
             if (mainIndexColumn != -1) {
                 index = createDelegateIndex(indexId, indexName, indexType, mainIndexColumn);
-            } else if (indexType.isHash() && cols.length <= 1) {
-                if (indexType.isUnique()) {
-                    index = new UniqueHashIndex(this, indexId, indexName, indexType, cols);
-                } else {
-                    index = new NonUniqueHashIndex(this, indexId, indexName, indexType, cols);
-                }
+            } else if (indexType.isHash()) {
+                index = new HashIndex(session, this, indexId, indexName, indexType, cols);
             } else {
                 index = new StandardSecondaryIndex(session, this, indexId, indexName, indexType, cols);
             }
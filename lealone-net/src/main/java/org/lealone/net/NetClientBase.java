@@ -6,12 +6,14 @@
 package org.lealone.net;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.lealone.common.util.ShutdownHookUtils;
 import org.lealone.db.async.AsyncCallback;
+import org.lealone.db.async.AsyncResult;
 import org.lealone.db.async.Future;
 
 public abstract class NetClientBase implements NetClient {
@@ -19,6 +21,8 @@ public abstract class NetClientBase implements NetClient {
     // 使用InetSocketAddress为key而不是字符串，是因为像localhost和127.0.0.1这两种不同格式实际都是同一个意思，
     // 如果用字符串，就会产生两条AsyncConnection，这是没必要的。
     private final ConcurrentHashMap<InetSocketAddress, AsyncConnectionPool> asyncConnections = new ConcurrentHashMap<>();
+    // 正在建立中的共享连接，同时创建的多个session可以等它建好后共用，而不是每个session都新建一个TCP连接
+    private final ConcurrentHashMap<InetSocketAddress, PendingConnection> pendingConnections = new ConcurrentHashMap<>();
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private final AtomicBoolean opened = new AtomicBoolean(false);
 
@@ -58,15 +62,71 @@ public abstract class NetClientBase implements NetClient {
         InetSocketAddress inetSocketAddress = node.getInetSocketAddress();
         AsyncConnection asyncConnection = getConnection(config, inetSocketAddress);
         if (asyncConnection == null) {
-            AsyncCallback<AsyncConnection> ac = new AsyncCallback<>();
-            createConnectionInternal(node, connectionManager,
-                    AsyncConnectionPool.getMaxSharedSize(config), ac);
+            int maxSharedSize = AsyncConnectionPool.getMaxSharedSize(config);
+            if (maxSharedSize == 1 || connectionManager != null) {
+                AsyncCallback<AsyncConnection> ac = new AsyncCallback<>();
+                createConnectionInternal(node, connectionManager, maxSharedSize, ac);
+                return ac;
+            }
+            PendingConnection newPc = new PendingConnection(maxSharedSize);
+            AsyncCallback<AsyncConnection> ac = newPc.join();
+            while (true) {
+                PendingConnection pc = pendingConnections.get(inetSocketAddress);
+                if (pc != null && pc.maxSharedSize == maxSharedSize) {
+                    AsyncCallback<AsyncConnection> pcAc = pc.join();
+                    if (pcAc != null)
+                        return pcAc;
+                    // 有可能刚好建好了
+                    asyncConnection = getConnection(config, inetSocketAddress);
+                    if (asyncConnection != null)
+                        return Future.succeededFuture(asyncConnection);
+                }
+                // 多个线程同时建连接时只有一个能放进去，其他的重试后等它建好
+                if (pc == null ? pendingConnections.putIfAbsent(inetSocketAddress, newPc) == null
+                        : pendingConnections.replace(inetSocketAddress, pc, newPc))
+                    break;
+            }
+            AsyncCallback<AsyncConnection> internalAc = new AsyncCallback<>();
+            internalAc.onComplete(ar -> {
+                pendingConnections.remove(inetSocketAddress, newPc);
+                newPc.complete(ar);
+            });
+            createConnectionInternal(node, connectionManager, maxSharedSize, internalAc);
             return ac;
         } else {
             return Future.succeededFuture(asyncConnection);
         }
     }
 
+    private static class PendingConnection {
+
+        private final ArrayList<AsyncCallback<AsyncConnection>> waiters = new ArrayList<>();
+        private final int maxSharedSize;
+        private boolean completed;
+
+        PendingConnection(int maxSharedSize) {
+            this.maxSharedSize = maxSharedSize;
+        }
+
+        // 返回null表示已经建好了或者等待者已经达到共享上限
+        synchronized AsyncCallback<AsyncConnection> join() {
+            if (completed || (maxSharedSize > 0 && waiters.size() >= maxSharedSize))
+                return null;
+            AsyncCallback<AsyncConnection> ac = new AsyncCallback<>();
+            waiters.add(ac);
+            return ac;
+        }
+
+        void complete(AsyncResult<AsyncConnection> ar) {
+            synchronized (this) {
+                completed = true;
+            }
+            for (AsyncCallback<AsyncConnection> ac : waiters) {
+                ac.setAsyncResult(ar);
+            }
+        }
+    }
+
     @Override
     public void removeConnection(AsyncConnection conn) {
         // checkClosed(); //不做检查
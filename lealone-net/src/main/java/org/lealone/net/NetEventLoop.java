@@ -6,10 +6,13 @@
 package org.lealone.net;
 
 import java.io.IOException;
-import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.List;
+
+import org.lealone.common.metrics.Metric;
+import org.lealone.db.async.Future;
 
 public interface NetEventLoop {
 
@@ -25,7 +28,8 @@ public interface NetEventLoop {
 
     void register(AsyncConnection conn);
 
-    void register(SocketChannel channel, int ops, Object att) throws ClosedChannelException;
+    // 异步注册，返回的Future在nio-event-loop线程真正注册完成后才得到结果
+    Future<Void> register(SocketChannel channel, int ops, Object att);
 
     void wakeup();
 
@@ -42,4 +46,16 @@ public interface NetEventLoop {
     void closeChannel(SocketChannel channel);
 
     void close();
+
+    default long getReadBytes() {
+        return 0;
+    }
+
+    default long getWrittenBytes() {
+        return 0;
+    }
+
+    // 注册事件循环自身的指标，比如buffer池的统计，注册的指标放到metrics中，由调用者负责注销
+    default void registerMetrics(String labels, List<Metric> metrics) {
+    }
 }
@@ -22,9 +22,12 @@ import org.lealone.db.session.Session;
 public class TcpClientConnection extends TransferConnection {
 
     private static final Logger logger = LoggerFactory.getLogger(TcpClientConnection.class);
+    private static final long DISCARD_TIMEOUT = 60 * 1000;
 
     private final ConcurrentHashMap<Integer, Session> sessions = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<Integer, AsyncCallback<?>> callbackMap = new ConcurrentHashMap<>();
+    // 回调已经删除但还可能收到响应的packetId，比如提前关闭的流模式结果集，一段时间后清除
+    private final ConcurrentHashMap<Integer, Long> discardedPacketIds = new ConcurrentHashMap<>();
     private final AtomicInteger nextId = new AtomicInteger(0);
     private final int maxSharedSize;
     private final NetClient netClient;
@@ -54,6 +57,14 @@ public class TcpClientConnection extends TransferConnection {
         callbackMap.remove(packetId);
     }
 
+    /**
+     * 删除回调，之后收到的响应直接丢弃
+     */
+    public void discardAsyncCallback(int packetId) {
+        discardedPacketIds.put(packetId, System.currentTimeMillis());
+        callbackMap.remove(packetId);
+    }
+
     @Override
     public void close() {
         // 如果还有回调未处理需要设置异常，避免等待回调结果的线程一直死等
@@ -100,8 +111,12 @@ public class TcpClientConnection extends TransferConnection {
             e = DbException.get(ErrorCode.CONNECTION_BROKEN_1, "unexpected status " + status);
         }
 
-        AsyncCallback<?> ac = callbackMap.remove(packetId);
+        AsyncCallback<?> ac = callbackMap.get(packetId);
         if (ac == null) {
+            if (in != null)
+                in.closeInputStream();
+            if (discardedPacketIds.containsKey(packetId))
+                return;
             String msg = "Async callback is null, may be a bug! packetId = " + packetId;
             if (e != null) {
                 logger.warn(msg, e);
@@ -110,6 +125,8 @@ public class TcpClientConnection extends TransferConnection {
             }
             return;
         }
+        if (e != null || !ac.isStreaming())
+            callbackMap.remove(packetId);
         if (e != null)
             ac.setAsyncResult(e);
         else
@@ -128,6 +145,9 @@ public class TcpClientConnection extends TransferConnection {
 
     @Override
     public void checkTimeout(long currentTime) {
+        if (!discardedPacketIds.isEmpty()) {
+            discardedPacketIds.values().removeIf(t -> t + DISCARD_TIMEOUT < currentTime);
+        }
         for (AsyncCallback<?> ac : callbackMap.values()) {
             ac.checkTimeout(currentTime);
         }
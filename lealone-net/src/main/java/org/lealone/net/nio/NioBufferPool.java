@@ -0,0 +1,228 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.net.nio;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lealone.common.metrics.Metric;
+import org.lealone.common.metrics.MetricsRegistry;
+import org.lealone.common.util.MapUtils;
+import org.lealone.db.DataBuffer;
+import org.lealone.db.DataBufferFactory;
+
+/**
+ * 每个NioEventLoop一个的direct buffer池，用来存放读到的数据包。
+ *
+ * 按2的幂划分大小等级(512字节到4M)，小于等于64K的等级从1M的slab中切分，
+ * 更大的等级单独分配，超过4M的数据包不进池。
+ *
+ * 分配只在NioEventLoop线程中进行，回收可能在其他线程，所以每个等级用无锁队列。
+ *
+ * 池的统计信息通过MetricsRegistry导出，由NioEventLoop的所有者(比如Scheduler)注册。
+ */
+public class NioBufferPool implements DataBufferFactory {
+
+    private static final CopyOnWriteArrayList<NioBufferPool> pools = new CopyOnWriteArrayList<>();
+
+    public static NioBufferPool[] getPools() {
+        return pools.toArray(new NioBufferPool[0]);
+    }
+
+    private static final int MIN_SHIFT = 9; // 512字节
+    private static final int MAX_SHIFT = 22; // 4M，等于DataBuffer.MAX_REUSE_CAPACITY
+    private static final int SLAB_SHIFT = 20; // 1M
+    private static final int MAX_SLAB_CLASS_SHIFT = 16; // 64K
+
+    private static final int DEFAULT_MAX_POOLED_BYTES = 64 * 1024 * 1024;
+
+    private final SizeClass[] sizeClasses = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+    private final long maxPooledBytes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong unpooledCount = new AtomicLong();
+
+    public NioBufferPool(Map<String, String> config) {
+        maxPooledBytes = MapUtils.getIntMB(config, "net_buffer_pool_size_in_mb",
+                DEFAULT_MAX_POOLED_BYTES);
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(1 << (i + MIN_SHIFT));
+        }
+        pools.add(this);
+    }
+
+    private static int sizeClassIndex(int capacity) {
+        if (capacity <= (1 << MIN_SHIFT))
+            return 0;
+        int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    @Override
+    public DataBuffer create() {
+        return create(1 << MIN_SHIFT);
+    }
+
+    @Override
+    public DataBuffer create(int capacity) {
+        int index = sizeClassIndex(capacity);
+        if (index < 0) {
+            unpooledCount.incrementAndGet();
+            return DataBuffer.getOrCreate(capacity);
+        }
+        SizeClass sizeClass = sizeClasses[index];
+        PooledDataBuffer buffer = sizeClass.queue.poll();
+        if (buffer != null) {
+            sizeClass.size.decrementAndGet();
+            pooledBytes.addAndGet(-sizeClass.capacity);
+            hitCount.incrementAndGet();
+            buffer.clear();
+        } else {
+            missCount.incrementAndGet();
+            buffer = sizeClass.allocate();
+        }
+        return buffer;
+    }
+
+    @Override
+    public void recycle(DataBuffer buffer) {
+        if (!(buffer instanceof PooledDataBuffer))
+            return;
+        PooledDataBuffer pdb = (PooledDataBuffer) buffer;
+        // 有可能被扩容过了，此时底层的ByteBuffer已经不是原来的了，直接丢弃
+        if (pdb.capacity() != pdb.sizeClass.capacity || !pdb.getBuffer().isDirect())
+            return;
+        pdb.sizeClass.offer(pdb);
+    }
+
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getUnpooledCount() {
+        return unpooledCount.get();
+    }
+
+    public int getPooledCount(int capacity) {
+        int index = sizeClassIndex(capacity);
+        return index < 0 ? 0 : sizeClasses[index].size.get();
+    }
+
+    public void registerMetrics(String labels, List<Metric> metrics) {
+        metrics.add(MetricsRegistry.registerGauge("net_buffer_pool_allocated_bytes", labels,
+                "Direct memory allocated by the net buffer pool", () -> allocatedBytes.get()));
+        metrics.add(MetricsRegistry.registerGauge("net_buffer_pool_pooled_bytes", labels,
+                "Bytes of free buffers kept in the net buffer pool", () -> pooledBytes.get()));
+        metrics.add(MetricsRegistry.registerCounter("net_buffer_pool_hits_total", labels,
+                "Buffers taken from the net buffer pool", () -> hitCount.get()));
+        metrics.add(MetricsRegistry.registerCounter("net_buffer_pool_misses_total", labels,
+                "Buffers the net buffer pool had to allocate", () -> missCount.get()));
+        metrics.add(MetricsRegistry.registerCounter("net_buffer_pool_unpooled_total", labels,
+                "Buffers too large for the net buffer pool", () -> unpooledCount.get()));
+    }
+
+    public void close() {
+        pools.remove(this);
+        for (SizeClass sizeClass : sizeClasses) {
+            sizeClass.queue.clear();
+            sizeClass.size.set(0);
+        }
+        pooledBytes.set(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buff = new StringBuilder("NioBufferPool[allocated=");
+        buff.append(allocatedBytes.get()).append(", pooled=").append(pooledBytes.get());
+        buff.append(", hits=").append(hitCount.get()).append(", misses=").append(missCount.get());
+        buff.append(", unpooled=").append(unpooledCount.get()).append(", classes={");
+        boolean first = true;
+        for (SizeClass sizeClass : sizeClasses) {
+            int size = sizeClass.size.get();
+            if (size > 0) {
+                if (!first)
+                    buff.append(", ");
+                first = false;
+                buff.append(sizeClass.capacity).append('=').append(size);
+            }
+        }
+        return buff.append("}]").toString();
+    }
+
+    private class SizeClass {
+
+        final int capacity;
+        final ConcurrentLinkedQueue<PooledDataBuffer> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+
+        SizeClass(int capacity) {
+            this.capacity = capacity;
+        }
+
+        PooledDataBuffer allocate() {
+            if (capacity > (1 << MAX_SLAB_CLASS_SHIFT)) {
+                allocatedBytes.addAndGet(capacity);
+                return new PooledDataBuffer(this, ByteBuffer.allocateDirect(capacity));
+            }
+            // 一次分配一个slab，切分后多余的放入池中
+            ByteBuffer slab = ByteBuffer.allocateDirect(1 << SLAB_SHIFT);
+            allocatedBytes.addAndGet(slab.capacity());
+            PooledDataBuffer first = null;
+            for (int pos = 0; pos < slab.capacity(); pos += capacity) {
+                slab.limit(pos + capacity).position(pos);
+                PooledDataBuffer buffer = new PooledDataBuffer(this, slab.slice());
+                if (first == null)
+                    first = buffer;
+                else
+                    offer(buffer);
+            }
+            return first;
+        }
+
+        void offer(PooledDataBuffer buffer) {
+            if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+                pooledBytes.addAndGet(-capacity);
+                return;
+            }
+            size.incrementAndGet();
+            queue.offer(buffer);
+        }
+    }
+
+    private class PooledDataBuffer extends DataBuffer {
+
+        final SizeClass sizeClass;
+
+        PooledDataBuffer(SizeClass sizeClass, ByteBuffer buff) {
+            super(buff);
+            this.sizeClass = sizeClass;
+            setFactory(NioBufferPool.this);
+        }
+    }
+}
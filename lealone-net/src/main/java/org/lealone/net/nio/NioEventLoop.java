@@ -11,6 +11,7 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -21,8 +22,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.lealone.common.exceptions.DbException;
 import org.lealone.common.logging.Logger;
 import org.lealone.common.logging.LoggerFactory;
+import org.lealone.common.metrics.Metric;
 import org.lealone.common.util.MapUtils;
 import org.lealone.db.DataBuffer;
+import org.lealone.db.async.AsyncCallback;
+import org.lealone.db.async.Future;
 import org.lealone.net.AsyncConnection;
 import org.lealone.net.NetBuffer;
 import org.lealone.net.NetEventLoop;
@@ -36,7 +40,10 @@ class NioEventLoop implements NetEventLoop {
 
     private final AtomicInteger writeQueueSize = new AtomicInteger();
     private final AtomicBoolean selecting = new AtomicBoolean(false);
+    // 其他线程要注册的channel先放到这里，由nio-event-loop线程在select之前注册
+    private final ConcurrentLinkedQueue<PendingRegistration> pendingRegistrations = new ConcurrentLinkedQueue<>();
     private Selector selector;
+    private final NioBufferPool bufferPool;
     private final long loopInterval;
     private int maxPacketCountPerLoop; // 每次循环最多读取多少个数据包
     private Object owner;
@@ -45,6 +52,10 @@ class NioEventLoop implements NetEventLoop {
             throws IOException {
         loopInterval = MapUtils.getLong(config, loopIntervalKey, defaultLoopInterval);
         maxPacketCountPerLoop = MapUtils.getInt(config, "max_packet_count_per_loop", 20);
+        if (MapUtils.getBoolean(config, "net_buffer_pool_enabled", true))
+            bufferPool = new NioBufferPool(config);
+        else
+            bufferPool = null;
         selector = Selector.open();
     }
 
@@ -58,6 +69,10 @@ class NioEventLoop implements NetEventLoop {
         this.owner = owner;
     }
 
+    public NioBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     @Override
     public Selector getSelector() {
         return selector;
@@ -72,6 +87,7 @@ class NioEventLoop implements NetEventLoop {
 
     @Override
     public void select(long timeout) throws IOException {
+        registerPendingChannels();
         if (selecting.compareAndSet(false, true)) {
             if (haveWork) {
                 haveWork = false;
@@ -104,23 +120,41 @@ class NioEventLoop implements NetEventLoop {
     }
 
     @Override
-    public void register(SocketChannel channel, int ops, Object att) throws ClosedChannelException {
+    public Future<Void> register(SocketChannel channel, int ops, Object att) {
         // 当nio-event-loop线程执行selector.select被阻塞时，代码内部依然会占用publicKeys锁，
         // 而另一个线程执行channel.register时，内部也会去要publicKeys锁，从而导致也被阻塞，
-        // 所以下面这段代码的用处是:
-        // 只要发现nio-event-loop线程正在进行select，那么就唤醒它，并释放publicKeys锁。
-        while (true) {
-            if (selecting.compareAndSet(false, true)) {
-                channel.register(selector, SelectionKey.OP_CONNECT, att);
-                selecting.set(false);
-                selector.wakeup();
-                break;
-            } else {
-                selector.wakeup();
+        // 所以不在当前线程注册，而是交给nio-event-loop线程在select之前注册，注册完成后通过回调通知
+        PendingRegistration pr = new PendingRegistration(channel, ops, att);
+        pendingRegistrations.add(pr);
+        wakeup();
+        return pr.ac;
+    }
+
+    private void registerPendingChannels() {
+        PendingRegistration pr;
+        while ((pr = pendingRegistrations.poll()) != null) {
+            try {
+                pr.channel.register(selector, pr.ops, pr.att);
+                pr.ac.setAsyncResult((Void) null);
+            } catch (Throwable t) {
+                pr.ac.setAsyncResult(t);
             }
         }
     }
 
+    private static class PendingRegistration {
+        final SocketChannel channel;
+        final int ops;
+        final Object att;
+        final AsyncCallback<Void> ac = new AsyncCallback<>();
+
+        PendingRegistration(SocketChannel channel, int ops, Object att) {
+            this.channel = channel;
+            this.ops = ops;
+            this.att = att;
+        }
+    }
+
     @Override
     public void addSocketChannel(SocketChannel channel) {
         channels.putIfAbsent(channel, new ConcurrentLinkedQueue<>());
@@ -164,10 +198,27 @@ class NioEventLoop implements NetEventLoop {
         key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
     }
 
+    // 总是统计，用于导出指标，通常只在事件循环线程中更新
     private long totalReadBytes;
     private long totalWrittenBytes;
     private final boolean isDebugEnabled = logger.isDebugEnabled();
 
+    @Override
+    public long getReadBytes() {
+        return totalReadBytes;
+    }
+
+    @Override
+    public long getWrittenBytes() {
+        return totalWrittenBytes;
+    }
+
+    @Override
+    public void registerMetrics(String labels, List<Metric> metrics) {
+        if (bufferPool != null)
+            bufferPool.registerMetrics(labels, metrics);
+    }
+
     @Override
     public void read(SelectionKey key) {
         SocketChannel channel = (SocketChannel) key.channel();
@@ -193,7 +244,10 @@ class NioEventLoop implements NetEventLoop {
                 if (attachment.state == 1) {
                     int packetLength = conn.getPacketLength();
                     if (dataBuffer == null) {
-                        dataBuffer = DataBuffer.getOrCreate(packetLength);
+                        if (bufferPool != null)
+                            dataBuffer = bufferPool.create(packetLength);
+                        else
+                            dataBuffer = DataBuffer.getOrCreate(packetLength);
                         dataBuffer.limit(packetLength); // 返回的DatBuffer的Capacity可能大于packetLength，所以设置一下limit，不会多读
                     }
                     ByteBuffer buffer = dataBuffer.getBuffer();
@@ -224,10 +278,9 @@ class NioEventLoop implements NetEventLoop {
             throws Exception {
         int readBytes = channel.read(buffer);
         if (readBytes > 0) {
-            if (isDebugEnabled) {
-                totalReadBytes += readBytes;
+            totalReadBytes += readBytes;
+            if (isDebugEnabled)
                 logger.debug(("total read bytes: " + totalReadBytes));
-            }
             attachment.endOfStreamCount = 0;
         } else {
             // 客户端非正常关闭时，可能会触发JDK的bug，导致run方法死循环，selector.select不会阻塞
@@ -301,10 +354,9 @@ class NioEventLoop implements NetEventLoop {
                     return false; // 还没有写完
                 }
                 remaining -= writtenBytes;
-                if (isDebugEnabled) {
-                    totalWrittenBytes += writtenBytes;
+                totalWrittenBytes += writtenBytes;
+                if (isDebugEnabled)
                     logger.debug(("total written bytes: " + totalWrittenBytes));
-                }
             }
         } catch (IOException e) {
             closeChannel(channel);
@@ -338,5 +390,7 @@ class NioEventLoop implements NetEventLoop {
             selector.close();
         } catch (Exception e) {
         }
+        if (bufferPool != null)
+            bufferPool.close();
     }
 }
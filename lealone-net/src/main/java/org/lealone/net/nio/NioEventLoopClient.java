@@ -98,13 +98,16 @@ class NioEventLoopClient extends NetClientBase {
 
     private void connectionEstablished(SelectionKey key, Object att) throws Exception {
         SocketChannel channel = (SocketChannel) key.channel();
-        if (!channel.isConnectionPending())
+        // 调用connect时有可能已经直接连上了，此时isConnectionPending返回false，
+        // 如果直接返回，OP_CONNECT事件会一直就绪，连接永远建不好
+        if (!channel.isConnectionPending() && !channel.isConnected())
             return;
 
         ClientAttachment attachment = (ClientAttachment) att;
         try {
             AsyncConnection conn;
-            channel.finishConnect();
+            if (channel.isConnectionPending())
+                channel.finishConnect();
             nioEventLoop.addSocketChannel(channel);
             NioWritableChannel writableChannel = new NioWritableChannel(channel, nioEventLoop);
             if (attachment.connectionManager != null) {
@@ -172,10 +175,15 @@ class NioEventLoopClient extends NetClientBase {
             attachment.ac = ac;
             attachment.maxSharedSize = maxSharedSize;
 
-            nioEventLoop.register(channel, SelectionKey.OP_CONNECT, attachment);
+            SocketChannel ch = channel;
+            nioEventLoop.register(channel, SelectionKey.OP_CONNECT, attachment).onFailure(t -> {
+                // 此时channel还没有加到nioEventLoop中，直接关闭
+                ServerAccepter.closeChannel(ch);
+                ac.setAsyncResult(t);
+            });
             channel.connect(inetSocketAddress);
         } catch (Exception e) {
-            nioEventLoop.closeChannel(channel);
+            ServerAccepter.closeChannel(channel);
             ac.setAsyncResult(e);
         }
     }
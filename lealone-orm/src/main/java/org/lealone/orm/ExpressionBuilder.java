@@ -69,14 +69,18 @@ public class ExpressionBuilder<M extends Model<M>> {
         return model.getModelTable();
     }
 
-    private ValueExpression createValueExpression(Object value) {
-        ValueExpression v;
+    // 字面值都绑定成参数，这样只有值不同的查询的形状是一样的，可以复用prepare的结果
+    private Expression createValueExpression(Object value) {
+        Value v;
         if (value instanceof Value) {
-            v = ValueExpression.get((Value) value);
+            v = (Value) value;
+            // is null和is not null不需要参数
+            if (v == ValueNull.INSTANCE)
+                return ValueExpression.getNull();
         } else {
-            v = ValueExpression.get(ValueString.get(value.toString()));
+            v = ValueString.get(value.toString());
         }
-        return v;
+        return model.createParameter(v);
     }
 
     private ArrayList<Expression> createExpressionList(Object... values) {
@@ -88,7 +92,7 @@ public class ExpressionBuilder<M extends Model<M>> {
 
     private Comparison createComparison(String propertyName, Object value, int compareType) {
         ExpressionColumn ec = model.getExpressionColumn(propertyName);
-        ValueExpression v = createValueExpression(value);
+        Expression v = createValueExpression(value);
         return new Comparison(getModelTable().getSession(), compareType, ec, v);
     }
 
@@ -139,7 +143,7 @@ public class ExpressionBuilder<M extends Model<M>> {
     public M ieq(String propertyName, String value) {
         Expression left = createExpressionColumn(propertyName, true);
         value = value.toUpperCase();
-        ValueExpression v = ValueExpression.get(ValueString.get(value));
+        Expression v = createValueExpression(ValueString.get(value));
         Comparison c = new Comparison(getModelTable().getSession(), Comparison.EQUAL, left, v);
         setRootExpression(c);
         return model;
@@ -187,8 +191,7 @@ public class ExpressionBuilder<M extends Model<M>> {
         f.setParameter(0, ec);
 
         Value array = DataType.convertToValue(values, Value.ARRAY);
-        ValueExpression v = ValueExpression.get(array);
-        f.setParameter(1, v);
+        f.setParameter(1, createValueExpression(array));
 
         Comparison c = new Comparison(getModelTable().getSession(), Comparison.EQUAL, f,
                 ValueExpression.get(contains ? ValueBoolean.TRUE : ValueBoolean.FALSE));
@@ -274,6 +277,7 @@ public class ExpressionBuilder<M extends Model<M>> {
         if (caseInsensitive) {
             value = value.toUpperCase();
         }
+        // prepare时会根据模式的前缀创建索引条件，所以模式不能绑定成参数
         ValueExpression v = ValueExpression.get(ValueString.get(value));
         CompareLike like = new CompareLike(getModelTable().getDatabase(), left, v, null, regexp);
         setRootExpression(like);
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.lealone.common.exceptions.DbException;
@@ -36,6 +37,8 @@ import org.lealone.db.value.ValueInt;
 import org.lealone.db.value.ValueLong;
 import org.lealone.db.value.ValueNull;
 import org.lealone.orm.json.JsonObject;
+import org.lealone.orm.json.JsonReader;
+import org.lealone.orm.json.JsonWriter;
 import org.lealone.orm.property.PBase;
 import org.lealone.orm.property.PLong;
 import org.lealone.sql.dml.Delete;
@@ -43,6 +46,7 @@ import org.lealone.sql.dml.Insert;
 import org.lealone.sql.dml.Update;
 import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.ExpressionColumn;
+import org.lealone.sql.expression.Parameter;
 import org.lealone.sql.expression.SelectOrderBy;
 import org.lealone.sql.expression.ValueExpression;
 import org.lealone.sql.expression.Wildcard;
@@ -65,6 +69,9 @@ public abstract class Model<T extends Model<T>> {
 
     private static final Logger logger = LoggerFactory.getLogger(Model.class);
 
+    // insertAll时一条insert语句最多插入多少行
+    private static final int MAX_INSERT_BATCH_SIZE = 128;
+
     private static final ConcurrentSkipListMap<Long, ServerSession> currentSessions = new ConcurrentSkipListMap<>();
     private static final ConcurrentSkipListMap<Integer, List<ServerSession>> sessionMap = new ConcurrentSkipListMap<>();
 
@@ -166,6 +173,9 @@ public abstract class Model<T extends Model<T>> {
     private Expression limitExpr;
     private Expression offsetExpr;
 
+    // 所有字面值都绑定成参数，这样同一形状的语句就可以复用prepare的结果，join时多个model共用同一个列表
+    private ArrayList<Parameter> parameters;
+
     // The underlying expression builders held as a stack. Pushed and popped based on and/or.
     private Stack<ExpressionBuilder<T>> expressionBuilderStack;
     private Stack<TableFilter> tableFilterStack;
@@ -260,6 +270,25 @@ public abstract class Model<T extends Model<T>> {
         whereExpressionBuilder = null;
         expressionBuilderStack = null;
         tableFilterStack = null;
+        // limit和offset也是参数，参数列表清空后它们就无效了
+        limitExpr = null;
+        offsetExpr = null;
+        parameters = null;
+    }
+
+    private ArrayList<Parameter> getParameters() {
+        if (parameters == null) {
+            parameters = new ArrayList<>();
+        }
+        return parameters;
+    }
+
+    Parameter createParameter(Value value) {
+        ArrayList<Parameter> parameters = getParameters();
+        Parameter p = new Parameter(parameters.size());
+        p.setValue(value);
+        parameters.add(p);
+        return p;
     }
 
     private ExpressionBuilder<T> getWhereExpressionBuilder() {
@@ -419,10 +448,9 @@ public abstract class Model<T extends Model<T>> {
         }
         Select select = createSelect(tid);
         select.setLimit(ValueExpression.get(ValueInt.get(1)));
-        select.init();
-        select.prepare();
-        logger.info("execute sql: " + select.getPlanSQL());
-        Result result = select.executeQuery(1).get();
+        String shape = getQueryShape("findOne", select);
+        select = prepare(shape, select);
+        Result result = PreparedStatementCache.executeQuery(shape, select, 1);
         result.next();
         reset();
 
@@ -477,6 +505,62 @@ public abstract class Model<T extends Model<T>> {
         return columnMap;
     }
 
+    // 命中缓存时直接丢掉刚构建的select，只用它的参数值
+    private Select prepare(String shape, Select select) {
+        Select cached = PreparedStatementCache.take(shape, select.getSession(), getParameters());
+        if (cached != null)
+            return cached;
+        select.setParameterList(getParameters());
+        select.init();
+        select.prepare();
+        // 缓存的结果是跟session绑定的，语句在多个session间复用时不能用
+        select.disableCache();
+        logger.info("execute sql: " + select.getPlanSQL());
+        return select;
+    }
+
+    // 不需要prepare就能得到的SQL，参数的位置也是形状的一部分
+    private String getQueryShape(String type, Select select) {
+        StringBuilder buff = new StringBuilder(type).append(':');
+        for (Expression e : selectExpressions)
+            buff.append(e.getSQL()).append(',');
+        for (TableFilter f : select.getFilters()) {
+            buff.append(" FROM ").append(f.getTable().getSQL()).append(' ').append(f.getTableAlias());
+            if (f.getJoinCondition() != null)
+                buff.append(" ON ").append(f.getJoinCondition().getSQL());
+        }
+        if (whereExpressionBuilder != null) {
+            if (whereExpressionBuilder.getExpression() != null)
+                buff.append(" WHERE ").append(whereExpressionBuilder.getExpression().getSQL());
+            appendExpressions(buff, " ORDER BY ", whereExpressionBuilder.getOrderList());
+        }
+        appendExpressions(buff, " GROUP BY ", groupExpressions);
+        if (having != null && having.getExpression() != null)
+            buff.append(" HAVING ").append(having.getExpression().getSQL());
+        if (limitExpr != null)
+            buff.append(" LIMIT ").append(limitExpr.getSQL());
+        if (offsetExpr != null)
+            buff.append(" OFFSET ").append(offsetExpr.getSQL());
+        return getShapePrefix() + buff;
+    }
+
+    private String getShapePrefix() {
+        return getDatabaseName() + "." + getSchemaName() + "." + getTableName() + "|";
+    }
+
+    private static void appendExpressions(StringBuilder buff, String prefix, ArrayList<?> list) {
+        if (list == null || list.isEmpty())
+            return;
+        buff.append(prefix);
+        for (Object e : list) {
+            if (e instanceof SelectOrderBy)
+                buff.append(((SelectOrderBy) e).getSQL());
+            else
+                buff.append(((Expression) e).getSQL());
+            buff.append(',');
+        }
+    }
+
     private Select createSelect(Long tid) {
         ServerSession session = getSession(tid);
         Select select = new Select(session);
@@ -606,24 +690,57 @@ public abstract class Model<T extends Model<T>> {
     }
 
     public String encode() {
-        return new JsonObject(toMap()).encode();
+        JsonWriter writer = new JsonWriter();
+        encode(writer);
+        return writer.toString();
     }
 
-    protected T decode0(String str) {
-        Map<String, Object> map = new JsonObject(str).getMap();
+    // 跟toMap的结果一样，但是不构建中间的Map，每个字段直接写到writer
+    public void encode(JsonWriter writer) {
+        writer.beginObject();
         for (ModelProperty<?> p : modelProperties) {
-            Object v = map.get(p.getName());
-            if (v != null) {
-                // 先反序列化再set，这样Model的子类对象就可以在后续调用insert之类的方法
-                p.deserializeAndSet(v);
+            p.encode(writer);
+        }
+        if (modelMap != null) {
+            for (Entry<Class, ArrayList<Model<?>>> e : modelMap.entrySet()) {
+                writer.name(e.getKey().getSimpleName() + "List");
+                writer.beginArray();
+                for (Model<?> m : e.getValue()) {
+                    m.encode(writer);
+                }
+                writer.endArray();
             }
         }
-        Object v = map.get("modelType");
-        if (v == null) {
-            modelType = REGULAR_MODEL;
-        } else {
-            modelType = ((Number) v).shortValue();
+        writer.name("modelType").value(modelType);
+        writer.endObject();
+    }
+
+    protected T decode0(String str) {
+        return decode0(new JsonReader(str));
+    }
+
+    protected T decode0(JsonReader reader) {
+        // model先编码成json字符串再作为参数传递时，读到的是字符串
+        if (reader.isString())
+            return decode0(reader.readString());
+        short type = REGULAR_MODEL;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            ModelProperty<?> p = nameToModelPropertyMap.get(name);
+            if (p != null) {
+                // 先反序列化再set，这样Model的子类对象就可以在后续调用insert之类的方法
+                p.deserializeAndSet(reader);
+            } else if (name.equals("modelType")) {
+                Short v = reader.readShort();
+                if (v != null)
+                    type = v;
+            } else {
+                reader.skipValue();
+            }
         }
+        reader.endObject();
+        modelType = type;
         return (T) this;
     }
 
@@ -637,10 +754,9 @@ public abstract class Model<T extends Model<T>> {
     public List<T> findList(Long tid) {
         checkDao("findList");
         Select select = createSelect(tid);
-        select.init();
-        select.prepare();
-        logger.info("execute sql: " + select.getPlanSQL());
-        Result result = select.executeQuery(-1).get();
+        String shape = getQueryShape("findList", select);
+        select = prepare(shape, select);
+        Result result = PreparedStatementCache.executeQuery(shape, select, -1);
         reset();
 
         Map<Class<?>, Map<Long, Model<?>>> map = new HashMap<>();
@@ -700,6 +816,7 @@ public abstract class Model<T extends Model<T>> {
         }
         m.tableFilterStack = this.tableFilterStack;
         m.whereExpressionBuilder = (ExpressionBuilder<M>) this.whereExpressionBuilder;
+        m.parameters = getParameters();
         peekExprBuilder().setModel((T) m);
         m.pushExprBuilder((ExpressionBuilder<M>) peekExprBuilder());
         return m.root;
@@ -720,10 +837,9 @@ public abstract class Model<T extends Model<T>> {
         Aggregate a = Aggregate.create(Aggregate.COUNT_ALL, null, select, false);
         getSelectExpressions().add(a);
         select.setExpressions(getSelectExpressions());
-        select.init();
-        select.prepare();
-        logger.info("execute sql: " + select.getPlanSQL());
-        Result result = select.executeQuery(-1).get();
+        String shape = getQueryShape("findCount", select);
+        select = prepare(shape, select);
+        Result result = PreparedStatementCache.executeQuery(shape, select, -1);
         reset();
         result.next();
         return result.currentRow()[0].getInt();
@@ -768,23 +884,9 @@ public abstract class Model<T extends Model<T>> {
             tid = beginTransaction();
         }
         ServerSession session = getSession(tid);
-        Table dbTable = modelTable.getTable();
-        Insert insert = new Insert(session);
-        int size = nvPairs.size();
-        Column[] columns = new Column[size];
-        Expression[] expressions = new Expression[size];
-        int i = 0;
-        for (NVPair p : nvPairs.values()) {
-            columns[i] = dbTable.getColumn(p.name);
-            expressions[i] = ValueExpression.get(p.value);
-            i++;
-        }
-        insert.setColumns(columns);
-        insert.addRow(expressions);
-        insert.setTable(dbTable);
-        insert.prepare();
-        logger.info("execute sql: " + insert.getPlanSQL());
-        insert.executeUpdate();
+        ArrayList<Model<?>> rows = new ArrayList<>(1);
+        rows.add(this);
+        insertRows(session, rows);
         long rowId = session.getLastIdentity().getLong(); // session.getLastRowKey()在事务提交时被设为null了
         _rowid_.set(rowId);
 
@@ -806,6 +908,98 @@ public abstract class Model<T extends Model<T>> {
         return rowId;
     }
 
+    /**
+     * 设置了相同字段的model用一条insert语句插入，但不会回填每个model的rowid，
+     * 有关联model的还是单独插入。
+     */
+    public int insertAll(List<T> models) {
+        return insertAll(models, null);
+    }
+
+    public int insertAll(List<T> models, Long tid) {
+        Model<T> m2 = maybeCopy();
+        if (m2 != this) {
+            return m2.insertAll(models, tid);
+        }
+        LinkedHashMap<String, ArrayList<Model<?>>> groups = new LinkedHashMap<>();
+        int count = 0;
+        for (T m : models) {
+            Model<?> model = m;
+            if (model.nvPairs == null) {
+                throw new UnsupportedOperationException("No values insert");
+            }
+            if (model.modelList != null) {
+                model.insert(tid);
+                count++;
+                continue;
+            }
+            String key = new TreeSet<>(model.nvPairs.keySet()).toString();
+            ArrayList<Model<?>> rows = groups.get(key);
+            if (rows == null) {
+                rows = new ArrayList<>();
+                groups.put(key, rows);
+            }
+            rows.add(model);
+        }
+        if (groups.isEmpty())
+            return count;
+        ServerSession session = getSession(tid);
+        for (ArrayList<Model<?>> rows : groups.values()) {
+            count += insertRows(session, rows);
+            for (Model<?> m : rows)
+                m.reset();
+        }
+        if (session.isAutoCommit()) {
+            session.commit();
+        }
+        return count;
+    }
+
+    // 行数也是语句形状的一部分，按2的幂分批插入，同样的字段最多只有几种形状，不会把缓存占满
+    private int insertRows(ServerSession session, ArrayList<Model<?>> rows) {
+        ArrayList<String> names = new ArrayList<>(rows.get(0).nvPairs.keySet());
+        int count = 0;
+        for (int from = 0, size = rows.size(); from < size;) {
+            int batchSize = Math.min(MAX_INSERT_BATCH_SIZE, Integer.highestOneBit(size - from));
+            count += insertRows(session, names, rows.subList(from, from + batchSize));
+            from += batchSize;
+        }
+        return count;
+    }
+
+    // 所有行的字段都跟第一行一样，字段值都绑定成参数
+    private int insertRows(ServerSession session, ArrayList<String> names, List<Model<?>> rows) {
+        Table dbTable = modelTable.getTable();
+        int size = names.size();
+        parameters = null;
+        ArrayList<Expression[]> list = new ArrayList<>(rows.size());
+        for (Model<?> m : rows) {
+            Expression[] expressions = new Expression[size];
+            for (int i = 0; i < size; i++) {
+                expressions[i] = createParameter(m.nvPairs.get(names.get(i)).value);
+            }
+            list.add(expressions);
+        }
+        String shape = getShapePrefix() + "insert:" + names + ":" + rows.size();
+        Insert insert = PreparedStatementCache.take(shape, session, getParameters());
+        if (insert == null) {
+            insert = new Insert(session);
+            Column[] columns = new Column[size];
+            for (int i = 0; i < size; i++) {
+                columns[i] = dbTable.getColumn(names.get(i));
+            }
+            insert.setColumns(columns);
+            for (Expression[] expressions : list) {
+                insert.addRow(expressions);
+            }
+            insert.setTable(dbTable);
+            insert.setParameterList(getParameters());
+            insert.prepare();
+            logger.info("execute sql: " + insert.getPlanSQL());
+        }
+        return PreparedStatementCache.executeUpdate(shape, insert);
+    }
+
     public int update() {
         return update(null);
     }
@@ -817,19 +1011,32 @@ public abstract class Model<T extends Model<T>> {
         }
         ServerSession session = getSession(tid);
         Table dbTable = modelTable.getTable();
-        Update update = new Update(session);
-        TableFilter tableFilter = new TableFilter(session, dbTable, null, true, null);
-        update.setTableFilter(tableFilter);
         checkWhereExpression(dbTable, "update");
-        if (whereExpressionBuilder != null)
-            update.setCondition(whereExpressionBuilder.getExpression());
-        for (NVPair p : nvPairs.values()) {
-            update.setAssignment(dbTable.getColumn(p.name), ValueExpression.get(p.value));
+        Expression condition = getWhereExpression();
+        StringBuilder shape = new StringBuilder(getShapePrefix()).append("update:");
+        ArrayList<NVPair> assignments = new ArrayList<>(nvPairs.values());
+        Expression[] values = new Expression[assignments.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = createParameter(assignments.get(i).value);
+            shape.append(assignments.get(i).name).append('=').append(values[i].getSQL()).append(',');
+        }
+        appendCondition(shape, condition);
+        Update update = PreparedStatementCache.take(shape.toString(), session, getParameters());
+        if (update == null) {
+            update = new Update(session);
+            TableFilter tableFilter = new TableFilter(session, dbTable, null, true, null);
+            update.setTableFilter(tableFilter);
+            if (condition != null)
+                update.setCondition(condition);
+            for (int i = 0; i < values.length; i++) {
+                update.setAssignment(dbTable.getColumn(assignments.get(i).name), values[i]);
+            }
+            update.setParameterList(getParameters());
+            update.prepare();
+            logger.info("execute sql: " + update.getPlanSQL());
         }
-        update.prepare();
         reset();
-        logger.info("execute sql: " + update.getPlanSQL());
-        int count = update.executeUpdate().get();
+        int count = PreparedStatementCache.executeUpdate(shape.toString(), update);
         if (session.isAutoCommit()) {
             session.commit();
         }
@@ -843,22 +1050,38 @@ public abstract class Model<T extends Model<T>> {
     public int delete(Long tid) {
         ServerSession session = getSession(tid);
         Table dbTable = modelTable.getTable();
-        Delete delete = new Delete(session);
-        TableFilter tableFilter = new TableFilter(session, dbTable, null, true, null);
-        delete.setTableFilter(tableFilter);
         checkWhereExpression(dbTable, "delete");
-        if (whereExpressionBuilder != null)
-            delete.setCondition(whereExpressionBuilder.getExpression());
-        delete.prepare();
+        Expression condition = getWhereExpression();
+        StringBuilder shape = new StringBuilder(getShapePrefix()).append("delete:");
+        appendCondition(shape, condition);
+        Delete delete = PreparedStatementCache.take(shape.toString(), session, getParameters());
+        if (delete == null) {
+            delete = new Delete(session);
+            TableFilter tableFilter = new TableFilter(session, dbTable, null, true, null);
+            delete.setTableFilter(tableFilter);
+            if (condition != null)
+                delete.setCondition(condition);
+            delete.setParameterList(getParameters());
+            delete.prepare();
+            logger.info("execute sql: " + delete.getPlanSQL());
+        }
         reset();
-        logger.info("execute sql: " + delete.getPlanSQL());
-        int count = delete.executeUpdate().get();
+        int count = PreparedStatementCache.executeUpdate(shape.toString(), delete);
         if (session.isAutoCommit()) {
             session.commit();
         }
         return count;
     }
 
+    private Expression getWhereExpression() {
+        return whereExpressionBuilder == null ? null : whereExpressionBuilder.getExpression();
+    }
+
+    private static void appendCondition(StringBuilder shape, Expression condition) {
+        if (condition != null)
+            shape.append(" WHERE ").append(condition.getSQL());
+    }
+
     private void checkWhereExpression(Table dbTable, String methodName) {
         if (whereExpressionBuilder == null || whereExpressionBuilder.getExpression() == null) {
             maybeCreateWhereExpression(dbTable);
@@ -945,7 +1168,7 @@ public abstract class Model<T extends Model<T>> {
         if (m != this) {
             return m.limit(v);
         }
-        limitExpr = ValueExpression.get(ValueLong.get(v));
+        limitExpr = createParameter(ValueLong.get(v));
         return root;
     }
 
@@ -954,7 +1177,7 @@ public abstract class Model<T extends Model<T>> {
         if (m != this) {
             return m.offset(v);
         }
-        offsetExpr = ValueExpression.get(ValueLong.get(v));
+        offsetExpr = createParameter(ValueLong.get(v));
         return root;
     }
 
@@ -992,6 +1215,7 @@ public abstract class Model<T extends Model<T>> {
         }
         getTableFilterStack().push(m.createTableFilter());
         m.tableFilterStack = getTableFilterStack();
+        m.parameters = getParameters();
         return root;
     }
 
@@ -11,6 +11,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.lealone.db.value.Value;
+import org.lealone.orm.json.JsonReader;
+import org.lealone.orm.json.JsonWriter;
 
 /**
  * A property used in type query.
@@ -127,6 +129,15 @@ public abstract class ModelProperty<M extends Model<M>> {
     protected void deserializeAndSet(Object v) {
     }
 
+    // 直接把字段写到json流中，值为null时不输出
+    protected void encode(JsonWriter writer) {
+    }
+
+    // 直接从json流中读取字段值并set，值为null时忽略
+    protected void deserializeAndSet(JsonReader reader) {
+        reader.skipValue();
+    }
+
     // map存放的是查询结果集某一条记录各个字段的值
     protected void deserialize(HashMap<String, Value> map) {
         Value v = map.get(getFullName());
@@ -0,0 +1,96 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.orm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.lealone.db.result.Result;
+import org.lealone.db.session.ServerSession;
+import org.lealone.sql.StatementBase;
+import org.lealone.sql.expression.Parameter;
+import org.lealone.sql.query.Select;
+
+/**
+ * 按查询的形状缓存prepare过的语句，形状就是把字面值都换成参数后得到的SQL，
+ * 同一个形状只需要prepare一次，之后绑定新的session和参数值就能直接执行。
+ *
+ * 语句在执行期间不在缓存中，所以同一个语句对象不会被多个线程同时使用。
+ * 缓存满了之后淘汰最久没有用过的语句。
+ */
+class PreparedStatementCache {
+
+    // 形状的数量是由代码决定的，但in的值个数不同也会得到不同的形状，所以要限制一下
+    private static final int MAX_SIZE = 1024;
+
+    // 按访问顺序排列，执行完放回来的语句排在最后
+    private static final LinkedHashMap<String, StatementBase> cache = new LinkedHashMap<String, StatementBase>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StatementBase> eldest) {
+            if (size() > MAX_SIZE) {
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private PreparedStatementCache() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <S extends StatementBase> S take(String shape, ServerSession session,
+            ArrayList<Parameter> parameters) {
+        StatementBase s;
+        synchronized (cache) {
+            s = cache.remove(shape);
+        }
+        if (s == null)
+            return null;
+        // 表结构变化后要重新prepare
+        if (s.needRecompile()) {
+            s.close();
+            return null;
+        }
+        s.setSession(session);
+        ArrayList<Parameter> list = s.getParameters();
+        for (int i = 0, size = list.size(); i < size; i++) {
+            list.get(i).setValue(parameters.get(i).getValue());
+        }
+        return (S) s;
+    }
+
+    static void release(String shape, StatementBase s) {
+        StatementBase old;
+        synchronized (cache) {
+            old = cache.put(shape, s);
+        }
+        // 同一个形状同时执行了多次，只留一个
+        if (old != null && old != s)
+            old.close();
+    }
+
+    // 执行出错时语句也要放回缓存，下次执行前会重新绑定session和参数
+    static Result executeQuery(String shape, Select select, int maxRows) {
+        try {
+            return select.executeQuery(maxRows).get();
+        } finally {
+            release(shape, select);
+        }
+    }
+
+    static int executeUpdate(String shape, StatementBase s) {
+        try {
+            return s.executeUpdate().get();
+        } finally {
+            release(shape, s);
+        }
+    }
+}
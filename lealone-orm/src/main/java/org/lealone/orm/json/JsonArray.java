@@ -482,13 +482,15 @@ public class JsonArray extends Json implements Iterable<Object> {
         }
     }
 
+    // 参数是按顺序读取的，所以直接从json流中读出具体的类型，不需要先解析成JsonArray
     public static class Getter implements JsonArrayGetter {
 
-        private JsonArray ja;
+        private JsonReader reader;
 
         @Override
         public void init(String json) {
-            ja = new JsonArray(json);
+            reader = new JsonReader(json);
+            reader.beginArray();
         }
 
         @Override
@@ -496,68 +498,68 @@ public class JsonArray extends Json implements Iterable<Object> {
             Object v;
             switch (type) {
             case Value.BOOLEAN:
-                v = Boolean.valueOf(ja.getValue(i).toString());
+                v = reader.readBoolean();
                 break;
             case Value.BYTE:
-                v = Byte.valueOf(ja.getValue(i).toString());
+                v = reader.readByte();
                 break;
             case Value.SHORT:
-                v = Short.valueOf(ja.getValue(i).toString());
+                v = reader.readShort();
                 break;
             case Value.INT:
-                v = Integer.valueOf(ja.getValue(i).toString());
+                v = reader.readInteger();
                 break;
             case Value.LONG:
-                v = Long.valueOf(ja.getValue(i).toString());
+                v = reader.readLong();
                 break;
             case Value.DECIMAL:
-                v = new java.math.BigDecimal(ja.getValue(i).toString());
+                v = reader.readBigDecimal();
                 break;
             case Value.TIME:
-                v = java.sql.Time.valueOf(ja.getValue(i).toString());
+                v = reader.readTime();
                 break;
             case Value.DATE:
-                v = java.sql.Date.valueOf(ja.getValue(i).toString());
+                v = reader.readDate();
                 break;
             case Value.TIMESTAMP:
-                v = java.sql.Timestamp.valueOf(ja.getValue(i).toString());
+                v = reader.readTimestamp();
                 break;
             case Value.BYTES:
-                v = ja.getString(i).getBytes();
+                v = reader.readBytes();
                 break;
             case Value.UUID:
-                v = java.util.UUID.fromString(ja.getValue(i).toString());
+                v = reader.readUuid();
                 break;
             case Value.STRING:
             case Value.STRING_IGNORECASE:
             case Value.STRING_FIXED:
-                v = ja.getString(i);
+                v = reader.readString();
                 break;
             case Value.BLOB:
-                v = new org.lealone.db.value.ReadonlyBlob(ja.getString(i));
+                v = new org.lealone.db.value.ReadonlyBlob(reader.readString());
                 break;
             case Value.CLOB:
-                v = new org.lealone.db.value.ReadonlyClob(ja.getString(i));
+                v = new org.lealone.db.value.ReadonlyClob(reader.readString());
                 break;
             case Value.DOUBLE:
-                v = Double.valueOf(ja.getValue(i).toString());
+                v = reader.readDouble();
                 break;
             case Value.FLOAT:
-                v = Float.valueOf(ja.getValue(i).toString());
+                v = reader.readFloat();
                 break;
             case Value.NULL:
                 return null;
             case Value.JAVA_OBJECT:
-                v = ja.getValue(i);
+                v = wrapJsonValue(reader.readValue());
                 break;
             case Value.UNKNOWN:
-                v = ja.getValue(i);
+                v = wrapJsonValue(reader.readValue());
                 break;
             case Value.ARRAY:
-                v = new ReadonlyArray(ja.getJsonArray(i).getList());
+                v = new ReadonlyArray(reader.readValue());
                 break;
             case Value.RESULT_SET:
-                v = ja.getValue(i);
+                v = wrapJsonValue(reader.readValue());
                 break;
             default:
                 throw DbException.getInternalError("type=" + type);
@@ -0,0 +1,472 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.orm.json;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 按顺序从json字符串中读取值，不需要先把整个json解析成Map和List，
+ * 生成的服务执行器和model用它直接把json转成具体类型的参数和字段值。
+ *
+ * 为了兼容之前基于JsonArray的实现，数字和布尔类型的值也可以放在字符串中，
+ * 读取字符串时如果遇到的是对象或数组，返回的是它们的json文本。
+ */
+public class JsonReader {
+
+    private final String json;
+    private final int length;
+    private int pos;
+    private boolean afterValue; // 刚读完一个值，跟下一个值之间要有逗号
+
+    public JsonReader(String json) {
+        this.json = json;
+        this.length = json.length();
+    }
+
+    private DecodeException error(String message) {
+        return new DecodeException(message + " at position " + pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t')
+                pos++;
+            else
+                break;
+        }
+    }
+
+    // 返回下一个值的第一个字符，会跳过值之前的逗号
+    private char peek() {
+        skipWhitespace();
+        if (pos >= length)
+            throw error("Unexpected end of json");
+        char c = json.charAt(pos);
+        if (afterValue) {
+            if (c == ',') {
+                pos++;
+                afterValue = false;
+                skipWhitespace();
+                if (pos >= length)
+                    throw error("Unexpected end of json");
+                c = json.charAt(pos);
+            } else if (c != ']' && c != '}') {
+                throw error("Expected ','");
+            }
+        }
+        return c;
+    }
+
+    // 读取值时调用，当前对象或数组已经结束了说明缺少值，不能当成空串或null
+    private char peekValue() {
+        char c = peek();
+        if (c == ']' || c == '}')
+            throw error("Expected a value");
+        return c;
+    }
+
+    private void expect(char expected) {
+        if (peek() != expected)
+            throw error("Expected '" + expected + "'");
+        pos++;
+    }
+
+    private void expectEnd(char expected) {
+        skipWhitespace();
+        if (pos >= length || json.charAt(pos) != expected)
+            throw error("Expected '" + expected + "'");
+        pos++;
+        afterValue = true;
+    }
+
+    public void beginObject() {
+        expect('{');
+        afterValue = false;
+    }
+
+    public void endObject() {
+        expectEnd('}');
+    }
+
+    public void beginArray() {
+        expect('[');
+        afterValue = false;
+    }
+
+    public void endArray() {
+        expectEnd(']');
+    }
+
+    /**
+     * 当前的对象或数组是否还有下一个元素
+     */
+    public boolean hasNext() {
+        char c = peek();
+        return c != '}' && c != ']';
+    }
+
+    public String nextName() {
+        if (peek() != '"')
+            throw error("Expected name");
+        String name = readStringToken();
+        skipWhitespace();
+        if (pos >= length || json.charAt(pos) != ':')
+            throw error("Expected ':'");
+        pos++;
+        afterValue = false;
+        return name;
+    }
+
+    public boolean isNull() {
+        return peek() == 'n';
+    }
+
+    public boolean isString() {
+        return peek() == '"';
+    }
+
+    // 如果下一个值是null就把它读掉
+    private boolean readNull() {
+        if (peekValue() != 'n')
+            return false;
+        readLiteral("null");
+        return true;
+    }
+
+    private void readLiteral(String literal) {
+        if (!json.startsWith(literal, pos))
+            throw error("Expected " + literal);
+        pos += literal.length();
+        afterValue = true;
+    }
+
+    private int scanLiteralEnd() {
+        int i = pos;
+        while (i < length) {
+            char c = json.charAt(i);
+            if (c == ',' || c == ']' || c == '}' || c == ' ' || c == '\n' || c == '\r' || c == '\t')
+                break;
+            i++;
+        }
+        return i;
+    }
+
+    // 读出字符串的内容，或者数字、true、false这类没有引号的值的原始文本
+    private String readScalarText() {
+        char c = peekValue();
+        String s;
+        if (c == '"') {
+            s = readStringToken();
+        } else if (c == '{' || c == '[') {
+            throw error("Expected a scalar value");
+        } else {
+            int start = pos;
+            pos = scanLiteralEnd();
+            s = json.substring(start, pos);
+        }
+        afterValue = true;
+        return s;
+    }
+
+    private String readStringToken() {
+        int start = ++pos;
+        // 没有转义字符时直接返回子串
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c == '"')
+                return json.substring(start, pos++);
+            if (c == '\\')
+                break;
+            pos++;
+        }
+        StringBuilder buff = new StringBuilder(pos - start + 16);
+        buff.append(json, start, pos);
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            if (c == '"')
+                return buff.toString();
+            if (c != '\\') {
+                buff.append(c);
+                continue;
+            }
+            if (pos >= length)
+                break;
+            c = json.charAt(pos++);
+            switch (c) {
+            case 'n':
+                buff.append('\n');
+                break;
+            case 'r':
+                buff.append('\r');
+                break;
+            case 't':
+                buff.append('\t');
+                break;
+            case 'b':
+                buff.append('\b');
+                break;
+            case 'f':
+                buff.append('\f');
+                break;
+            case 'u':
+                if (pos + 4 > length)
+                    throw error("Invalid escape");
+                try {
+                    buff.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid escape");
+                }
+                pos += 4;
+                break;
+            default: // \" \\ \/
+                buff.append(c);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private void skipStringToken() {
+        pos++;
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            if (c == '\\')
+                pos++;
+            else if (c == '"')
+                return;
+        }
+        throw error("Unterminated string");
+    }
+
+    private void skipContainer() {
+        int depth = 0;
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                skipStringToken();
+                continue;
+            }
+            pos++;
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0)
+                    return;
+            }
+        }
+        throw error("Unexpected end of json");
+    }
+
+    /**
+     * 跳过下一个值，值可以是对象或数组
+     */
+    public void skipValue() {
+        char c = peekValue();
+        if (c == '"')
+            skipStringToken();
+        else if (c == '{' || c == '[')
+            skipContainer();
+        else
+            pos = scanLiteralEnd();
+        afterValue = true;
+    }
+
+    public String readString() {
+        if (readNull())
+            return null;
+        char c = peek();
+        if (c == '{' || c == '[') {
+            int start = pos;
+            skipContainer();
+            afterValue = true;
+            return json.substring(start, pos);
+        }
+        return readScalarText();
+    }
+
+    public Boolean readBoolean() {
+        if (readNull())
+            return null;
+        return Boolean.valueOf(readScalarText());
+    }
+
+    public Byte readByte() {
+        if (readNull())
+            return null;
+        long v = parseLong();
+        if ((byte) v != v)
+            throw new NumberFormatException("Value out of range: " + v);
+        return (byte) v;
+    }
+
+    public Short readShort() {
+        if (readNull())
+            return null;
+        long v = parseLong();
+        if ((short) v != v)
+            throw new NumberFormatException("Value out of range: " + v);
+        return (short) v;
+    }
+
+    public Integer readInteger() {
+        if (readNull())
+            return null;
+        long v = parseLong();
+        if ((int) v != v)
+            throw new NumberFormatException("Value out of range: " + v);
+        return (int) v;
+    }
+
+    public Long readLong() {
+        if (readNull())
+            return null;
+        return parseLong();
+    }
+
+    private long parseLong() {
+        if (peek() == '"')
+            return Long.parseLong(readScalarText().trim());
+        int start = pos;
+        int end = scanLiteralEnd();
+        int i = start;
+        boolean negative = false;
+        if (i < end && json.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+        int digitStart = i;
+        long v = 0;
+        // 常见的是不超过18位的整数，直接在原字符串上计算，不用创建子串
+        if (end - i <= 18) {
+            for (; i < end; i++) {
+                char c = json.charAt(i);
+                if (c < '0' || c > '9')
+                    break;
+                v = v * 10 + (c - '0');
+            }
+        }
+        pos = end;
+        afterValue = true;
+        if (i != end || i == digitStart) {
+            // 交给Long.parseLong处理，格式不对时抛出NumberFormatException
+            return Long.parseLong(json.substring(start, end));
+        }
+        return negative ? -v : v;
+    }
+
+    public Double readDouble() {
+        if (readNull())
+            return null;
+        return Double.valueOf(readScalarText());
+    }
+
+    public Float readFloat() {
+        if (readNull())
+            return null;
+        return Float.valueOf(readScalarText());
+    }
+
+    public BigDecimal readBigDecimal() {
+        if (readNull())
+            return null;
+        return new BigDecimal(readScalarText().trim());
+    }
+
+    public byte[] readBytes() {
+        String s = readString();
+        return s == null ? null : s.getBytes();
+    }
+
+    public UUID readUuid() {
+        String s = readString();
+        return s == null ? null : UUID.fromString(s);
+    }
+
+    public java.sql.Date readDate() {
+        String s = readString();
+        return s == null ? null : java.sql.Date.valueOf(s);
+    }
+
+    public java.sql.Time readTime() {
+        String s = readString();
+        return s == null ? null : java.sql.Time.valueOf(s);
+    }
+
+    public java.sql.Timestamp readTimestamp() {
+        String s = readString();
+        return s == null ? null : java.sql.Timestamp.valueOf(s);
+    }
+
+    /**
+     * 读出任意的值，对象转成Map，数组转成List，整数根据大小转成Integer、Long或BigInteger，
+     * 跟JacksonCodec解析出来的类型一样。
+     */
+    public Object readValue() {
+        char c = peekValue();
+        switch (c) {
+        case '{': {
+            beginObject();
+            Map<String, Object> map = new LinkedHashMap<>();
+            while (hasNext()) {
+                String name = nextName();
+                map.put(name, readValue());
+            }
+            endObject();
+            return map;
+        }
+        case '[': {
+            beginArray();
+            List<Object> list = new ArrayList<>();
+            while (hasNext()) {
+                list.add(readValue());
+            }
+            endArray();
+            return list;
+        }
+        case '"':
+            return readScalarText();
+        case 'n':
+            readLiteral("null");
+            return null;
+        case 't':
+            readLiteral("true");
+            return Boolean.TRUE;
+        case 'f':
+            readLiteral("false");
+            return Boolean.FALSE;
+        default:
+            return readNumber();
+        }
+    }
+
+    private Number readNumber() {
+        int start = pos;
+        String s = readScalarText();
+        try {
+            if (s.indexOf('.') >= 0 || s.indexOf('e') >= 0 || s.indexOf('E') >= 0)
+                return Double.valueOf(s);
+            if (s.length() <= 18) {
+                long v = Long.parseLong(s);
+                if ((int) v == v)
+                    return (int) v;
+                return v;
+            }
+            BigInteger v = new BigInteger(s);
+            if (v.bitLength() < 64)
+                return v.longValue();
+            return v;
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("Invalid value '" + s + "'");
+        }
+    }
+}
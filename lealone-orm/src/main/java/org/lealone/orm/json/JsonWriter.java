@@ -0,0 +1,200 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.orm.json;
+
+import static java.time.format.DateTimeFormatter.ISO_INSTANT;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.lealone.orm.Model;
+
+/**
+ * 直接把json写到StringBuilder中，不需要先构建中间的Map和List，
+ * 输出的格式跟JacksonCodec一样，所以前端看到的json不会变。
+ */
+public class JsonWriter {
+
+    private static final String HEX = "0123456789ABCDEF";
+
+    private final StringBuilder buff;
+    private boolean needComma;
+
+    public JsonWriter() {
+        this(new StringBuilder());
+    }
+
+    public JsonWriter(StringBuilder buff) {
+        this.buff = buff;
+    }
+
+    private void beforeValue() {
+        if (needComma)
+            buff.append(',');
+    }
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        buff.append('{');
+        needComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        buff.append('}');
+        needComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        buff.append('[');
+        needComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        buff.append(']');
+        needComma = true;
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        beforeValue();
+        writeString(name);
+        buff.append(':');
+        needComma = false;
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        beforeValue();
+        buff.append("null");
+        needComma = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        if (value == null)
+            return nullValue();
+        beforeValue();
+        writeString(value);
+        needComma = true;
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        buff.append(value);
+        needComma = true;
+        return this;
+    }
+
+    public JsonWriter value(double value) {
+        beforeValue();
+        buff.append(value);
+        needComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        buff.append(value);
+        needComma = true;
+        return this;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public JsonWriter value(Object value) {
+        if (value == null) {
+            return nullValue();
+        } else if (value instanceof CharSequence) {
+            return value(value.toString());
+        } else if (value instanceof Number) {
+            beforeValue();
+            // Integer、Long、BigDecimal等的toString都是合法的json数字
+            buff.append(value.toString());
+            needComma = true;
+            return this;
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof Model) {
+            ((Model) value).encode(this);
+            return this;
+        } else if (value instanceof JsonObject) {
+            return value(((JsonObject) value).getMap());
+        } else if (value instanceof JsonArray) {
+            return value(((JsonArray) value).getList());
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Object o : ((Map) value).entrySet()) {
+                Map.Entry e = (Map.Entry) o;
+                name(e.getKey().toString());
+                value(e.getValue());
+            }
+            return endObject();
+        } else if (value instanceof List) {
+            beginArray();
+            for (Object item : (List) value) {
+                value(item);
+            }
+            return endArray();
+        } else if (value instanceof Instant) {
+            return value(ISO_INSTANT.format((Instant) value));
+        } else if (value instanceof byte[]) {
+            return value(Json.BASE64_ENCODER.encodeToString((byte[]) value));
+        } else if (value instanceof Enum) {
+            return value(((Enum) value).name());
+        } else {
+            throw new EncodeException("Unsupported type: " + value.getClass().getName());
+        }
+    }
+
+    private void writeString(String s) {
+        buff.append('"');
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                buff.append("\\\"");
+                break;
+            case '\\':
+                buff.append("\\\\");
+                break;
+            case '\n':
+                buff.append("\\n");
+                break;
+            case '\r':
+                buff.append("\\r");
+                break;
+            case '\t':
+                buff.append("\\t");
+                break;
+            case '\b':
+                buff.append("\\b");
+                break;
+            case '\f':
+                buff.append("\\f");
+                break;
+            default:
+                if (c < ' ') {
+                    buff.append("\\u00");
+                    buff.append(HEX.charAt(c >> 4));
+                    buff.append(HEX.charAt(c & 0xf));
+                } else {
+                    buff.append(c);
+                }
+            }
+        }
+        buff.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return buff.toString();
+    }
+}
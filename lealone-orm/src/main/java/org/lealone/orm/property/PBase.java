@@ -10,6 +10,8 @@ import java.util.Map;
 import org.lealone.db.value.Value;
 import org.lealone.orm.Model;
 import org.lealone.orm.ModelProperty;
+import org.lealone.orm.json.JsonReader;
+import org.lealone.orm.json.JsonWriter;
 
 public abstract class PBase<M extends Model<M>, T> extends ModelProperty<M> {
 
@@ -67,4 +69,28 @@ public abstract class PBase<M extends Model<M>, T> extends ModelProperty<M> {
         deserialize(v);
         expr().set(name, createValue(value));
     }
+
+    @Override
+    protected void encode(JsonWriter writer) {
+        if (value != null)
+            writer.name(getName()).value(encodeValue());
+    }
+
+    @Override
+    protected void deserializeAndSet(JsonReader reader) {
+        T v = readValue(reader);
+        if (v != null) {
+            value = v;
+            expr().set(name, createValue(value));
+        }
+    }
+
+    // 从json流中读出字段值，子类可以直接读出具体的类型，不需要先转成通用的对象
+    protected T readValue(JsonReader reader) {
+        Object v = reader.readValue();
+        if (v == null)
+            return null;
+        deserialize(v);
+        return value;
+    }
 }
@@ -10,6 +10,7 @@ import java.math.BigDecimal;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueDecimal;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * BigDecimal property.
@@ -39,4 +40,9 @@ public class PBigDecimal<M extends Model<M>> extends PBaseNumber<M, BigDecimal>
     protected void deserialize(Object v) {
         value = new BigDecimal(v.toString());
     }
+
+    @Override
+    protected BigDecimal readValue(JsonReader reader) {
+        return reader.readBigDecimal();
+    }
 }
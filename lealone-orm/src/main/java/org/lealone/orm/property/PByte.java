@@ -8,6 +8,7 @@ package org.lealone.orm.property;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueByte;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * Byte property.
@@ -32,4 +33,9 @@ public class PByte<M extends Model<M>> extends PBaseNumber<M, Byte> {
     protected void deserialize(Object v) {
         value = ((Number) v).byteValue();
     }
+
+    @Override
+    protected Byte readValue(JsonReader reader) {
+        return reader.readByte();
+    }
 }
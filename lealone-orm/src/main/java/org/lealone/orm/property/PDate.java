@@ -10,6 +10,7 @@ import java.sql.Date;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueDate;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * Java sql date property. 
@@ -43,4 +44,10 @@ public class PDate<M extends Model<M>> extends PBaseDate<M, Date> {
     protected void deserialize(Object v) {
         value = new Date(((Number) v).longValue());
     }
+
+    @Override
+    protected Date readValue(JsonReader reader) {
+        Long v = reader.readLong();
+        return v == null ? null : new Date(v);
+    }
 }
@@ -8,6 +8,7 @@ package org.lealone.orm.property;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueDouble;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * Double property. 
@@ -37,4 +38,9 @@ public class PDouble<M extends Model<M>> extends PBaseNumber<M, Double> {
     protected void deserialize(Object v) {
         value = ((Number) v).doubleValue();
     }
+
+    @Override
+    protected Double readValue(JsonReader reader) {
+        return reader.readDouble();
+    }
 }
@@ -8,6 +8,7 @@ package org.lealone.orm.property;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueFloat;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * Float property. 
@@ -32,4 +33,9 @@ public class PFloat<M extends Model<M>> extends PBaseNumber<M, Float> {
     protected void deserialize(Object v) {
         value = ((Number) v).floatValue();
     }
+
+    @Override
+    protected Float readValue(JsonReader reader) {
+        return reader.readFloat();
+    }
 }
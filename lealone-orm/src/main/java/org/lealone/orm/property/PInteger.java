@@ -8,6 +8,7 @@ package org.lealone.orm.property;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueInt;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * Integer property. 
@@ -28,6 +29,11 @@ public class PInteger<M extends Model<M>> extends PBaseNumber<M, Integer> {
         value = ((Number) v).intValue();
     }
 
+    @Override
+    protected Integer readValue(JsonReader reader) {
+        return reader.readInteger();
+    }
+
     @Override
     protected void deserialize(Value v) {
         value = v.getInt();
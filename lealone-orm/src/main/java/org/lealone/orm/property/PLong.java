@@ -8,6 +8,7 @@ package org.lealone.orm.property;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueLong;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * Long property.
@@ -33,6 +34,11 @@ public class PLong<M extends Model<M>> extends PBaseNumber<M, Long> {
         value = ((Number) v).longValue();
     }
 
+    @Override
+    protected Long readValue(JsonReader reader) {
+        return reader.readLong();
+    }
+
     @Override
     protected void deserialize(Value v) {
         value = v.getLong();
@@ -8,6 +8,7 @@ package org.lealone.orm.property;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueShort;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * Short property.
@@ -32,4 +33,9 @@ public class PShort<M extends Model<M>> extends PBaseNumber<M, Short> {
     protected void deserialize(Object v) {
         value = ((Number) v).shortValue();
     }
+
+    @Override
+    protected Short readValue(JsonReader reader) {
+        return reader.readShort();
+    }
 }
@@ -8,6 +8,7 @@ package org.lealone.orm.property;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueString;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * String property.
@@ -28,6 +29,11 @@ public class PString<M extends Model<M>> extends PBaseComparable<M, String> {
         value = v.toString();
     }
 
+    @Override
+    protected String readValue(JsonReader reader) {
+        return reader.readString();
+    }
+
     @Override
     protected void deserialize(Value v) {
         value = v.getString();
@@ -10,6 +10,7 @@ import java.sql.Time;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueTime;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * Time property.
@@ -39,4 +40,10 @@ public class PTime<M extends Model<M>> extends PBaseNumber<M, Time> {
     protected void deserialize(Object v) {
         value = new Time(((Number) v).longValue());
     }
+
+    @Override
+    protected Time readValue(JsonReader reader) {
+        Long v = reader.readLong();
+        return v == null ? null : new Time(v);
+    }
 }
@@ -10,6 +10,7 @@ import java.sql.Timestamp;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueTimestamp;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * Property for java sql Timestamp.
@@ -39,4 +40,10 @@ public class PTimestamp<M extends Model<M>> extends PBaseDate<M, Timestamp> {
     protected void deserialize(Object v) {
         value = new Timestamp(((Number) v).longValue());
     }
+
+    @Override
+    protected Timestamp readValue(JsonReader reader) {
+        Long v = reader.readLong();
+        return v == null ? null : new Timestamp(v);
+    }
 }
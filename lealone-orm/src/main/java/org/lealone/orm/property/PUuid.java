@@ -10,6 +10,7 @@ import java.util.UUID;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueUuid;
 import org.lealone.orm.Model;
+import org.lealone.orm.json.JsonReader;
 
 /**
  * UUID property.
@@ -39,4 +40,9 @@ public class PUuid<M extends Model<M>> extends PBaseValueEqual<M, UUID> {
     protected void deserialize(Object v) {
         value = UUID.fromString(v.toString());
     }
+
+    @Override
+    protected UUID readValue(JsonReader reader) {
+        return reader.readUuid();
+    }
 }
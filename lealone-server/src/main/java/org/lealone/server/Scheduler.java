@@ -7,15 +7,19 @@ package org.lealone.server;
 
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.lealone.common.logging.Logger;
 import org.lealone.common.logging.LoggerFactory;
+import org.lealone.common.metrics.MetricsRegistry;
 import org.lealone.common.util.MapUtils;
 import org.lealone.db.DataBufferFactory;
 import org.lealone.db.async.AsyncPeriodicTask;
@@ -41,7 +45,23 @@ public class Scheduler extends PageOperationHandlerBase
 
     private static final Logger logger = LoggerFactory.getLogger(Scheduler.class);
 
-    private final CopyOnWriteArrayList<SessionInfo> sessions = new CopyOnWriteArrayList<>();
+    // 只用于统计负载和检查session超时，调度时不需要遍历所有session
+    private final Set<SessionInfo> sessions = ConcurrentHashMap.newKeySet();
+
+    // 有新任务要执行的session，其他线程也会往这里加
+    private final ConcurrentLinkedQueue<SessionInfo> pendingSessions = new ConcurrentLinkedQueue<>();
+
+    // 有YieldableCommand的session按命令的优先级放到不同的队列中，
+    // 优先级大于等于MAX_PRIORITY的都放到最后一个队列，以下两个字段只在scheduler线程中访问
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<SessionInfo>[] readyQueues = new ArrayDeque[PreparedSQLStatement.MAX_PRIORITY
+            + 1];
+    // 命令暂时不能执行的session(比如在等待锁)，等待的事件完成时通过wokenSessions重新检查，
+    // 没有通知的情况(比如锁超时、独占模式结束)由定期的全量检查兜底
+    private final HashSet<SessionInfo> blockedSessions = new HashSet<>();
+    // 被唤醒的session，其他线程也会往这里加
+    private final ConcurrentLinkedQueue<SessionInfo> wokenSessions = new ConcurrentLinkedQueue<>();
+    private long lastBlockedSessionsCheckTime;
 
     private final ConcurrentLinkedQueue<AsyncTask> minPriorityQueue = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<AsyncTask> normPriorityQueue = new ConcurrentLinkedQueue<>();
@@ -53,10 +73,19 @@ public class Scheduler extends PageOperationHandlerBase
     // 这个只增不删所以用CopyOnWriteArrayList
     private final CopyOnWriteArrayList<AsyncTask> periodicQueue = new CopyOnWriteArrayList<>();
 
+    // 需要分多步完成的任务，比如推送流式结果集，每次调度只执行一步，避免一个session独占调度器
+    private final ArrayDeque<AsyncTask> stepTasks = new ArrayDeque<>();
+
     private final long loopInterval;
     private volatile boolean end;
-    private YieldableCommand nextBestCommand;
+    private SessionInfo nextBestSession;
     private NetEventLoop netEventLoop;
+    private long lastSessionTimeoutCheckTime;
+
+    // 以下几个字段只在scheduler线程中更新，用于导出指标
+    private long loopCount;
+    private long busyNanos;
+    private long lastWakeUpNanos = System.nanoTime();
 
     public Scheduler(int id, int waitingQueueSize, Map<String, String> config) {
         super(id, "ScheduleService-" + id, waitingQueueSize);
@@ -64,6 +93,9 @@ public class Scheduler extends PageOperationHandlerBase
         loopInterval = MapUtils.getLong(config, key, 100);
         netEventLoop = NetFactoryManager.getFactory(config).createNetEventLoop(key, loopInterval);
         netEventLoop.setOwner(this);
+        for (int i = 0; i < readyQueues.length; i++) {
+            readyQueues[i] = new ArrayDeque<>();
+        }
     }
 
     @Override
@@ -77,6 +109,28 @@ public class Scheduler extends PageOperationHandlerBase
 
     void removeSessionInfo(SessionInfo si) {
         sessions.remove(si);
+        si.removed = true; // 还在调度队列中的话等取出来时再丢弃
+    }
+
+    void addPendingSession(SessionInfo si) {
+        if (!si.pending) {
+            si.pending = true;
+            pendingSessions.add(si);
+        }
+    }
+
+    private static int getReadyQueueIndex(int priority) {
+        if (priority < 0)
+            return 0;
+        return Math.min(priority, PreparedSQLStatement.MAX_PRIORITY);
+    }
+
+    private void addReadySession(SessionInfo si) {
+        YieldableCommand c = si.getSession().getYieldableCommand();
+        if (c != null && !si.scheduled) {
+            si.scheduled = true;
+            readyQueues[getReadyQueueIndex(c.getPriority())].add(si);
+        }
     }
 
     @Override
@@ -109,13 +163,16 @@ public class Scheduler extends PageOperationHandlerBase
         }
     }
 
+    // 只处理有新任务的session，空闲的session不会被访问
     private void runSessionTasks() {
-        if (sessions.isEmpty())
-            return;
-        // 不适合使用普通for循环，sessions会随时新增或删除元素，
-        // 只能每次创建一个迭代器包含元素数组的快照
-        for (SessionInfo si : sessions) {
-            si.runSessionTasks();
+        SessionInfo si = pendingSessions.poll();
+        while (si != null) {
+            si.pending = false; // 要在执行任务前设置，否则可能漏掉新加入的任务
+            if (!si.removed) {
+                si.runSessionTasks();
+                addReadySession(si);
+            }
+            si = pendingSessions.poll();
         }
     }
 
@@ -150,6 +207,35 @@ public class Scheduler extends PageOperationHandlerBase
         return sessions.size() + super.getLoad();
     }
 
+    private int getReadySessionCount() {
+        int count = 0;
+        for (ArrayDeque<SessionInfo> queue : readyQueues)
+            count += queue.size();
+        return count;
+    }
+
+    @Override
+    public void registerMetrics() {
+        super.registerMetrics();
+        String labels = getMetricLabels();
+        metrics.add(MetricsRegistry.registerGauge("scheduler_sessions", labels,
+                "Sessions bound to the scheduler", () -> sessions.size()));
+        metrics.add(MetricsRegistry.registerGauge("scheduler_ready_sessions", labels,
+                "Sessions waiting in the ready queues", () -> getReadySessionCount()));
+        metrics.add(MetricsRegistry.registerGauge("scheduler_blocked_sessions", labels,
+                "Sessions whose command can not run now", () -> blockedSessions.size()));
+        metrics.add(MetricsRegistry.registerCounter("scheduler_loops_total", labels,
+                "Times the scheduler waited for new work", () -> loopCount));
+        metrics.add(MetricsRegistry.registerCounter("scheduler_busy_seconds_total", labels,
+                "Time the scheduler spent outside of select", () -> busyNanos / 1e9));
+        NetEventLoop loop = netEventLoop;
+        metrics.add(MetricsRegistry.registerCounter("net_read_bytes_total", labels,
+                "Bytes read by the net event loop", () -> loop.getReadBytes()));
+        metrics.add(MetricsRegistry.registerCounter("net_written_bytes_total", labels,
+                "Bytes written by the net event loop", () -> loop.getWrittenBytes()));
+        loop.registerMetrics(labels, metrics);
+    }
+
     @Override
     public void handle(AsyncTask task) {
         if (task.isPeriodic()) {
@@ -172,6 +258,24 @@ public class Scheduler extends PageOperationHandlerBase
         wakeUp();
     }
 
+    /**
+     * 只能在scheduler线程中调用，任务每次执行一步，还没完成时由任务自己再调用这个方法
+     */
+    public void addStepTask(AsyncTask task) {
+        stepTasks.add(task);
+    }
+
+    private void runStepTasks() {
+        for (int n = stepTasks.size(); n > 0; n--) {
+            AsyncTask task = stepTasks.poll();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.warn("Failed to run step task: " + task, e);
+            }
+        }
+    }
+
     public void handleSessionInitTask(AsyncTask task) {
         sessionInitTaskQueue.add(task);
         wakeUp();
@@ -192,28 +296,39 @@ public class Scheduler extends PageOperationHandlerBase
         int priority = PreparedSQLStatement.MIN_PRIORITY - 1; // 最小优先级减一，保证能取到最小的
         YieldableCommand last = null;
         while (true) {
-            YieldableCommand c;
-            if (nextBestCommand != null) {
-                c = nextBestCommand;
-                nextBestCommand = null;
+            if (!stepTasks.isEmpty())
+                runStepTasks();
+            SessionInfo si;
+            if (nextBestSession != null) {
+                si = nextBestSession;
+                nextBestSession = null;
             } else {
-                c = getNextBestCommand(priority, true);
+                si = getNextBestSession(priority);
             }
-            if (c == null) {
+            if (si == null) {
                 checkSessionTimeout();
                 handlePeriodicTasks();
                 runPageOperationTasks();
                 runSessionTasks();
                 runQueueTasks(maxPriorityQueue);
                 runQueueTasks(normPriorityQueue);
-                c = getNextBestCommand(priority, true);
-                if (c == null) {
+                si = getNextBestSession(priority);
+                if (si == null) {
+                    // 还有没完成的分步任务时select不能阻塞
+                    if (!stepTasks.isEmpty())
+                        wakeUp();
                     doAwait();
                     break;
                 }
             }
+            YieldableCommand c = si.getSession().getYieldableCommand();
+            if (c == null)
+                continue;
             try {
                 c.run();
+                // 命令执行完了，同一个session中排在后面的命令可以执行了
+                if (si.getSession().getYieldableCommand() == null && si.hasTasks())
+                    addPendingSession(si);
                 // 说明没有新的命令了，一直在轮循
                 if (last == c) {
                     runPageOperationTasks();
@@ -223,12 +338,7 @@ public class Scheduler extends PageOperationHandlerBase
                 }
                 last = c;
             } catch (Throwable e) {
-                for (SessionInfo si : sessions) {
-                    if (si.getSessionId() == c.getSessionId()) {
-                        si.sendError(c.getPacketId(), e);
-                        break;
-                    }
-                }
+                si.sendError(c.getPacketId(), e);
             }
         }
     }
@@ -241,28 +351,102 @@ public class Scheduler extends PageOperationHandlerBase
         // 如果来了更高优化级的命令，那么当前正在执行的语句就让出当前线程，
         // 当前线程转去执行高优先级的命令
         int priority = current.getPriority();
-        nextBestCommand = getNextBestCommand(priority, false);
-        if (nextBestCommand != null) {
-            current.setPriority(priority + 1);
+        nextBestSession = peekNextBestSession(priority);
+        if (nextBestSession != null) {
+            // 让出执行权的语句提高优先级，但不能超过最大优先级，否则都堆在最后一个队列中
+            if (priority < PreparedSQLStatement.MAX_PRIORITY)
+                current.setPriority(priority + 1);
             return true;
         }
         return false;
     }
 
-    private YieldableCommand getNextBestCommand(int priority, boolean checkTimeout) {
-        if (sessions.isEmpty())
-            return null;
-        YieldableCommand best = null;
-        for (SessionInfo si : sessions) {
-            YieldableCommand c = si.getYieldableCommand(checkTimeout);
-            if (c == null)
-                continue;
-            if (c.getPriority() > priority) {
-                best = c;
-                priority = c.getPriority();
+    // 只判断是否需要让出执行权，看一下每个队列的队头就够了，不用轮转整个队列
+    private SessionInfo peekNextBestSession(int priority) {
+        for (int i = readyQueues.length - 1, min = getReadyQueueIndex(priority + 1); i >= min; i--) {
+            ArrayDeque<SessionInfo> queue = readyQueues[i];
+            SessionInfo si;
+            while ((si = queue.peek()) != null) {
+                YieldableCommand c = si.removed ? null : si.getYieldableCommand(false);
+                if (c == null) {
+                    queue.poll();
+                    blockSession(si);
+                    continue;
+                }
+                int index = getReadyQueueIndex(c.getPriority());
+                if (index != i) {
+                    // 优先级已经变了，放到对应的队列中
+                    queue.poll();
+                    readyQueues[index].add(si);
+                    continue;
+                }
+                if (c.getPriority() > priority)
+                    return si;
+                break;
+            }
+        }
+        return null;
+    }
+
+    // 返回命令优先级比priority高的session中优先级最高的那个，同一优先级的session轮流返回
+    private SessionInfo getNextBestSession(int priority) {
+        checkBlockedSessions();
+        // 命令的优先级就是队列的下标，除非优先级小于0或者放入队列后又变了
+        for (int i = readyQueues.length - 1, min = getReadyQueueIndex(priority + 1); i >= min; i--) {
+            ArrayDeque<SessionInfo> queue = readyQueues[i];
+            for (int n = queue.size(); n > 0; n--) {
+                SessionInfo si = queue.poll();
+                YieldableCommand c = si.removed ? null : si.getYieldableCommand(true);
+                if (c == null) {
+                    blockSession(si);
+                    continue;
+                }
+                // 语句让出执行权后优先级会变，所以按当前的优先级重新放入队尾
+                readyQueues[getReadyQueueIndex(c.getPriority())].add(si);
+                if (c.getPriority() > priority)
+                    return si;
             }
         }
-        return best;
+        return null;
+    }
+
+    private void blockSession(SessionInfo si) {
+        if (si.removed || si.getSession().getYieldableCommand() == null) {
+            // 命令已经执行完了，不再调度，如果还有任务就等runSessionTasks去执行
+            si.scheduled = false;
+            if (!si.removed && si.hasTasks())
+                addPendingSession(si);
+        } else {
+            blockedSessions.add(si);
+        }
+    }
+
+    private void checkBlockedSessions() {
+        SessionInfo si = wokenSessions.poll();
+        while (si != null) {
+            if (blockedSessions.remove(si))
+                unblockSession(si);
+            si = wokenSessions.poll();
+        }
+        if (blockedSessions.isEmpty())
+            return;
+        long currentTime = System.currentTimeMillis();
+        if (currentTime - lastBlockedSessionsCheckTime < loopInterval)
+            return;
+        lastBlockedSessionsCheckTime = currentTime;
+        SessionInfo[] sessions = blockedSessions.toArray(new SessionInfo[0]);
+        blockedSessions.clear();
+        for (SessionInfo s : sessions) {
+            unblockSession(s);
+        }
+    }
+
+    private void unblockSession(SessionInfo si) {
+        YieldableCommand c = si.removed ? null : si.getYieldableCommand(true);
+        if (c == null)
+            blockSession(si);
+        else
+            readyQueues[getReadyQueueIndex(c.getPriority())].add(si);
     }
 
     @Override
@@ -270,12 +454,22 @@ public class Scheduler extends PageOperationHandlerBase
         netEventLoop.wakeup();
     }
 
+    @Override
+    public void wakeUp(Session session) {
+        Object si = ((ServerSession) session).getSessionInfo();
+        if (si instanceof SessionInfo)
+            wokenSessions.add((SessionInfo) si);
+        wakeUp();
+    }
+
     @Override
     public Object addSession(Session session, Object parentSessionInfo) {
         SessionInfo parent = (SessionInfo) parentSessionInfo;
         SessionInfo si = parent.copy((ServerSession) session);
         ((ServerSession) session).setSessionInfo(si);
         addSessionInfo(si);
+        addPendingSession(si); // 已经有YieldableCommand了，加到调度队列中
+        wakeUp();
         return si;
     }
 
@@ -290,7 +484,11 @@ public class Scheduler extends PageOperationHandlerBase
     private void checkSessionTimeout() {
         if (sessions.isEmpty())
             return;
+        // 空闲时每个循环周期最多检查一次，避免session很多时频繁遍历
         long currentTime = System.currentTimeMillis();
+        if (currentTime - lastSessionTimeoutCheckTime < loopInterval)
+            return;
+        lastSessionTimeoutCheckTime = currentTime;
         for (SessionInfo si : sessions) {
             si.checkSessionTimeout(currentTime);
         }
@@ -359,11 +557,15 @@ public class Scheduler extends PageOperationHandlerBase
     }
 
     private void doAwait() {
+        loopCount++;
+        busyNanos += System.nanoTime() - lastWakeUpNanos;
         try {
             netEventLoop.select();
         } catch (IOException e1) {
             logger.warn("Failed to select", e);
             return;
+        } finally {
+            lastWakeUpNanos = System.nanoTime();
         }
         netEventLoop.write();
         handleSelectedKeys();
@@ -8,6 +8,8 @@ package org.lealone.server;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.lealone.common.metrics.MetricsRegistry;
+import org.lealone.common.util.MapUtils;
 import org.lealone.db.PluginManager;
 import org.lealone.db.async.AsyncTaskHandlerFactory;
 import org.lealone.storage.StorageEngine;
@@ -49,14 +51,19 @@ public class SchedulerFactory {
 
         // 提前启动，LealoneDatabase要用到存储引擎
         for (Scheduler scheduler : schedulers) {
+            scheduler.registerMetrics();
             scheduler.start();
         }
+        // JMX默认不开启，需要时配置jmx_enabled: true
+        if (MapUtils.getBoolean(config, "jmx_enabled", false))
+            MetricsRegistry.registerMBean();
     }
 
     public static synchronized void destroy() {
         if (schedulers == null)
             return;
         for (Scheduler scheduler : schedulers) {
+            scheduler.unregisterMetrics();
             scheduler.end();
         }
         for (Scheduler scheduler : schedulers) {
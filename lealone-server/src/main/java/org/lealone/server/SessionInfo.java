@@ -29,9 +29,16 @@ public class SessionInfo implements ServerSession.TimeoutListener {
     private final ServerSession session;
     private final int sessionId; // 客户端的sessionId
     private final int sessionTimeout;
+    // 当前连接的网络IO也由scheduler负责时为true，此时提交任务和执行任务都在同一个线程
+    private final boolean sameThread;
 
     private long lastActiveTime;
 
+    // 以下字段由scheduler使用
+    volatile boolean pending; // 已经在scheduler的pendingSessions中
+    volatile boolean removed; // 已经从scheduler中删除
+    boolean scheduled; // 已经在scheduler的就绪队列或阻塞队列中，只在scheduler线程中访问
+
     SessionInfo(Scheduler scheduler, TcpServerConnection conn, ServerSession session, int sessionId,
             int sessionTimeout) {
         this.scheduler = scheduler;
@@ -40,8 +47,9 @@ public class SessionInfo implements ServerSession.TimeoutListener {
         this.sessionId = sessionId;
         this.sessionTimeout = sessionTimeout;
 
-        // 如果scheduler也负责网络IO，往taskQueue中增加和删除元素都由scheduler完成，用普通链表即可
-        if (scheduler.useNetEventLoop()) {
+        // 如果scheduler也负责当前连接的网络IO，往taskQueue中增加和删除元素都由scheduler完成，用普通链表即可
+        sameThread = scheduler.useNetEventLoop() && conn.getScheduler() == scheduler;
+        if (sameThread) {
             taskQueue = new LinkedList<>();
         } else {
             taskQueue = new ConcurrentLinkedQueue<>();
@@ -57,6 +65,10 @@ public class SessionInfo implements ServerSession.TimeoutListener {
         lastActiveTime = System.currentTimeMillis();
     }
 
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
     ServerSession getSession() {
         return session;
     }
@@ -68,13 +80,15 @@ public class SessionInfo implements ServerSession.TimeoutListener {
     public void submitTask(PacketDeliveryTask task) {
         updateLastActiveTime();
         taskQueue.add(task);
-        if (!scheduler.useNetEventLoop())
+        scheduler.addPendingSession(this);
+        if (!sameThread)
             scheduler.wakeUp();
     }
 
     public void submitTasks(AsyncTask... tasks) {
         updateLastActiveTime();
         taskQueue.addAll(Arrays.asList(tasks));
+        scheduler.addPendingSession(this);
         scheduler.wakeUp();
     }
 
@@ -84,6 +98,10 @@ public class SessionInfo implements ServerSession.TimeoutListener {
         // 执行此方法的当前线程就是scheduler，所以不用唤醒scheduler
     }
 
+    boolean hasTasks() {
+        return !taskQueue.isEmpty();
+    }
+
     void remove() {
         scheduler.removeSessionInfo(this);
     }
@@ -5,11 +5,27 @@
  */
 package org.lealone.server;
 
+import java.util.Map;
+
+import org.lealone.common.util.MapUtils;
 import org.lealone.db.Constants;
 import org.lealone.net.WritableChannel;
 
 public class TcpServer extends AsyncServer<TcpServerConnection> {
 
+    // 一个TCP连接上的多个session是否分散到不同的Scheduler
+    private boolean dispatchSharedSessions;
+
+    @Override
+    public void init(Map<String, String> config) {
+        super.init(config);
+        dispatchSharedSessions = MapUtils.getBoolean(config, "dispatch_shared_sessions", true);
+    }
+
+    public boolean isDispatchSharedSessions() {
+        return dispatchSharedSessions;
+    }
+
     @Override
     public String getType() {
         return TcpServerEngine.NAME;
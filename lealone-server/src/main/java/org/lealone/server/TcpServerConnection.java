@@ -52,6 +52,10 @@ public class TcpServerConnection extends TransferConnection {
         this.scheduler = scheduler;
     }
 
+    Scheduler getScheduler() {
+        return scheduler;
+    }
+
     @Override
     public void handleException(Exception e) {
         tcpServer.removeConnection(this);
@@ -66,14 +70,23 @@ public class TcpServerConnection extends TransferConnection {
         SessionInfo si = sessions.get(sessionId);
         if (si == null) {
             if (packetType == PacketType.SESSION_INIT.value) {
-                // 当前共享的TCP连接对应的Scheduler不负责网络IO时，需要为每个新session重新分配Scheduler
-                if (this.scheduler.useNetEventLoop()) {
+                // 当前共享的TCP连接对应的Scheduler不负责网络IO时，需要为每个新session重新分配Scheduler，
+                // 负责网络IO时，第一个session由当前Scheduler处理，
+                // 后续的session分散到其他Scheduler，避免一个连接上的所有session挤在同一个线程
+                Scheduler scheduler = this.scheduler;
+                if (scheduler.useNetEventLoop() && tcpServer.isDispatchSharedSessions()
+                        && !sessions.isEmpty()) {
+                    scheduler = SchedulerFactory.getScheduler();
+                }
+                if (scheduler == this.scheduler && scheduler.useNetEventLoop()) {
                     // 直接处理，不需要加入Scheduler的队列
                     readInitPacket(in, packetId, sessionId, this.scheduler);
                 } else {
                     // 同一个session的所有请求包(含InitPacket)都由同一个调度器负责处理
-                    Scheduler scheduler = SchedulerFactory.getScheduler();
-                    scheduler.handle(() -> readInitPacket(in, packetId, sessionId, scheduler));
+                    if (!scheduler.useNetEventLoop())
+                        scheduler = SchedulerFactory.getScheduler();
+                    Scheduler s = scheduler;
+                    s.handle(() -> readInitPacket(in, packetId, sessionId, s));
                 }
             } else {
                 sessionNotFound(packetId, sessionId);
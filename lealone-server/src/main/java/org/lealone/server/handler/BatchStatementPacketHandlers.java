@@ -6,13 +6,10 @@
 package org.lealone.server.handler;
 
 import java.sql.Statement;
-import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.lealone.db.CommandParameter;
 import org.lealone.db.async.AsyncTask;
 import org.lealone.db.session.ServerSession;
-import org.lealone.db.value.Value;
 import org.lealone.server.PacketDeliveryTask;
 import org.lealone.server.protocol.Packet;
 import org.lealone.server.protocol.PacketType;
@@ -21,7 +18,7 @@ import org.lealone.server.protocol.batch.BatchStatementUpdate;
 import org.lealone.server.protocol.batch.BatchStatementUpdateAck;
 import org.lealone.sql.PreparedSQLStatement;
 
-//先把批量语句转成AsyncTask再按先后顺序一个个处理
+//先把批量语句转成AsyncTask再按先后顺序一个个处理，带参数的批量更新直接作为一条命令执行
 class BatchStatementPacketHandlers extends PacketHandlers {
 
     static void register() {
@@ -54,34 +51,25 @@ class BatchStatementPacketHandlers extends PacketHandlers {
         }
     }
 
+    // 整个批量更新当成一条语句在一个事务中执行，不再为每组参数创建单独的命令
     private static class PreparedUpdate implements PacketHandler<BatchStatementPreparedUpdate> {
         @Override
         public Packet handle(PacketDeliveryTask task, BatchStatementPreparedUpdate packet) {
-            ServerSession session = task.session;
-            int commandId = packet.commandId;
-            int size = packet.size;
-            PreparedSQLStatement command = (PreparedSQLStatement) session.getCache(commandId);
-            List<? extends CommandParameter> params = command.getParameters();
-            int[] results = new int[size];
-            AtomicInteger count = new AtomicInteger(size);
-            AsyncTask[] subTasks = new AsyncTask[size];
-            for (int i = 0; i < size; i++) {
-                final int index = i;
-                final Value[] values = packet.batchParameters.get(i);
-                AsyncTask subTask = new AsyncTask() {
-                    @Override
-                    public void run() {
-                        // 不能放到外面设置，否则只取到最后一项
-                        for (int j = 0; j < values.length; j++) {
-                            CommandParameter p = params.get(j);
-                            p.setValue(values[j]);
+            if (packet.size == 0)
+                return new BatchStatementUpdateAck(0, new int[0]);
+            PreparedSQLStatement command = (PreparedSQLStatement) task.session
+                    .getCache(packet.commandId, false);
+            PreparedSQLStatement.Yieldable<?> yieldable = command
+                    .createYieldableBatchUpdate(packet.batchParameters, ar -> {
+                        if (ar.isSucceeded()) {
+                            int[] results = ar.getResult();
+                            task.conn.sendResponse(task,
+                                    new BatchStatementUpdateAck(results.length, results));
+                        } else {
+                            task.conn.sendError(task.session, task.packetId, ar.getCause());
                         }
-                        submitYieldableCommand(task, command, results, count, index);
-                    }
-                };
-                subTasks[i] = subTask;
-            }
-            task.si.submitTasks(subTasks);
+                    });
+            task.si.submitYieldableCommand(task.packetId, yieldable);
             return null;
         }
     }
@@ -7,7 +7,9 @@ package org.lealone.server.handler;
 
 import java.util.List;
 
+import org.lealone.common.exceptions.DbException;
 import org.lealone.db.CommandParameter;
+import org.lealone.db.api.ErrorCode;
 import org.lealone.db.result.Result;
 import org.lealone.db.value.Value;
 import org.lealone.server.PacketDeliveryTask;
@@ -176,8 +178,13 @@ public class PacketHandlers {
 
     private static PreparedSQLStatement getPreparedSQLStatementFromCache(PacketDeliveryTask task,
             int commandId, Value[] parameters) {
-        PreparedSQLStatement stmt = (PreparedSQLStatement) task.session.getCache(commandId);
+        // 缓存过期时抛出OBJECT_CLOSED，客户端会重新prepare
+        PreparedSQLStatement stmt = (PreparedSQLStatement) task.session.getCache(commandId, false);
         List<? extends CommandParameter> params = stmt.getParameters();
+        // 客户端可能是自己数出来的参数个数，个数不对时不能执行
+        if (parameters.length != params.size())
+            throw DbException.get(ErrorCode.INVALID_PARAMETER_COUNT_2, stmt.getSQL(),
+                    "" + params.size());
         for (int i = 0, size = parameters.length; i < size; i++) {
             CommandParameter p = params.get(i);
             p.setValue(parameters[i]);
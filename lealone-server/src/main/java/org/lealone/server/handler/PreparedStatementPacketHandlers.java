@@ -18,8 +18,10 @@ import org.lealone.server.protocol.ps.PreparedStatementGetMetaData;
 import org.lealone.server.protocol.ps.PreparedStatementGetMetaDataAck;
 import org.lealone.server.protocol.ps.PreparedStatementPrepare;
 import org.lealone.server.protocol.ps.PreparedStatementPrepareAck;
+import org.lealone.server.protocol.ps.PreparedStatementPrepareQuery;
 import org.lealone.server.protocol.ps.PreparedStatementPrepareReadParams;
 import org.lealone.server.protocol.ps.PreparedStatementPrepareReadParamsAck;
+import org.lealone.server.protocol.ps.PreparedStatementPrepareUpdate;
 import org.lealone.server.protocol.ps.PreparedStatementQuery;
 import org.lealone.server.protocol.ps.PreparedStatementUpdate;
 import org.lealone.sql.PreparedSQLStatement;
@@ -33,14 +35,21 @@ class PreparedStatementPacketHandlers extends PacketHandlers {
         register(PacketType.PREPARED_STATEMENT_UPDATE, new PreparedUpdate());
         register(PacketType.PREPARED_STATEMENT_GET_META_DATA, new GetMetaData());
         register(PacketType.PREPARED_STATEMENT_CLOSE, new Close());
+        register(PacketType.PREPARED_STATEMENT_PREPARE_QUERY, new PrepareQuery());
+        register(PacketType.PREPARED_STATEMENT_PREPARE_UPDATE, new PrepareUpdate());
+    }
+
+    private static PreparedSQLStatement prepare(ServerSession session, int commandId, String sql) {
+        PreparedSQLStatement command = session.prepareStatement(sql, -1);
+        command.setId(commandId);
+        session.addCache(commandId, command);
+        return command;
     }
 
     private static class Prepare implements PacketHandler<PreparedStatementPrepare> {
         @Override
         public Packet handle(ServerSession session, PreparedStatementPrepare packet) {
-            PreparedSQLStatement command = session.prepareStatement(packet.sql, -1);
-            command.setId(packet.commandId);
-            session.addCache(packet.commandId, command);
+            PreparedSQLStatement command = prepare(session, packet.commandId, packet.sql);
             boolean isQuery = command.isQuery();
             return new PreparedStatementPrepareAck(isQuery);
         }
@@ -49,9 +58,7 @@ class PreparedStatementPacketHandlers extends PacketHandlers {
     private static class PrepareReadParams implements PacketHandler<PreparedStatementPrepareReadParams> {
         @Override
         public Packet handle(ServerSession session, PreparedStatementPrepareReadParams packet) {
-            PreparedSQLStatement command = session.prepareStatement(packet.sql, -1);
-            command.setId(packet.commandId);
-            session.addCache(packet.commandId, command);
+            PreparedSQLStatement command = prepare(session, packet.commandId, packet.sql);
             boolean isQuery = command.isQuery();
             List<? extends CommandParameter> params = command.getParameters();
             return new PreparedStatementPrepareReadParamsAck(isQuery, params);
@@ -72,10 +79,28 @@ class PreparedStatementPacketHandlers extends PacketHandlers {
         }
     }
 
+    private static class PrepareQuery extends PreparedQueryPacketHandler<PreparedStatementPrepareQuery> {
+        @Override
+        public Packet handle(PacketDeliveryTask task, PreparedStatementPrepareQuery packet) {
+            prepare(task.session, packet.commandId, packet.sql);
+            return handlePacket(task, packet);
+        }
+    }
+
+    private static class PrepareUpdate
+            extends PreparedUpdatePacketHandler<PreparedStatementPrepareUpdate> {
+        @Override
+        public Packet handle(PacketDeliveryTask task, PreparedStatementPrepareUpdate packet) {
+            prepare(task.session, packet.commandId, packet.sql);
+            return handlePacket(task, packet);
+        }
+    }
+
     private static class GetMetaData implements PacketHandler<PreparedStatementGetMetaData> {
         @Override
         public Packet handle(ServerSession session, PreparedStatementGetMetaData packet) {
-            PreparedSQLStatement command = (PreparedSQLStatement) session.getCache(packet.commandId);
+            PreparedSQLStatement command = (PreparedSQLStatement) session.getCache(packet.commandId,
+                    false);
             Result result = command.getMetaData();
             return new PreparedStatementGetMetaDataAck(result);
         }
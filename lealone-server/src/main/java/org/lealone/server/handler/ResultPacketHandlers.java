@@ -5,8 +5,13 @@
  */
 package org.lealone.server.handler;
 
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.async.AsyncTask;
 import org.lealone.db.result.Result;
 import org.lealone.db.session.ServerSession;
+import org.lealone.server.PacketDeliveryTask;
+import org.lealone.server.Scheduler;
 import org.lealone.server.protocol.Packet;
 import org.lealone.server.protocol.PacketType;
 import org.lealone.server.protocol.result.ResultChangeId;
@@ -14,6 +19,9 @@ import org.lealone.server.protocol.result.ResultClose;
 import org.lealone.server.protocol.result.ResultFetchRows;
 import org.lealone.server.protocol.result.ResultFetchRowsAck;
 import org.lealone.server.protocol.result.ResultReset;
+import org.lealone.server.protocol.result.ResultStream;
+import org.lealone.server.protocol.result.ResultStreamCredit;
+import org.lealone.server.protocol.result.ResultStreamRows;
 
 class ResultPacketHandlers extends PacketHandlers {
 
@@ -22,12 +30,24 @@ class ResultPacketHandlers extends PacketHandlers {
         register(PacketType.RESULT_CHANGE_ID, new ChangeId());
         register(PacketType.RESULT_RESET, new Reset());
         register(PacketType.RESULT_CLOSE, new Close());
+        register(PacketType.RESULT_STREAM, new Stream());
+        register(PacketType.RESULT_STREAM_CREDIT, new StreamCredit());
+    }
+
+    // 流模式下缓存的是ResultStreamer，不能再按普通的结果集读取
+    private static Result getResult(ServerSession session, int resultId) {
+        AutoCloseable obj = session.getCache(resultId);
+        if (obj instanceof Result)
+            return (Result) obj;
+        if (obj == null)
+            throw DbException.get(ErrorCode.OBJECT_CLOSED);
+        throw DbException.getUnsupportedException("fetch or reset a streaming result");
     }
 
     private static class FetchRows implements PacketHandler<ResultFetchRows> {
         @Override
         public Packet handle(ServerSession session, ResultFetchRows packet) {
-            Result result = (Result) session.getCache(packet.resultId);
+            Result result = getResult(session, packet.resultId);
             return new ResultFetchRowsAck(result, packet.count);
         }
     }
@@ -44,7 +64,7 @@ class ResultPacketHandlers extends PacketHandlers {
     private static class Reset implements PacketHandler<ResultReset> {
         @Override
         public Packet handle(ServerSession session, ResultReset packet) {
-            Result result = (Result) session.getCache(packet.resultId);
+            Result result = getResult(session, packet.resultId);
             result.reset();
             return null;
         }
@@ -53,11 +73,105 @@ class ResultPacketHandlers extends PacketHandlers {
     private static class Close implements PacketHandler<ResultClose> {
         @Override
         public Packet handle(ServerSession session, ResultClose packet) {
-            Result result = (Result) session.removeCache(packet.resultId, true);
-            if (result != null) {
-                result.close();
+            // 流模式下缓存的是ResultStreamer
+            AutoCloseable obj = session.removeCache(packet.resultId, true);
+            if (obj != null) {
+                try {
+                    obj.close();
+                } catch (Exception e) {
+                    throw DbException.convert(e);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Stream implements PacketHandler<ResultStream> {
+        @Override
+        public Packet handle(PacketDeliveryTask task, ResultStream packet) {
+            ServerSession session = task.session;
+            Result result = getResult(session, packet.resultId);
+            session.removeCache(packet.resultId, false);
+            ResultStreamer streamer = new ResultStreamer(task, packet.resultId, result,
+                    Math.min(packet.fetchSize, MAX_FETCH_SIZE));
+            session.addCache(packet.resultId, streamer);
+            streamer.addCredits(packet.credits);
+            return null;
+        }
+    }
+
+    private static class StreamCredit implements PacketHandler<ResultStreamCredit> {
+        @Override
+        public Packet handle(ServerSession session, ResultStreamCredit packet) {
+            ResultStreamer streamer = (ResultStreamer) session.getCache(packet.resultId, true);
+            // 结果集已经推送完或被关闭了，多余的credits直接忽略
+            if (streamer != null) {
+                streamer.addCredits(packet.credits);
             }
             return null;
         }
     }
+
+    // 客户端给的credits和每批的记录数都不能无限大，否则一个流式结果集会占用过多的内存和网络带宽
+    private static final int MAX_CREDITS = 64;
+    private static final int MAX_FETCH_SIZE = 10000;
+
+    // 同一个session的所有数据包都由同一个调度器处理，所以不需要同步
+    // 每次调度只推送一批记录，推送完一批后如果还有credits就等下一次调度，这样不会独占调度器
+    private static class ResultStreamer implements AutoCloseable, AsyncTask {
+
+        private final PacketDeliveryTask task;
+        private final Scheduler scheduler;
+        private final int resultId;
+        private final Result result;
+        private final int fetchSize;
+        private int credits;
+        private boolean scheduled;
+        private boolean end;
+
+        ResultStreamer(PacketDeliveryTask task, int resultId, Result result, int fetchSize) {
+            this.task = task;
+            this.scheduler = task.si.getScheduler();
+            this.resultId = resultId;
+            this.result = result;
+            this.fetchSize = fetchSize;
+        }
+
+        void addCredits(int credits) {
+            if (credits <= 0)
+                return;
+            this.credits = (int) Math.min(MAX_CREDITS, (long) this.credits + credits);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled && !end && credits > 0) {
+                scheduled = true;
+                scheduler.addStepTask(this);
+            }
+        }
+
+        // 每个credit推送一批记录，客户端在处理当前批时，后面的批次已经在路上了
+        @Override
+        public void run() {
+            scheduled = false;
+            if (end || credits <= 0)
+                return;
+            credits--;
+            ResultStreamRows rows = new ResultStreamRows(result, fetchSize);
+            task.conn.sendResponse(task, rows);
+            if (rows.isEnd()) {
+                task.session.removeCache(resultId, true);
+                close();
+            } else {
+                schedule();
+            }
+        }
+
+        @Override
+        public void close() {
+            end = true;
+            result.close();
+        }
+    }
 }
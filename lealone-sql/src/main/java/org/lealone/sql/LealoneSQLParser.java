@@ -47,6 +47,7 @@ import org.lealone.db.table.Column;
 import org.lealone.db.table.CreateTableData;
 import org.lealone.db.table.DummyTable;
 import org.lealone.db.table.RangeTable;
+import org.lealone.db.table.Partitioning;
 import org.lealone.db.table.Table;
 import org.lealone.db.table.TableView;
 import org.lealone.db.value.CompareMode;
@@ -71,6 +72,7 @@ import org.lealone.sql.ddl.AlterSequence;
 import org.lealone.sql.ddl.AlterTableAddConstraint;
 import org.lealone.sql.ddl.AlterTableAlterColumn;
 import org.lealone.sql.ddl.AlterTableDropConstraint;
+import org.lealone.sql.ddl.AlterTablePartition;
 import org.lealone.sql.ddl.AlterTableRename;
 import org.lealone.sql.ddl.AlterTableRenameColumn;
 import org.lealone.sql.ddl.AlterTableSet;
@@ -82,6 +84,7 @@ import org.lealone.sql.ddl.CreateConstant;
 import org.lealone.sql.ddl.CreateDatabase;
 import org.lealone.sql.ddl.CreateFunctionAlias;
 import org.lealone.sql.ddl.CreateIndex;
+import org.lealone.sql.ddl.CreateMaterializedView;
 import org.lealone.sql.ddl.CreateRole;
 import org.lealone.sql.ddl.CreateSchema;
 import org.lealone.sql.ddl.CreateSequence;
@@ -109,6 +112,7 @@ import org.lealone.sql.ddl.DropUserDataType;
 import org.lealone.sql.ddl.DropView;
 import org.lealone.sql.ddl.GrantRevoke;
 import org.lealone.sql.ddl.PrepareProcedure;
+import org.lealone.sql.ddl.RefreshMaterializedView;
 import org.lealone.sql.ddl.SetComment;
 import org.lealone.sql.ddl.TruncateTable;
 import org.lealone.sql.dml.Backup;
@@ -433,6 +437,8 @@ public class LealoneSQLParser implements SQLParser {
                     s = parseRunScript();
                 } else if (readIf("RELEASE")) {
                     s = parseReleaseSavepoint();
+                } else if (readIf("REFRESH")) {
+                    s = parseRefresh();
                 }
                 break;
             case 's':
@@ -1085,6 +1091,15 @@ public class LealoneSQLParser implements SQLParser {
         return command;
     }
 
+    private StatementBase parseRefresh() {
+        read("MATERIALIZED");
+        read("VIEW");
+        Table view = readTableOrView();
+        RefreshMaterializedView command = new RefreshMaterializedView(session, view.getSchema());
+        command.setView(view);
+        return command;
+    }
+
     private StatementBase parseTruncate() {
         read("TABLE");
         Table table = readTableOrView();
@@ -1242,6 +1257,16 @@ public class LealoneSQLParser implements SQLParser {
             ifExists = readIfExists(ifExists);
             command.setIfExists(ifExists);
             return command;
+        } else if (readIf("MATERIALIZED")) {
+            read("VIEW");
+            boolean ifExists = readIfExists(false);
+            String viewName = readIdentifierWithSchema();
+            DropView command = new DropView(session, getSchema());
+            command.setViewName(viewName);
+            command.setMaterialized(true);
+            ifExists = readIfExists(ifExists);
+            command.setIfExists(ifExists);
+            return command;
         } else if (readIf("VIEW")) {
             boolean ifExists = readIfExists(false);
             String viewName = readIdentifierWithSchema();
@@ -3951,6 +3976,9 @@ public class LealoneSQLParser implements SQLParser {
         boolean force = readIf("FORCE");
         if (readIf("VIEW")) {
             return parseCreateView(force, orReplace);
+        } else if (readIf("MATERIALIZED")) {
+            read("VIEW");
+            return parseCreateMaterializedView();
         } else if (readIf("ALIAS")) {
             return parseCreateFunctionAlias(force);
         } else if (readIf("SEQUENCE")) {
@@ -4393,13 +4421,16 @@ public class LealoneSQLParser implements SQLParser {
                     command.setCycle(false);
                 } else if (readIf("CACHE")) {
                     command.setCacheSize(ValueExpression.get(ValueLong.get(1)));
+                    command.setPerScheduler(false);
                 } else {
                     break;
                 }
             } else if (readIf("CACHE")) {
                 command.setCacheSize(readExpression());
+                command.setPerScheduler(readIfPerScheduler());
             } else if (readIf("NOCACHE")) {
                 command.setCacheSize(ValueExpression.get(ValueLong.get(1)));
+                command.setPerScheduler(false);
             } else if (readIf("BELONGS_TO_TABLE")) {
                 command.setBelongsToTable(true);
             } else {
@@ -4409,6 +4440,15 @@ public class LealoneSQLParser implements SQLParser {
         return command;
     }
 
+    // CACHE n PER SCHEDULER
+    private boolean readIfPerScheduler() {
+        if (readIf("PER")) {
+            read("SCHEDULER");
+            return true;
+        }
+        return false;
+    }
+
     private boolean readIfNotExists() {
         if (readIf("IF")) {
             read("NOT");
@@ -4667,6 +4707,35 @@ public class LealoneSQLParser implements SQLParser {
         return command;
     }
 
+    private CreateMaterializedView parseCreateMaterializedView() {
+        boolean ifNotExists = readIfNotExists();
+        String viewName = readIdentifierWithSchema();
+        CreateMaterializedView command = new CreateMaterializedView(session, getSchema());
+        command.setViewName(viewName);
+        command.setIfNotExists(ifNotExists);
+        if (readIf("(")) {
+            do {
+                String columnName = readColumnIdentifier();
+                command.addColumn(parseColumnForTable(columnName, true));
+            } while (readIfMore());
+        }
+        command.setIncremental(readIf("INCREMENTAL"));
+        String select = StringUtils.cache(sqlCommand.substring(parseIndex));
+        read("AS");
+        // 数据库启动时基表可能还没有创建，等到刷新时再编译查询语句
+        if (database.isStarting()) {
+            command.setSelectSQL(select);
+            while (currentTokenType != END) {
+                read();
+            }
+        } else {
+            Query query = parseSelect();
+            query.prepare();
+            command.setSelect(query);
+        }
+        return command;
+    }
+
     private TransactionStatement parseCheckpoint() {
         TransactionStatement command;
         if (readIf("SYNC")) {
@@ -4786,13 +4855,16 @@ public class LealoneSQLParser implements SQLParser {
                     command.setCycle(false);
                 } else if (readIf("CACHE")) {
                     command.setCacheSize(ValueExpression.get(ValueLong.get(1)));
+                    command.setPerScheduler(false);
                 } else {
                     break;
                 }
             } else if (readIf("CACHE")) {
                 command.setCacheSize(readExpression());
+                command.setPerScheduler(readIfPerScheduler());
             } else if (readIf("NOCACHE")) {
                 command.setCacheSize(ValueExpression.get(ValueLong.get(1)));
+                command.setPerScheduler(false);
             } else {
                 break;
             }
@@ -5170,6 +5242,13 @@ public class LealoneSQLParser implements SQLParser {
         throw DbException.get(ErrorCode.SEQUENCE_NOT_FOUND_1, sequenceName);
     }
 
+    private AlterTablePartition parseAlterTablePartition(Table table, int type) {
+        AlterTablePartition command = new AlterTablePartition(session, table.getSchema(), type);
+        command.setTable(table);
+        command.setPartitionName(readUniqueIdentifier());
+        return command;
+    }
+
     private StatementBase parseAlterTable() {
         Table table = readTableOrView();
         if (readIf("ADD")) {
@@ -5223,6 +5302,8 @@ public class LealoneSQLParser implements SQLParser {
                 DropIndex command = new DropIndex(session, getSchema());
                 command.setIndexName(indexName);
                 return command;
+            } else if (readIf("PARTITION")) {
+                return parseAlterTablePartition(table, SQLStatement.ALTER_TABLE_DROP_PARTITION);
             } else if (readIf("PRIMARY")) {
                 read("KEY");
                 Index idx = table.getPrimaryKey();
@@ -5242,6 +5323,9 @@ public class LealoneSQLParser implements SQLParser {
                 command.setOldColumn(table.getColumn(columnName));
                 return command;
             }
+        } else if (readIf("TRUNCATE")) {
+            read("PARTITION");
+            return parseAlterTablePartition(table, SQLStatement.ALTER_TABLE_TRUNCATE_PARTITION);
         } else if (readIf("CHANGE")) {
             // MySQL compatibility
             readIf("COLUMN");
@@ -5663,6 +5747,10 @@ public class LealoneSQLParser implements SQLParser {
             command.setStorageEngineName(database.getSettings().defaultStorageEngine);
         }
         command.setStorageEngineParams(parseParameters());
+        if (readIf("PARTITION")) {
+            read("BY");
+            command.setPartitioning(parsePartitioning());
+        }
         if (temp) {
             if (readIf("ON")) {
                 read("COMMIT");
@@ -5699,6 +5787,48 @@ public class LealoneSQLParser implements SQLParser {
         return command;
     }
 
+    private Partitioning parsePartitioning() {
+        boolean hash = readIf("HASH");
+        if (!hash) {
+            read("RANGE");
+        }
+        read("(");
+        String columnName = readColumnIdentifier();
+        read(")");
+        if (hash) {
+            read("PARTITIONS");
+            return Partitioning.createHash(columnName, readPositiveInt());
+        }
+        read("(");
+        ArrayList<String> names = Utils.newSmallArrayList();
+        ArrayList<Long> bounds = Utils.newSmallArrayList();
+        boolean maxValue = false;
+        do {
+            // MAXVALUE只能用于最后一个分区
+            if (maxValue) {
+                throw getSyntaxError();
+            }
+            read("PARTITION");
+            names.add(readUniqueIdentifier());
+            read("VALUES");
+            read("LESS");
+            read("THAN");
+            read("(");
+            if (readIf("MAXVALUE")) {
+                maxValue = true;
+                bounds.add(Long.MAX_VALUE);
+            } else {
+                bounds.add(readExpression().optimize(session).getValue(session).getLong());
+            }
+            read(")");
+        } while (readIfMore());
+        long[] b = new long[bounds.size()];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = bounds.get(i);
+        }
+        return Partitioning.createRange(columnName, names.toArray(new String[0]), b, maxValue);
+    }
+
     private static int getCompareType(int tokenType) {
         switch (tokenType) {
         case EQUAL:
@@ -6,6 +6,7 @@
 package org.lealone.sql;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.lealone.common.exceptions.DbException;
 import org.lealone.common.trace.Trace;
@@ -26,10 +27,12 @@ import org.lealone.db.session.SessionStatus;
 import org.lealone.db.value.Value;
 import org.lealone.sql.executor.DefaultYieldableLocalUpdate;
 import org.lealone.sql.executor.YieldableBase;
+import org.lealone.sql.executor.YieldableBatchUpdate;
 import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.Parameter;
 import org.lealone.sql.optimizer.TableFilter;
 import org.lealone.sql.query.YieldableLocalQuery;
+import org.lealone.storage.page.PageOperationHandlerBase;
 
 /**
  * A parsed and prepared statement.
@@ -68,6 +71,7 @@ public abstract class StatementBase implements PreparedSQLStatement, ParsedSQLSt
     private int objectId;
     private int currentRowNumber;
     private int rowScanCount;
+    private long scannedRowCount; // 不包括重置行号的调用，用于统计数据
     private boolean canReuse;
     private boolean local;
     private int fetchSize = SysProperties.SERVER_RESULT_SET_FETCH_SIZE;
@@ -360,6 +364,19 @@ public abstract class StatementBase implements PreparedSQLStatement, ParsedSQLSt
      * @param rowCount the query or update row count
      */
     public void trace(long startTimeNanos, int rowCount) {
+        trace(startTimeNanos, rowCount, 0, 0);
+    }
+
+    /**
+     * Print information about the statement executed if info trace level is enabled,
+     * and update the query statistics if enabled.
+     *
+     * @param startTimeNanos when the statement was started
+     * @param rowCount the query or update row count
+     * @param rowScanCount the number of rows scanned
+     * @param pageReadCount the number of pages read from disk
+     */
+    public void trace(long startTimeNanos, int rowCount, long rowScanCount, long pageReadCount) {
         if (startTimeNanos > 0 && session.getTrace().isInfoEnabled()) {
             long deltaTimeNanos = System.nanoTime() - startTimeNanos;
             String params = Trace.formatParams(getParameters());
@@ -369,10 +386,38 @@ public abstract class StatementBase implements PreparedSQLStatement, ParsedSQLSt
         // startTimeNanos can be zero for the command that actually turns on statistics
         if (startTimeNanos > 0 && session.getDatabase().getQueryStatistics()) {
             long deltaTimeNanos = System.nanoTime() - startTimeNanos;
-            session.getDatabase().getQueryStatisticsData().update(getSQL(), deltaTimeNanos, rowCount);
+            session.getDatabase().getQueryStatisticsData().update(getSQL(), getStatementTypeName(),
+                    deltaTimeNanos, rowCount, rowScanCount, pageReadCount);
+        }
+    }
+
+    // 用于按语句类型汇总统计数据
+    private String getStatementTypeName() {
+        if (isQuery())
+            return "SELECT";
+        switch (getType()) {
+        case SQLStatement.INSERT:
+            return "INSERT";
+        case SQLStatement.UPDATE:
+            return "UPDATE";
+        case SQLStatement.DELETE:
+            return "DELETE";
+        case SQLStatement.MERGE:
+            return "MERGE";
+        default:
+            return "OTHER";
         }
     }
 
+    /**
+     * Get the number of rows scanned so far by this statement, including previous executions.
+     *
+     * @return the scanned row count
+     */
+    public long getScannedRowCount() {
+        return scannedRowCount;
+    }
+
     /**
      * Set the prepare always flag.
      * If set, the statement is re-compiled whenever it is executed.
@@ -399,9 +444,14 @@ public abstract class StatementBase implements PreparedSQLStatement, ParsedSQLSt
      */
     public boolean setCurrentRowNumber(int rowNumber) {
         boolean yieldIfNeeded = false;
+        if (rowNumber > 0)
+            scannedRowCount++;
         if ((++rowScanCount & 127) == 0) {
             checkCanceled();
             yieldIfNeeded = yieldIfNeeded();
+        } else if (PageOperationHandlerBase.hasPendingPageRead()) {
+            // 接下来要扫描的page还在从硬盘读，先让出执行权，不必等到下一次检查
+            yieldIfNeeded = true;
         }
         this.currentRowNumber = rowNumber;
         setProgress();
@@ -599,6 +649,12 @@ public abstract class StatementBase implements PreparedSQLStatement, ParsedSQLSt
         return new DefaultYieldableLocalUpdate(this, asyncHandler);
     }
 
+    @Override
+    public YieldableBase<int[]> createYieldableBatchUpdate(List<Value[]> batchParameters,
+            AsyncHandler<AsyncResult<int[]>> asyncHandler) {
+        return new YieldableBatchUpdate(this, batchParameters, asyncHandler);
+    }
+
     public TableFilter getTableFilter() {
         return null;
     }
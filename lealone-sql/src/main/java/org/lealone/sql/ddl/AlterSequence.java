@@ -36,6 +36,7 @@ public class AlterSequence extends SchemaStatement {
     private Expression minValue;
     private Expression maxValue;
     private Expression cacheSize;
+    private Boolean perScheduler;
 
     public AlterSequence(ServerSession session, Schema schema) {
         super(session, schema);
@@ -82,6 +83,10 @@ public class AlterSequence extends SchemaStatement {
         this.cacheSize = cacheSize;
     }
 
+    public void setPerScheduler(Boolean perScheduler) {
+        this.perScheduler = perScheduler;
+    }
+
     @Override
     public int update() {
         DbObjectLock lock = schema.tryExclusiveLock(DbObjectType.SEQUENCE, session);
@@ -99,6 +104,9 @@ public class AlterSequence extends SchemaStatement {
             long size = cacheSize.optimize(session).getValue(session).getLong();
             sequence.setCacheSize(size);
         }
+        if (perScheduler != null) {
+            sequence.setPerScheduler(perScheduler);
+        }
         if (start != null || minValue != null || maxValue != null || increment != null) {
             Long startValue = getLong(start);
             Long min = getLong(minValue);
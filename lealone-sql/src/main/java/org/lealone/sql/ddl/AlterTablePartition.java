@@ -0,0 +1,76 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.ddl;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.DbObjectType;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.auth.Right;
+import org.lealone.db.lock.DbObjectLock;
+import org.lealone.db.schema.Schema;
+import org.lealone.db.session.ServerSession;
+import org.lealone.db.table.StandardTable;
+import org.lealone.db.table.Table;
+import org.lealone.sql.SQLStatement;
+
+/**
+ * This class represents the statements
+ * ALTER TABLE DROP PARTITION,
+ * ALTER TABLE TRUNCATE PARTITION
+ *
+ * @author zhh
+ */
+public class AlterTablePartition extends SchemaStatement {
+
+    private final int type;
+    private Table table;
+    private String partitionName;
+
+    public AlterTablePartition(ServerSession session, Schema schema, int type) {
+        super(session, schema);
+        this.type = type;
+    }
+
+    @Override
+    public int getType() {
+        return type;
+    }
+
+    public void setTable(Table table) {
+        this.table = table;
+    }
+
+    public void setPartitionName(String partitionName) {
+        this.partitionName = partitionName;
+    }
+
+    @Override
+    public int update() {
+        DbObjectLock lock = schema.tryExclusiveLock(DbObjectType.TABLE_OR_VIEW, session);
+        if (lock == null)
+            return -1;
+        // 直接清空或删除分区的map，所以不能有其他事务同时读写这张表
+        if (!table.tryExclusiveLock(session))
+            return -1;
+
+        if (!(table instanceof StandardTable) || ((StandardTable) table).getPartitioning() == null) {
+            throw DbException.get(ErrorCode.PARTITION_NOT_FOUND_1, partitionName);
+        }
+        StandardTable t = (StandardTable) table;
+        if (type == SQLStatement.ALTER_TABLE_DROP_PARTITION) {
+            session.getUser().checkRight(table, Right.ALL);
+            t.dropPartition(session, partitionName);
+            session.getDatabase().updateMeta(session, table);
+        } else {
+            if (!table.canTruncate()) {
+                throw DbException.get(ErrorCode.CANNOT_TRUNCATE_1, table.getSQL());
+            }
+            session.getUser().checkRight(table, Right.DELETE);
+            t.truncatePartition(session, partitionName);
+        }
+        return 0;
+    }
+}
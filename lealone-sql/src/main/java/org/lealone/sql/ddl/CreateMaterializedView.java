@@ -0,0 +1,126 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.ddl;
+
+import java.util.ArrayList;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.Database;
+import org.lealone.db.DbObjectType;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.lock.DbObjectLock;
+import org.lealone.db.schema.Schema;
+import org.lealone.db.session.ServerSession;
+import org.lealone.db.table.Column;
+import org.lealone.db.table.CreateTableData;
+import org.lealone.sql.SQLStatement;
+import org.lealone.sql.expression.Parameter;
+import org.lealone.sql.query.MaterializedView;
+import org.lealone.sql.query.Query;
+
+/**
+ * This class represents the statement
+ * CREATE MATERIALIZED VIEW
+ *
+ * @author zhh
+ */
+public class CreateMaterializedView extends SchemaStatement {
+
+    private final CreateTableData data = new CreateTableData();
+    private boolean ifNotExists;
+    private boolean incremental;
+    private Query select;
+    private String selectSQL;
+
+    public CreateMaterializedView(ServerSession session, Schema schema) {
+        super(session, schema);
+        data.persistIndexes = true;
+        data.persistData = true;
+    }
+
+    @Override
+    public int getType() {
+        return SQLStatement.CREATE_MATERIALIZED_VIEW;
+    }
+
+    public void setViewName(String viewName) {
+        data.tableName = viewName;
+    }
+
+    public void setIfNotExists(boolean ifNotExists) {
+        this.ifNotExists = ifNotExists;
+    }
+
+    @Override
+    public boolean isIfDDL() {
+        return ifNotExists;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public void addColumn(Column column) {
+        data.columns.add(column);
+    }
+
+    public void setSelect(Query select) {
+        this.select = select;
+    }
+
+    public void setSelectSQL(String selectSQL) {
+        this.selectSQL = selectSQL;
+    }
+
+    @Override
+    public int update() {
+        DbObjectLock lock = schema.tryExclusiveLock(DbObjectType.TABLE_OR_VIEW, session);
+        if (lock == null)
+            return -1;
+
+        Database db = session.getDatabase();
+        if (schema.findTableOrView(session, data.tableName) != null) {
+            if (ifNotExists) {
+                return 0;
+            }
+            throw DbException.get(ErrorCode.TABLE_OR_VIEW_ALREADY_EXISTS_1, data.tableName);
+        }
+        String querySQL = selectSQL;
+        // 数据库启动阶段不编译查询语句，字段定义已经包含在CREATE语句中了
+        if (select != null) {
+            ArrayList<Parameter> params = select.getParameters();
+            if (params != null && params.size() > 0) {
+                throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1,
+                        "parameters in materialized views");
+            }
+            if (data.columns.isEmpty()) {
+                CreateTable.generateColumnsFromQuery(select, data.columns);
+            } else if (data.columns.size() != select.getColumnCount()) {
+                throw DbException.get(ErrorCode.COLUMN_COUNT_DOES_NOT_MATCH);
+            }
+            querySQL = select.getPlanSQL();
+        }
+        if (!db.isPersistent()) {
+            data.persistIndexes = false;
+        }
+        data.id = getObjectId();
+        data.create = !db.isStarting();
+        data.session = session;
+        MaterializedView view = new MaterializedView(data, schema.getStorageEngine(data), querySQL,
+                incremental);
+        schema.add(session, view, lock);
+        if (!db.isStarting()) {
+            try {
+                view.refresh();
+            } catch (DbException e) {
+                db.checkPowerOff();
+                schema.remove(session, view, lock);
+                throw e;
+            }
+        }
+        return 0;
+    }
+}
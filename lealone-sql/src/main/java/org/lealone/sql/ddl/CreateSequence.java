@@ -33,6 +33,7 @@ public class CreateSequence extends SchemaStatement {
     private Expression increment;
     private Expression cacheSize;
     private boolean belongsToTable;
+    private boolean perScheduler;
 
     public CreateSequence(ServerSession session, Schema schema) {
         super(session, schema);
@@ -80,6 +81,10 @@ public class CreateSequence extends SchemaStatement {
         this.cacheSize = cacheSize;
     }
 
+    public void setPerScheduler(boolean perScheduler) {
+        this.perScheduler = perScheduler;
+    }
+
     public void setBelongsToTable(boolean belongsToTable) {
         this.belongsToTable = belongsToTable;
     }
@@ -104,6 +109,7 @@ public class CreateSequence extends SchemaStatement {
         Long max = getLong(maxValue);
         Sequence sequence = new Sequence(schema, id, sequenceName, startValue, inc, cache, min, max,
                 cycle, belongsToTable);
+        sequence.setPerScheduler(perScheduler);
         schema.add(session, sequence, lock);
         return 0;
     }
@@ -536,8 +536,10 @@ public class CreateService extends SchemaStatement {
                 // 有参数，参数放在一个json数组中
                 int size = data.columns.size() - 1;
                 if (size > 0) {
-                    if (varInit.length() > 0)
-                        buff.append("            ja = new JsonArray(json);\r\n");
+                    if (varInit.length() > 0) {
+                        buff.append("            reader = new JsonReader(json);\r\n");
+                        buff.append("            reader.beginArray();\r\n");
+                    }
                     for (int i = 0; i < size; i++) {
                         if (i != 0) {
                             argsBuff.append(", ");
@@ -551,6 +553,7 @@ public class CreateService extends SchemaStatement {
                         genVarInitCode(buff, importSet, c, cType, i);
                         argsBuff.append(cName);
                     }
+                    genVarInitEndCode(buff);
                 }
                 boolean isVoid = returnType.equals("void");
                 buff.append("            ");
@@ -574,6 +577,9 @@ public class CreateService extends SchemaStatement {
         protected abstract void genVarInitCode(StringBuilder buff, TreeSet<String> importSet, Column c,
                 String cType, int cIndex);
 
+        protected void genVarInitEndCode(StringBuilder buff) {
+        }
+
         protected void genReturnCode(StringBuilder buff, TreeSet<String> importSet, Column returnColumn,
                 String returnType, String resultVarName) {
             buff.append("            if (").append(resultVarName).append(" == null)\r\n");
@@ -662,7 +668,13 @@ public class CreateService extends SchemaStatement {
         @Override
         protected void genVarInitCode(StringBuilder buff, TreeSet<String> importSet, Column c,
                 String cType, int cIndex) {
-            buff.append(getJsonArrayMethodName(cType, cIndex)).append(";\r\n");
+            buff.append(getJsonReaderMethodName(cType)).append(";\r\n");
+        }
+
+        // 参数读完后数组必须结束，多余的参数跟缺少参数一样要报错
+        @Override
+        protected void genVarInitEndCode(StringBuilder buff) {
+            buff.append("            reader.endArray();\r\n");
         }
     }
 
@@ -681,12 +693,12 @@ public class CreateService extends SchemaStatement {
                 "String executeService(String methodName, Map<String, Object> methodArgs)");
 
         // 生成public String executeService(String methodName, String json)方法
-        // 提前看一下是否用到JsonArray
+        // 提前看一下是否用到JsonReader，参数按顺序直接从json流中读出具体的类型，不需要先解析成JsonArray
         String varInit = "";
         for (CreateTable m : serviceMethods) {
             if (m.data.columns.size() - 1 > 0) {
-                importSet.add("org.lealone.orm.json.JsonArray");
-                varInit = "        JsonArray ja = null;\r\n";
+                importSet.add("org.lealone.orm.json.JsonReader");
+                varInit = "        JsonReader reader = null;\r\n";
                 break;
             }
         }
@@ -867,59 +879,55 @@ public class CreateService extends SchemaStatement {
         return "ValueShort.get";
     }
 
-    private static String m(String str, int i) {
-        return str + "(ja.getValue(" + i + ").toString())";
-    }
-
-    // 根据具体类型调用合适的JsonArray方法
-    private static String getJsonArrayMethodName(String type0, int i) {
+    // 根据具体类型调用合适的JsonReader方法，参数是按顺序读取的
+    private static String getJsonReaderMethodName(String type0) {
         String type = type0.toUpperCase();
         switch (type) {
         case "BOOLEAN":
-            return m("Boolean.valueOf", i);
+            return "reader.readBoolean()";
         case "BYTE":
-            return m("Byte.valueOf", i);
+            return "reader.readByte()";
         case "SHORT":
-            return m("Short.valueOf", i);
+            return "reader.readShort()";
         case "INTEGER":
-            return m("Integer.valueOf", i);
+            return "reader.readInteger()";
         case "LONG":
-            return m("Long.valueOf", i);
+            return "reader.readLong()";
         case "BIGDECIMAL":
-            return m("new java.math.BigDecimal", i);
+            return "reader.readBigDecimal()";
         case "TIME":
-            return m("java.sql.Time.valueOf", i);
+            return "reader.readTime()";
         case "DATE":
-            return m("java.sql.Date.valueOf", i);
+            return "reader.readDate()";
         case "TIMESTAMP":
-            return m("java.sql.Timestamp.valueOf", i);
+            return "reader.readTimestamp()";
         case "BYTE[]":
-            return "ja.getString(" + i + ").getBytes()";
+            return "reader.readBytes()";
         case "UUID":
-            return m("java.util.UUID.fromString", i);
+            return "reader.readUuid()";
         case "STRING":
         case "STRING_IGNORECASE":
         case "STRING_FIXED":
-            return "ja.getString(" + i + ")";
+            return "reader.readString()";
         case "DOUBLE":
-            return m("Double.valueOf", i);
+            return "reader.readDouble()";
         case "FLOAT":
-            return m("Float.valueOf", i);
+            return "reader.readFloat()";
         case "NULL":
             return null;
         case "UNKNOWN": // anything
         case "OBJECT":
-            return "ja.getValue(" + i + ")";
+            return "reader.readValue()";
         case "BLOB":
-            return "new org.lealone.db.value.ReadonlyBlob(ja.getString(" + i + "))";
+            return "new org.lealone.db.value.ReadonlyBlob(reader.readString())";
         case "CLOB":
-            return "new org.lealone.db.value.ReadonlyClob(ja.getString(" + i + "))";
+            return "new org.lealone.db.value.ReadonlyClob(reader.readString())";
         case "ARRAY":
-            return "new org.lealone.db.value.ReadonlyArray(ja.getString(" + i + "))";
+            return "new org.lealone.db.value.ReadonlyArray(reader.readString())";
         case "RESULT_SET":
-            return "ja.getValue(" + i + ")";
+            return "reader.readValue()";
         }
-        return type0 + ".decode(ja.getString(" + i + "))";
+        return type0 + ".decode(reader)";
     }
 
     // 根据具体类型调用合适的Map方法
@@ -23,6 +23,8 @@ import org.lealone.db.schema.Sequence;
 import org.lealone.db.session.ServerSession;
 import org.lealone.db.table.Column;
 import org.lealone.db.table.CreateTableData;
+import org.lealone.db.table.Partitioning;
+import org.lealone.db.table.StandardTable;
 import org.lealone.db.table.Table;
 import org.lealone.db.value.DataType;
 import org.lealone.db.value.Value;
@@ -192,6 +194,14 @@ public class CreateTable extends SchemaStatement {
             for (DefinitionStatement command : constraintCommands) {
                 command.update();
             }
+            if (data.partitioning != null) {
+                if (!(table instanceof StandardTable)) {
+                    throw DbException.getUnsupportedException("PARTITION BY");
+                }
+                // 数据库启动阶段主键是在后面单独执行ALTER TABLE增加的，建表时已经检查过了
+                if (!db.isStarting())
+                    ((StandardTable) table).checkPartitioning();
+            }
             if (asQuery != null) {
                 Insert insert = new Insert(session);
                 insert.setQuery(asQuery);
@@ -213,8 +223,12 @@ public class CreateTable extends SchemaStatement {
     }
 
     private void generateColumnsFromQuery() {
-        int columnCount = asQuery.getColumnCount();
-        ArrayList<Expression> expressions = asQuery.getExpressions();
+        generateColumnsFromQuery(asQuery, data.columns);
+    }
+
+    static void generateColumnsFromQuery(Query query, ArrayList<Column> columns) {
+        int columnCount = query.getColumnCount();
+        ArrayList<Expression> expressions = query.getExpressions();
         for (int i = 0; i < columnCount; i++) {
             Expression expr = expressions.get(i);
             int type = expr.getType();
@@ -238,7 +252,7 @@ public class CreateTable extends SchemaStatement {
                 precision = scale;
             }
             Column col = new Column(name, type, precision, scale, displaySize);
-            addColumn(col);
+            columns.add(col);
         }
     }
 
@@ -307,6 +321,10 @@ public class CreateTable extends SchemaStatement {
         data.storageEngineName = storageEngineName;
     }
 
+    public void setPartitioning(Partitioning partitioning) {
+        data.partitioning = partitioning;
+    }
+
     public void setStorageEngineParams(CaseInsensitiveMap<String> storageEngineParams) {
         data.storageEngineParams = storageEngineParams;
     }
@@ -355,6 +373,7 @@ public class CreateTable extends SchemaStatement {
         importSet.add("org.lealone.orm.Model");
         importSet.add("org.lealone.orm.ModelTable");
         importSet.add("org.lealone.orm.ModelProperty");
+        importSet.add("org.lealone.orm.json.JsonReader");
 
         for (ConstraintReferential ref : table.getReferentialConstraints()) {
             Table refTable = ref.getRefTable();
@@ -635,6 +654,11 @@ public class CreateTable extends SchemaStatement {
         buff.append("    public static ").append(className).append(" decode(String str) {\r\n");
         buff.append("        return new ").append(className).append("().decode0(str);\r\n");
         buff.append("    }\r\n");
+        buff.append("\r\n");
+        // 服务执行器直接从参数的json流中读取model，不需要先转成字符串
+        buff.append("    public static ").append(className).append(" decode(JsonReader reader) {\r\n");
+        buff.append("        return new ").append(className).append("().decode0(reader);\r\n");
+        buff.append("    }\r\n");
         buff.append("}\r\n");
 
         CreateService.writeFile(table.getCodePath(), packageName, className, buff);
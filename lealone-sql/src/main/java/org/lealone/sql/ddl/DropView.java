@@ -18,6 +18,7 @@ import org.lealone.db.table.Table;
 import org.lealone.db.table.TableType;
 import org.lealone.db.table.TableView;
 import org.lealone.sql.SQLStatement;
+import org.lealone.sql.query.MaterializedView;
 
 /**
  * This class represents the statement
@@ -31,6 +32,7 @@ public class DropView extends SchemaStatement {
     private String viewName;
     private boolean ifExists;
     private int dropAction;
+    private boolean materialized;
 
     public DropView(ServerSession session, Schema schema) {
         super(session, schema);
@@ -60,6 +62,10 @@ public class DropView extends SchemaStatement {
         this.dropAction = dropAction;
     }
 
+    public void setMaterialized(boolean materialized) {
+        this.materialized = materialized;
+    }
+
     @Override
     public int update() {
         DbObjectLock lock = schema.tryExclusiveLock(DbObjectType.TABLE_OR_VIEW, session);
@@ -72,7 +78,8 @@ public class DropView extends SchemaStatement {
                 throw DbException.get(ErrorCode.VIEW_NOT_FOUND_1, viewName);
             }
         } else {
-            if (view.getTableType() != TableType.VIEW) {
+            if (materialized ? !(view instanceof MaterializedView)
+                    : view.getTableType() != TableType.VIEW) {
                 throw DbException.get(ErrorCode.VIEW_NOT_FOUND_1, viewName);
             }
             session.getUser().checkRight(view, Right.ALL);
@@ -0,0 +1,51 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.ddl;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.auth.Right;
+import org.lealone.db.schema.Schema;
+import org.lealone.db.session.ServerSession;
+import org.lealone.db.table.Table;
+import org.lealone.sql.SQLStatement;
+import org.lealone.sql.query.MaterializedView;
+
+/**
+ * This class represents the statement
+ * REFRESH MATERIALIZED VIEW
+ *
+ * @author zhh
+ */
+public class RefreshMaterializedView extends SchemaStatement {
+
+    private Table view;
+
+    public RefreshMaterializedView(ServerSession session, Schema schema) {
+        super(session, schema);
+    }
+
+    @Override
+    public int getType() {
+        return SQLStatement.REFRESH_MATERIALIZED_VIEW;
+    }
+
+    public void setView(Table view) {
+        this.view = view;
+    }
+
+    @Override
+    public int update() {
+        if (!(view instanceof MaterializedView)) {
+            throw DbException.get(ErrorCode.VIEW_NOT_FOUND_1, view.getSQL());
+        }
+        session.getUser().checkRight(view, Right.INSERT);
+        if (!view.tryExclusiveLock(session))
+            return -1;
+        ((MaterializedView) view).refresh();
+        return 0;
+    }
+}
@@ -19,8 +19,11 @@ import org.lealone.db.value.ValueString;
 import org.lealone.sql.PreparedSQLStatement;
 import org.lealone.sql.SQLStatement;
 import org.lealone.sql.StatementBase;
+import org.lealone.sql.executor.ExecutionProfile;
 import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.ExpressionColumn;
+import org.lealone.sql.optimizer.TableFilter;
+import org.lealone.sql.query.Query;
 
 /**
  * This class represents the statement
@@ -75,13 +78,22 @@ public class Explain extends ManipulationStatement {
         if (maxRows >= 0) {
             String plan;
             if (executeCommand) {
+                ExecutionProfile profile = new ExecutionProfile();
+                setProfile(profile);
                 db.statisticsStart();
-                if (command.isQuery()) {
-                    command.query(maxRows);
-                } else {
-                    command.update();
+                profile.start();
+                try {
+                    if (command.isQuery()) {
+                        command.query(maxRows);
+                    } else {
+                        command.update();
+                    }
+                } finally {
+                    profile.end();
+                    setProfile(null);
                 }
                 plan = command.getPlanSQL();
+                plan += "\n/*\n" + profile + "*/";
                 Map<String, Integer> statistics = db.statisticsEnd();
                 if (statistics != null) {
                     int total = 0;
@@ -115,6 +127,15 @@ public class Explain extends ManipulationStatement {
         return result;
     }
 
+    private void setProfile(ExecutionProfile profile) {
+        if (command instanceof Query) {
+            ((Query) command).setProfile(profile);
+        } else if (command instanceof ConditionUpdate) {
+            TableFilter f = ((ConditionUpdate) command).getTableFilter();
+            f.setProfile(profile == null ? null : profile.addFilter(f));
+        }
+    }
+
     private void add(String text) {
         Value[] row = { ValueString.get(text) };
         result.addRow(row);
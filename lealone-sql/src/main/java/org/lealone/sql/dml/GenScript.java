@@ -63,6 +63,7 @@ import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.ExpressionColumn;
 import org.lealone.sql.optimizer.Optimizer;
 import org.lealone.sql.optimizer.PlanItem;
+import org.lealone.sql.query.MaterializedView;
 
 /**
  * This class represents the statement
@@ -297,7 +298,8 @@ public class GenScript extends ScriptBase {
                         }
                     }
                 }
-                if (tableType == TableType.STANDARD_TABLE) {
+                // 物化视图的数据在执行CREATE MATERIALIZED VIEW时重新计算
+                if (tableType == TableType.STANDARD_TABLE && !(table instanceof MaterializedView)) {
                     if (table.canGetRowCount()) {
                         String rowcount = "-- " + table.getRowCountApproximation()
                                 + " +/- SELECT COUNT(*) FROM " + table.getSQL();
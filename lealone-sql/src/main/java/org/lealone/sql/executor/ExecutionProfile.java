@@ -0,0 +1,139 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.executor;
+
+import java.util.ArrayList;
+
+import org.lealone.sql.optimizer.TableFilter;
+import org.lealone.storage.page.PageOperationHandlerBase;
+
+/**
+ * EXPLAIN ANALYZE时收集语句实际执行的情况，包括每个查询操作和每个TableFilter的行数和耗时，
+ * 以及从硬盘读了多少个page、命中了多少次页面缓存。
+ *
+ * 只在执行语句的线程中使用，所以不需要同步，
+ * 没有做EXPLAIN ANALYZE时TableFilter和YieldableSelect只多了一次null检查。
+ */
+public class ExecutionProfile {
+
+    public static class FilterProfile {
+
+        private final TableFilter filter;
+        public long lookups; // 打开游标的次数，也就是按索引条件查找的次数
+        public long rowsRead; // 从游标读到的行数
+        public long rows; // 满足条件返回的行数
+        public long timeNanos; // 包括嵌套join的耗时
+
+        FilterProfile(TableFilter filter) {
+            this.filter = filter;
+        }
+
+        public TableFilter getFilter() {
+            return filter;
+        }
+    }
+
+    public static class OperatorProfile {
+
+        public String name; // 执行过程中可能从oltp转到olap，所以名称会变
+        public long runs; // 被调度执行的次数，减一就是让出执行权的次数
+        public long loops;
+        public long rows;
+        public long timeNanos;
+        public long yieldWaitNanos; // 让出执行权后等待再次执行的时间
+        public long lastRunEndNanos;
+
+        OperatorProfile(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final ArrayList<FilterProfile> filters = new ArrayList<>();
+    private final ArrayList<OperatorProfile> operators = new ArrayList<>();
+    private long startNanos;
+    private long timeNanos;
+    private long startPageReadCount;
+    private long pageReadCount;
+    private long startPageCacheHitCount;
+    private long pageCacheHitCount;
+
+    public FilterProfile addFilter(TableFilter filter) {
+        FilterProfile p = new FilterProfile(filter);
+        filters.add(p);
+        return p;
+    }
+
+    public OperatorProfile addOperator(String name) {
+        OperatorProfile p = new OperatorProfile(name);
+        operators.add(p);
+        return p;
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        startPageReadCount = PageOperationHandlerBase.getPageReadCount();
+        startPageCacheHitCount = PageOperationHandlerBase.getPageCacheHitCount();
+    }
+
+    public void end() {
+        timeNanos = System.nanoTime() - startNanos;
+        pageReadCount = PageOperationHandlerBase.getPageReadCount() - startPageReadCount;
+        pageCacheHitCount = PageOperationHandlerBase.getPageCacheHitCount() - startPageCacheHitCount;
+    }
+
+    public long getPageReadCount() {
+        return pageReadCount;
+    }
+
+    public long getPageCacheHitCount() {
+        return pageCacheHitCount;
+    }
+
+    public ArrayList<FilterProfile> getFilters() {
+        return filters;
+    }
+
+    public ArrayList<OperatorProfile> getOperators() {
+        return operators;
+    }
+
+    private static String formatTime(long nanos) {
+        return String.format("%.3f ms", nanos / 1000d / 1000);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buff = new StringBuilder();
+        buff.append("total time: ").append(formatTime(timeNanos));
+        // 页面缓存没有命中时才会从硬盘读
+        buff.append(", page cache hits: ").append(pageCacheHitCount);
+        buff.append(", page cache misses: ").append(pageReadCount).append('\n');
+        for (OperatorProfile p : operators) {
+            buff.append(p.getName()).append(": rows: ").append(p.rows);
+            buff.append(", loops: ").append(p.loops);
+            buff.append(", runs: ").append(p.runs);
+            buff.append(", time: ").append(formatTime(p.timeNanos));
+            buff.append(", yield wait: ").append(formatTime(p.yieldWaitNanos)).append('\n');
+        }
+        for (FilterProfile p : filters) {
+            TableFilter f = p.filter;
+            buff.append(f.getTable().getSQL());
+            if (f.getTableAlias() != null && !f.getTableAlias().equals(f.getTable().getName()))
+                buff.append(' ').append(f.getTableAlias());
+            if (f.getIndex() != null)
+                buff.append(" (").append(f.getIndex().getPlanSQL()).append(')');
+            buff.append(": rows: ").append(p.rows);
+            buff.append(", rows read: ").append(p.rowsRead);
+            buff.append(", lookups: ").append(p.lookups);
+            buff.append(", time: ").append(formatTime(p.timeNanos)).append('\n');
+        }
+        return buff.toString();
+    }
+}
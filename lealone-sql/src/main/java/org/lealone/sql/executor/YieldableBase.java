@@ -7,6 +7,7 @@ package org.lealone.sql.executor;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 import org.lealone.common.exceptions.DbException;
 import org.lealone.common.trace.Trace;
@@ -23,6 +24,7 @@ import org.lealone.db.value.Value;
 import org.lealone.sql.PreparedSQLStatement.Yieldable;
 import org.lealone.sql.StatementBase;
 import org.lealone.sql.expression.Parameter;
+import org.lealone.storage.page.PageOperationHandlerBase;
 
 public abstract class YieldableBase<T> implements Yieldable<T> {
 
@@ -32,6 +34,10 @@ public abstract class YieldableBase<T> implements Yieldable<T> {
     protected final AsyncHandler<AsyncResult<T>> asyncHandler;
     protected AsyncResult<T> asyncResult;
     protected long startTimeNanos;
+    // 语句可能让出多次，在不同的时间片中执行，只统计它自己的时间片里扫描的行数和读的page数
+    protected long startScannedRowCount;
+    protected long pageReadCount;
+    protected long sliceStartPageReadCount;
     protected boolean started;
 
     protected volatile Throwable pendingException;
@@ -67,7 +73,12 @@ public abstract class YieldableBase<T> implements Yieldable<T> {
         if (rowCount < 0) {
             setProgress(DatabaseEventListener.STATE_STATEMENT_WAITING);
         } else {
-            statement.trace(startTimeNanos, rowCount);
+            long pageReads = 0;
+            if (startTimeNanos > 0)
+                pageReads = pageReadCount + PageOperationHandlerBase.getPageReadCount()
+                        - sliceStartPageReadCount;
+            statement.trace(startTimeNanos, rowCount,
+                    statement.getScannedRowCount() - startScannedRowCount, pageReads);
             setProgress(DatabaseEventListener.STATE_STATEMENT_END);
         }
     }
@@ -84,6 +95,7 @@ public abstract class YieldableBase<T> implements Yieldable<T> {
 
     @Override
     public final void run() {
+        sliceStartPageReadCount = PageOperationHandlerBase.getPageReadCount();
         try {
             if (!started) {
                 if (start()) {
@@ -99,10 +111,16 @@ public abstract class YieldableBase<T> implements Yieldable<T> {
             pendingException = t;
         }
 
+        pageReadCount += PageOperationHandlerBase.getPageReadCount() - sliceStartPageReadCount;
+        CompletableFuture<?> pageRead = PageOperationHandlerBase.removePendingPageRead();
+
         if (pendingException != null) {
             handleException(pendingException);
         } else if (session.getStatus() == SessionStatus.STATEMENT_COMPLETED) {
             stop();
+        } else if (pageRead != null) {
+            // 让出执行权是因为接下来要用的page还在从硬盘读，读完之前不再调度当前session
+            session.waitForPageRead(pageRead);
         }
     }
 
@@ -114,6 +132,8 @@ public abstract class YieldableBase<T> implements Yieldable<T> {
             startTimeNanos = System.nanoTime();
         }
         recompileIfNeeded();
+        startScannedRowCount = statement.getScannedRowCount();
+        pageReadCount = 0;
         session.startCurrentCommand(statement);
         setProgress(DatabaseEventListener.STATE_STATEMENT_START);
         statement.checkParameters();
@@ -0,0 +1,95 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.executor;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.async.AsyncHandler;
+import org.lealone.db.async.AsyncResult;
+import org.lealone.db.session.SessionStatus;
+import org.lealone.db.value.Value;
+import org.lealone.sql.StatementBase;
+import org.lealone.sql.expression.Parameter;
+
+/**
+ * 把一个prepare好的更新语句当成一条命令，对批量的每组参数执行一次。
+ *
+ * 所有参数组都在同一个事务中执行，自动提交模式下只在最后提交一次，所以只写一条redo log，
+ * 每组参数的执行被当成嵌套语句，失败时只回滚它自己的修改，对应的更新行数是EXECUTE_FAILED。
+ */
+public class YieldableBatchUpdate extends YieldableBase<int[]> {
+
+    private final List<Value[]> batchParameters;
+    private final int[] results;
+    private int index;
+    private YieldableBase<Integer> current;
+
+    public YieldableBatchUpdate(StatementBase statement, List<Value[]> batchParameters,
+            AsyncHandler<AsyncResult<int[]>> asyncHandler) {
+        super(statement, asyncHandler);
+        this.batchParameters = batchParameters;
+        results = new int[batchParameters.size()];
+        // 开始执行时会检查参数，所以先绑定第一组
+        if (!batchParameters.isEmpty())
+            bindParameters(0);
+    }
+
+    private void bindParameters(int index) {
+        Value[] values = batchParameters.get(index);
+        ArrayList<Parameter> params = statement.getParameters();
+        if (values.length != params.size())
+            throw DbException.get(ErrorCode.INVALID_PARAMETER_COUNT_2, statement.getSQL(),
+                    "" + params.size());
+        for (int i = 0; i < values.length; i++) {
+            params.get(i).setValue(values[i]);
+        }
+    }
+
+    @Override
+    protected void executeInternal() {
+        int size = results.length;
+        while (index < size) {
+            if (current == null) {
+                bindParameters(index);
+                current = statement.createYieldableUpdate(null);
+                // 上一组参数执行结束时把状态设成了STATEMENT_COMPLETED，要改掉，
+                // 否则这一组参数让出执行权时会被当成整个批量更新结束了
+                session.setStatus(SessionStatus.TRANSACTION_NOT_COMMIT);
+            }
+            session.startNestedStatement();
+            try {
+                current.run();
+            } catch (DbException e) {
+                // 死锁时整个事务已经回滚了，前面成功的也没有了，只能让整个批量更新失败
+                if (e.getErrorCode() == ErrorCode.DEADLOCK_1)
+                    throw e;
+                results[index] = Statement.EXECUTE_FAILED;
+                current = null;
+                index++;
+                continue;
+            } finally {
+                session.endNestedStatement();
+            }
+            // 让出执行权了或者还在等待异步操作完成
+            if (!current.isStopped())
+                return;
+            Integer updateCount = current.getResult();
+            results[index] = updateCount == null ? 0 : updateCount.intValue();
+            current = null;
+            index++;
+            if (index < size && yieldIfNeeded(index)) {
+                session.setStatus(SessionStatus.TRANSACTION_NOT_COMMIT);
+                return;
+            }
+        }
+        setResult(results, size);
+        session.setStatus(SessionStatus.STATEMENT_COMPLETED);
+    }
+}
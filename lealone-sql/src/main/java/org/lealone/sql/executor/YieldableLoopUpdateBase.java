@@ -68,6 +68,6 @@ public abstract class YieldableLoopUpdateBase extends YieldableUpdateBase {
         }
         // 唤醒调度器，有可能为null，比如启动阶段执行SQL
         if (session.getTransactionListener() != null)
-            session.getTransactionListener().wakeUp();
+            session.getTransactionListener().wakeUp(session);
     }
 }
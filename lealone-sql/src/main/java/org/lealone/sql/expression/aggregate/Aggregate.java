@@ -38,7 +38,7 @@ public abstract class Aggregate extends Expression {
     /**
      * The aggregate type for SUM(expression).
      */
-    static final int SUM = 3;
+    public static final int SUM = 3;
 
     /**
      * The aggregate type for MIN(expression).
@@ -64,6 +64,14 @@ public abstract class BuiltInAggregate extends Aggregate {
         return on;
     }
 
+    public int getAggregateType() {
+        return type;
+    }
+
+    public boolean isDistinct() {
+        return distinct;
+    }
+
     @Override
     public int getScale() {
         return scale;
@@ -20,9 +20,11 @@ import org.lealone.sql.query.Query;
 public class ConditionExists extends Condition {
 
     private final Query query;
+    private final HashSemiJoin semiJoin;
 
     public ConditionExists(Query query) {
         this.query = query;
+        semiJoin = new HashSemiJoin(query, false);
     }
 
     public Query getQuery() {
@@ -32,6 +34,9 @@ public class ConditionExists extends Condition {
     @Override
     public Value getValue(ServerSession session) {
         query.setSession(session);
+        if (semiJoin.isEnabled(session)) {
+            return semiJoin.exists(session);
+        }
         Result result = query.query(1);
         session.addTemporaryResult(result);
         boolean r = result.getRowCount() > 0;
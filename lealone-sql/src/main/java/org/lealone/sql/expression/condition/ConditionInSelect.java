@@ -33,6 +33,7 @@ public class ConditionInSelect extends Condition {
     private final Query query;
     private final boolean all;
     private final int compareType;
+    private final HashSemiJoin semiJoin;
 
     public ConditionInSelect(Database database, Expression left, Query query, boolean all,
             int compareType) {
@@ -41,6 +42,11 @@ public class ConditionInSelect extends Condition {
         this.query = query;
         this.all = all;
         this.compareType = compareType;
+        // 只有IN和= ANY可以转成半连接
+        if (!all && compareType == Comparison.EQUAL)
+            semiJoin = new HashSemiJoin(query, true);
+        else
+            semiJoin = null;
     }
 
     public Expression getLeft() {
@@ -54,6 +60,9 @@ public class ConditionInSelect extends Condition {
     @Override
     public Value getValue(ServerSession session) {
         query.setSession(session);
+        if (semiJoin != null && semiJoin.isEnabled(session)) {
+            return semiJoin.in(session, left.getValue(session));
+        }
         SubQueryResult rows = new SubQueryResult(query, 0);
         session.addTemporaryResult(rows);
         Value l = left.getValue(session);
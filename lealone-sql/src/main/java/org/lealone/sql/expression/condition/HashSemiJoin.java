@@ -0,0 +1,464 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.expression.condition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeMap;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.common.util.StatementBuilder;
+import org.lealone.db.Database;
+import org.lealone.db.result.Result;
+import org.lealone.db.session.ServerSession;
+import org.lealone.db.table.Table;
+import org.lealone.db.table.TableType;
+import org.lealone.db.value.CompareMode;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueArray;
+import org.lealone.db.value.ValueBoolean;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.Expression;
+import org.lealone.sql.expression.Parameter;
+import org.lealone.sql.expression.visitor.ExpressionVisitorFactory;
+import org.lealone.sql.expression.visitor.VoidExpressionVisitor;
+import org.lealone.sql.optimizer.TableFilter;
+import org.lealone.sql.query.Query;
+import org.lealone.sql.query.Select;
+
+/**
+ * 用hash半连接的方式计算EXISTS(SELECT ...)和IN(SELECT ...)。
+ *
+ * 像 EXISTS(SELECT * FROM t2 WHERE t2.a = t1.a AND t2.b > 10) 这样的关联子查询，
+ * 原来对外层查询的每一行都要执行一次子查询，
+ * 现在把关联条件去掉，只执行一次 SELECT t2.a FROM t2 WHERE t2.b > 10，按t2.a的值建一个hash表，
+ * 外层查询的每一行只需要用t1.a的值查一下hash表。
+ * 非关联子查询的结果也只算一次，放到hash表中，类似ConditionInConstantSet。
+ * NOT EXISTS和NOT IN由外面的ConditionNot对结果取反，所以反连接也是这样完成的。
+ *
+ * 建hash表要执行一次完整的子查询，如果外层查询只有几行，并且子查询能用上关联列的索引，
+ * 逐行执行子查询反而更快，所以先逐行执行，累计的代价超过建hash表的代价时才建。
+ *
+ * 子查询用到的表被修改过后hash表就失效了，跟QueryResultCache一样通过modificationDataId来判断。
+ * 子查询中的参数跟外层语句共用，参数的值变了hash表也失效，
+ * 重新prepare的子查询有自己的参数对象，建hash表前要把原来参数的值绑定过去。
+ */
+class HashSemiJoin {
+
+    // 非关联子查询只有一个分组
+    private static final Value NO_KEY = ValueArray.get(new Value[0]);
+
+    private final Query query;
+    private final boolean in; // false表示EXISTS
+
+    private boolean analyzed;
+    private boolean disabled;
+
+    // 关联列在外层查询中对应的表达式，非关联子查询时长度为0
+    private Expression[] outerKeys;
+    private int[] keyTypes;
+    private int valueType;
+    // 去掉关联条件后的子查询，非关联子查询时就是query自己
+    private Query hashQuery;
+    private double rowCost;
+    private double buildCost;
+    private double probeCost;
+
+    // 子查询中用到的外层语句的参数
+    private Parameter[] parameters;
+    // 重新prepare的子查询中的参数，跟boundSources一一对应
+    private Parameter[] boundTargets;
+    private Parameter[] boundSources;
+
+    private HashMap<Value, Group> table;
+    private long lastModificationId;
+    private Value[] lastParameters;
+
+    HashSemiJoin(Query query, boolean in) {
+        this.query = query;
+        this.in = in;
+    }
+
+    /**
+     * 当前这一行能否通过hash表得到结果，返回false时还是逐行执行子查询
+     */
+    boolean isEnabled(ServerSession session) {
+        if (disabled)
+            return false;
+        if (!session.getDatabase().getSettings().optimizeSubqueryHashJoin)
+            return false;
+        if (!analyzed) {
+            analyzed = true;
+            if (!analyze(session)) {
+                disabled = true;
+                return false;
+            }
+        }
+        if (table != null && !isValid(session)) {
+            table = null;
+            probeCost = 0;
+        }
+        if (table == null) {
+            probeCost += rowCost;
+            if (probeCost < buildCost)
+                return false;
+            if (!build(session)) {
+                disabled = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Value exists(ServerSession session) {
+        return ValueBoolean.get(getGroup(session) != null);
+    }
+
+    Value in(ServerSession session, Value l) {
+        Group group = getGroup(session);
+        if (group == null) {
+            return ValueBoolean.get(false);
+        } else if (l == ValueNull.INSTANCE) {
+            return l;
+        }
+        if (valueType == Value.NULL) {
+            return ValueBoolean.get(false);
+        }
+        if (group.values != null && group.values.contains(l.convertTo(valueType))) {
+            return ValueBoolean.get(true);
+        }
+        return group.hasNull ? ValueNull.INSTANCE : ValueBoolean.get(false);
+    }
+
+    private Group getGroup(ServerSession session) {
+        int len = outerKeys.length;
+        Value[] keys = new Value[len];
+        for (int i = 0; i < len; i++) {
+            keys[i] = outerKeys[i].getValue(session);
+        }
+        Value key = getKey(keys);
+        // 关联列是null时子查询的条件不成立，一行记录都没有
+        return key == null ? null : table.get(key);
+    }
+
+    private Value getKey(Value[] row) {
+        int len = keyTypes.length;
+        if (len == 0)
+            return NO_KEY;
+        Value[] keys = len == 1 ? null : new Value[len];
+        for (int i = 0; i < len; i++) {
+            Value v = row[i];
+            if (v == ValueNull.INSTANCE)
+                return null;
+            v = v.convertTo(keyTypes[i]);
+            if (len == 1)
+                return v;
+            keys[i] = v;
+        }
+        return ValueArray.get(keys);
+    }
+
+    private boolean analyze(ServerSession session) {
+        if (!query.accept(ExpressionVisitorFactory.getDeterministicVisitor())
+                || query.getMaxDataModificationId() == Long.MAX_VALUE) {
+            return false;
+        }
+        if (in) {
+            valueType = query.getExpressions().get(0).getType();
+        }
+        // 非关联子查询
+        if (query.accept(ExpressionVisitorFactory.getIndependentVisitor())) {
+            outerKeys = new Expression[0];
+            keyTypes = new int[0];
+            hashQuery = query;
+            ParametersVisitor v = new ParametersVisitor();
+            v.visitQuery(query);
+            parameters = v.getParameters();
+            boundTargets = boundSources = new Parameter[0];
+            return true;
+        }
+        if (!(query instanceof Select))
+            return false;
+        Select select = (Select) query;
+        if (select.isGroupQuery() || select.getLimit() != null || select.getOffset() != null
+                || select.getSampleSize() != null || select.getFilters().size() != 1) {
+            return false;
+        }
+        TableFilter filter = select.getTopTableFilter();
+        Table t = filter.getTable();
+        if (filter.getJoin() != null || filter.getNestedJoin() != null
+                || t.getTableType() != TableType.STANDARD_TABLE) {
+            return false;
+        }
+        ArrayList<Expression> conditions = new ArrayList<>();
+        ArrayList<Expression> innerKeys = new ArrayList<>();
+        ArrayList<Expression> outerKeys = new ArrayList<>();
+        if (select.getCondition() == null
+                || !splitCondition(select.getCondition(), conditions, innerKeys, outerKeys)
+                || innerKeys.isEmpty()) {
+            return false;
+        }
+        Database db = session.getDatabase();
+        int size = innerKeys.size();
+        keyTypes = new int[size];
+        for (int i = 0; i < size; i++) {
+            int type = Value.getHigherOrder(innerKeys.get(i).getType(), outerKeys.get(i).getType());
+            if (!isHashable(db, type))
+                return false;
+            keyTypes[i] = type;
+        }
+        Expression value = null;
+        if (in) {
+            value = query.getExpressions().get(0);
+            if (!value.accept(ExpressionVisitorFactory.getCorrelationVisitor(false)))
+                return false;
+        }
+
+        StatementBuilder buff = new StatementBuilder("SELECT ");
+        for (Expression e : innerKeys) {
+            buff.appendExceptFirst(", ");
+            buff.append(e.getSQL());
+        }
+        if (value != null) {
+            buff.append(", ").append(value.getSQL());
+        }
+        buff.append(" FROM ").append(t.getSQL()).append(' ')
+                .append(db.quoteIdentifier(filter.getTableAlias()));
+        if (!conditions.isEmpty()) {
+            buff.append(" WHERE ");
+            buff.resetCount();
+            for (Expression e : conditions) {
+                buff.appendExceptFirst(" AND ");
+                buff.append(e.getSQL());
+            }
+        }
+        try {
+            hashQuery = (Query) session.prepareStatement(buff.toString(), true);
+        } catch (DbException e) {
+            return false;
+        }
+        ParametersVisitor v = new ParametersVisitor();
+        v.visit(innerKeys);
+        if (value != null)
+            value.accept(v);
+        v.visit(conditions);
+        parameters = v.getParameters();
+        bindParameters(v.parameters);
+        this.outerKeys = outerKeys.toArray(new Expression[size]);
+        rowCost = Math.max(1, query.getCost());
+        buildCost = hashQuery.getCost();
+        return true;
+    }
+
+    /**
+     * 把子查询的WHERE条件拆成只跟子查询有关的条件和 子查询表达式 = 外层查询表达式 这样的关联条件，
+     * 其他形式的关联条件返回false
+     */
+    private static boolean splitCondition(Expression condition, ArrayList<Expression> conditions,
+            ArrayList<Expression> innerKeys, ArrayList<Expression> outerKeys) {
+        if (condition instanceof ConditionAndOr) {
+            ConditionAndOr c = (ConditionAndOr) condition;
+            if (c.getAndOrType() == ConditionAndOr.AND) {
+                return splitCondition(c.getLeft(), conditions, innerKeys, outerKeys)
+                        && splitCondition(c.getRight(), conditions, innerKeys, outerKeys);
+            }
+        }
+        if (condition.accept(ExpressionVisitorFactory.getCorrelationVisitor(false))) {
+            conditions.add(condition);
+            return true;
+        }
+        if (condition instanceof Comparison) {
+            Comparison c = (Comparison) condition;
+            if (c.getCompareType() != Comparison.EQUAL || c.getRight() == null)
+                return false;
+            Expression left = c.getLeft(), right = c.getRight();
+            if (isInner(left) && isOuter(right)) {
+                innerKeys.add(left);
+                outerKeys.add(right);
+                return true;
+            } else if (isInner(right) && isOuter(left)) {
+                innerKeys.add(right);
+                outerKeys.add(left);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInner(Expression e) {
+        return e.accept(ExpressionVisitorFactory.getCorrelationVisitor(false));
+    }
+
+    private static boolean isOuter(Expression e) {
+        return e.accept(ExpressionVisitorFactory.getCorrelationVisitor(true));
+    }
+
+    // hash表中的key要跟Comparison的结果一致，equals跟compareTo不一致的类型(比如DECIMAL)不能用
+    private static boolean isHashable(Database db, int type) {
+        switch (type) {
+        case Value.BOOLEAN:
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIMESTAMP:
+        case Value.UUID:
+            return true;
+        case Value.STRING:
+            return CompareMode.OFF.equals(db.getCompareMode().getName());
+        default:
+            return false;
+        }
+    }
+
+    private boolean isValid(ServerSession session) {
+        Value[] params = getParameterValues();
+        Database db = session.getDatabase();
+        for (int i = 0; i < params.length; i++) {
+            Value a = lastParameters[i], b = params[i];
+            if (a.getType() != b.getType() || !db.areEqual(a, b)) {
+                return false;
+            }
+        }
+        long now = db.getModificationDataId();
+        if (now != lastModificationId) {
+            // 只有子查询用到的表被修改过hash表才失效
+            if (hashQuery.getMaxDataModificationId() > lastModificationId)
+                return false;
+            lastModificationId = now;
+        }
+        return true;
+    }
+
+    private Value[] getParameterValues() {
+        int size = parameters.length;
+        Value[] params = new Value[size];
+        for (int i = 0; i < size; i++) {
+            params[i] = parameters[i].getValue();
+        }
+        return params;
+    }
+
+    // SQL中的参数是按序号输出的(?1、?2)，所以新的参数按序号找回原来的参数
+    private void bindParameters(TreeMap<Integer, Parameter> sources) {
+        ArrayList<Parameter> targets = new ArrayList<>();
+        ArrayList<Parameter> list = hashQuery.getParameters();
+        if (list != null) {
+            for (Parameter p : list) {
+                Parameter source = sources.get(p.getIndex());
+                // 序号中间空出来的那些参数没有被用到，但是执行前会检查所有参数是否已经设置
+                if (source == null)
+                    p.setValue(ValueNull.INSTANCE);
+                else if (!targets.contains(p))
+                    targets.add(p);
+            }
+        }
+        int size = targets.size();
+        boundTargets = targets.toArray(new Parameter[size]);
+        boundSources = new Parameter[size];
+        for (int i = 0; i < size; i++) {
+            boundSources[i] = sources.get(boundTargets[i].getIndex());
+        }
+    }
+
+    private boolean build(ServerSession session) {
+        Database db = session.getDatabase();
+        lastModificationId = db.getModificationDataId();
+        lastParameters = getParameterValues();
+        for (int i = 0; i < boundTargets.length; i++) {
+            boundTargets[i].setValue(boundSources[i].getValue());
+        }
+        int keyCount = keyTypes.length;
+        // hash表中只有关联列和IN的值，比LocalResult中的一行小得多，所以可以比maxMemoryRows多很多
+        long maxEntries = (long) db.getMaxMemoryRows() * 100;
+        long entries = 0;
+        HashMap<Value, Group> table = new HashMap<>();
+        hashQuery.setSession(session);
+        Result result = hashQuery.query(0);
+        try {
+            while (result.next()) {
+                Value[] row = result.currentRow();
+                Value key = getKey(row);
+                if (key == null)
+                    continue;
+                Group group = table.get(key);
+                if (group == null) {
+                    group = new Group();
+                    table.put(key, group);
+                    entries++;
+                }
+                if (in) {
+                    Value v = row[keyCount];
+                    if (v == ValueNull.INSTANCE) {
+                        group.hasNull = true;
+                    } else if (valueType != Value.NULL) {
+                        if (group.values == null)
+                            group.values = new HashSet<>();
+                        if (group.values.add(v.convertTo(valueType)))
+                            entries++;
+                    }
+                }
+                // hash表太大时占用的内存太多，还是逐行执行子查询
+                if (entries > maxEntries)
+                    return false;
+            }
+        } catch (DbException e) {
+            // 类型转换失败时交给逐行执行的方式去报告错误
+            return false;
+        } finally {
+            result.close();
+        }
+        this.table = table;
+        return true;
+    }
+
+    private static class Group {
+        HashSet<Value> values;
+        boolean hasNull;
+    }
+
+    // 按序号收集表达式中用到的参数，同一个参数可能出现多次
+    private static class ParametersVisitor extends VoidExpressionVisitor {
+
+        private final TreeMap<Integer, Parameter> parameters = new TreeMap<>();
+
+        Parameter[] getParameters() {
+            return parameters.values().toArray(new Parameter[parameters.size()]);
+        }
+
+        void visit(ArrayList<Expression> list) {
+            for (Expression e : list)
+                e.accept(this);
+        }
+
+        private void visit(Expression e) {
+            if (e != null)
+                e.accept(this);
+        }
+
+        @Override
+        public Void visitParameter(Parameter e) {
+            parameters.put(e.getIndex(), e);
+            return null;
+        }
+
+        @Override
+        protected Void visitQuery(Query query) {
+            super.visitQuery(query);
+            visit(query.getLimit());
+            visit(query.getOffset());
+            visit(query.getSampleSize());
+            for (TableFilter f : query.getFilters()) {
+                visit(f.getJoinCondition());
+                visit(f.getFilterCondition());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.expression.visitor;
+
+import org.lealone.sql.expression.ExpressionColumn;
+import org.lealone.sql.expression.Parameter;
+import org.lealone.sql.expression.Rownum;
+import org.lealone.sql.expression.SequenceValue;
+import org.lealone.sql.expression.Variable;
+
+/**
+ * 用来拆分关联子查询中的条件。
+ *
+ * outer为false时，判断表达式是否只引用了子查询自己的列，这样的表达式可以单独放到一个新的查询中执行，
+ * 所以不能有ROWNUM、序列和变量，参数可以有，新的查询执行前会绑定原来参数的值；
+ * outer为true时，判断表达式是否只引用了外层查询的列，这样的表达式可以直接在外层查询的每一行上求值。
+ */
+public class CorrelationVisitor extends BooleanExpressionVisitor {
+
+    private final boolean outer;
+
+    public CorrelationVisitor(boolean outer) {
+        this.outer = outer;
+    }
+
+    @Override
+    public Boolean visitExpressionColumn(ExpressionColumn e) {
+        if (outer)
+            return e.getQueryLevel() > getQueryLevel();
+        else
+            return e.getQueryLevel() <= getQueryLevel();
+    }
+
+    @Override
+    public Boolean visitParameter(Parameter e) {
+        return true;
+    }
+
+    @Override
+    public Boolean visitRownum(Rownum e) {
+        return false;
+    }
+
+    @Override
+    public Boolean visitSequenceValue(SequenceValue e) {
+        return false;
+    }
+
+    @Override
+    public Boolean visitVariable(Variable e) {
+        return outer;
+    }
+
+    @Override
+    protected ExpressionVisitorBase<Boolean> copy() {
+        return new CorrelationVisitor(outer);
+    }
+}
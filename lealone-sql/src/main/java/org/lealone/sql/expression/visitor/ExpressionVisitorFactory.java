@@ -49,6 +49,17 @@ public class ExpressionVisitorFactory {
         return new NotFromResolverVisitor(resolver);
     }
 
+    /**
+     * Create a new visitor to check if an expression of a correlated subquery
+     * only depends on the subquery itself (outer is false) or only on the outer queries (outer is true).
+     *
+     * @param outer whether only columns of the outer queries are allowed
+     * @return the new visitor
+     */
+    public static CorrelationVisitor getCorrelationVisitor(boolean outer) {
+        return new CorrelationVisitor(outer);
+    }
+
     /**
      * The visitor singleton for the type QUERY_COMPARABLE.
      */
@@ -31,4 +31,9 @@ public class IndependentVisitor extends BooleanExpressionVisitor {
     public Boolean visitSequenceValue(SequenceValue e) {
         return false;
     }
+
+    @Override
+    protected ExpressionVisitorBase<Boolean> copy() {
+        return new IndependentVisitor();
+    }
 }
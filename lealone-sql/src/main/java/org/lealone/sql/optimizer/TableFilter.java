@@ -28,6 +28,7 @@ import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueLong;
 import org.lealone.db.value.ValueNull;
 import org.lealone.sql.IExpression;
+import org.lealone.sql.executor.ExecutionProfile.FilterProfile;
 import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.condition.Comparison;
 import org.lealone.sql.expression.condition.ConditionAndOr;
@@ -111,6 +112,9 @@ public class TableFilter extends ColumnResolverBase {
 
     private int[] columnIndexes;
 
+    // 只在EXPLAIN ANALYZE时设置
+    private FilterProfile profile;
+
     /**
      * Create a new table filter object.
      *
@@ -320,9 +324,22 @@ public class TableFilter extends ColumnResolverBase {
      * @return true if there are
      */
     public boolean next() {
+        if (profile == null)
+            return nextRow();
+        long start = System.nanoTime();
+        boolean found = nextRow();
+        profile.timeNanos += System.nanoTime() - start;
+        if (found)
+            profile.rows++;
+        return found;
+    }
+
+    private boolean nextRow() {
         if (state == AFTER_LAST) {
             return false;
         } else if (state == BEFORE_FIRST) {
+            if (profile != null)
+                profile.lookups++;
             cursor.find(session, indexConditions);
             if (!cursor.isAlwaysFalse()) {
                 if (nestedJoin != null) {
@@ -355,6 +372,8 @@ public class TableFilter extends ColumnResolverBase {
                     checkTimeout();
                 }
                 if (cursor.next()) {
+                    if (profile != null)
+                        profile.rowsRead++;
                     currentSearchRow = cursor.getSearchRow();
                     current = null;
                     state = FOUND;
@@ -448,6 +467,10 @@ public class TableFilter extends ColumnResolverBase {
         this.currentSearchRow = current;
     }
 
+    public void setProfile(FilterProfile profile) {
+        this.profile = profile;
+    }
+
     /**
      * Get the table alias name. If no alias is specified, the table name is
      * returned.
@@ -0,0 +1,423 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.DbObject;
+import org.lealone.db.index.Cursor;
+import org.lealone.db.index.standard.VersionedValue;
+import org.lealone.db.result.Row;
+import org.lealone.db.session.ServerSession;
+import org.lealone.db.table.Column;
+import org.lealone.db.table.StandardTable;
+import org.lealone.db.table.Table;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueArray;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.PreparedSQLStatement;
+import org.lealone.sql.expression.Expression;
+import org.lealone.sql.expression.aggregate.Aggregate;
+import org.lealone.sql.expression.aggregate.BuiltInAggregate;
+import org.lealone.sql.expression.visitor.ExpressionVisitorFactory;
+import org.lealone.sql.optimizer.TableFilter;
+import org.lealone.transaction.Transaction;
+import org.lealone.transaction.Transaction.Change;
+
+/**
+ * 把基表的变更增量应用到物化视图。
+ *
+ * 只支持单表上的过滤查询和简单的聚合查询(GROUP BY加上COUNT、SUM)。
+ * 过滤查询的视图表直接用基表记录的rowKey作为自己的rowKey，删除时可以直接定位到视图表中的记录；
+ * 聚合查询在内存中维护每个分组的行数和SUM参数的非NULL值个数，用来判断分组是否为空以及SUM的结果是否为NULL，
+ * 这些状态在数据库重启后需要通过一次全量刷新重建。
+ */
+class IncrementalRefresher {
+
+    private static final int GROUP_COLUMN = -1;
+
+    private final MaterializedView view;
+    private final StandardTable table;
+    private final int tableVersion;
+    private final TableFilter filter;
+    private final Expression condition;
+    private final Expression[] expressions; // 视图表每个字段对应的表达式
+    private final int[] aggregateTypes;
+    private final Expression[] groupExpressions; // 不是聚合查询时为null
+    private final int[] allColumnIds;
+
+    private final HashMap<ValueArray, Group> groups = new HashMap<>();
+    private final LinkedHashSet<Group> changedGroups = new LinkedHashSet<>();
+    private long nextKey = 1;
+
+    IncrementalRefresher(MaterializedView view, ServerSession session) {
+        this.view = view;
+        PreparedSQLStatement p = session.prepareStatement(view.getQuerySQL(), true);
+        if (!(p instanceof Select))
+            throw getUnsupportedException(view);
+        Select select = (Select) p;
+        if (select.getFilters().size() != 1 || select.isDistinct() || select.getLimit() != null
+                || select.getOffset() != null || select.getSampleSize() != null
+                || select.havingIndex >= 0 || !select.isDeterministic()
+                || !select.getParameters().isEmpty())
+            throw getUnsupportedException(view);
+        filter = select.getTopTableFilter();
+        Table t = filter.getTable();
+        if (!(t instanceof StandardTable) || t instanceof MaterializedView)
+            throw getUnsupportedException(view);
+        table = (StandardTable) t;
+        // 条件中不能有引用其他表的子查询
+        HashSet<DbObject> dependencies = new HashSet<>();
+        select.accept(ExpressionVisitorFactory.getDependenciesVisitor(dependencies));
+        for (DbObject obj : dependencies) {
+            if (obj instanceof Table && obj != table)
+                throw getUnsupportedException(view);
+        }
+        tableVersion = table.getVersion();
+        condition = select.getCondition();
+
+        int columnCount = select.getColumnCount();
+        ArrayList<Expression> list = select.getExpressions();
+        expressions = new Expression[columnCount];
+        aggregateTypes = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            Expression e = list.get(i).getNonAliasExpression();
+            expressions[i] = e;
+            aggregateTypes[i] = GROUP_COLUMN;
+            if (!select.isGroupQuery())
+                continue;
+            if (select.groupByExpression != null && select.groupByExpression[i])
+                continue;
+            if (!(e instanceof BuiltInAggregate))
+                throw getUnsupportedException(view);
+            BuiltInAggregate a = (BuiltInAggregate) e;
+            int type = a.getAggregateType();
+            if (a.isDistinct() || (type != Aggregate.COUNT_ALL && type != Aggregate.COUNT
+                    && type != Aggregate.SUM))
+                throw getUnsupportedException(view);
+            aggregateTypes[i] = type;
+        }
+        if (select.isGroupQuery()) {
+            int[] groupIndex = select.groupIndex;
+            int size = groupIndex == null ? 0 : groupIndex.length;
+            groupExpressions = new Expression[size];
+            for (int i = 0; i < size; i++) {
+                groupExpressions[i] = list.get(groupIndex[i]);
+            }
+        } else {
+            groupExpressions = null;
+        }
+        allColumnIds = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            allColumnIds[i] = i;
+        }
+    }
+
+    private static DbException getUnsupportedException(MaterializedView view) {
+        return DbException.getUnsupportedException("incremental refresh of " + view.getQuerySQL());
+    }
+
+    StandardTable getTable() {
+        return table;
+    }
+
+    // 扫描基表，重建视图表和分组状态，
+    // polled是已经从队列中取出来但还没有应用的变更，它们跟队列中的变更一样可能已经被扫描看到了，
+    // 队列中的变更也会取出来放到polled中。返回false表示没法判断哪些变更被看到了，需要重新扫描
+    boolean load(ServerSession session, List<List<Change>> polled) {
+        // 没有GROUP BY的聚合查询就算基表为空也有一条记录
+        if (groupExpressions != null && groupExpressions.length == 0)
+            getGroup(session, ValueArray.get(new Value[0]));
+        LoadTracker tracker = new LoadTracker();
+        view.loadTracker = tracker;
+        try {
+            for (List<Change> list : polled)
+                tracker.register(list);
+            for (List<Change> list : view.pendingChanges)
+                tracker.register(list);
+            Cursor cursor = table.getScanIndex(session).find(session, null, null);
+            while (cursor.next()) {
+                Row row = cursor.get();
+                tracker.onRow(row.getKey(), row.getValueList());
+                applyRow(session, row.getKey(), row.getValueList(), 1);
+            }
+            tracker.finish();
+        } finally {
+            view.loadTracker = null;
+        }
+        for (List<Change> list; (list = view.pollPendingChanges()) != null;)
+            polled.add(list);
+        if (table.getVersion() != tableVersion)
+            return false;
+        List<Change> changes = tracker.removeVisibleChanges(polled, tableVersion);
+        if (changes == null)
+            return false;
+        applyChanges(session, changes);
+        writeChangedGroups(session);
+        return true;
+    }
+
+    // 返回false表示只能全量刷新了，此时还没有修改视图表
+    boolean apply(ServerSession session, List<Change> changes) {
+        // 基表的字段变了
+        if (table.getVersion() != tableVersion)
+            return false;
+        for (Transaction.Change c : changes) {
+            if (!isCurrentVersion(c.oldValue) || !isCurrentVersion(c.newValue))
+                return false;
+        }
+        applyChanges(session, changes);
+        writeChangedGroups(session);
+        return true;
+    }
+
+    private void applyChanges(ServerSession session, List<Change> changes) {
+        for (Transaction.Change c : changes) {
+            long key = getKey(c);
+            if (c.oldValue != null)
+                applyRow(session, key, getValueList(c.oldValue), -1);
+            if (c.newValue != null)
+                applyRow(session, key, getValueList(c.newValue), 1);
+        }
+    }
+
+    private static long getKey(Change c) {
+        return ((Value) c.key).getLong();
+    }
+
+    private static Value[] getValueList(Object value) {
+        return value == null ? null : ((VersionedValue) value).value.getList();
+    }
+
+    private boolean isCurrentVersion(Object value) {
+        return isCurrentVersion(value, tableVersion);
+    }
+
+    private static boolean isCurrentVersion(Object value, int tableVersion) {
+        return value == null || ((VersionedValue) value).version == tableVersion;
+    }
+
+    private void applyRow(ServerSession session, long key, Value[] data, int sign) {
+        Row row = new Row(data, 0);
+        row.setKey(key);
+        filter.set(row);
+        if (condition != null && !condition.getBooleanValue(session))
+            return;
+        if (groupExpressions == null)
+            applyFilterRow(session, key, sign);
+        else
+            applyGroupRow(session, sign);
+    }
+
+    private void applyFilterRow(ServerSession session, long key, int sign) {
+        // rowKey为0时主索引会自动分配一个新的rowKey，所以换成一个基表用不到的值
+        if (key == 0)
+            key = Long.MIN_VALUE;
+        Row old = view.findRow(session, key);
+        if (old != null)
+            check(view.removeRow(session, old, false).get());
+        if (sign > 0) {
+            Column[] columns = view.getColumns();
+            Value[] values = new Value[expressions.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns[i].convert(expressions[i].getValue(session));
+            }
+            Row row = new Row(values, Row.MEMORY_CALCULATE);
+            row.setKey(key);
+            check(view.addRow(session, row).get());
+        }
+    }
+
+    private void applyGroupRow(ServerSession session, int sign) {
+        Value[] keyValues = new Value[groupExpressions.length];
+        for (int i = 0; i < keyValues.length; i++) {
+            keyValues[i] = groupExpressions[i].getValue(session);
+        }
+        Group g = getGroup(session, ValueArray.get(keyValues));
+        g.rowCount += sign;
+        for (int i = 0; i < expressions.length; i++) {
+            switch (aggregateTypes[i]) {
+            case Aggregate.COUNT_ALL:
+                g.values[i] = ValueLong.get(g.values[i].getLong() + sign);
+                break;
+            case Aggregate.COUNT: {
+                Value v = ((BuiltInAggregate) expressions[i]).getOn().getValue(session);
+                if (v != ValueNull.INSTANCE)
+                    g.values[i] = ValueLong.get(g.values[i].getLong() + sign);
+                break;
+            }
+            case Aggregate.SUM: {
+                Value v = ((BuiltInAggregate) expressions[i]).getOn().getValue(session);
+                if (v == ValueNull.INSTANCE)
+                    break;
+                v = v.convertTo(expressions[i].getType());
+                g.nonNullCounts[i] += sign;
+                if (g.nonNullCounts[i] == 0)
+                    g.values[i] = ValueNull.INSTANCE;
+                else if (g.values[i] == ValueNull.INSTANCE)
+                    g.values[i] = sign > 0 ? v : v.negate();
+                else
+                    g.values[i] = sign > 0 ? g.values[i].add(v) : g.values[i].subtract(v);
+                break;
+            }
+            }
+        }
+        changedGroups.add(g);
+    }
+
+    private Group getGroup(ServerSession session, ValueArray groupKey) {
+        Group g = groups.get(groupKey);
+        if (g == null) {
+            g = new Group(groupKey, expressions.length);
+            for (int i = 0; i < expressions.length; i++) {
+                switch (aggregateTypes[i]) {
+                case GROUP_COLUMN:
+                    // 分组字段对同一个分组里的所有记录都一样
+                    g.values[i] = expressions[i].getValue(session);
+                    break;
+                case Aggregate.COUNT_ALL:
+                case Aggregate.COUNT:
+                    g.values[i] = ValueLong.get(0);
+                    break;
+                default:
+                    g.values[i] = ValueNull.INSTANCE;
+                }
+            }
+            groups.put(groupKey, g);
+            changedGroups.add(g);
+        }
+        return g;
+    }
+
+    private void writeChangedGroups(ServerSession session) {
+        Column[] columns = view.getColumns();
+        for (Group g : changedGroups) {
+            Row old = g.key == 0 ? null : view.findRow(session, g.key);
+            if (g.rowCount <= 0 && groupExpressions.length > 0) {
+                groups.remove(g.groupKey);
+                if (old != null)
+                    check(view.removeRow(session, old, false).get());
+                continue;
+            }
+            Value[] values = new Value[g.values.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns[i].convert(g.values[i]);
+            }
+            Row row = new Row(values, Row.MEMORY_CALCULATE);
+            if (old != null) {
+                row.setKey(g.key);
+                check(view.updateRow(session, old, row, allColumnIds, false).get());
+            } else {
+                g.key = nextKey++;
+                row.setKey(g.key);
+                check(view.addRow(session, row).get());
+            }
+        }
+        changedGroups.clear();
+    }
+
+    // 用户用SELECT FOR UPDATE锁住了视图表的记录时不能等，直接放弃这次增量刷新
+    private void check(Integer result) {
+        if (result == null || result.intValue() != Transaction.OPERATION_COMPLETE)
+            throw DbException.getUnsupportedException("refresh locked rows of " + view.getSQL());
+    }
+
+    /**
+     * 全量刷新时基表的扫描和事务提交是并发的，扫描到一条记录时读到的可能是变更前的值，也可能是变更后的值。
+     * 提交事务时先通知CommitListener再让其他事务看到新值，所以扫描经过某个rowKey之后才登记的变更肯定没有被看到；
+     * 对于扫描经过之前就登记了的变更，记下扫描时读到的记录，再跟这些变更前后的值比较，就知道哪些变更已经被看到了。
+     */
+    static class LoadTracker {
+
+        // 登记过的变更，值为true表示登记时扫描还没有经过它的rowKey
+        private final IdentityHashMap<Change, Boolean> registered = new IdentityHashMap<>();
+        private final HashSet<Long> keys = new HashSet<>();
+        // 扫描时读到的记录，只记录登记过的rowKey，没读到的说明扫描时记录不存在
+        private final HashMap<Long, Value[]> rows = new HashMap<>();
+        private long position = Long.MIN_VALUE; // 扫描到哪个rowKey了，主索引是按rowKey顺序扫描的
+
+        synchronized void register(List<Change> changes) {
+            for (Change c : changes) {
+                if (registered.containsKey(c))
+                    continue;
+                long key = getKey(c);
+                boolean beforeScan = key > position;
+                registered.put(c, beforeScan);
+                if (beforeScan)
+                    keys.add(key);
+            }
+        }
+
+        synchronized void onRow(long key, Value[] data) {
+            position = key;
+            if (keys.contains(key))
+                rows.put(key, data);
+        }
+
+        synchronized void finish() {
+            position = Long.MAX_VALUE;
+        }
+
+        // 按提交顺序返回还没有被扫描看到的变更，返回null表示扫描读到的记录跟变更对不上
+        List<Change> removeVisibleChanges(List<List<Change>> lists, int tableVersion) {
+            ArrayList<Change> changes = new ArrayList<>();
+            HashMap<Long, ArrayList<Change>> candidates = new HashMap<>();
+            for (List<Change> list : lists) {
+                for (Change c : list) {
+                    // 基表的字段变化之前提交的变更扫描时肯定已经看到了
+                    if (!isCurrentVersion(c.oldValue, tableVersion)
+                            || !isCurrentVersion(c.newValue, tableVersion))
+                        continue;
+                    changes.add(c);
+                    if (registered.get(c) == Boolean.TRUE)
+                        candidates.computeIfAbsent(getKey(c), k -> new ArrayList<>()).add(c);
+                }
+            }
+            Set<Change> visible = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Map.Entry<Long, ArrayList<Change>> e : candidates.entrySet()) {
+                ArrayList<Change> list = e.getValue();
+                Value[] row = rows.get(e.getKey());
+                // 同一个rowKey的变更是按提交顺序排列的，找到扫描读到的那个值，它和它之前的变更都被看到了
+                int i = list.size();
+                while (i > 0 && !Arrays.equals(getValueList(list.get(i - 1).newValue), row))
+                    i--;
+                // 比如之前的增量刷新已经取走了一个还没完成提交的变更
+                if (i == 0 && !Arrays.equals(getValueList(list.get(0).oldValue), row))
+                    return null;
+                for (int j = 0; j < i; j++)
+                    visible.add(list.get(j));
+            }
+            changes.removeIf(visible::contains);
+            return changes;
+        }
+    }
+
+    private static class Group {
+
+        final ValueArray groupKey;
+        final Value[] values;
+        final long[] nonNullCounts;
+        long rowCount;
+        long key; // 视图表中对应记录的rowKey，0表示还没有写入视图表
+
+        Group(ValueArray groupKey, int columnCount) {
+            this.groupKey = groupKey;
+            values = new Value[columnCount];
+            nonNullCounts = new long[columnCount];
+        }
+    }
+}
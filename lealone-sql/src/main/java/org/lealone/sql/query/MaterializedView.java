@@ -0,0 +1,272 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.common.util.StatementBuilder;
+import org.lealone.db.api.Trigger;
+import org.lealone.db.index.Cursor;
+import org.lealone.db.lock.DbObjectLock;
+import org.lealone.db.result.Result;
+import org.lealone.db.result.Row;
+import org.lealone.db.session.ServerSession;
+import org.lealone.db.table.Column;
+import org.lealone.db.table.CreateTableData;
+import org.lealone.db.table.StandardTable;
+import org.lealone.db.value.Value;
+import org.lealone.storage.StorageEngine;
+import org.lealone.transaction.Transaction;
+import org.lealone.transaction.Transaction.Change;
+
+/**
+ * 物化视图，查询的结果保存在一张真实的表中。
+ *
+ * 普通的物化视图只在执行REFRESH MATERIALIZED VIEW时重新计算，
+ * 增量刷新的物化视图会监听基表对应的map，事务提交时把合并后的undo log放到队列中，
+ * 下次查询物化视图时再应用到视图表，这样写基表的事务不需要等待视图表的更新。
+ *
+ * 从创建开始就一直监听基表，全量刷新时扫描基表和事务提交是并发的，
+ * 所以队列中的变更有可能已经被扫描看到了，这些变更不能再应用一次，见IncrementalRefresher.load。
+ *
+ * 长时间不查询物化视图时队列会一直变大，所以队列中的变更个数超过MATERIALIZED_VIEW_MAX_PENDING_CHANGES时
+ * 就丢弃队列，下次查询时做一次全量刷新。
+ */
+public class MaterializedView extends StandardTable implements Transaction.CommitListener {
+
+    private final String querySQL;
+    private final boolean incremental;
+
+    // 已经提交但还没有应用到视图表的基表变更，每个元素对应一个事务
+    final ConcurrentLinkedQueue<List<Change>> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingChangeCount = new AtomicInteger();
+    private volatile long pendingModificationId;
+    // 队列中的变更被丢弃了，下次查询时要全量刷新
+    private volatile boolean needFullRefresh;
+
+    // 监听哪张基表，跟refresher分开，全量刷新期间也要继续监听
+    private volatile StandardTable baseTable;
+
+    // 全量刷新扫描基表期间不为null，用来判断哪些变更已经被扫描看到了
+    volatile IncrementalRefresher.LoadTracker loadTracker;
+
+    // 为null时说明还没有初始化增量刷新需要的状态(比如数据库刚启动)，下次访问时先做一次全量刷新
+    private volatile IncrementalRefresher refresher;
+
+    public MaterializedView(CreateTableData data, StorageEngine storageEngine, String querySQL,
+            boolean incremental) {
+        super(data, storageEngine);
+        this.querySQL = querySQL;
+        this.incremental = incremental;
+        if (incremental) {
+            try {
+                baseTable = new IncrementalRefresher(this, data.session).getTable();
+            } catch (DbException e) {
+                // 比如查询依赖的对象还没有创建，等第一次刷新时再确定
+            }
+            database.addCommitListener(this);
+        }
+    }
+
+    public String getQuerySQL() {
+        return querySQL;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    @Override
+    public String getCreateSQL() {
+        StatementBuilder buff = new StatementBuilder("CREATE MATERIALIZED VIEW ");
+        buff.append(getSQL());
+        buff.append("(\n    ");
+        for (Column column : columns) {
+            buff.appendExceptFirst(",\n    ");
+            buff.append(column.getCreateSQL());
+        }
+        buff.append("\n)");
+        if (incremental) {
+            buff.append(" INCREMENTAL");
+        }
+        buff.append(" AS\n").append(querySQL);
+        return buff.toString();
+    }
+
+    @Override
+    public String getDropSQL() {
+        return "DROP MATERIALIZED VIEW IF EXISTS " + getSQL();
+    }
+
+    @Override
+    public boolean canTruncate() {
+        return false;
+    }
+
+    @Override
+    public long getMaxDataModificationId() {
+        // 还有没应用的变更时让查询缓存失效
+        return Math.max(super.getMaxDataModificationId(), pendingModificationId);
+    }
+
+    @Override
+    public void fire(ServerSession session, int type, boolean beforeAction) {
+        if (beforeAction) {
+            if ((type & Trigger.SELECT) == 0) {
+                // 视图表只能通过REFRESH MATERIALIZED VIEW或增量刷新修改
+                throw DbException.getUnsupportedException("DML on materialized view " + getSQL());
+            }
+            if (incremental)
+                applyPendingChanges();
+        }
+        super.fire(session, type, beforeAction);
+    }
+
+    @Override
+    public void removeChildrenAndResources(ServerSession session, DbObjectLock lock) {
+        if (incremental)
+            database.removeCommitListener(this);
+        refresher = null;
+        baseTable = null;
+        pendingChanges.clear();
+        pendingChangeCount.set(0);
+        super.removeChildrenAndResources(session, lock);
+    }
+
+    @Override
+    public boolean isListening(String mapName) {
+        StandardTable t = baseTable;
+        return t != null && t.isDataMap(mapName);
+    }
+
+    @Override
+    public void onCommit(List<Change> changes) {
+        // 先入队再登记，全量刷新开始时也会登记队列中已有的变更，这样不会漏掉
+        pendingChanges.add(changes);
+        IncrementalRefresher.LoadTracker tracker = loadTracker;
+        if (tracker != null)
+            tracker.register(changes);
+        if (pendingChangeCount.addAndGet(changes.size()) > database
+                .getSettings().materializedViewMaxPendingChanges)
+            discardPendingChanges(changes);
+        pendingModificationId = database.getNextModificationDataId();
+    }
+
+    // 先标记再丢弃，正在进行的全量刷新会漏掉被丢弃的变更，不过下次查询时会再全量刷新一次。
+    // 当前事务还没有完成提交，扫描基表时可能看不到它的变更，所以它的变更要留在队列中
+    private void discardPendingChanges(List<Change> current) {
+        needFullRefresh = true;
+        boolean keepCurrent = false;
+        for (List<Change> list; (list = pollPendingChanges()) != null;) {
+            if (list == current)
+                keepCurrent = true;
+        }
+        if (keepCurrent) {
+            pendingChanges.add(current);
+            pendingChangeCount.addAndGet(current.size());
+        }
+    }
+
+    List<Change> pollPendingChanges() {
+        List<Change> list = pendingChanges.poll();
+        if (list != null)
+            pendingChangeCount.addAndGet(-list.size());
+        return list;
+    }
+
+    /**
+     * Recompute the whole view.
+     */
+    public synchronized void refresh() {
+        refresh(true);
+    }
+
+    // 在查询物化视图之前把已经提交的基表变更应用到视图表
+    private void applyPendingChanges() {
+        if (refresher != null && pendingChanges.isEmpty() && !needFullRefresh)
+            return;
+        synchronized (this) {
+            refresh(false);
+        }
+    }
+
+    // 视图表的修改都在一个新的session中完成并马上提交，不受当前session的事务影响
+    private void refresh(boolean full) {
+        ServerSession session = database.createSession(getSchema().getOwner());
+        try {
+            if (incremental)
+                refreshIncrementally(session, full);
+            else
+                recompute(session);
+            session.commit();
+        } catch (Throwable t) {
+            session.rollback();
+            throw DbException.convert(t);
+        } finally {
+            session.close();
+        }
+    }
+
+    private void refreshIncrementally(ServerSession session, boolean full) {
+        IncrementalRefresher r = refresher;
+        ArrayList<List<Change>> polled = new ArrayList<>();
+        if (!full && r != null && !needFullRefresh) {
+            ArrayList<Change> changes = new ArrayList<>();
+            for (List<Change> list; (list = pollPendingChanges()) != null;) {
+                polled.add(list);
+                changes.addAll(list);
+            }
+            try {
+                if (r.apply(session, changes))
+                    return;
+            } catch (DbException e) {
+                // 应用到一半失败了，内存中的分组状态已经不可靠，回滚后做一次全量刷新
+                session.rollback();
+            }
+        }
+        refresher = null;
+        // 在扫描基表之前清除，扫描期间又丢弃了变更时还会再全量刷新一次
+        needFullRefresh = false;
+        // 已经取出来的变更也可能还没被扫描看到，交给load一起判断，判断不了时再扫描一次
+        for (int retry = 0;; retry++) {
+            // 先编译再清空视图表，编译失败时视图表中的数据还能继续用
+            r = new IncrementalRefresher(this, session);
+            // 要在扫描基表之前开始监听
+            baseTable = r.getTable();
+            super.truncate(session);
+            if (r.load(session, polled))
+                break;
+            if (retry > 0)
+                throw DbException.getInternalError("failed to refresh " + getSQL());
+        }
+        refresher = r;
+    }
+
+    private void recompute(ServerSession session) {
+        Query query = (Query) session.prepareStatement(querySQL, true);
+        Result result = query.query(0);
+        super.truncate(session);
+        while (result.next()) {
+            Value[] values = result.currentRow();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns[i].convert(values[i]);
+            }
+            addRow(session, new Row(values, Row.MEMORY_CALCULATE)).get();
+        }
+        result.close();
+    }
+
+    Row findRow(ServerSession session, long key) {
+        Row search = getTemplateRow();
+        search.setKey(key);
+        Cursor cursor = getScanIndex(session).find(session, search, search);
+        return cursor.next() ? cursor.get() : null;
+    }
+}
@@ -26,6 +26,7 @@ import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueInt;
 import org.lealone.db.value.ValueNull;
 import org.lealone.sql.dml.ManipulationStatement;
+import org.lealone.sql.executor.ExecutionProfile;
 import org.lealone.sql.executor.YieldableBase;
 import org.lealone.sql.expression.Alias;
 import org.lealone.sql.expression.Expression;
@@ -78,6 +79,8 @@ public abstract class Query extends ManipulationStatement implements org.lealone
     protected SortOrder sort;
     protected boolean isPrepared, checkInit;
     protected boolean isForUpdate;
+    // 只在EXPLAIN ANALYZE时设置
+    protected ExecutionProfile profile;
 
     Query(ServerSession session) {
         super(session);
@@ -298,6 +301,10 @@ public abstract class Query extends ManipulationStatement implements org.lealone
         this.sampleSizeExpr = sampleSize;
     }
 
+    public Expression getSampleSize() {
+        return sampleSizeExpr;
+    }
+
     /**
      * Get the sample size, if set.
      *
@@ -324,6 +331,18 @@ public abstract class Query extends ManipulationStatement implements org.lealone
 
     public abstract List<TableFilter> getFilters();
 
+    /**
+     * 让查询在执行时收集每个查询操作和每个TableFilter的实际执行情况。
+     *
+     * @param profile the profile, or null to stop profiling
+     */
+    public void setProfile(ExecutionProfile profile) {
+        this.profile = profile;
+        for (TableFilter f : getFilters()) {
+            f.setProfile(profile == null ? null : profile.addFilter(f));
+        }
+    }
+
     public abstract List<TableFilter> getTopFilters();
 
     @Override
@@ -25,6 +25,7 @@ import org.lealone.db.value.Value;
 import org.lealone.sql.ISelectUnion;
 import org.lealone.sql.PreparedSQLStatement;
 import org.lealone.sql.SQLStatement;
+import org.lealone.sql.executor.ExecutionProfile;
 import org.lealone.sql.executor.YieldableBase;
 import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.ExpressionColumn;
@@ -227,6 +228,13 @@ public class SelectUnion extends Query implements ISelectUnion {
         right.fireBeforeSelectTriggers();
     }
 
+    @Override
+    public void setProfile(ExecutionProfile profile) {
+        this.profile = profile;
+        left.setProfile(profile);
+        right.setProfile(profile);
+    }
+
     @Override
     public List<TableFilter> getFilters() {
         List<TableFilter> filters = left.getFilters();
@@ -14,6 +14,7 @@ import org.lealone.db.result.ResultTarget;
 import org.lealone.db.session.SessionStatus;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueNull;
+import org.lealone.sql.executor.ExecutionProfile.OperatorProfile;
 import org.lealone.sql.operator.Operator;
 import org.lealone.sql.operator.OperatorFactory;
 
@@ -24,6 +25,7 @@ public class YieldableSelect extends YieldableQueryBase {
     private final int olapThreshold;
     private Operator queryOperator;
     private boolean olapDisabled;
+    private OperatorProfile profile;
 
     public YieldableSelect(Select select, int maxRows, boolean scrollable,
             AsyncHandler<AsyncResult<Result>> asyncHandler, ResultTarget target) {
@@ -77,6 +79,8 @@ public class YieldableSelect extends YieldableQueryBase {
         select.fireBeforeSelectTriggers();
         queryOperator = createQueryOperator();
         queryOperator.start();
+        if (select.profile != null)
+            profile = select.profile.addOperator(queryOperator.getClass().getSimpleName());
         return false;
     }
 
@@ -89,7 +93,11 @@ public class YieldableSelect extends YieldableQueryBase {
 
     @Override
     protected void executeInternal() {
-        queryOperator.run();
+        if (profile != null) {
+            runWithProfile();
+        } else {
+            queryOperator.run();
+        }
         if (queryOperator.isStopped()) {
             // 查询结果已经增加到target了
             if (target != null) {
@@ -102,12 +110,33 @@ public class YieldableSelect extends YieldableQueryBase {
         }
     }
 
+    private void runWithProfile() {
+        long start = System.nanoTime();
+        if (profile.runs > 0)
+            profile.yieldWaitNanos += start - profile.lastRunEndNanos;
+        profile.runs++;
+        queryOperator.run();
+        profile.lastRunEndNanos = System.nanoTime();
+        profile.timeNanos += profile.lastRunEndNanos - start;
+        // 可能已经从oltp转到olap了
+        profile.name = queryOperator.getClass().getSimpleName();
+        if (queryOperator instanceof QOperator) {
+            QOperator q = (QOperator) queryOperator;
+            profile.rows = q.rowCount;
+            profile.loops = q.loopCount;
+        } else if (queryOperator.getLocalResult() != null) {
+            profile.rows = queryOperator.getLocalResult().getRowCount();
+        }
+    }
+
     private QOperator createQueryOperator() {
         LocalResult result;
         ResultTarget to;
         QOperator queryOperator;
         int limitRows = getLimitRows(maxRows);
-        LocalResult cachedResult = select.resultCache.getResult(maxRows); // 不直接用limitRows
+        // 做EXPLAIN ANALYZE时要真正执行一次，不使用缓存的结果
+        LocalResult cachedResult = select.profile != null ? null
+                : select.resultCache.getResult(maxRows); // 不直接用limitRows
         if (cachedResult != null) {
             result = cachedResult;
             to = cachedResult;
@@ -0,0 +1,55 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aose;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class ARTMapSqlTest extends SqlTestBase {
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS ARTMapSqlTest");
+        executeUpdate("CREATE MEMORY TABLE ARTMapSqlTest(id int primary key, name varchar,"
+                + " score double, amount decimal(10,2)) PARAMETERS(mapType='ART')");
+        executeUpdate("CREATE INDEX ARTMapSqlTest_name ON ARTMapSqlTest(name)");
+        // DECIMAL不能编码成可比较的字节数组，这个索引还是用BTreeMap
+        executeUpdate("CREATE INDEX ARTMapSqlTest_amount ON ARTMapSqlTest(amount)");
+        for (int i = 1; i <= 200; i++) {
+            executeUpdate("INSERT INTO ARTMapSqlTest VALUES(" + i + ", 'n" + (i % 10) + "', " + i
+                    + ".5, " + (i % 7) + ")");
+        }
+
+        sql = "SELECT name FROM ARTMapSqlTest WHERE id = 123";
+        assertEquals("n3", getStringValue(1, true));
+        sql = "SELECT count(*) FROM ARTMapSqlTest WHERE id >= 50 AND id < 100";
+        assertEquals(50, getIntValue(1, true));
+        sql = "SELECT count(*) FROM ARTMapSqlTest WHERE name = 'n5'";
+        assertEquals(20, getIntValue(1, true));
+        sql = "SELECT count(*) FROM ARTMapSqlTest WHERE amount = 3";
+        assertEquals(29, getIntValue(1, true));
+        sql = "SELECT id FROM ARTMapSqlTest ORDER BY id DESC LIMIT 1";
+        assertEquals(200, getIntValue(1, true));
+        sql = "SELECT min(name), max(name) FROM ARTMapSqlTest";
+        assertEquals("n0", getStringValue(1));
+        assertEquals("n9", getStringValue(2, true));
+
+        executeUpdate("UPDATE ARTMapSqlTest SET name = 'x' WHERE id <= 10");
+        sql = "SELECT count(*) FROM ARTMapSqlTest WHERE name = 'x'";
+        assertEquals(10, getIntValue(1, true));
+        executeUpdate("DELETE FROM ARTMapSqlTest WHERE name = 'n5'");
+        sql = "SELECT count(*) FROM ARTMapSqlTest";
+        assertEquals(181, getIntValue(1, true));
+
+        conn.setAutoCommit(false);
+        executeUpdate("INSERT INTO ARTMapSqlTest VALUES(1000, 'n1000', 0, 0)");
+        executeUpdate("DELETE FROM ARTMapSqlTest WHERE id = 1");
+        conn.rollback();
+        conn.setAutoCommit(true);
+        sql = "SELECT count(*) FROM ARTMapSqlTest WHERE id = 1000 OR id = 1";
+        assertEquals(1, getIntValue(1, true));
+    }
+}
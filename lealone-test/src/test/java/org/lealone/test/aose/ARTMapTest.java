@@ -0,0 +1,158 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aose;
+
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.lealone.db.index.standard.ValueDataType;
+import org.lealone.db.result.SortOrder;
+import org.lealone.db.value.CompareMode;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueArray;
+import org.lealone.db.value.ValueInt;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueString;
+import org.lealone.storage.StorageMapCursor;
+import org.lealone.storage.aose.art.ARTMap;
+
+public class ARTMapTest extends AoseTestBase {
+
+    private final Random random = new Random(1);
+
+    @Test
+    public void run() throws Exception {
+        init();
+        testLongKeys();
+        testValueArrayKeys();
+        testConcurrentRead();
+    }
+
+    // 跟TreeMap的结果对比
+    private void testLongKeys() {
+        ARTMap<ValueLong, String> map = storage.openARTMap("ARTMapTest_long", null, null);
+        map.clear();
+        TreeMap<ValueLong, String> expected = new TreeMap<>((a, b) -> Long.compare(a.getLong(), b.getLong()));
+        for (int i = 0; i < 20000; i++) {
+            ValueLong key = ValueLong.get(random.nextInt(5000) - 2500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = "v" + i;
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.firstKey(), map.firstKey());
+        assertEquals(expected.lastKey(), map.lastKey());
+        for (int i = -2600; i < 2600; i += 7) {
+            ValueLong key = ValueLong.get(i);
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.lowerKey(key), map.lowerKey(key));
+            assertEquals(expected.floorKey(key), map.floorKey(key));
+            assertEquals(expected.higherKey(key), map.higherKey(key));
+            assertEquals(expected.ceilingKey(key), map.ceilingKey(key));
+        }
+        ValueLong from = ValueLong.get(-100);
+        StorageMapCursor<ValueLong, String> cursor = map.cursor(from);
+        for (Entry<ValueLong, String> e : expected.tailMap(from).entrySet()) {
+            assertTrue(cursor.hasNext());
+            assertEquals(e.getKey(), cursor.next());
+            assertEquals(e.getValue(), cursor.getValue());
+        }
+        assertFalse(cursor.hasNext());
+
+        assertTrue(map.replace(expected.firstKey(), expected.firstEntry().getValue(), "new"));
+        assertFalse(map.replace(expected.firstKey(), "old", "new2"));
+        assertEquals("new", map.get(expected.firstKey()));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.firstKey());
+        assertFalse(map.cursor().hasNext());
+    }
+
+    // 多字段的key，包括字符串和降序字段
+    private void testValueArrayKeys() {
+        CompareMode compareMode = CompareMode.getInstance(null, 0, false);
+        ValueDataType keyType = new ValueDataType(null, compareMode,
+                new int[] { SortOrder.ASCENDING, SortOrder.DESCENDING, SortOrder.ASCENDING });
+        ARTMap<ValueArray, String> map = storage.openARTMap("ARTMapTest_array", keyType, null);
+        map.clear();
+        TreeMap<ValueArray, String> expected = new TreeMap<>(keyType::compare);
+        for (int i = 0; i < 5000; i++) {
+            ValueArray key = ValueArray.get(new Value[] { ValueString.get("k" + random.nextInt(50)),
+                    ValueInt.get(random.nextInt(100)), ValueLong.get(i % 3) });
+            String value = "v" + i;
+            assertEquals(expected.put(key, value), map.put(key, value));
+        }
+        assertEquals(expected.size(), map.size());
+        StorageMapCursor<ValueArray, String> cursor = map.cursor();
+        for (ValueArray key : expected.keySet()) {
+            assertTrue(cursor.hasNext());
+            assertEquals(0, keyType.compare(key, cursor.next()));
+        }
+        assertFalse(cursor.hasNext());
+
+        // 只有前面的字段时按前缀查找
+        ValueArray from = ValueArray.get(new Value[] { ValueString.get("k3"), null, null });
+        assertEquals(0, keyType.compare(expected.ceilingKey(from), map.ceilingKey(from)));
+        assertEquals(0, keyType.compare(expected.lowerKey(from), map.lowerKey(from)));
+    }
+
+    // 读线程在写线程修改树的同时读，已经存在的key总是能读到
+    private void testConcurrentRead() throws Exception {
+        ARTMap<ValueLong, String> map = storage.openARTMap("ARTMapTest_concurrent", null, null);
+        map.clear();
+        for (int i = 0; i < 1000; i++) {
+            map.put(ValueLong.get(i * 2), "v" + i);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                Random r = new Random();
+                while (!stop.get() && error.get() == null) {
+                    int i = r.nextInt(1000);
+                    if (!("v" + i).equals(map.get(ValueLong.get(i * 2))))
+                        error.set("key " + i * 2 + " not found");
+                    long last = Long.MIN_VALUE;
+                    int count = 0;
+                    StorageMapCursor<ValueLong, String> cursor = map.cursor();
+                    while (cursor.hasNext()) {
+                        long k = cursor.next().getLong();
+                        if (k <= last)
+                            error.set("wrong order: " + last + ", " + k);
+                        if (k % 2 == 0)
+                            count++;
+                        last = k;
+                    }
+                    if (count != 1000)
+                        error.set("expected 1000 even keys, but got " + count);
+                }
+            });
+            readers[t].start();
+        }
+        Random r = new Random();
+        for (int i = 0; i < 50000; i++) {
+            ValueLong key = ValueLong.get(r.nextInt(2000) * 2 + 1);
+            if (r.nextBoolean())
+                map.put(key, "odd");
+            else
+                map.remove(key);
+        }
+        stop.set(true);
+        for (Thread t : readers) {
+            t.join();
+        }
+        assertNull(error.get());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aose;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.lealone.common.util.Utils;
+import org.lealone.db.index.standard.UniqueKeyDataType;
+import org.lealone.db.index.standard.ValueDataType;
+import org.lealone.db.result.SortOrder;
+import org.lealone.db.value.CompareMode;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueArray;
+import org.lealone.db.value.ValueDouble;
+import org.lealone.db.value.ValueInt;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
+import org.lealone.db.value.ValueString;
+import org.lealone.storage.StorageMapCursor;
+import org.lealone.storage.aose.btree.BTreeMap;
+
+public class ComparableKeyTest extends AoseTestBase {
+
+    private final Random random = new Random(1);
+    private final CompareMode compareMode = CompareMode.getInstance(null, 0, false);
+
+    @Test
+    public void run() {
+        testCompare();
+        testPrefixCompressedPage();
+        testWrites();
+    }
+
+    // 按字节比较的结果必须跟compare方法一样
+    private void testCompare() {
+        int[][] sortTypes = { { 0, 0, 0, 0 }, { SortOrder.DESCENDING, 0, SortOrder.DESCENDING, 0 },
+                { SortOrder.NULLS_LAST, SortOrder.DESCENDING | SortOrder.NULLS_FIRST, 0, 0 } };
+        for (int[] st : sortTypes) {
+            ValueDataType[] types = { new ValueDataType(null, compareMode, st),
+                    new UniqueKeyDataType(null, compareMode, st) };
+            for (ValueDataType type : types) {
+                for (int i = 0; i < 10000; i++) {
+                    ValueArray a = randomKey();
+                    ValueArray b = randomKey();
+                    int expected = Integer.signum(type.compare(a, b));
+                    int actual = Utils.compareNotNullUnsigned(type.getComparableBytes(a),
+                            type.getComparableBytes(b));
+                    assertEquals(expected, actual);
+                }
+            }
+        }
+    }
+
+    private ValueArray randomKey() {
+        Value[] values = new Value[1 + random.nextInt(4)];
+        for (int i = 0; i < values.length; i++) {
+            if (random.nextInt(10) == 0) {
+                values[i] = ValueNull.INSTANCE;
+                continue;
+            }
+            switch (i) {
+            case 0:
+                values[i] = ValueInt.get(random.nextInt(7) - 3);
+                break;
+            case 1:
+                StringBuilder buff = new StringBuilder();
+                for (int j = random.nextInt(4); j > 0; j--)
+                    buff.append("a\u0000é￿".charAt(random.nextInt(4)));
+                values[i] = ValueString.get(buff.toString());
+                break;
+            case 2:
+                double[] d = { -0.0, 0.0, 1.5, -2, Double.NaN };
+                values[i] = ValueDouble.get(d[random.nextInt(d.length)]);
+                break;
+            default:
+                values[i] = ValueLong.get(random.nextInt(5));
+            }
+        }
+        if (random.nextInt(20) == 0)
+            values[random.nextInt(values.length)] = null; // 查找时用到的null
+        return ValueArray.get(values);
+    }
+
+    // 同一个page中的key有很长的公共前缀，写到硬盘后再读回来要一样
+    private void testPrefixCompressedPage() {
+        init();
+        ValueDataType keyType = new ValueDataType(null, compareMode, new int[] { 0, 0, 0 });
+        ValueDataType valueType = new ValueDataType(null, null, null);
+        String mapName = "ComparableKeyTest";
+        BTreeMap<ValueArray, Value> map = storage.openBTreeMap(mapName, keyType, valueType, null);
+        map.clear();
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            map.put(getKey(i), ValueInt.get(i));
+        }
+        map.save();
+        map.close();
+
+        map = storage.openBTreeMap(mapName, keyType, valueType, null);
+        StorageMapCursor<ValueArray, Value> cursor = map.cursor();
+        while (cursor.hasNext())
+            cursor.next();
+        long memory = map.getMemorySpaceUsed();
+        for (int i = 0; i < count; i++) {
+            assertEquals(ValueInt.get(i), map.get(getKey(i)));
+        }
+        // 查找时生成的可以按字节比较的key也算在缓存占用的内存中
+        assertTrue(map.getMemorySpaceUsed() > memory);
+        cursor = map.cursor();
+        ValueArray last = null;
+        int size = 0;
+        while (cursor.hasNext()) {
+            ValueArray key = cursor.next();
+            if (last != null)
+                assertTrue(keyType.compare(last, key) < 0);
+            last = key;
+            size++;
+        }
+        assertEquals(count, size);
+        map.remove();
+    }
+
+    // 查找过的页面在插入、删除、split时增量更新编码，结果要跟重新编码一样
+    private void testWrites() {
+        init();
+        ValueDataType keyType = new ValueDataType(null, compareMode, new int[] { 0, 0, 0 });
+        ValueDataType valueType = new ValueDataType(null, null, null);
+        String mapName = "ComparableKeyTest2";
+        BTreeMap<ValueArray, Value> map = storage.openBTreeMap(mapName, keyType, valueType, null);
+        map.clear();
+        TreeMap<Integer, Value> expected = new TreeMap<>();
+        for (int n = 0; n < 20000; n++) {
+            int i = random.nextInt(5000);
+            switch (random.nextInt(3)) {
+            case 0:
+                map.put(getKey(i), ValueInt.get(n));
+                expected.put(i, ValueInt.get(n));
+                break;
+            case 1:
+                map.remove(getKey(i));
+                expected.remove(i);
+                break;
+            default:
+                assertEquals(expected.get(i), map.get(getKey(i)));
+            }
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(expected.get(i), map.get(getKey(i)));
+        }
+        assertEquals(expected.size(), map.size());
+        map.remove();
+    }
+
+    private static ValueArray getKey(int i) {
+        return ValueArray.get(new Value[] { ValueString.get("customer-group-" + (i / 1000)),
+                ValueString.get("customer-name-" + i), ValueLong.get(i) });
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aose;
+
+import org.junit.Test;
+import org.lealone.storage.aose.AOStorage;
+import org.lealone.storage.aose.hash.HashMap;
+import org.lealone.storage.type.ObjectDataType;
+
+public class HashMapTest extends AoseTestBase {
+    @Test
+    public void run() {
+        AOStorage storage = AOStorageTest.openStorage();
+        HashMap<Integer, String> map = storage.openHashMap("HashMapTest", new ObjectDataType(),
+                new ObjectDataType(), null);
+        map.clear();
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            buff.append('a');
+        String value = buff.toString();
+        for (int i = 1; i <= 1000; i++)
+            map.put(i, value);
+        assertEquals(value, map.get(500));
+        // 哈希表常驻内存，除了BTreeMap的页面缓存，哈希表中所有的key和value也要算上
+        long used = map.getMemorySpaceUsed() - map.getBTreeMap().getMemorySpaceUsed();
+        assertTrue(used >= 1000L * value.length());
+
+        for (int i = 1; i <= 1000; i++)
+            map.remove(i);
+        assertNull(map.get(500));
+        assertTrue(map.getMemorySpaceUsed() - map.getBTreeMap().getMemorySpaceUsed() < 1000L * 12 * 4);
+        storage.close();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aose;
+
+import org.junit.Test;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.test.sql.SqlTestBase;
+
+public class LSMMapSqlTest extends SqlTestBase {
+
+    @Test
+    public void run() throws Exception {
+        // 主键还是用BTreeMap，二级索引用LSMMap
+        testTable("LSMMapSqlTest_index", "PARAMETERS(indexMapType='LSMMap')");
+        // 主键和二级索引都用LSMMap
+        testTable("LSMMapSqlTest_all", "PARAMETERS(mapType='LSMMap')");
+    }
+
+    private void testTable(String table, String parameters) throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS " + table);
+        executeUpdate("CREATE TABLE " + table + "(id int primary key, name varchar, code int,"
+                + " amount decimal(10,2)) " + parameters);
+        executeUpdate("CREATE INDEX " + table + "_name ON " + table + "(name)");
+        executeUpdate("CREATE UNIQUE INDEX " + table + "_code ON " + table + "(code)");
+        executeUpdate("CREATE INDEX " + table + "_amount ON " + table + "(amount)");
+        for (int i = 1; i <= 300; i++) {
+            executeUpdate("INSERT INTO " + table + " VALUES(" + i + ", 'n" + (i % 10) + "', " + i
+                    + ", " + (i % 7) + ")");
+            // 生成多个run
+            if (i % 100 == 50)
+                executeUpdate("CHECKPOINT");
+        }
+
+        sql = "SELECT count(*) FROM " + table + " WHERE name = 'n5'";
+        assertEquals(30, getIntValue(1, true));
+        sql = "SELECT id FROM " + table + " WHERE code = 123";
+        assertEquals(123, getIntValue(1, true));
+        // 1.00和1相等
+        sql = "SELECT count(*) FROM " + table + " WHERE amount = 3.00";
+        assertEquals(43, getIntValue(1, true));
+        sql = "SELECT count(*) FROM " + table + " WHERE code >= 50 AND code < 100";
+        assertEquals(50, getIntValue(1, true));
+        sql = "SELECT min(name), max(name) FROM " + table;
+        assertEquals("n0", getStringValue(1));
+        assertEquals("n9", getStringValue(2, true));
+        executeUpdateThanAssertErrorCode("INSERT INTO " + table + " VALUES(1000, 'x', 10, 0)",
+                ErrorCode.DUPLICATE_KEY_1);
+
+        executeUpdate("INSERT INTO " + table + " VALUES(500, 'n500', 500, 5)");
+        executeUpdate("UPDATE " + table + " SET name = 'x' WHERE id <= 10");
+        executeUpdate("DELETE FROM " + table + " WHERE name = 'n5'");
+        executeUpdate("CHECKPOINT");
+        sql = "SELECT count(*) FROM " + table + " WHERE name = 'x'";
+        assertEquals(10, getIntValue(1, true));
+        sql = "SELECT count(*) FROM " + table + " WHERE name = 'n5'";
+        assertEquals(0, getIntValue(1, true));
+        sql = "SELECT count(*) FROM " + table;
+        assertEquals(272, getIntValue(1, true));
+        sql = "SELECT id FROM " + table + " WHERE code = 500";
+        assertEquals(500, getIntValue(1, true));
+        sql = "SELECT id FROM " + table + " WHERE name = 'n500'";
+        assertEquals(500, getIntValue(1, true));
+
+        conn.setAutoCommit(false);
+        executeUpdate("INSERT INTO " + table + " VALUES(1000, 'n1000', 1000, 0)");
+        executeUpdate("UPDATE " + table + " SET code = 2000 WHERE id = 20");
+        executeUpdate("CHECKPOINT");
+        conn.rollback();
+        conn.setAutoCommit(true);
+        sql = "SELECT count(*) FROM " + table + " WHERE code = 1000 OR code = 2000";
+        assertEquals(0, getIntValue(1, true));
+        sql = "SELECT id FROM " + table + " WHERE code = 20";
+        assertEquals(20, getIntValue(1, true));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aose;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.lealone.storage.StorageMapCursor;
+import org.lealone.storage.aose.lsm.LSMMap;
+
+public class LSMMapTest extends AoseTestBase {
+
+    private static final String MAP_NAME = "LSMMapTest";
+
+    private final Random random = new Random(1);
+    private final TreeMap<Integer, String> expected = new TreeMap<>();
+    private LSMMap<Integer, String> map;
+
+    @Test
+    public void run() {
+        init();
+        testReadWrite();
+        testReopen();
+        testCursorDuringCompaction();
+        testClear();
+    }
+
+    private LSMMap<Integer, String> openLSMMap() {
+        HashMap<String, String> parameters = new HashMap<>();
+        parameters.put("compactThreshold", "3");
+        return storage.openLSMMap(MAP_NAME, null, null, parameters);
+    }
+
+    private int getRunCount() {
+        String[] files = new File(storage.getStoragePath(), MAP_NAME).list();
+        int count = 0;
+        for (String f : files) {
+            if (f.endsWith(".db"))
+                count++;
+        }
+        return count;
+    }
+
+    private void randomWrite(int count, int saveInterval) {
+        for (int i = 0; i < count; i++) {
+            Integer key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = "v" + i;
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            if (i % saveInterval == saveInterval - 1)
+                map.save();
+        }
+    }
+
+    // 跟TreeMap的结果对比，中间多次save，会生成多个run并触发合并
+    private void testReadWrite() {
+        map = openLSMMap();
+        map.clear();
+        randomWrite(20000, 1000);
+        check();
+        // 大小相近的run达到3个就合并
+        assertTrue(getRunCount() < 10);
+
+        Integer first = expected.firstKey();
+        assertEquals(expected.get(first), map.putIfAbsent(first, "new"));
+        assertTrue(map.replace(first, expected.get(first), "new"));
+        assertFalse(map.replace(first, "old", "new2"));
+        expected.put(first, "new");
+        Integer absent = 10000;
+        assertNull(map.putIfAbsent(absent, "absent"));
+        expected.put(absent, "absent");
+        map.save();
+        check();
+    }
+
+    // 重新打开后数据还在，删除标记也还在
+    private void testReopen() {
+        map.close();
+        assertTrue(map.isClosed());
+        map = openLSMMap();
+        check();
+        randomWrite(5000, 1000);
+        map.close();
+        map = openLSMMap();
+        check();
+    }
+
+    // 游标遍历时run被合并删除了，游标从上一次返回的key之后继续遍历
+    private void testCursorDuringCompaction() {
+        StorageMapCursor<Integer, String> cursor = map.cursor();
+        int count = 0;
+        Integer last = null;
+        while (cursor.hasNext() && count < 100) {
+            last = cursor.next();
+            count++;
+        }
+        // 只增加和修改大于5000的key，多次save后游标正在读的run也会被合并
+        for (int i = 0; i < 30; i++) {
+            for (int j = 0; j < 200; j++) {
+                Integer key = 5000 + random.nextInt(5000);
+                String value = "c" + i;
+                map.put(key, value);
+                expected.put(key, value);
+            }
+            map.save();
+        }
+        for (Integer key : expected.tailMap(last, false).keySet()) {
+            if (key >= 5000)
+                break;
+            assertTrue(cursor.hasNext());
+            assertEquals(key, cursor.next());
+            assertEquals(expected.get(key), cursor.getValue());
+        }
+        check();
+    }
+
+    private void testClear() {
+        map.clear();
+        expected.clear();
+        check();
+        assertEquals(0, getRunCount());
+        map.put(1, "a");
+        map.save();
+        map.close();
+        map = openLSMMap();
+        assertEquals("a", map.get(1));
+        assertEquals(1, map.size());
+        map.remove();
+    }
+
+    private void check() {
+        assertEquals(expected.size(), map.size());
+        if (expected.isEmpty()) {
+            assertNull(map.firstKey());
+            assertNull(map.lastKey());
+            assertFalse(map.cursor().hasNext());
+            return;
+        }
+        assertEquals(expected.firstKey(), map.firstKey());
+        assertEquals(expected.lastKey(), map.lastKey());
+        for (int i = -10; i < 10020; i += 7) {
+            Integer key = i;
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.lowerKey(key), map.lowerKey(key));
+            assertEquals(expected.floorKey(key), map.floorKey(key));
+            assertEquals(expected.higherKey(key), map.higherKey(key));
+            assertEquals(expected.ceilingKey(key), map.ceilingKey(key));
+        }
+        Integer from = 2500;
+        StorageMapCursor<Integer, String> cursor = map.cursor(from);
+        for (Entry<Integer, String> e : expected.tailMap(from).entrySet()) {
+            assertTrue(cursor.hasNext());
+            assertEquals(e.getKey(), cursor.next());
+            assertEquals(e.getValue(), cursor.getValue());
+        }
+        assertFalse(cursor.hasNext());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aose;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.lealone.common.util.IOUtils;
+import org.lealone.db.LocalDataHandler;
+import org.lealone.db.value.ValueLob;
+import org.lealone.storage.aose.AOStorage;
+import org.lealone.storage.aose.lob.LobBlobStore;
+import org.lealone.storage.aose.lob.LobStreamStorage;
+import org.lealone.storage.fs.FileUtils;
+
+public class LobBlobStoreTest extends AoseTestBase {
+    @Test
+    public void run() throws Exception {
+        AOStorage storage = AOStorageTest.openStorage();
+        LobStreamStorage lobStorage = new LobStreamStorage(new LocalDataHandler(), storage);
+        lobStorage.init();
+        LobBlobStore blobStore = lobStorage.getLobStreamMap().getBlobStore();
+        assertNotNull(blobStore);
+        blobStore.setMaxFileSize(256 * 1024); // 设置小一点可以测试文件的切换和删除
+
+        long usedBytes = blobStore.getUsedBytes();
+        byte[] data = new byte[1024 * 1024];
+        new Random(1).nextBytes(data);
+        ValueLob lob = lobStorage.createBlob(new ByteArrayInputStream(data), -1);
+        // 每个256K的数据块都放到blob文件中
+        assertEquals(usedBytes + data.length, blobStore.getUsedBytes());
+
+        InputStream in = lobStorage.getInputStream(lob, null, 0);
+        assertTrue(Arrays.equals(data, IOUtils.toByteArray(in)));
+
+        // 跳过的部分不用读
+        in = lobStorage.getInputStream(lob, null, 0);
+        assertEquals(300000, in.skip(300000));
+        byte[] bytes = new byte[10];
+        assertEquals(10, in.read(bytes));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 300000, 300010), bytes));
+        in.close();
+
+        long fileCount = blobStore.getFileCount();
+        lobStorage.removeLob(lob);
+        assertEquals(usedBytes, blobStore.getUsedBytes());
+        // 删除引用的操作保存之后才删除文件
+        assertEquals(fileCount, blobStore.getFileCount());
+        assertTrue(blobStore.getPendingDeleteCount() > 0);
+        storage.save();
+        assertEquals(0, blobStore.getPendingDeleteCount());
+        assertTrue(blobStore.getFileCount() < fileCount);
+
+        // 文件id比fileMap中最大的id还大的文件没有被引用，重新打开时删除
+        String orphanFile = storage.getStoragePath() + File.separator + "lobBlob" + File.separator
+                + "blob_" + Integer.MAX_VALUE + ".data";
+        FileUtils.newOutputStream(orphanFile, false).close();
+        storage.close();
+        assertTrue(FileUtils.exists(orphanFile));
+
+        storage = AOStorageTest.openStorage();
+        lobStorage = new LobStreamStorage(new LocalDataHandler(), storage);
+        lobStorage.init();
+        assertFalse(FileUtils.exists(orphanFile));
+        storage.close();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aose;
+
+import org.junit.Test;
+import org.lealone.storage.aose.btree.BTreeMap;
+
+public class PageCacheTest extends AoseTestBase {
+    @Test
+    public void run() {
+        init(true);
+        BTreeMap<Integer, String> map2 = storage.openBTreeMap("PageCacheTest2");
+        map2.clear();
+        int count = 1000;
+        for (int i = 1; i <= count; i++) {
+            map.put(i, "value-" + i);
+            map2.put(i, "value2-" + i);
+        }
+        map.save();
+        map2.save();
+        map.close();
+        map2.close();
+
+        // 重新打开后页面要从硬盘读取，两个map的页面放到同一个缓存中，但是统计数据是分开的
+        openMap();
+        map2 = storage.openBTreeMap("PageCacheTest2");
+        long misses2 = map2.getCacheMisses();
+        long memory2 = map2.getMemorySpaceUsed();
+        for (int i = 1; i <= count; i++) {
+            assertEquals("value-" + i, map.get(i));
+        }
+        assertTrue(map.getCacheMisses() > 0);
+        assertTrue(map.getMemorySpaceUsed() > 0);
+        assertEquals(misses2, map2.getCacheMisses());
+        assertEquals(memory2, map2.getMemorySpaceUsed());
+
+        for (int i = 1; i <= count; i++) {
+            assertEquals("value2-" + i, map2.get(i));
+        }
+        assertTrue(map2.getCacheMisses() > misses2);
+        assertTrue(map2.getMemorySpaceUsed() > memory2);
+        assertEquals(map.getBTreeStorage().getCacheSize(), map2.getBTreeStorage().getCacheSize());
+
+        // 关闭后当前map的页面要从共享缓存中删除，不影响另一个map
+        long memory = map.getMemorySpaceUsed();
+        map2.close();
+        assertEquals(0, map2.getMemorySpaceUsed());
+        assertEquals(memory, map.getMemorySpaceUsed());
+        map2 = storage.openBTreeMap("PageCacheTest2");
+        map2.remove();
+        map.remove();
+    }
+}
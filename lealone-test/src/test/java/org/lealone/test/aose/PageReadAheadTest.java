@@ -0,0 +1,42 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aose;
+
+import org.junit.Test;
+import org.lealone.storage.CursorParameters;
+import org.lealone.storage.StorageMapCursor;
+import org.lealone.storage.aose.btree.page.PageReader;
+
+public class PageReadAheadTest extends AoseTestBase {
+    @Test
+    public void run() {
+        init(true);
+        int count = 10000;
+        for (int i = 1; i <= count; i++) {
+            map.put(i, "value-" + i);
+        }
+        map.save();
+        map.close();
+
+        // 重新打开后leaf page要从硬盘读取，范围扫描时后面的leaf page会被预读
+        openMap();
+        PageReader reader = PageReader.getInstance(map.getConfig());
+        long readCount = reader.getReadCount();
+        StorageMapCursor<Integer, String> cursor = map.cursor(CursorParameters.create(count / 2));
+        int key = count / 2;
+        while (cursor.hasNext()) {
+            assertEquals(key, cursor.next().intValue());
+            assertEquals("value-" + key, cursor.getValue());
+            key++;
+        }
+        assertEquals(count + 1, key);
+        assertTrue(reader.getReadCount() > readCount);
+
+        // 预读过的page已经在缓存中，从头开始扫描时结果也不会变
+        assertEquals(map.cursor(CursorParameters.create((Integer) null)), count);
+        map.remove();
+    }
+}
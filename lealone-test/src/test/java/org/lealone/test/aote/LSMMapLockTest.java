@@ -0,0 +1,68 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.aote;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.lealone.storage.StorageMap;
+import org.lealone.storage.type.ObjectDataType;
+import org.lealone.transaction.Transaction;
+import org.lealone.transaction.TransactionMap;
+
+// run中的记录被锁住后，就算它所在的block被缓存淘汰了，锁也不能丢
+public class LSMMapLockTest extends AoteTestBase {
+    @Test
+    public void run() {
+        String mapName = LSMMapLockTest.class.getSimpleName();
+        HashMap<String, String> parameters = new HashMap<>();
+        parameters.put("mapType", "LSMMap");
+        parameters.put("cacheSize", "1"); // 1M
+        parameters.put("pageSplitSize", "4096");
+
+        Transaction t = te.beginTransaction(false);
+        TransactionMap<Integer, String> map = t.openMap(mapName, new ObjectDataType(),
+                new ObjectDataType(), storage, parameters);
+        map.clear();
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            buff.append('a');
+        String value = buff.toString();
+        int count = 4000; // 大概4M，比缓存大得多
+        for (int i = 1; i <= count; i++)
+            map.put(i, value);
+        t.commit();
+        storage.save(); // 刷新到run中
+
+        Transaction t1 = te.beginTransaction(false);
+        TransactionMap<Integer, String> map1 = map.getInstance(t1);
+        assertEquals(Transaction.OPERATION_COMPLETE, map1.tryUpdate(1, "b"));
+
+        // 反复读后面的记录，让记录1所在的block被淘汰，记录2跟记录1在同一个block中
+        StorageMap<?, ?> storageMap = storage.getMap(mapName);
+        Transaction t2 = te.beginTransaction(false);
+        TransactionMap<Integer, String> map2 = map.getInstance(t2);
+        // 连续读两次才会成为LIRS缓存中的热数据，把原先的热数据挤出去
+        for (int n = 0; n < 2; n++) {
+            for (int i = 10; i <= count; i++) {
+                map2.get(i);
+                map2.get(i);
+            }
+        }
+        long misses = storageMap.getCacheMisses();
+        map2.get(2);
+        assertTrue(storageMap.getCacheMisses() > misses);
+
+        // 记录1还被t1锁住
+        assertTrue(map2.tryUpdate(1, "c") != Transaction.OPERATION_COMPLETE);
+        t2.rollback();
+        t1.commit();
+
+        Transaction t3 = te.beginTransaction(false);
+        assertEquals("b", map.getInstance(t3).get(1));
+        t3.commit();
+    }
+}
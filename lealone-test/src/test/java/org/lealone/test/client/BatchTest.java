@@ -19,6 +19,8 @@ public class BatchTest extends ClientTestBase {
         init();
         testStatementBatch();
         testPreparedStatementBatch();
+        testPreparedStatementBatchFailure();
+        testPreparedStatementBatchRollback();
         // testConcurrentBatch();
     }
 
@@ -70,6 +72,63 @@ public class BatchTest extends ClientTestBase {
         ps.close();
     }
 
+    // 某组参数执行失败时只有它自己的更新行数是EXECUTE_FAILED，其他组的修改照样提交
+    void testPreparedStatementBatchFailure() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BatchTest2");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BatchTest2(f1 int primary key, f2 int)");
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO BatchTest2(f1, f2) VALUES(?, ?)");
+        int count = 1000;
+        for (int i = 1; i <= count; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, i % 10);
+            ps.addBatch();
+        }
+        ps.setInt(1, 1); // 主键重复
+        ps.setInt(2, 1);
+        ps.addBatch();
+        ps.setInt(1, count + 1);
+        ps.setInt(2, 1);
+        ps.addBatch();
+        int[] result = ps.executeBatch();
+        assertEquals(count + 2, result.length);
+        assertEquals(1, result[0]);
+        assertEquals(Statement.EXECUTE_FAILED, result[count]);
+        assertEquals(1, result[count + 1]);
+        ps.close();
+        sql = "SELECT count(*) FROM BatchTest2";
+        assertEquals(count + 1, getIntValue(1, true));
+
+        ps = conn.prepareStatement("UPDATE BatchTest2 SET f2 = f2 + 10 WHERE f2 = ?");
+        for (int i = 0; i < 3; i++) {
+            ps.setInt(1, i);
+            ps.addBatch();
+        }
+        result = ps.executeBatch();
+        assertEquals(100, result[0]);
+        assertEquals(101, result[1]);
+        assertEquals(100, result[2]);
+        ps.close();
+    }
+
+    // 手动提交模式下批量更新跟普通语句一样属于当前事务
+    void testPreparedStatementBatchRollback() throws Exception {
+        sql = "SELECT count(*) FROM BatchTest2";
+        int count = getIntValue(1, true);
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO BatchTest2(f1, f2) VALUES(?, ?)");
+        for (int i = 1; i <= 10; i++) {
+            ps.setInt(1, -i);
+            ps.setInt(2, 0);
+            ps.addBatch();
+        }
+        assertEquals(10, ps.executeBatch().length);
+        ps.close();
+        conn.rollback();
+        conn.setAutoCommit(true);
+        sql = "SELECT count(*) FROM BatchTest2";
+        assertEquals(count, getIntValue(1, true));
+    }
+
     Connection getConn() {
         try {
             return getConnection(dbName);
@@ -0,0 +1,78 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.client;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.junit.Test;
+import org.lealone.client.jdbc.JdbcConnection;
+import org.lealone.db.ConnectionSetting;
+import org.lealone.db.Constants;
+
+public class ColumnarResultTest extends ClientTestBase {
+
+    public ColumnarResultTest() {
+        addConnectionParameter(ConnectionSetting.COLUMNAR_RESULT, "true");
+    }
+
+    @Test
+    public void run() throws Exception {
+        assertEquals(Constants.TCP_PROTOCOL_VERSION_3,
+                ((JdbcConnection) conn).getSession().getProtocolVersion());
+        stmt.executeUpdate("DROP TABLE IF EXISTS ColumnarResultTest");
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS ColumnarResultTest "
+                + "(f1 int primary key, f2 bigint, f3 varchar, f4 varchar, f5 int, f6 double)");
+        PreparedStatement ps = conn
+                .prepareStatement("INSERT INTO ColumnarResultTest VALUES(?, ?, ?, ?, ?, ?)");
+        for (int i = 1; i <= 500; i++) {
+            ps.setInt(1, i);
+            ps.setLong(2, -1000000007L * i);
+            ps.setString(3, "c" + (i % 5)); // 字典编码
+            ps.setString(4, "u" + i);
+            if (i % 3 == 0)
+                ps.setNull(5, Types.INTEGER);
+            else
+                ps.setInt(5, i);
+            ps.setDouble(6, i / 3.0);
+            ps.executeUpdate();
+        }
+        ps.close();
+        testQuery(100);
+        testQuery(33);
+        testQuery(1000);
+
+        ResultSet rs = stmt.executeQuery("SELECT NULL, f1 FROM ColumnarResultTest WHERE f1 < 3");
+        assertTrue(rs.next());
+        assertNull(rs.getObject(1));
+        rs.close();
+    }
+
+    private void testQuery(int fetchSize) throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.setFetchSize(fetchSize);
+        ResultSet rs = stmt.executeQuery("SELECT * FROM ColumnarResultTest ORDER BY f1");
+        int count = 0;
+        while (rs.next()) {
+            count++;
+            assertEquals(count, rs.getInt(1));
+            assertEquals(-1000000007L * count, rs.getLong(2));
+            assertEquals("c" + (count % 5), rs.getString(3));
+            assertEquals("u" + count, rs.getString(4));
+            int v = rs.getInt(5);
+            if (count % 3 == 0)
+                assertTrue(rs.wasNull());
+            else
+                assertEquals(count, v);
+            assertEquals(count / 3.0, rs.getDouble(6), 0.0);
+        }
+        assertEquals(500, count);
+        rs.close();
+        stmt.close();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.client;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.lealone.client.jdbc.JdbcStatement;
+import org.lealone.db.ConnectionSetting;
+
+public class MultiplexedSessionTest extends ClientTestBase {
+
+    public MultiplexedSessionTest() {
+        addConnectionParameter(ConnectionSetting.MAX_SHARED_SIZE, "20");
+    }
+
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("DROP TABLE IF EXISTS MultiplexedSessionTest");
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS MultiplexedSessionTest (f1 int primary key, f2 int)");
+        for (int i = 1; i <= 50; i++) {
+            stmt.executeUpdate("INSERT INTO MultiplexedSessionTest(f1, f2) VALUES(" + i + ", " + i + ")");
+        }
+
+        // 并发创建连接，同一个地址的会话会共享正在建立的TCP连接
+        int count = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        ArrayList<Future<Connection>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(executor.submit(() -> getConnection()));
+        }
+        ArrayList<Connection> conns = new ArrayList<>(count);
+        for (Future<Connection> f : futures) {
+            conns.add(f.get());
+        }
+        executor.shutdown();
+
+        // 每个会话不等响应连续发送多条查询
+        ArrayList<org.lealone.db.async.Future<ResultSet>> results = new ArrayList<>();
+        ArrayList<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            for (int j = 1; j <= 5; j++) {
+                JdbcStatement stmt = (JdbcStatement) conns.get(i).createStatement();
+                int id = (i * 5 + j) % 50 + 1;
+                results.add(stmt.executeQueryAsync(
+                        "SELECT f2 FROM MultiplexedSessionTest WHERE f1 = " + id));
+                expected.add(id);
+            }
+        }
+        for (int i = 0; i < results.size(); i++) {
+            ResultSet rs = results.get(i).get();
+            assertTrue(rs.next());
+            assertEquals(expected.get(i).intValue(), rs.getInt(1));
+            rs.close();
+        }
+        for (Connection conn : conns) {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.client;
+
+import org.junit.Test;
+import org.lealone.client.command.ClientPreparedSQLCommand;
+import org.lealone.test.TestBase;
+
+public class ParameterCountTest extends TestBase {
+
+    @Test
+    public void run() {
+        assertCount(0, "SELECT 1");
+        assertCount(2, "INSERT INTO t VALUES(?, ?)");
+        // 字符串、带引号的标识符和注释中的问号不是参数
+        assertCount(1, "SELECT '?', \"a?\", `b?` FROM t WHERE f = ?");
+        assertCount(1, "SELECT 'it''s ?' FROM t WHERE f = ?");
+        assertCount(1, "SELECT f FROM t -- ?\n WHERE f = ?");
+        assertCount(1, "SELECT f FROM t // ?\n WHERE f = ?");
+        assertCount(1, "SELECT f FROM t /* ? */ WHERE f = ?");
+
+        // 以下情况都要到服务器prepare
+        assertCount(-1, "SELECT ?1, ?2");
+        assertCount(-1, "SELECT $1");
+        assertCount(-1, "SELECT $$?$$");
+        assertCount(-1, "SELECT [a?] FROM t");
+        assertCount(-1, "SELECT ?; SELECT ?");
+        assertCount(-1, "SELECT 'abc");
+        assertCount(-1, "SELECT f FROM t /* ?");
+        // 反斜杠可能是转义字符，此时引号不一定是字符串的结尾
+        assertCount(-1, "SELECT 'a\\' , ?' FROM t WHERE f = ?");
+        assertCount(-1, "SELECT \"a\\\"?\" FROM t");
+        // 引号外的反斜杠不影响
+        assertCount(1, "SELECT f \\ 2 FROM t WHERE f = ?");
+    }
+
+    private static void assertCount(int expected, String sql) {
+        assertEquals(sql, expected, ClientPreparedSQLCommand.getParameterCount(sql));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.client;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.junit.Test;
+import org.lealone.db.ConnectionSetting;
+import org.lealone.db.api.ErrorCode;
+
+public class PreparedStatementCacheTest extends ClientTestBase {
+
+    public PreparedStatementCacheTest() {
+        addConnectionParameter(ConnectionSetting.PREPARED_STATEMENT_CACHE_SIZE, "2");
+    }
+
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("DROP TABLE IF EXISTS PreparedStatementCacheTest");
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS PreparedStatementCacheTest "
+                + "(f1 int primary key, f2 varchar)");
+        // 字符串和注释中的问号不是参数
+        PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO PreparedStatementCacheTest(f1, f2) VALUES(?, 'a?') -- ?\n");
+        for (int i = 1; i <= 10; i++) {
+            ps.setInt(1, i);
+            assertEquals(1, ps.executeUpdate());
+        }
+        ps.close();
+
+        // 每次都重新prepare同样的SQL，关闭后的语句会被复用
+        String sql = "SELECT count(*) FROM PreparedStatementCacheTest WHERE f1 > ? /* ? */";
+        for (int i = 0; i < 10; i++) {
+            ps = conn.prepareStatement(sql);
+            ps.setInt(1, i);
+            ResultSet rs = ps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(10 - i, rs.getInt(1));
+            rs.close();
+            ps.close();
+        }
+
+        // 复用的语句不能带着上次的参数值
+        ps = conn.prepareStatement(sql);
+        try {
+            ps.executeQuery();
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.PARAMETER_NOT_SET_1, e.getErrorCode());
+        }
+        assertEquals(Types.INTEGER, ps.getParameterMetaData().getParameterType(1));
+        ps.setInt(1, 5);
+        assertTrue(ps.execute());
+        ResultSet rs = ps.getResultSet();
+        assertTrue(rs.next());
+        assertEquals(5, rs.getInt(1));
+        ps.close();
+
+        // 超过缓存大小时最早放回的语句会被关闭
+        for (int i = 0; i < 4; i++) {
+            ps = conn.prepareStatement("SELECT f2 FROM PreparedStatementCacheTest WHERE f1 = " + i
+                    + " OR f1 = ?");
+            ps.setInt(1, 1);
+            rs = ps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals("a?", rs.getString(1));
+            ps.close();
+        }
+
+        // 带序号的参数要先到服务器prepare
+        ps = conn.prepareStatement("SELECT ?1 + ?1");
+        ps.setInt(1, 21);
+        rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(42, rs.getInt(1));
+        ps.close();
+
+        // 语法错误在第一次执行时才报告，并且每次执行都会报告
+        ps = conn.prepareStatement("SELEC * FROM PreparedStatementCacheTest WHERE f1 = ?");
+        ps.setInt(1, 1);
+        for (int i = 0; i < 2; i++) {
+            try {
+                ps.executeQuery();
+                fail();
+            } catch (SQLException e) {
+                assertEquals(ErrorCode.SYNTAX_ERROR_2, e.getErrorCode());
+            }
+        }
+        ps.close();
+    }
+}
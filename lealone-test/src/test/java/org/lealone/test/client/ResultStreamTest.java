@@ -0,0 +1,61 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.client;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.Test;
+import org.lealone.db.ConnectionSetting;
+
+public class ResultStreamTest extends ClientTestBase {
+
+    public ResultStreamTest() {
+        addConnectionParameter(ConnectionSetting.RESULT_STREAM_CREDITS, "3");
+    }
+
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("DROP TABLE IF EXISTS ResultStreamTest");
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS ResultStreamTest (f1 int primary key, f2 int)");
+        for (int i = 1; i <= 100; i++) {
+            stmt.executeUpdate("INSERT INTO ResultStreamTest(f1, f2) VALUES(" + i + ", " + i + ")");
+        }
+        testStream(10); // 刚好整批结束
+        testStream(7);
+        testEarlyClose();
+    }
+
+    private void testStream(int fetchSize) throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.setFetchSize(fetchSize);
+        ResultSet rs = stmt.executeQuery("SELECT f1 FROM ResultStreamTest ORDER BY f1");
+        int count = 0;
+        while (rs.next()) {
+            count++;
+            assertEquals(count, rs.getInt(1));
+        }
+        assertEquals(100, count);
+        rs.close();
+        stmt.close();
+    }
+
+    private void testEarlyClose() throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.setFetchSize(5);
+        ResultSet rs = stmt.executeQuery("SELECT f1 FROM ResultStreamTest");
+        for (int i = 0; i < 12; i++) {
+            assertTrue(rs.next());
+        }
+        rs.close();
+        // 连接还能正常使用
+        rs = stmt.executeQuery("SELECT count(*) FROM ResultStreamTest");
+        assertTrue(rs.next());
+        assertEquals(100, rs.getInt(1));
+        rs.close();
+        stmt.close();
+    }
+}
@@ -5,10 +5,16 @@
  */
 package org.lealone.test.db.schema;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.junit.Test;
+import org.lealone.common.logging.Logger;
+import org.lealone.common.logging.LoggerFactory;
 import org.lealone.db.api.ErrorCode;
 import org.lealone.db.result.Result;
 import org.lealone.db.schema.Sequence;
+import org.lealone.storage.page.PageOperationHandlerBase;
 import org.lealone.test.db.DbObjectTestBase;
 
 public class SequenceTest extends DbObjectTestBase {
@@ -18,6 +24,7 @@ public class SequenceTest extends DbObjectTestBase {
         create();
         alter();
         drop();
+        perScheduler();
     }
 
     void create() {
@@ -68,4 +75,77 @@ public class SequenceTest extends DbObjectTestBase {
         executeUpdate("DROP SEQUENCE IF EXISTS myseq");
         assertNull(schema.findSequence(session, "myseq"));
     }
+
+    void perScheduler() {
+        executeUpdate("DROP SEQUENCE IF EXISTS myseq2");
+        executeUpdate("CREATE SEQUENCE IF NOT EXISTS myseq2 START WITH 1 CACHE 10 PER SCHEDULER");
+        Sequence sequence = schema.findSequence(session, "myseq2");
+        assertTrue(sequence.isPerScheduler());
+        assertTrue(sequence.getCreateSQL().endsWith(" CACHE 10 PER SCHEDULER"));
+
+        // 不保证递增，但必须唯一
+        // 前4个线程是PageOperationHandler，各自使用自己的区间，最后一个普通线程使用共享区间
+        ConcurrentHashMap<Long, Long> values = new ConcurrentHashMap<>();
+        CopyOnWriteArrayList<String> failures = new CopyOnWriteArrayList<>();
+        Thread[] threads = new Thread[5];
+        for (int i = 0; i < threads.length; i++) {
+            Runnable task = () -> {
+                try {
+                    for (int j = 0; j < 80; j++) {
+                        long v = sequence.getNext(session);
+                        if (values.put(v, v) != null)
+                            failures.add("duplicate value: " + v);
+                    }
+                } catch (Throwable e) {
+                    failures.add(e.toString());
+                }
+            };
+            if (i < threads.length - 1)
+                threads[i] = new Worker(i, task);
+            else
+                threads[i] = new Thread(task);
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(400, values.size());
+        assertTrue(values.containsKey(1L) && values.containsKey(400L));
+
+        // 恢复成普通模式后从高水位继续分配
+        executeUpdate("ALTER SEQUENCE myseq2 CACHE 5");
+        assertFalse(sequence.isPerScheduler());
+        assertEquals(401, sequence.getNext(session));
+        executeUpdate("DROP SEQUENCE IF EXISTS myseq2");
+    }
+
+    private static class Worker extends PageOperationHandlerBase {
+
+        private static final Logger logger = LoggerFactory.getLogger(Worker.class);
+        private final Runnable task;
+
+        Worker(int id, Runnable task) {
+            super(id, "SequenceTestWorker-" + id, 1);
+            this.task = task;
+        }
+
+        @Override
+        protected Logger getLogger() {
+            return logger;
+        }
+
+        @Override
+        public void wakeUp() {
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.misc;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.lealone.common.security.AES;
+import org.lealone.common.security.BlockCipher;
+import org.lealone.common.security.JceAES;
+import org.lealone.storage.fs.FilePathEncrypt;
+import org.lealone.storage.fs.FileUtils;
+import org.lealone.test.TestBase;
+
+public class FileEncryptTest extends TestBase {
+
+    private final Random random = new Random(1);
+
+    @Test
+    public void run() throws Exception {
+        testJceAES();
+        testFileEncrypt();
+    }
+
+    // JDK的实现跟纯java的实现加密结果必须一样，否则老的加密文件就读不了了
+    private void testJceAES() {
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        BlockCipher aes = new AES();
+        aes.setKey(key);
+        BlockCipher jceAES = new JceAES();
+        jceAES.setKey(key);
+
+        byte[] data = new byte[4096];
+        random.nextBytes(data);
+        byte[] data1 = data.clone();
+        byte[] data2 = data.clone();
+        aes.encrypt(data1, 16, 4064);
+        jceAES.encrypt(data2, 16, 4064);
+        assertTrue(Arrays.equals(data1, data2));
+        assertFalse(Arrays.equals(data, data2));
+        jceAES.decrypt(data2, 16, 4064);
+        assertTrue(Arrays.equals(data, data2));
+    }
+
+    private void testFileEncrypt() throws Exception {
+        FileUtils.createDirectories(TEST_DIR);
+        String fileName = joinDirs("FileEncryptTest.db");
+        FileUtils.delete(fileName);
+        // 数据足够多时会多个线程一起加密解密
+        byte[] data = new byte[4096 * 200 + 100];
+        random.nextBytes(data);
+        FileChannel file = open(fileName, "test", "rw");
+        file.write(ByteBuffer.wrap(data), 0);
+        file.write(ByteBuffer.wrap(data, 0, 5000), 4096 * 10 + 123); // 没有对齐
+        file.close();
+
+        System.arraycopy(data, 0, data, 4096 * 10 + 123, 5000);
+        file = open(fileName, "test", "r");
+        assertEquals(data.length, file.size());
+        ByteBuffer buff = ByteBuffer.allocate(data.length);
+        file.read(buff, 0);
+        assertTrue(Arrays.equals(data, buff.array()));
+        file.close();
+
+        // 密码不对时读出来的数据不一样
+        file = open(fileName, "test2", "r");
+        buff = ByteBuffer.allocate(4096);
+        file.read(buff, 0);
+        assertFalse(Arrays.equals(Arrays.copyOf(data, 4096), buff.array()));
+        file.close();
+        FileUtils.delete(fileName);
+    }
+
+    // 打开文件时会清除密码，所以每次都要重新生成
+    private static FileChannel open(String fileName, String password, String mode) throws Exception {
+        byte[] key = FilePathEncrypt.getPasswordBytes(password.toCharArray());
+        return new FilePathEncrypt.FileEncrypt(fileName, key, FileUtils.open(fileName, mode));
+    }
+}
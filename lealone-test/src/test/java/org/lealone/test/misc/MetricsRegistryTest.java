@@ -0,0 +1,50 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.misc;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.lealone.common.metrics.Metric;
+import org.lealone.common.metrics.MetricsRegistry;
+import org.lealone.test.TestBase;
+
+public class MetricsRegistryTest extends TestBase {
+
+    private long counter;
+
+    @Test
+    public void run() throws Exception {
+        String labels = "handler=\"test-0\"";
+        Metric m1 = MetricsRegistry.registerCounter("test_counter_total", labels, "Test counter",
+                () -> counter);
+        Metric m2 = MetricsRegistry.registerGauge("test_gauge", null, "Test gauge", () -> 0.5);
+        try {
+            counter = 10;
+            String text = MetricsRegistry.toPrometheusText();
+            assertTrue(text.contains("# TYPE lealone_test_counter_total counter\n"));
+            assertTrue(text.contains("lealone_test_counter_total{handler=\"test-0\"} 10\n"));
+            assertTrue(text.contains("# TYPE lealone_test_gauge gauge\n"));
+            assertTrue(text.contains("lealone_test_gauge 0.5\n"));
+
+            // 指标的值是在读取时才计算的
+            MetricsRegistry.registerMBean();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MetricsRegistry.MBEAN_NAME);
+            counter = 20;
+            assertEquals(20.0, server.getAttribute(name, "lealone_test_counter_total.test-0"));
+            assertEquals(0.5, server.getAttribute(name, "lealone_test_gauge"));
+        } finally {
+            MetricsRegistry.unregister(m1);
+            MetricsRegistry.unregister(m2);
+        }
+        assertNull(MetricsRegistry.getMetric("test_gauge", null));
+        assertFalse(MetricsRegistry.toPrometheusText().contains("lealone_test_counter_total"));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.misc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.lealone.common.metrics.Metric;
+import org.lealone.common.metrics.MetricsRegistry;
+import org.lealone.db.DataBuffer;
+import org.lealone.net.nio.NioBufferPool;
+import org.lealone.test.TestBase;
+
+public class NioBufferPoolTest extends TestBase {
+    @Test
+    public void run() {
+        NioBufferPool pool = new NioBufferPool(new HashMap<>());
+        ArrayList<Metric> metrics = new ArrayList<>();
+        String labels = "scheduler=\"NioBufferPoolTest\"";
+        pool.registerMetrics(labels, metrics);
+        try {
+            DataBuffer buffer = pool.create(1000);
+            assertEquals(1024, buffer.capacity());
+            assertTrue(buffer.getBuffer().isDirect());
+            assertEquals(1, pool.getMissCount());
+            // 一个1M的slab切分成1024个1K的buffer，除了返回的那个，其他都在池中
+            assertEquals(1023, pool.getPooledCount(1024));
+
+            buffer.close();
+            assertEquals(1024, pool.getPooledCount(1024));
+
+            DataBuffer buffer2 = pool.create(1024);
+            assertEquals(1, pool.getHitCount());
+            assertEquals(1023, pool.getPooledCount(1024));
+            buffer2.close();
+
+            DataBuffer big = pool.create(5 * 1024 * 1024);
+            assertEquals(1, pool.getUnpooledCount());
+            big.close();
+            assertEquals(0, pool.getPooledCount(5 * 1024 * 1024));
+
+            // 统计信息通过MetricsRegistry导出
+            assertEquals(1.0, getMetricValue("net_buffer_pool_hits_total", labels), 0);
+            assertEquals(1.0, getMetricValue("net_buffer_pool_misses_total", labels), 0);
+            assertEquals(1.0, getMetricValue("net_buffer_pool_unpooled_total", labels), 0);
+            assertEquals(1024.0 * 1024, getMetricValue("net_buffer_pool_allocated_bytes", labels), 0);
+            assertTrue(MetricsRegistry.toPrometheusText()
+                    .contains("lealone_net_buffer_pool_pooled_bytes{" + labels + "} 1048576"));
+        } finally {
+            MetricsRegistry.unregister(metrics);
+            pool.close();
+        }
+    }
+
+    private static double getMetricValue(String name, String labels) {
+        return MetricsRegistry.getMetric(name, labels).getValue();
+    }
+}
@@ -40,6 +40,32 @@ public class QueryStatisticsTest extends SqlTestBase {
 
         sql = "select * from INFORMATION_SCHEMA.QUERY_STATISTICS";
         printResultSet();
+
+        for (int i = 0; i < 10; i++) {
+            sql = "select * from QueryStatisticsTest where f2 = 2";
+            executeQuery();
+            closeResultSet();
+        }
+        sql = "select STATEMENT_TYPE, EXECUTION_COUNT, CUMULATIVE_ROWS_SCANNED,"
+                + " MIN_EXECUTION_TIME, P50_EXECUTION_TIME, P99_EXECUTION_TIME, MAX_EXECUTION_TIME"
+                + " from INFORMATION_SCHEMA.QUERY_STATISTICS"
+                + " where SQL_STATEMENT = 'select * from QueryStatisticsTest where f2 = 2'";
+        executeQuery();
+        assertEquals("SELECT", getStringValue(1));
+        assertEquals(10, getIntValue(2));
+        assertTrue(getLongValue(3) >= 4); // 相同的查询可能直接用缓存的结果
+        double min = getDoubleValue(4);
+        double p50 = getDoubleValue(5);
+        double p99 = getDoubleValue(6);
+        double max = getDoubleValue(7, true);
+        assertTrue(min > 0);
+        assertTrue(min <= p50 && p50 <= p99 && p99 <= max);
+
+        sql = "select STATEMENT_TYPE, EXECUTION_COUNT from INFORMATION_SCHEMA.QUERY_STATISTICS"
+                + " where SQL_STATEMENT like 'insert into QueryStatisticsTest%'";
+        executeQuery();
+        assertEquals("INSERT", getStringValue(1));
+        assertEquals(1, getIntValue(2, true));
     }
 
 }
@@ -9,6 +9,8 @@ import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
 import org.lealone.orm.json.JsonObject;
+import org.lealone.orm.json.JsonReader;
+import org.lealone.orm.json.JsonWriter;
 import org.lealone.test.orm.generated.User;
 
 public class DaoTest extends OrmTestBase {
@@ -34,6 +36,15 @@ public class DaoTest extends OrmTestBase {
         // 普通User对象序列化后也包含modelType字段，但为REGULAR_MODEL
         json = new JsonObject(new User().encode());
         assertTrue(json.getInteger("modelType") == User.REGULAR_MODEL);
+
+        // 服务执行器直接从参数的json流中读取model，model也可以先编码成json字符串再作为参数
+        u = new User().name.set("zhh").phone.set(123);
+        str = u.encode();
+        JsonReader reader = new JsonReader("[" + str + ", " + new JsonWriter().value(str) + "]");
+        reader.beginArray();
+        assertEquals(str, User.decode(reader).encode());
+        assertEquals(str, User.decode(reader).encode());
+        reader.endArray();
     }
 
     // 测试多个线程同时使用User.dao是否产生混乱
@@ -0,0 +1,51 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.orm;
+
+import org.junit.Test;
+import org.lealone.orm.json.DecodeException;
+import org.lealone.orm.json.JsonReader;
+import org.lealone.test.TestBase;
+
+public class JsonReaderTest extends TestBase {
+
+    @Test
+    public void run() {
+        JsonReader reader = new JsonReader("[\"a\", 1, null]");
+        reader.beginArray();
+        assertEquals("a", reader.readString());
+        assertEquals(Integer.valueOf(1), reader.readInteger());
+        assertNull(reader.readString());
+        reader.endArray();
+
+        // 缺少参数时不能读成空串
+        reader = new JsonReader("[\"a\"]");
+        reader.beginArray();
+        reader.readString();
+        try {
+            reader.readString();
+            fail();
+        } catch (DecodeException e) {
+        }
+        reader = new JsonReader("[]");
+        reader.beginArray();
+        try {
+            reader.readInteger();
+            fail();
+        } catch (DecodeException e) {
+        }
+
+        // 多余的参数在endArray时报错
+        reader = new JsonReader("[\"a\", \"b\"]");
+        reader.beginArray();
+        reader.readString();
+        try {
+            reader.endArray();
+            fail();
+        } catch (DecodeException e) {
+        }
+    }
+}
@@ -7,6 +7,7 @@ package org.lealone.test.orm;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Test;
@@ -19,6 +20,47 @@ public class OrmCrudTest extends OrmTestBase {
         // SqlScript.createUserTable(this);
         crud();
         json();
+        batch();
+    }
+
+    void batch() {
+        User dao = User.dao;
+        List<User> list = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            list.add(new User().id.set(3000 + i).name.set("Batch" + i));
+        }
+        // insert into user(name, id) values(?, ?), (?, ?), ...
+        assertEquals(5, dao.insertAll(list));
+
+        // 只有参数值不同的查询用的是同一个prepare过的语句
+        for (int i = 0; i < 5; i++) {
+            User u = dao.where().id.eq(3000L + i).findOne();
+            assertEquals("Batch" + i, u.name.get());
+        }
+        assertEquals(2, dao.where().id.ge(3003L).findCount());
+        assertEquals(4, dao.where().id.ge(3001L).findCount());
+        assertEquals(5, dao.where().id.ge(3000L).delete());
+
+        // 按128、64、8行分三批插入，行数不同的insert语句不会无限增加
+        list.clear();
+        for (int i = 0; i < 200; i++) {
+            list.add(new User().id.set(4000 + i).name.set("Batch" + i));
+        }
+        assertEquals(200, dao.insertAll(list));
+        assertEquals(200, dao.where().id.ge(4000L).findCount());
+
+        // 主键冲突时语句也要放回缓存，之后还能正常使用
+        list.clear();
+        list.add(new User().id.set(5000).name.set("Batch0"));
+        try {
+            dao.insertAll(list);
+            fail();
+        } catch (Exception e) {
+        }
+        list.clear();
+        list.add(new User().id.set(5000).name.set("Batch200"));
+        assertEquals(1, dao.insertAll(list));
+        assertEquals(201, dao.where().id.ge(4000L).delete());
     }
 
     void json() {
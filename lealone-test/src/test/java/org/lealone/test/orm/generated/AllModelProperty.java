@@ -3,6 +3,7 @@ package org.lealone.test.orm.generated;
 import org.lealone.orm.Model;
 import org.lealone.orm.ModelProperty;
 import org.lealone.orm.ModelTable;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.orm.property.PArray;
 import org.lealone.orm.property.PBigDecimal;
 import org.lealone.orm.property.PBlob;
@@ -92,4 +93,8 @@ public class AllModelProperty extends Model<AllModelProperty> {
     public static AllModelProperty decode(String str) {
         return new AllModelProperty().decode0(str);
     }
+
+    public static AllModelProperty decode(JsonReader reader) {
+        return new AllModelProperty().decode0(reader);
+    }
 }
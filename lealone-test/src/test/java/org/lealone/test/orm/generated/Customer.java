@@ -4,6 +4,7 @@ import java.util.List;
 import org.lealone.orm.Model;
 import org.lealone.orm.ModelProperty;
 import org.lealone.orm.ModelTable;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.orm.property.PInteger;
 import org.lealone.orm.property.PLong;
 import org.lealone.orm.property.PString;
@@ -104,4 +105,8 @@ public class Customer extends Model<Customer> {
     public static Customer decode(String str) {
         return new Customer().decode0(str);
     }
+
+    public static Customer decode(JsonReader reader) {
+        return new Customer().decode0(reader);
+    }
 }
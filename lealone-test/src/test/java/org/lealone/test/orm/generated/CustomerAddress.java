@@ -3,6 +3,7 @@ package org.lealone.test.orm.generated;
 import org.lealone.orm.Model;
 import org.lealone.orm.ModelProperty;
 import org.lealone.orm.ModelTable;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.orm.property.PLong;
 import org.lealone.orm.property.PString;
 
@@ -67,4 +68,8 @@ public class CustomerAddress extends Model<CustomerAddress> {
     public static CustomerAddress decode(String str) {
         return new CustomerAddress().decode0(str);
     }
+
+    public static CustomerAddress decode(JsonReader reader) {
+        return new CustomerAddress().decode0(reader);
+    }
 }
@@ -4,6 +4,7 @@ import java.util.List;
 import org.lealone.orm.Model;
 import org.lealone.orm.ModelProperty;
 import org.lealone.orm.ModelTable;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.orm.property.PDate;
 import org.lealone.orm.property.PDouble;
 import org.lealone.orm.property.PInteger;
@@ -103,4 +104,8 @@ public class Order extends Model<Order> {
     public static Order decode(String str) {
         return new Order().decode0(str);
     }
+
+    public static Order decode(JsonReader reader) {
+        return new Order().decode0(reader);
+    }
 }
@@ -3,6 +3,7 @@ package org.lealone.test.orm.generated;
 import org.lealone.orm.Model;
 import org.lealone.orm.ModelProperty;
 import org.lealone.orm.ModelTable;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.orm.property.PInteger;
 import org.lealone.orm.property.PLong;
 
@@ -94,4 +95,8 @@ public class OrderItem extends Model<OrderItem> {
     public static OrderItem decode(String str) {
         return new OrderItem().decode0(str);
     }
+
+    public static OrderItem decode(JsonReader reader) {
+        return new OrderItem().decode0(reader);
+    }
 }
@@ -3,6 +3,7 @@ package org.lealone.test.orm.generated;
 import org.lealone.orm.Model;
 import org.lealone.orm.ModelProperty;
 import org.lealone.orm.ModelTable;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.orm.property.PDouble;
 import org.lealone.orm.property.PLong;
 import org.lealone.orm.property.PString;
@@ -42,4 +43,8 @@ public class Product extends Model<Product> {
     public static Product decode(String str) {
         return new Product().decode0(str);
     }
+
+    public static Product decode(JsonReader reader) {
+        return new Product().decode0(reader);
+    }
 }
@@ -3,6 +3,7 @@ package org.lealone.test.orm.generated;
 import org.lealone.orm.Model;
 import org.lealone.orm.ModelProperty;
 import org.lealone.orm.ModelTable;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.orm.property.PArray;
 import org.lealone.orm.property.PInteger;
 import org.lealone.orm.property.PLong;
@@ -45,4 +46,8 @@ public class User extends Model<User> {
     public static User decode(String str) {
         return new User().decode0(str);
     }
+
+    public static User decode(JsonReader reader) {
+        return new User().decode0(reader);
+    }
 }
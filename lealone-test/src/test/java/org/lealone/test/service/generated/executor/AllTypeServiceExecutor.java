@@ -11,7 +11,7 @@ import java.util.Map;
 import java.util.UUID;
 import org.lealone.db.service.ServiceExecutor;
 import org.lealone.db.value.*;
-import org.lealone.orm.json.JsonArray;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.test.orm.generated.User;
 import org.lealone.test.service.impl.AllTypeServiceImpl;
 
@@ -112,31 +112,33 @@ public class AllTypeServiceExecutor implements ServiceExecutor {
 
     @Override
     public String executeService(String methodName, String json) {
-        JsonArray ja = null;
+        JsonReader reader = null;
         switch (methodName) {
         case "TEST_TYPE":
-            ja = new JsonArray(json);
-            Integer p_f1_1 = Integer.valueOf(ja.getValue(0).toString());
-            Boolean p_f2_1 = Boolean.valueOf(ja.getValue(1).toString());
-            Byte p_f3_1 = Byte.valueOf(ja.getValue(2).toString());
-            Short p_f4_1 = Short.valueOf(ja.getValue(3).toString());
-            Long p_f5_1 = Long.valueOf(ja.getValue(4).toString());
-            Long p_f6_1 = Long.valueOf(ja.getValue(5).toString());
-            BigDecimal p_f7_1 = new java.math.BigDecimal(ja.getValue(6).toString());
-            Double p_f8_1 = Double.valueOf(ja.getValue(7).toString());
-            Float p_f9_1 = Float.valueOf(ja.getValue(8).toString());
-            Time p_f10_1 = java.sql.Time.valueOf(ja.getValue(9).toString());
-            Date p_f11_1 = java.sql.Date.valueOf(ja.getValue(10).toString());
-            Timestamp p_f12_1 = java.sql.Timestamp.valueOf(ja.getValue(11).toString());
-            byte[] p_f13_1 = ja.getString(12).getBytes();
-            Object p_f14_1 = ja.getValue(13);
-            String p_f15_1 = ja.getString(14);
-            String p_f16_1 = ja.getString(15);
-            String p_f17_1 = ja.getString(16);
-            Blob p_f18_1 = new org.lealone.db.value.ReadonlyBlob(ja.getString(17));
-            Clob p_f19_1 = new org.lealone.db.value.ReadonlyClob(ja.getString(18));
-            UUID p_f20_1 = java.util.UUID.fromString(ja.getValue(19).toString());
-            Array p_f21_1 = new org.lealone.db.value.ReadonlyArray(ja.getString(20));
+            reader = new JsonReader(json);
+            reader.beginArray();
+            Integer p_f1_1 = reader.readInteger();
+            Boolean p_f2_1 = reader.readBoolean();
+            Byte p_f3_1 = reader.readByte();
+            Short p_f4_1 = reader.readShort();
+            Long p_f5_1 = reader.readLong();
+            Long p_f6_1 = reader.readLong();
+            BigDecimal p_f7_1 = reader.readBigDecimal();
+            Double p_f8_1 = reader.readDouble();
+            Float p_f9_1 = reader.readFloat();
+            Time p_f10_1 = reader.readTime();
+            Date p_f11_1 = reader.readDate();
+            Timestamp p_f12_1 = reader.readTimestamp();
+            byte[] p_f13_1 = reader.readBytes();
+            Object p_f14_1 = reader.readValue();
+            String p_f15_1 = reader.readString();
+            String p_f16_1 = reader.readString();
+            String p_f17_1 = reader.readString();
+            Blob p_f18_1 = new org.lealone.db.value.ReadonlyBlob(reader.readString());
+            Clob p_f19_1 = new org.lealone.db.value.ReadonlyClob(reader.readString());
+            UUID p_f20_1 = reader.readUuid();
+            Array p_f21_1 = new org.lealone.db.value.ReadonlyArray(reader.readString());
+            reader.endArray();
             User result1 = this.s.testType(p_f1_1, p_f2_1, p_f3_1, p_f4_1, p_f5_1, p_f6_1, p_f7_1,
                     p_f8_1, p_f9_1, p_f10_1, p_f11_1, p_f12_1, p_f13_1, p_f14_1, p_f15_1, p_f16_1,
                     p_f17_1, p_f18_1, p_f19_1, p_f20_1, p_f21_1);
@@ -144,8 +146,10 @@ public class AllTypeServiceExecutor implements ServiceExecutor {
                 return null;
             return result1.encode();
         case "TEST_UUID":
-            ja = new JsonArray(json);
-            UUID p_f1_2 = java.util.UUID.fromString(ja.getValue(0).toString());
+            reader = new JsonReader(json);
+            reader.beginArray();
+            UUID p_f1_2 = reader.readUuid();
+            reader.endArray();
             UUID result2 = this.s.testUuid(p_f1_2);
             if (result2 == null)
                 return null;
@@ -4,7 +4,7 @@ import java.sql.Date;
 import java.util.Map;
 import org.lealone.db.service.ServiceExecutor;
 import org.lealone.db.value.*;
-import org.lealone.orm.json.JsonArray;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.test.service.impl.HelloWorldServiceImpl;
 
 /**
@@ -86,7 +86,7 @@ public class HelloWorldServiceExecutor implements ServiceExecutor {
 
     @Override
     public String executeService(String methodName, String json) {
-        JsonArray ja = null;
+        JsonReader reader = null;
         switch (methodName) {
         case "SAY_HELLO":
             this.s.sayHello();
@@ -102,16 +102,20 @@ public class HelloWorldServiceExecutor implements ServiceExecutor {
                 return null;
             return result3.toString();
         case "GET_TWO":
-            ja = new JsonArray(json);
-            String p_name_4 = ja.getString(0);
-            Integer p_age_4 = Integer.valueOf(ja.getValue(1).toString());
+            reader = new JsonReader(json);
+            reader.beginArray();
+            String p_name_4 = reader.readString();
+            Integer p_age_4 = reader.readInteger();
+            reader.endArray();
             Integer result4 = this.s.getTwo(p_name_4, p_age_4);
             if (result4 == null)
                 return null;
             return result4.toString();
         case "SAY_GOODBYE_TO":
-            ja = new JsonArray(json);
-            String p_name_5 = ja.getString(0);
+            reader = new JsonReader(json);
+            reader.beginArray();
+            String p_name_5 = reader.readString();
+            reader.endArray();
             String result5 = this.s.sayGoodbyeTo(p_name_5);
             if (result5 == null)
                 return null;
@@ -4,7 +4,7 @@ import java.sql.Array;
 import java.util.Map;
 import org.lealone.db.service.ServiceExecutor;
 import org.lealone.db.value.*;
-import org.lealone.orm.json.JsonArray;
+import org.lealone.orm.json.JsonReader;
 import org.lealone.test.orm.generated.User;
 import org.lealone.test.service.impl.UserServiceImpl;
 
@@ -93,25 +93,31 @@ public class UserServiceExecutor implements ServiceExecutor {
 
     @Override
     public String executeService(String methodName, String json) {
-        JsonArray ja = null;
+        JsonReader reader = null;
         switch (methodName) {
         case "ADD":
-            ja = new JsonArray(json);
-            User p_user_1 = User.decode(ja.getString(0));
+            reader = new JsonReader(json);
+            reader.beginArray();
+            User p_user_1 = User.decode(reader);
+            reader.endArray();
             Long result1 = this.s.add(p_user_1);
             if (result1 == null)
                 return null;
             return result1.toString();
         case "FIND":
-            ja = new JsonArray(json);
-            String p_name_2 = ja.getString(0);
+            reader = new JsonReader(json);
+            reader.beginArray();
+            String p_name_2 = reader.readString();
+            reader.endArray();
             User result2 = this.s.find(p_name_2);
             if (result2 == null)
                 return null;
             return result2.encode();
         case "UPDATE":
-            ja = new JsonArray(json);
-            User p_user_3 = User.decode(ja.getString(0));
+            reader = new JsonReader(json);
+            reader.beginArray();
+            User p_user_3 = User.decode(reader);
+            reader.endArray();
             Integer result3 = this.s.update(p_user_3);
             if (result3 == null)
                 return null;
@@ -122,8 +128,10 @@ public class UserServiceExecutor implements ServiceExecutor {
                 return null;
             return result4.toString();
         case "DELETE":
-            ja = new JsonArray(json);
-            String p_name_5 = ja.getString(0);
+            reader = new JsonReader(json);
+            reader.beginArray();
+            String p_name_5 = reader.readString();
+            reader.endArray();
             Integer result5 = this.s.delete(p_name_5);
             if (result5 == null)
                 return null;
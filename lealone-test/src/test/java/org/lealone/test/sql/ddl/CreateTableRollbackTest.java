@@ -0,0 +1,41 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.sql.ddl;
+
+import org.junit.Test;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.test.sql.SqlTestBase;
+
+// 建表失败时只回滚当前这张表，之前建好的表不能丢
+public class CreateTableRollbackTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        executeUpdate("drop table IF EXISTS CreateTableRollbackTest1");
+        executeUpdate("drop table IF EXISTS CreateTableRollbackTest2");
+        executeUpdate("drop table IF EXISTS CreateTableRollbackTest3");
+        executeUpdate("create table CreateTableRollbackTest1(id int primary key)");
+        executeUpdate("create table CreateTableRollbackTest2(id int primary key)");
+        executeUpdate("insert into CreateTableRollbackTest1 values(1)");
+        executeUpdate("insert into CreateTableRollbackTest2 values(2)");
+
+        // 表已经加到schema中了，增加约束时才出错
+        executeUpdateThanAssertErrorCode("create table CreateTableRollbackTest3(id int primary key,"
+                + " foreign key(id) references CreateTableRollbackTestNotExists(id))",
+                ErrorCode.TABLE_OR_VIEW_NOT_FOUND_1);
+
+        sql = "select count(*) from CreateTableRollbackTest1";
+        assertEquals(1, getIntValue(1, true));
+        sql = "select count(*) from CreateTableRollbackTest2";
+        assertEquals(1, getIntValue(1, true));
+        sql = "select count(*) from information_schema.tables where table_name like 'CREATETABLEROLLBACKTEST%'";
+        assertEquals(2, getIntValue(1, true));
+
+        // 失败的表可以再建
+        executeUpdate("create table CreateTableRollbackTest3(id int primary key)");
+        sql = "select count(*) from CreateTableRollbackTest3";
+        assertEquals(0, getIntValue(1, true));
+    }
+}
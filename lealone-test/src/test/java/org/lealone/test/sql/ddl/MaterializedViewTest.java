@@ -0,0 +1,174 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.sql.ddl;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.test.sql.SqlTestBase;
+
+public class MaterializedViewTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        init();
+        testIncremental();
+        testTransaction();
+        testRefresh();
+        testConcurrentRefresh();
+        testPendingChangesLimit();
+        testUnsupported();
+    }
+
+    private void init() {
+        executeUpdate("drop materialized view IF EXISTS MaterializedViewTest_f");
+        executeUpdate("drop materialized view IF EXISTS MaterializedViewTest_g");
+        executeUpdate("drop materialized view IF EXISTS MaterializedViewTest_n");
+        executeUpdate("drop materialized view IF EXISTS MaterializedViewTest_p");
+        executeUpdate("drop table IF EXISTS MaterializedViewTest");
+        executeUpdate("create table MaterializedViewTest(id int primary key, a int, b int)");
+        executeUpdate("insert into MaterializedViewTest values(1, 1, 10), (2, 2, 20), (3, 3, 40)");
+        executeUpdate("create materialized view MaterializedViewTest_f incremental as"
+                + " select id, a, b from MaterializedViewTest where a > 1");
+        executeUpdate("create materialized view MaterializedViewTest_g incremental as"
+                + " select a, count(*) c, count(b) cb, sum(b) s from MaterializedViewTest group by a");
+        executeUpdate("create materialized view MaterializedViewTest_n incremental as"
+                + " select count(*) c, sum(b) s from MaterializedViewTest");
+        executeUpdate("create materialized view MaterializedViewTest_p as"
+                + " select a, max(b) m from MaterializedViewTest group by a");
+    }
+
+    private void testIncremental() throws Exception {
+        check();
+        executeUpdate("insert into MaterializedViewTest values(4, 2, 50), (5, 4, null)");
+        check();
+        // 记录从一个分组移到另一个分组
+        executeUpdate("update MaterializedViewTest set a = 3 where id = 2");
+        check();
+        executeUpdate("update MaterializedViewTest set b = b + 1");
+        check();
+        // 分组为空时要从视图中删除，SUM的参数全是NULL时结果是NULL
+        executeUpdate("delete from MaterializedViewTest where a = 4 or id = 4");
+        check();
+    }
+
+    private void testTransaction() throws Exception {
+        conn.setAutoCommit(false);
+        executeUpdate("insert into MaterializedViewTest values(8, 9, 90)");
+        executeUpdate("update MaterializedViewTest set b = 91 where id = 8");
+        executeUpdate("insert into MaterializedViewTest values(9, 9, 1)");
+        executeUpdate("delete from MaterializedViewTest where id = 9");
+        conn.commit();
+        check();
+        // 回滚的事务不会改变物化视图
+        executeUpdate("insert into MaterializedViewTest values(10, 9, 100)");
+        conn.rollback();
+        conn.setAutoCommit(true);
+        check();
+    }
+
+    private void testRefresh() throws Exception {
+        sql = "select count(*) from MaterializedViewTest_p where a = 9";
+        assertEquals(0, getIntValue(1, true));
+        executeUpdate("refresh materialized view MaterializedViewTest_p");
+        assertEquals(1, getIntValue(1, true));
+        sql = "select m from MaterializedViewTest_p where a = 9";
+        assertEquals(91, getIntValue(1, true));
+    }
+
+    // 全量刷新扫描基表时其他事务还在并发提交，扫描已经看到的变更不能再应用一次，也不能漏掉
+    private void testConcurrentRefresh() throws Exception {
+        CopyOnWriteArrayList<String> failures = new CopyOnWriteArrayList<>();
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            int base = 1000 * (i + 1);
+            writers[i] = new Thread(() -> {
+                try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+                    for (int j = 0; j < 200; j++) {
+                        int id = base + j;
+                        stmt.executeUpdate("insert into MaterializedViewTest values(" + id + ", "
+                                + (j % 5) + ", " + j + ")");
+                        stmt.executeUpdate("update MaterializedViewTest set b = b + 1, a = a + 1"
+                                + " where id = " + (id - 1));
+                        if (j % 3 == 0)
+                            stmt.executeUpdate("delete from MaterializedViewTest where id = " + (id - 2));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e.toString());
+                }
+            });
+            writers[i].start();
+        }
+        boolean alive = true;
+        while (alive) {
+            executeUpdate("refresh materialized view MaterializedViewTest_g");
+            executeUpdate("refresh materialized view MaterializedViewTest_n");
+            getRows("select * from MaterializedViewTest_f");
+            alive = false;
+            for (Thread t : writers)
+                alive |= t.isAlive();
+        }
+        for (Thread t : writers)
+            t.join();
+        assertTrue(failures.toString(), failures.isEmpty());
+        check();
+    }
+
+    // 队列中的变更太多时被丢弃，查询时全量刷新
+    private void testPendingChangesLimit() throws Exception {
+        executeUpdate("SET MATERIALIZED_VIEW_MAX_PENDING_CHANGES 5");
+        for (int i = 0; i < 20; i++) {
+            executeUpdate("insert into MaterializedViewTest values(" + (5000 + i) + ", " + (i % 3) + ", "
+                    + i + ")");
+        }
+        executeUpdate("update MaterializedViewTest set b = b + 1 where id >= 5000");
+        check();
+        executeUpdate("delete from MaterializedViewTest where id >= 5010");
+        check();
+        executeUpdate("SET MATERIALIZED_VIEW_MAX_PENDING_CHANGES 100000");
+    }
+
+    private void testUnsupported() throws Exception {
+        executeUpdateThanAssertErrorCode("insert into MaterializedViewTest_f values(100, 100, 100)",
+                ErrorCode.FEATURE_NOT_SUPPORTED_1);
+        // MAX不能增量维护
+        executeUpdateThanAssertErrorCode("create materialized view MaterializedViewTest_x incremental as"
+                + " select a, max(b) from MaterializedViewTest group by a",
+                ErrorCode.FEATURE_NOT_SUPPORTED_1);
+        executeUpdateThanAssertErrorCode("drop materialized view MaterializedViewTest",
+                ErrorCode.VIEW_NOT_FOUND_1);
+    }
+
+    private void check() throws Exception {
+        check("MaterializedViewTest_f", "select id, a, b from MaterializedViewTest where a > 1");
+        check("MaterializedViewTest_g", "select a, count(*), count(b), sum(b)"
+                + " from MaterializedViewTest group by a");
+        check("MaterializedViewTest_n", "select count(*), sum(b) from MaterializedViewTest");
+    }
+
+    private void check(String viewName, String query) throws Exception {
+        assertEquals(getRows(query + " order by 1"), getRows("select * from " + viewName + " order by 1"));
+    }
+
+    private String getRows(String sql) throws Exception {
+        StringBuilder buff = new StringBuilder();
+        rs = stmt.executeQuery(sql);
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            buff.append('[');
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1)
+                    buff.append(',');
+                buff.append(rs.getString(i));
+            }
+            buff.append(']');
+        }
+        rs.close();
+        return buff.toString();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.sql.ddl;
+
+import org.junit.Test;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.test.sql.SqlTestBase;
+
+public class PartitionTableTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        testRange();
+        testHash();
+        testInvalid();
+    }
+
+    private void testRange() throws Exception {
+        executeUpdate("drop table IF EXISTS PartitionTableTest1");
+        executeUpdate("create table PartitionTableTest1(id bigint primary key, n int)"
+                + " partition by range(id) (partition p0 values less than (100),"
+                + " partition p1 values less than (200), partition p2 values less than (maxvalue))");
+        executeUpdate("create index PartitionTableTest1_n on PartitionTableTest1(n)");
+        for (int i = 0; i < 300; i += 10) {
+            executeUpdate("insert into PartitionTableTest1 values(" + i + ", " + (i % 3) + ")");
+        }
+        sql = "select count(*) from PartitionTableTest1";
+        assertEquals(30, getIntValue(1, true));
+        // 只扫描p0和p1
+        sql = "select count(*) from PartitionTableTest1 where id between 90 and 110";
+        assertEquals(3, getIntValue(1, true));
+        sql = "select min(id) from PartitionTableTest1 where id > 95";
+        assertEquals(100, getIntValue(1, true));
+
+        // 修改主键后记录移到了另一个分区，二级索引也要跟着变
+        executeUpdate("update PartitionTableTest1 set id = 155 where id = 20");
+        sql = "select count(*) from PartitionTableTest1 where n = 2";
+        assertEquals(10, getIntValue(1, true));
+
+        executeUpdate("alter table PartitionTableTest1 truncate partition p1");
+        sql = "select count(*) from PartitionTableTest1";
+        assertEquals(19, getIntValue(1, true));
+        sql = "select count(*) from PartitionTableTest1 where n = 2";
+        assertEquals(6, getIntValue(1, true));
+
+        executeUpdate("alter table PartitionTableTest1 drop partition p0");
+        sql = "select count(*) from PartitionTableTest1";
+        assertEquals(10, getIntValue(1, true));
+        // 删除p0后小于200的值都放到p1
+        executeUpdate("insert into PartitionTableTest1 values(5, 1)");
+        sql = "select count(*) from PartitionTableTest1 where id < 200";
+        assertEquals(1, getIntValue(1, true));
+
+        executeUpdateThanAssertErrorCode("alter table PartitionTableTest1 drop partition p9",
+                ErrorCode.PARTITION_NOT_FOUND_1);
+    }
+
+    private void testHash() throws Exception {
+        executeUpdate("drop table IF EXISTS PartitionTableTest2");
+        executeUpdate("create table PartitionTableTest2(id int primary key, n int)"
+                + " partition by hash(id) partitions 4");
+        for (int i = -10; i < 30; i++) {
+            executeUpdate("insert into PartitionTableTest2 values(" + i + ", " + i + ")");
+        }
+        sql = "select count(*) from PartitionTableTest2 where id between -3 and 5";
+        assertEquals(9, getIntValue(1, true));
+        // 多个分区按主键归并后还是有序的
+        sql = "select id from PartitionTableTest2 order by id limit 1 offset 12";
+        assertEquals(2, getIntValue(1, true));
+        sql = "select max(id) from PartitionTableTest2";
+        assertEquals(29, getIntValue(1, true));
+
+        executeUpdate("alter table PartitionTableTest2 truncate partition p1");
+        sql = "select count(*) from PartitionTableTest2";
+        assertEquals(30, getIntValue(1, true));
+        executeUpdateThanAssertErrorCode("alter table PartitionTableTest2 drop partition p1",
+                ErrorCode.FEATURE_NOT_SUPPORTED_1);
+    }
+
+    private void testInvalid() throws Exception {
+        executeUpdate("drop table IF EXISTS PartitionTableTest3");
+        executeUpdateThanAssertErrorCode("create table PartitionTableTest3(id int primary key, n int)"
+                + " partition by range(n) (partition p0 values less than (10))",
+                ErrorCode.FEATURE_NOT_SUPPORTED_1);
+        executeUpdate("create table PartitionTableTest3(id int primary key)"
+                + " partition by range(id) (partition p0 values less than (10))");
+        executeUpdateThanAssertErrorCode("insert into PartitionTableTest3 values(10)",
+                ErrorCode.NO_PARTITION_FOR_VALUE_2);
+    }
+}
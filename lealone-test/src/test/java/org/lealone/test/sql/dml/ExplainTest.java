@@ -10,7 +10,7 @@ import org.lealone.test.sql.SqlTestBase;
 
 public class ExplainTest extends SqlTestBase {
     @Test
-    public void run() {
+    public void run() throws Exception {
         executeUpdate("drop table IF EXISTS ExplainTest");
         executeUpdate("create table IF NOT EXISTS ExplainTest(id int, name varchar(500), b boolean)");
         executeUpdate("CREATE INDEX IF NOT EXISTS ExplainTestIndex ON ExplainTest(name)");
@@ -46,5 +46,17 @@ public class ExplainTest extends SqlTestBase {
                 + "AS(select * from ExplainTest UNION ALL select * from ExplainTest) select f1, f2 from myTempViewName";
         sql = "EXPLAIN " + sql;
         printResultSet();
+
+        testAnalyze();
+    }
+
+    private void testAnalyze() throws Exception {
+        executeQuery("EXPLAIN ANALYZE select * from ExplainTest a join ExplainTest b on a.id = b.id");
+        String plan = getStringValue(1, true);
+        assertTrue(plan.contains("page cache hits: "));
+        assertTrue(plan.contains("QFlat: rows: "));
+        // 每个TableFilter都有自己的实际行数
+        assertTrue(plan.contains("PUBLIC.EXPLAINTEST A (PUBLIC.EXPLAINTEST.tableScan): rows: "));
+        assertTrue(plan.contains("PUBLIC.EXPLAINTEST B ("));
     }
 }
@@ -34,6 +34,17 @@ public class UpdateTest extends SqlTestBase {
         assertEquals(1, executeUpdate(sql));
         sql = "UPDATE testUpdatePrimaryKey SET pk=2 WHERE pk = 2";
         assertEquals(1, executeUpdate(sql));
+
+        // int类型的主键就是rowKey，没有更新索引字段时二级索引中的rowKey也要跟着变
+        executeUpdate("CREATE INDEX i_testUpdatePrimaryKey_f1 ON testUpdatePrimaryKey(f1)");
+        sql = "UPDATE testUpdatePrimaryKey SET pk=4 WHERE pk = 3";
+        assertEquals(1, executeUpdate(sql));
+        sql = "SELECT pk FROM testUpdatePrimaryKey WHERE f1 = 10";
+        try {
+            assertEquals(4, getIntValue(1, true));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     void testUpdateIndex() {
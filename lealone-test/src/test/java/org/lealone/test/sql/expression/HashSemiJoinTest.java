@@ -0,0 +1,132 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.sql.expression;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class HashSemiJoinTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        init();
+        testExists();
+        testIn();
+        testParameters();
+        testDataChange();
+    }
+
+    private void init() {
+        executeUpdate("drop table IF EXISTS HashSemiJoinTest1");
+        executeUpdate("drop table IF EXISTS HashSemiJoinTest2");
+        executeUpdate("create table HashSemiJoinTest1(id int primary key, a int)");
+        executeUpdate("create table HashSemiJoinTest2(id int primary key, a int, b int)");
+        executeUpdate("insert into HashSemiJoinTest1 values(1, 1), (2, 2), (3, null), (4, 4)");
+        executeUpdate("insert into HashSemiJoinTest2 values(1, 1, 10), (2, 1, null), (3, 2, 20),"
+                + " (4, null, 30), (5, 5, 50)");
+    }
+
+    private void testExists() throws Exception {
+        sql = "select count(*) from HashSemiJoinTest1 t1 where EXISTS"
+                + "(select * from HashSemiJoinTest2 t2 where t2.a = t1.a)";
+        assertEquals(2, getIntValue(1, true));
+        sql = "select count(*) from HashSemiJoinTest1 t1 where NOT EXISTS"
+                + "(select * from HashSemiJoinTest2 t2 where t2.a = t1.a)";
+        assertEquals(2, getIntValue(1, true));
+        // 子查询自己的条件先执行，关联条件才查hash表
+        sql = "select count(*) from HashSemiJoinTest1 t1 where EXISTS"
+                + "(select * from HashSemiJoinTest2 t2 where t1.a = t2.a and t2.b > 15)";
+        assertEquals(1, getIntValue(1, true));
+        // OR不能转成半连接，还是逐行执行子查询
+        sql = "select count(*) from HashSemiJoinTest1 t1 where EXISTS"
+                + "(select * from HashSemiJoinTest2 t2 where t2.a = t1.a or t2.id = t1.id)";
+        assertEquals(4, getIntValue(1, true));
+        // 非关联子查询
+        sql = "select count(*) from HashSemiJoinTest1 t1 where EXISTS"
+                + "(select * from HashSemiJoinTest2 t2 where t2.b = 50)";
+        assertEquals(4, getIntValue(1, true));
+    }
+
+    private void testIn() throws Exception {
+        sql = "select count(*) from HashSemiJoinTest1 t1 where t1.a IN"
+                + "(select b / 10 from HashSemiJoinTest2 t2 where t2.a = t1.a)";
+        assertEquals(2, getIntValue(1, true));
+        // a=1时子查询的结果是{10, null}，IN的结果是null，所以NOT IN也不成立
+        sql = "select count(*) from HashSemiJoinTest1 t1 where t1.a NOT IN"
+                + "(select b from HashSemiJoinTest2 t2 where t2.a = t1.a)";
+        assertEquals(3, getIntValue(1, true));
+
+        sql = "select count(*) from HashSemiJoinTest1 where a IN(select a from HashSemiJoinTest2)";
+        assertEquals(2, getIntValue(1, true));
+        sql = "select count(*) from HashSemiJoinTest1 where a NOT IN(select a from HashSemiJoinTest2)";
+        assertEquals(0, getIntValue(1, true));
+        sql = "select count(*) from HashSemiJoinTest1 where a NOT IN"
+                + "(select a from HashSemiJoinTest2 where a is not null)";
+        assertEquals(1, getIntValue(1, true));
+
+        // 参数变了要重新建hash表
+        sql = "select count(*) from HashSemiJoinTest1 where a IN(select a from HashSemiJoinTest2 where b < ?)";
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ps.setInt(1, 15);
+        assertEquals(1, getIntValue(ps));
+        ps.setInt(1, 25);
+        assertEquals(2, getIntValue(ps));
+        ps.close();
+    }
+
+    private void testParameters() throws Exception {
+        // 去掉关联条件后的子查询要用原来的参数值
+        sql = "select count(*) from HashSemiJoinTest1 t1 where EXISTS"
+                + "(select * from HashSemiJoinTest2 t2 where t2.a = t1.a and t2.b > ?)";
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ps.setInt(1, 15);
+        assertEquals(1, getIntValue(ps));
+        ps.setInt(1, 5);
+        assertEquals(2, getIntValue(ps));
+        ps.setInt(1, 25);
+        assertEquals(0, getIntValue(ps));
+        ps.close();
+
+        sql = "select count(*) from HashSemiJoinTest1 t1 where t1.a * ? IN"
+                + "(select b from HashSemiJoinTest2 t2 where t2.a = t1.a and t2.id < ?)";
+        ps = conn.prepareStatement(sql);
+        ps.setInt(1, 10);
+        ps.setInt(2, 10);
+        assertEquals(2, getIntValue(ps));
+        ps.setInt(2, 2);
+        assertEquals(1, getIntValue(ps));
+        ps.setInt(1, 20);
+        assertEquals(0, getIntValue(ps));
+        ps.close();
+    }
+
+    private void testDataChange() throws Exception {
+        sql = "select count(*) from HashSemiJoinTest1 t1 where EXISTS"
+                + "(select * from HashSemiJoinTest2 t2 where t2.a = t1.a)";
+        PreparedStatement ps = conn.prepareStatement(sql);
+        assertEquals(2, getIntValue(ps));
+        executeUpdate("delete from HashSemiJoinTest2 where id = 3");
+        assertEquals(1, getIntValue(ps));
+        executeUpdate("insert into HashSemiJoinTest2 values(6, 4, 40)");
+        assertEquals(2, getIntValue(ps));
+        ps.close();
+
+        executeUpdate("delete from HashSemiJoinTest1 t1 where NOT EXISTS"
+                + "(select * from HashSemiJoinTest2 t2 where t2.a = t1.a)");
+        sql = "select count(*) from HashSemiJoinTest1";
+        assertEquals(2, getIntValue(1, true));
+    }
+
+    private static int getIntValue(PreparedStatement ps) throws Exception {
+        ResultSet rs = ps.executeQuery();
+        rs.next();
+        int v = rs.getInt(1);
+        rs.close();
+        return v;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.sql.index;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+// 修改排序规则要求数据库中没有表，所以用单独的数据库
+public class HashIndexCollationTest extends SqlTestBase {
+
+    public HashIndexCollationTest() {
+        super("HashIndexCollationTest");
+    }
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("drop table IF EXISTS HashIndexCollationTest");
+        // PRIMARY强度下大小写不同的字符串也相等
+        executeUpdate("SET COLLATION ENGLISH STRENGTH PRIMARY");
+        executeUpdate("create table HashIndexCollationTest(id int primary key, name varchar, a int)");
+        executeUpdate("create hash index HashIndexCollationTest_name on HashIndexCollationTest(name)");
+        executeUpdate("create hash index HashIndexCollationTest_a on HashIndexCollationTest(a)");
+        for (int i = 1; i <= 100; i++) {
+            executeUpdate("insert into HashIndexCollationTest values(" + i + ", '"
+                    + (i % 2 == 0 ? "name" : "NAME") + (i % 10) + "', " + (i % 10) + ")");
+        }
+
+        sql = "select count(*) from HashIndexCollationTest where name = 'Name3'";
+        assertEquals(10, getIntValue(1, true));
+        sql = "select count(*) from HashIndexCollationTest where name = 'name4'";
+        assertEquals(10, getIntValue(1, true));
+        sql = "select count(*) from HashIndexCollationTest where a = 5";
+        assertEquals(10, getIntValue(1, true));
+
+        executeUpdate("delete from HashIndexCollationTest where name = 'NAME5'");
+        sql = "select count(*) from HashIndexCollationTest where name = 'name5'";
+        assertEquals(0, getIntValue(1, true));
+        sql = "select count(*) from HashIndexCollationTest where a = 5";
+        assertEquals(0, getIntValue(1, true));
+
+        executeUpdate("drop table HashIndexCollationTest");
+        executeUpdate("SET COLLATION OFF");
+    }
+}
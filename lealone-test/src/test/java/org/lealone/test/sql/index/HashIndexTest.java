@@ -0,0 +1,84 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.sql.index;
+
+import org.junit.Test;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.test.sql.SqlTestBase;
+
+public class HashIndexTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        executeUpdate("drop table IF EXISTS HashIndexTest");
+        executeUpdate("create table HashIndexTest(id int primary key, a int, b varchar, c decimal(10,2))");
+        executeUpdate("create unique hash index HashIndexTest_a on HashIndexTest(a)");
+        executeUpdate("create hash index HashIndexTest_bc on HashIndexTest(b, c)");
+        for (int i = 1; i <= 100; i++) {
+            executeUpdate("insert into HashIndexTest values(" + i + ", " + i + ", 'b" + (i % 5) + "', "
+                    + (i % 2) + ")");
+        }
+        executeUpdate("insert into HashIndexTest values(101, null, null, null)");
+        executeUpdate("insert into HashIndexTest values(102, 102, null, null)");
+
+        testFind();
+        testUpdate();
+        testTransaction();
+    }
+
+    private void testFind() throws Exception {
+        sql = "select id from HashIndexTest where a = 30";
+        assertEquals(30, getIntValue(1, true));
+        sql = "select count(*) from HashIndexTest where b = 'b3' and c = 1";
+        assertEquals(10, getIntValue(1, true));
+        // 1.00和1相等，要在同一个哈希组中
+        sql = "select count(*) from HashIndexTest where b = 'b3' and c = 1.00";
+        assertEquals(10, getIntValue(1, true));
+        // 不是所有索引字段都是等值条件时不能用哈希索引
+        sql = "select count(*) from HashIndexTest where b = 'b3'";
+        assertEquals(20, getIntValue(1, true));
+        sql = "select count(*) from HashIndexTest where a > 90";
+        assertEquals(11, getIntValue(1, true));
+        sql = "select count(*) from HashIndexTest where a is null";
+        assertEquals(1, getIntValue(1, true));
+        sql = "select count(*) from HashIndexTest where b is null and c is null";
+        assertEquals(2, getIntValue(1, true));
+
+        executeUpdateThanAssertErrorCode("insert into HashIndexTest values(200, 30, 'x', 0)",
+                ErrorCode.DUPLICATE_KEY_1);
+    }
+
+    private void testUpdate() throws Exception {
+        executeUpdate("update HashIndexTest set a = 1000 where id = 30");
+        sql = "select count(*) from HashIndexTest where a = 30";
+        assertEquals(0, getIntValue(1, true));
+        sql = "select id from HashIndexTest where a = 1000";
+        assertEquals(30, getIntValue(1, true));
+
+        executeUpdate("delete from HashIndexTest where b = 'b3' and c = 1");
+        sql = "select count(*) from HashIndexTest where b = 'b3' and c = 1";
+        assertEquals(0, getIntValue(1, true));
+        // 删除的key又加回来
+        executeUpdate("insert into HashIndexTest values(3, 3, 'b3', 1)");
+        sql = "select id from HashIndexTest where b = 'b3' and c = 1";
+        assertEquals(3, getIntValue(1, true));
+    }
+
+    private void testTransaction() throws Exception {
+        conn.setAutoCommit(false);
+        executeUpdate("insert into HashIndexTest values(300, 300, 'b300', 0)");
+        sql = "select id from HashIndexTest where a = 300";
+        assertEquals(300, getIntValue(1, true));
+        conn.rollback();
+        conn.setAutoCommit(true);
+        sql = "select count(*) from HashIndexTest where a = 300";
+        assertEquals(0, getIntValue(1, true));
+        sql = "select count(*) from HashIndexTest where b = 'b300' and c = 0";
+        assertEquals(0, getIntValue(1, true));
+        executeUpdate("insert into HashIndexTest values(300, 300, 'b300', 0)");
+        sql = "select id from HashIndexTest where b = 'b300' and c = 0";
+        assertEquals(300, getIntValue(1, true));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.test.sql.lock;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+// 等待行锁的session在锁释放后要马上被调度器重新执行，而不是等到锁超时
+public class RowLockWaitTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("set DEFAULT_LOCK_TIMEOUT 10000");
+        stmt.executeUpdate("drop table IF EXISTS RowLockWaitTest");
+        stmt.executeUpdate("create table IF NOT EXISTS RowLockWaitTest(id int primary key, f1 int)");
+        stmt.executeUpdate("insert into RowLockWaitTest(id, f1) values(1, 0)");
+
+        for (int i = 1; i <= 5; i++) {
+            Connection conn1 = getConnection();
+            conn1.setAutoCommit(false);
+            Statement stmt1 = conn1.createStatement();
+            stmt1.executeUpdate("update RowLockWaitTest set f1 = f1 + 1 where id = 1");
+
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            Thread t = new Thread(() -> {
+                try {
+                    Connection conn2 = getConnection();
+                    Statement stmt2 = conn2.createStatement();
+                    stmt2.executeUpdate("update RowLockWaitTest set f1 = f1 + 10 where id = 1");
+                    stmt2.close();
+                    conn2.close();
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            t.start();
+            Thread.sleep(100);
+            long start = System.currentTimeMillis();
+            conn1.commit();
+            t.join();
+            assertNull(error.get());
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            stmt1.close();
+            conn1.close();
+        }
+        sql = "select f1 from RowLockWaitTest where id = 1";
+        assertEquals(55, getIntValue(1, true));
+    }
+}
@@ -9,13 +9,17 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.lealone.common.metrics.MetricsRegistry;
 import org.lealone.common.util.CaseInsensitiveMap;
 import org.lealone.common.util.MapUtils;
 import org.lealone.server.template.TemplateEngine;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
@@ -34,6 +38,7 @@ public class HttpRouterFactory implements RouterFactory {
         // CorsHandler放在前面
         setCorsHandler(config, vertx, router);
         initRouter(config, vertx, router);
+        setMetricsHandler(config, router);
         setHttpServiceHandler(config, vertx, router);
         setSockJSHandler(router, config, vertx);
         // 放在最后
@@ -91,6 +96,17 @@ public class HttpRouterFactory implements RouterFactory {
                 CorsHandler.create("*").allowedMethod(HttpMethod.GET).allowedMethod(HttpMethod.POST));
     }
 
+    // 按Prometheus的文本格式输出内部指标，这个路径没有认证，所以默认不开启，需要配置metrics_path
+    protected void setMetricsHandler(Map<String, String> config, Router router) {
+        String metricsPath = MapUtils.getString(config, "metrics_path", null);
+        if (metricsPath == null || metricsPath.isEmpty())
+            return;
+        router.get(metricsPath).handler(routingContext -> {
+            routingContext.response().putHeader("content-type", "text/plain; version=0.0.4; charset=utf-8");
+            routingContext.response().end(MetricsRegistry.toPrometheusText());
+        });
+    }
+
     protected String getServicePath(Map<String, String> config) {
         return MapUtils.getString(config, "service_path", "/service/:serviceName/:methodName");
     }
@@ -103,6 +119,32 @@ public class HttpRouterFactory implements RouterFactory {
         router.route(servicePath).handler(routingContext -> {
             handleHttpServiceRequest(serviceHandler, routingContext);
         });
+        setBatchServiceHandler(config, router, serviceHandler);
+    }
+
+    // 一次请求执行多个服务调用，请求体是调用的json数组，batch_service_path配置成空串时禁用
+    protected void setBatchServiceHandler(Map<String, String> config, Router router,
+            HttpServiceHandler serviceHandler) {
+        String batchServicePath = MapUtils.getString(config, "batch_service_path", "/batch_service");
+        if (batchServicePath.isEmpty())
+            return;
+        router.post(batchServicePath).handler(BodyHandler.create(false));
+        router.post(batchServicePath).handler(routingContext -> {
+            JsonArray calls;
+            try {
+                calls = routingContext.getBodyAsJsonArray();
+            } catch (Exception e) {
+                routingContext.fail(400, e);
+                return;
+            }
+            if (calls == null) {
+                routingContext.fail(400);
+                return;
+            }
+            serviceHandler.executeServices(calls, result -> {
+                sendHttpServiceResponse(routingContext, null, null, result);
+            });
+        });
     }
 
     protected void handleHttpServiceRequest(final HttpServiceHandler serviceHandler,
@@ -110,13 +152,18 @@ public class HttpRouterFactory implements RouterFactory {
         String serviceName = routingContext.request().params().get("serviceName");
         String methodName = routingContext.request().params().get("methodName");
         CaseInsensitiveMap<Object> methodArgs = getMethodArgs(routingContext);
-        Buffer result;
+        // 服务在调度线程中执行，执行完后才回到event loop发送响应
+        Handler<AsyncResult<Buffer>> handler = ar -> {
+            if (ar.succeeded())
+                sendHttpServiceResponse(routingContext, serviceName, methodName, ar.result());
+            else
+                routingContext.fail(ar.cause());
+        };
         if (methodArgs.containsKey("methodArgs"))
-            result = serviceHandler.executeService(serviceName, methodName,
-                    methodArgs.get("methodArgs").toString());
+            serviceHandler.executeServiceAsync(serviceName, methodName,
+                    methodArgs.get("methodArgs").toString(), handler);
         else
-            result = serviceHandler.executeService(serviceName, methodName, methodArgs);
-        sendHttpServiceResponse(routingContext, serviceName, methodName, result);
+            serviceHandler.executeServiceAsync(serviceName, methodName, methodArgs, handler);
     }
 
     protected void sendHttpServiceResponse(RoutingContext routingContext, String serviceName,
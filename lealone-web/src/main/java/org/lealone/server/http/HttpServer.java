@@ -21,6 +21,7 @@ import org.lealone.server.ProtocolServerBase;
 
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.ext.web.Router;
 
 public class HttpServer extends ProtocolServerBase {
@@ -169,7 +170,12 @@ public class HttpServer extends ProtocolServerBase {
         long interval = MapUtils.getLong(config, "blocked_thread_check_interval", Integer.MAX_VALUE);
         opt.setBlockedThreadCheckInterval(interval);
         vertx = Vertx.vertx(opt);
-        vertxHttpServer = vertx.createHttpServer();
+        // 服务调用在调度线程中执行，event loop只负责收发，所以一个连接可以保持并复用(HTTP/1.1 keep-alive)，
+        // 空闲超过idle_timeout秒的连接才关闭，默认是0，不会因为空闲而关闭
+        HttpServerOptions serverOptions = new HttpServerOptions();
+        serverOptions.setTcpKeepAlive(true);
+        serverOptions.setIdleTimeout(MapUtils.getInt(config, "idle_timeout", 0));
+        vertxHttpServer = vertx.createHttpServer(serverOptions);
         Router router = routerFactory.createRouter(config, vertx);
         CountDownLatch latch = new CountDownLatch(1);
         vertxHttpServer.requestHandler(router::handle).listen(port, host, res -> {
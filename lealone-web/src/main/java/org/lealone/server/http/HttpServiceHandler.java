@@ -6,16 +6,23 @@
 package org.lealone.server.http;
 
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.lealone.common.logging.Logger;
 import org.lealone.common.logging.LoggerFactory;
 import org.lealone.common.util.CamelCaseHelper;
 import org.lealone.common.util.StringUtils;
+import org.lealone.db.async.AsyncTaskHandlerFactory;
 import org.lealone.db.service.Service;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.handler.sockjs.SockJSSocket;
 
 public class HttpServiceHandler implements Handler<SockJSSocket> {
@@ -38,11 +45,97 @@ public class HttpServiceHandler implements Handler<SockJSSocket> {
 
         sockJSSocket.handler(buffer -> {
             String command = buffer.getString(0, buffer.length());
-            Buffer ret = executeService(command);
-            sockJSSocket.end(ret);
+            executeAsync(() -> executeService(command), ar -> {
+                if (ar.succeeded())
+                    sockJSSocket.end(ar.result());
+                else
+                    sockJSSocket.close();
+            });
         });
     }
 
+    /**
+     * 把服务调用交给数据库的调度线程执行，执行完后再回到当前的vert.x context处理结果，
+     * 这样执行慢的服务只会占用一个调度线程，不会阻塞event loop上的其他http客户端。
+     */
+    public static <T> void executeAsync(Supplier<T> task, Handler<AsyncResult<T>> handler) {
+        Context context = Vertx.currentContext();
+        AsyncTaskHandlerFactory.getAsyncTaskHandler().handle(() -> {
+            Future<T> result;
+            try {
+                result = Future.succeededFuture(task.get());
+            } catch (Throwable t) {
+                result = Future.failedFuture(t);
+            }
+            Future<T> f = result;
+            if (context != null)
+                context.runOnContext(v -> handler.handle(f));
+            else
+                handler.handle(f);
+        });
+    }
+
+    public void executeServiceAsync(String serviceName, String methodName,
+            Map<String, Object> methodArgs, Handler<AsyncResult<Buffer>> handler) {
+        executeAsync(() -> executeService(serviceName, methodName, methodArgs), handler);
+    }
+
+    public void executeServiceAsync(String serviceName, String methodName, String methodArgs,
+            Handler<AsyncResult<Buffer>> handler) {
+        executeAsync(() -> executeService(serviceName, methodName, methodArgs), handler);
+    }
+
+    /**
+     * 一个请求中的多个服务调用分别交给调度线程并行执行，全部完成后按调用的顺序返回结果。
+     * 每个调用的格式是: {"serviceName": "...", "methodName": "...", "methodArgs": [...] 或 {...}}，
+     * 每个结果的格式跟sockjs的一样: [状态, 服务名.方法名, 结果]，状态2表示成功，3表示失败。
+     */
+    public void executeServices(JsonArray calls, Handler<Buffer> handler) {
+        int size = calls.size();
+        if (size == 0) {
+            handler.handle(Buffer.buffer("[]"));
+            return;
+        }
+        JsonArray results = new JsonArray();
+        for (int i = 0; i < size; i++)
+            results.addNull();
+        // 回调都在同一个context中执行，不需要同步
+        int[] remaining = { size };
+        for (int i = 0; i < size; i++) {
+            int index = i;
+            JsonObject call = calls.getJsonObject(i);
+            executeAsync(() -> executeService(call), ar -> {
+                if (ar.succeeded()) {
+                    results.set(index, ar.result());
+                } else {
+                    JsonArray ja = new JsonArray();
+                    ja.add(3);
+                    ja.add(call.getString("serviceName") + "." + call.getString("methodName"));
+                    ja.add(ar.cause().getMessage());
+                    results.set(index, ja);
+                }
+                if (--remaining[0] == 0)
+                    handler.handle(Buffer.buffer(results.toString()));
+            });
+        }
+    }
+
+    private JsonArray executeService(JsonObject call) {
+        String serviceName = call.getString("serviceName");
+        String methodName = call.getString("methodName");
+        Object methodArgs = call.getValue("methodArgs");
+        if (methodArgs instanceof JsonObject) {
+            JsonArray ja = new JsonArray();
+            ja.add(2);
+            ja.add(serviceName + "." + methodName);
+            ja.add(executeService(serviceName, methodName, ((JsonObject) methodArgs).getMap())
+                    .toString());
+            return ja;
+        }
+        String json = methodArgs == null ? "[]" : methodArgs.toString();
+        return executeServiceCommand("1;" + serviceName + "." + methodName + ";" + json);
+    }
+
     public Buffer executeService(String serviceName, String methodName, Map<String, Object> methodArgs) {
         String[] serviceNameArray = StringUtils.arraySplit(serviceName, '.');
         if (serviceNameArray.length == 1 && defaultDatabase != null && defaultSchema != null)
@@ -79,10 +172,14 @@ public class HttpServiceHandler implements Handler<SockJSSocket> {
     private Buffer executeService(String command) {
         // 不能直接这样用: command.split(";");
         // 因为参数里可能包含分号
-        int pos1 = command.indexOf(';');
-        if (pos1 == -1) {
+        if (command.indexOf(';') == -1) {
             return Buffer.buffer("invalid service: " + command);
         }
+        return Buffer.buffer(executeServiceCommand(command).toString());
+    }
+
+    private JsonArray executeServiceCommand(String command) {
+        int pos1 = command.indexOf(';');
         String json;
         String oldServiceName;
         int type = Integer.parseInt(command.substring(0, pos1));
@@ -126,6 +223,6 @@ public class HttpServiceHandler implements Handler<SockJSSocket> {
         }
         ja.add(oldServiceName); // 前端传来的方法名不一定是下划线风格的，所以用最初的
         ja.add(result);
-        return Buffer.buffer(ja.toString());
+        return ja;
     }
 }